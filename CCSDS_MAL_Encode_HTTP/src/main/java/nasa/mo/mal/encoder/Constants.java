@@ -56,6 +56,30 @@ public class Constants {
     public static final String LIST_SUFFIX = "List";
     public static final String NULLABLE_ATTRIBUTE_NAME = "xsi:nil";
     public static final String MALXML_TYPE_ATTRIBUTE_NAME = "malxml:type";
+    /**
+     * reference to a multipart/related part in place of Blob content. XOP 1.0
+     */
+    public static final String XOP_INCLUDE = "xop:Include";
+    public static final String XOP_HREF_ATTRIBUTE_NAME = "href";
+
+    /**
+     * Property Keys for XmlStreamFactory
+     * set to "true" to write encoded elements directly to output stream instead of building a DOM document.
+     */
+    public static final String STREAMING_ENCODER_KEY = "org.ccsds.moims.mo.mal.encoding.xml.streaming";
+
+    /**
+     * Property Keys for XmlStreamFactory
+     * set to "true" to decode with a pull parser instead of building a DOM document.
+     */
+    public static final String STREAMING_DECODER_KEY = "org.ccsds.moims.mo.mal.encoding.xml.streaming.decoder";
+
+    /**
+     * Property Keys for XmlStreamFactory
+     * maximum number of idle encoders and decoders kept for reuse. set to 0 to create new ones for each message.
+     */
+    public static final String POOLED_CODECS_KEY = "org.ccsds.moims.mo.mal.encoding.xml.pooledcodecs";
+    public static final int DEFAULT_POOLED_CODECS = 16;
 
     public static final String SUB_DOMAIN = "subDomain";
     public static final String FIRST_SUB_KEY = "firstSubKey";
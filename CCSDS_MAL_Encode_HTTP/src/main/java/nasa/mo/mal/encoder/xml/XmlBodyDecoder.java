@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import nasa.mo.mal.encoder.BlobAttachments;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALListDecoder;
+
+import java.util.BitSet;
+
+/**
+ * Common API of XML body decoders used by XmlElementInputStream.
+ * Implemented by DOM based XmlDecoder and pull parser based XmlStreamingDecoder.
+ */
+interface XmlBodyDecoder extends MALListDecoder {
+    /**
+     * try to get the malxml:type of the next xml element in xml document.
+     *
+     * @return Long or null
+     * @throws MALException malformed number
+     */
+    Long getShortForm() throws MALException;
+
+    /**
+     * Creating a byte array with the remaining XML data.
+     *
+     * @return XML document with elements which are not decoded yet
+     * @throws MALException any error while creating the document
+     */
+    byte[] getRemainingEncodedData() throws MALException;
+
+    /**
+     * Skip the next element without decoding it.
+     * Skipped element is still part of the remaining XML data.
+     *
+     * @throws MALException any error while reading
+     */
+    void skipNextElement() throws MALException;
+
+    /**
+     * Indexes of decoded body elements in the order of XmlBodyIndex.
+     *
+     * @return indexes of decoded body elements
+     *          or null if an element is being decoded or the body cannot be indexed.
+     */
+    BitSet getDecodedBodyElements();
+
+    /**
+     * Parts of a multipart/related body which Blobs refer to with xop:Include.
+     *
+     * @param attachments parts of the message. null if the body is not multipart.
+     */
+    void setAttachments(BlobAttachments attachments);
+}
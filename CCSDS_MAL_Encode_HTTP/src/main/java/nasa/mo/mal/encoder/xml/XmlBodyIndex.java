@@ -0,0 +1,354 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Byte offsets of body elements in the original encoded body.
+ * Encoded body is scanned once without parsing. Only the start and end of each child of the root element is recorded.
+ * It is used to return the remaining encoded data as the original bytes instead of serializing a document again.
+ *
+ * Scanning works on UTF-8 bytes since all markup characters are ASCII
+ * and bytes of multi-byte characters are never in ASCII range.
+ */
+final class XmlBodyIndex {
+    private static final byte LESS_THAN = '<';
+    private static final byte GREATER_THAN = '>';
+    private static final byte SLASH = '/';
+    private static final byte QUESTION_MARK = '?';
+    private static final byte EXCLAMATION_MARK = '!';
+    private static final byte OPEN_BRACKET = '[';
+    private static final byte CLOSE_BRACKET = ']';
+    private static final byte DOUBLE_QUOTE = '"';
+    private static final byte SINGLE_QUOTE = '\'';
+    private static final byte[] COMMENT_START = {'<', '!', '-', '-'};
+    private static final byte[] COMMENT_END = {'-', '-', '>'};
+    private static final byte[] CDATA_START = {'<', '!', '[', 'C', 'D', 'A', 'T', 'A', '['};
+    private static final byte[] CDATA_END = {']', ']', '>'};
+    private static final byte[] PROCESSING_INSTRUCTION_END = {'?', '>'};
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final byte[] source;
+    /**
+     * index of '>' of the root start tag.
+     */
+    private int rootStartTagEnd = -1;
+    /**
+     * index of '<' of the root end tag.
+     */
+    private int rootEndTagStart = -1;
+    /**
+     * index after '>' of the root end tag.
+     */
+    private int rootEndTagEnd = -1;
+    /**
+     * start (index of '<') and end (index after '>') of each body element.
+     */
+    private int[] elementStarts = new int[INITIAL_CAPACITY];
+    private int[] elementEnds = new int[INITIAL_CAPACITY];
+    private int elementCount = 0;
+
+    /**
+     * Constructor.
+     * Use create() which checks if the encoded body can be indexed.
+     *
+     * @param source encoded body
+     */
+    private XmlBodyIndex(byte[] source) {
+        this.source = source;
+    }
+
+    /**
+     * Scan the encoded body and create the index.
+     *
+     * @param source encoded body
+     * @return index or null if the encoded body is not well formed.
+     */
+    static XmlBodyIndex create(byte[] source) {
+        if (source == null) {
+            return null;
+        }
+        XmlBodyIndex bodyIndex = new XmlBodyIndex(source);
+        return bodyIndex.scan() ? bodyIndex : null;
+    }
+
+    /**
+     * Read everything from the stream.
+     * Decoders keep the original bytes so that the remaining encoded data can be taken from them.
+     *
+     * @param inputStream Stream holding encoded body
+     * @return encoded body
+     */
+    static byte[] readAll(InputStream inputStream) {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Null Input Stream");
+        }
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(Math.max(inputStream.available(), 32));
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } catch (IOException exp) {
+            throw new IllegalArgumentException("Error while reading input stream", exp);
+        }
+    }
+
+    /**
+     * @return number of body elements
+     */
+    int getElementCount() {
+        return elementCount;
+    }
+
+    /**
+     * Remaining encoded data after some body elements are decoded.
+     * 1. nothing is decoded. return the original bytes without copying.
+     * 2. everything is decoded. return empty root element.
+     * 3. otherwise, copy the root element tags and the bytes of each element which is not decoded.
+     *
+     * @param decodedElements indexes of decoded body elements
+     * @return XML document with elements which are not decoded yet
+     */
+    byte[] getRemainingEncodedData(BitSet decodedElements) {
+        int decodedCount = decodedElements.get(0, elementCount).cardinality();
+        if (decodedCount == 0) {
+            return source;
+        }
+        if (decodedCount == elementCount) {
+            byte[] result = Arrays.copyOf(source, rootStartTagEnd + 2);
+            result[rootStartTagEnd] = SLASH;
+            result[rootStartTagEnd + 1] = GREATER_THAN;
+            return result;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(source.length);
+        outputStream.write(source, 0, rootStartTagEnd + 1);
+        for (int i = decodedElements.nextClearBit(0); i < elementCount; i = decodedElements.nextClearBit(i + 1)) {
+            outputStream.write(source, elementStarts[i], elementEnds[i] - elementStarts[i]);
+        }
+        outputStream.write(source, rootEndTagStart, rootEndTagEnd - rootEndTagStart);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * XML document with a single body element so that it can be decoded without the other elements.
+     * Root element tags are copied from the original bytes.
+     *
+     * @param index index of the body element
+     * @return XML document with the body element at the index
+     * @throws IndexOutOfBoundsException if there is no body element at the index
+     */
+    byte[] getElementDocument(int index) {
+        if (index < 0 || index >= elementCount) {
+            throw new IndexOutOfBoundsException("Body element index: " + index + ", count: " + elementCount);
+        }
+        int elementLength = elementEnds[index] - elementStarts[index];
+        int endTagLength = rootEndTagEnd - rootEndTagStart;
+        byte[] result = new byte[rootStartTagEnd + 1 + elementLength + endTagLength];
+        System.arraycopy(source, 0, result, 0, rootStartTagEnd + 1);
+        System.arraycopy(source, elementStarts[index], result, rootStartTagEnd + 1, elementLength);
+        System.arraycopy(source, rootEndTagStart, result, rootStartTagEnd + 1 + elementLength, endTagLength);
+        return result;
+    }
+
+    /**
+     * Scanning the encoded body.
+     * 1. skip XML declaration, processing instructions, comments, and DOCTYPE.
+     * 2. record start and end of each element at depth 1.
+     * 3. stop at the end of the root element. Root element may be an empty element.
+     *
+     * @return flag if the encoded body is well formed enough to be indexed.
+     */
+    private boolean scan() {
+        int depth = 0;
+        int position = 0;
+        int elementStart = -1;
+        while (true) {
+            position = indexOf(LESS_THAN, position);
+            if (position < 0 || position + 1 >= source.length) {
+                return false;
+            }
+            byte next = source[position + 1];
+            if (next == QUESTION_MARK) {
+                position = skipPast(PROCESSING_INSTRUCTION_END, position + 2);
+            } else if (startsWith(COMMENT_START, position)) {
+                position = skipPast(COMMENT_END, position + COMMENT_START.length);
+            } else if (startsWith(CDATA_START, position)) {
+                if (depth == 0) {
+                    return false;
+                }
+                position = skipPast(CDATA_END, position + CDATA_START.length);
+            } else if (next == EXCLAMATION_MARK) {
+                if (depth > 0) {
+                    return false;
+                }
+                position = skipDeclaration(position + 2);
+            } else if (next == SLASH) {
+                int tagEnd = indexOf(GREATER_THAN, position + 2);
+                if (tagEnd < 0 || depth == 0) {
+                    return false;
+                }
+                depth--;
+                if (depth == 1) {
+                    addElement(elementStart, tagEnd + 1);
+                } else if (depth == 0) {
+                    rootEndTagStart = position;
+                    rootEndTagEnd = tagEnd + 1;
+                    return true;
+                }
+                position = tagEnd + 1;
+            } else {
+                int tagEnd = skipStartTag(position + 1);
+                if (tagEnd < 0) {
+                    return false;
+                }
+                boolean isEmptyElement = source[tagEnd - 1] == SLASH;
+                if (depth == 0) {
+                    rootStartTagEnd = tagEnd;
+                    if (isEmptyElement) {
+                        rootEndTagStart = tagEnd + 1;
+                        rootEndTagEnd = tagEnd + 1;
+                        return true;
+                    }
+                } else if (depth == 1) {
+                    elementStart = position;
+                    if (isEmptyElement) {
+                        addElement(elementStart, tagEnd + 1);
+                    }
+                }
+                if (!isEmptyElement) {
+                    depth++;
+                }
+                position = tagEnd + 1;
+            }
+            if (position < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param start index of '<'
+     * @param end index after '>'
+     */
+    private void addElement(int start, int end) {
+        if (elementCount == elementStarts.length) {
+            elementStarts = Arrays.copyOf(elementStarts, elementCount * 2);
+            elementEnds = Arrays.copyOf(elementEnds, elementCount * 2);
+        }
+        elementStarts[elementCount] = start;
+        elementEnds[elementCount] = end;
+        elementCount++;
+    }
+
+    /**
+     * Find '>' of a start tag. '>' in attribute values is ignored.
+     *
+     * @param position index after '<'
+     * @return index of '>' or -1
+     */
+    private int skipStartTag(int position) {
+        byte quote = 0;
+        for (int i = position; i < source.length; i++) {
+            byte current = source[i];
+            if (quote != 0) {
+                if (current == quote) {
+                    quote = 0;
+                }
+            } else if (current == DOUBLE_QUOTE || current == SINGLE_QUOTE) {
+                quote = current;
+            } else if (current == GREATER_THAN) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip DOCTYPE or other declarations including internal subset in brackets.
+     *
+     * @param position index after "<!"
+     * @return index after '>' or -1
+     */
+    private int skipDeclaration(int position) {
+        int brackets = 0;
+        byte quote = 0;
+        for (int i = position; i < source.length; i++) {
+            byte current = source[i];
+            if (quote != 0) {
+                if (current == quote) {
+                    quote = 0;
+                }
+            } else if (current == DOUBLE_QUOTE || current == SINGLE_QUOTE) {
+                quote = current;
+            } else if (current == OPEN_BRACKET) {
+                brackets++;
+            } else if (current == CLOSE_BRACKET) {
+                brackets--;
+            } else if (current == GREATER_THAN && brackets == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param target bytes to find
+     * @param position index to start searching
+     * @return index after the target or -1
+     */
+    private int skipPast(byte[] target, int position) {
+        for (int i = position; i <= source.length - target.length; i++) {
+            if (startsWith(target, i)) {
+                return i + target.length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param target bytes to compare
+     * @param position index in source
+     * @return flag if source has the target bytes at the position
+     */
+    private boolean startsWith(byte[] target, int position) {
+        if (position + target.length > source.length) {
+            return false;
+        }
+        for (int i = 0; i < target.length; i++) {
+            if (source[position + i] != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param target byte to find
+     * @param position index to start searching
+     * @return index of the target or -1
+     */
+    private int indexOf(byte target, int position) {
+        for (int i = position; i < source.length; i++) {
+            if (source[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of idle encoders and DOM based decoders handed out by XmlStreamFactory.
+ * A new one is created if the pool is empty. Released ones are dropped if the pool is full.
+ * Released ones are reset to null so that the pool doesn't hold on to streams or documents.
+ */
+class XmlCodecPool {
+    private final BlockingQueue<XmlEncoder> domEncoders;
+    private final BlockingQueue<XmlEncoder> streamingEncoders;
+    private final BlockingQueue<XmlDecoder> decoders;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPooledCodecs maximum number of idle codecs kept for each kind
+     */
+    XmlCodecPool(int maxPooledCodecs) {
+        if (maxPooledCodecs <= 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + maxPooledCodecs);
+        }
+        domEncoders = new ArrayBlockingQueue<>(maxPooledCodecs);
+        streamingEncoders = new ArrayBlockingQueue<>(maxPooledCodecs);
+        decoders = new ArrayBlockingQueue<>(maxPooledCodecs);
+    }
+
+    /**
+     * @param outputStream Stream encoded message is written to.
+     * @param isStreaming flag to use streaming mode instead of DOM document
+     * @return a pooled encoder writing to the stream, or a new one if there is none
+     */
+    XmlEncoder acquireEncoder(OutputStream outputStream, boolean isStreaming) {
+        XmlEncoder encoder = (isStreaming ? streamingEncoders : domEncoders).poll();
+        if (encoder == null) {
+            return new XmlEncoder(outputStream, isStreaming);
+        }
+        encoder.reset(outputStream);
+        return encoder;
+    }
+
+    /**
+     * Return the encoder to the pool. It must be closed already.
+     *
+     * @param encoder encoder which is no longer used by the caller
+     */
+    void release(XmlEncoder encoder) {
+        if (encoder != null) {
+            encoder.reset(null);
+            (encoder.isStreaming() ? streamingEncoders : domEncoders).offer(encoder);
+        }
+    }
+
+    /**
+     * @param source encoded body
+     * @return a pooled decoder reading the body, or a new one if there is none
+     */
+    XmlDecoder acquireDecoder(byte[] source) {
+        XmlDecoder decoder = decoders.poll();
+        if (decoder == null) {
+            return new XmlDecoder(source);
+        }
+        decoder.reset(source);
+        return decoder;
+    }
+
+    /**
+     * Return the decoder to the pool.
+     *
+     * @param decoder decoder which is no longer used by the caller
+     */
+    void release(XmlDecoder decoder) {
+        if (decoder != null) {
+            decoder.reset(null);
+            decoders.offer(decoder);
+        }
+    }
+
+    int getPooledEncoderCount() {
+        return domEncoders.size() + streamingEncoders.size();
+    }
+
+    int getPooledDecoderCount() {
+        return decoders.size();
+    }
+}
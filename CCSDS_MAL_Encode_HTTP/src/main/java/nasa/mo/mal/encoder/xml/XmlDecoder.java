@@ -10,6 +10,7 @@
 
 package nasa.mo.mal.encoder.xml;
 
+import nasa.mo.mal.encoder.BlobAttachments;
 import nasa.mo.mal.encoder.Constants;
 import nasa.mo.mal.encoder.util.EncodingHelper;
 import nasa.mo.mal.encoder.util.FunctionWithMALException;
@@ -20,17 +21,15 @@ import org.ccsds.moims.mo.mal.structures.Element;
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.math.BigInteger;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Stack;
@@ -41,7 +40,7 @@ import java.util.logging.Logger;
  * @author Wai Phyo
  *         Created on 5/3/17.
  */
-public class XmlDecoder implements MALListDecoder {
+public class XmlDecoder implements XmlBodyDecoder {
     /**
      * XML Document
      */
@@ -54,18 +53,83 @@ public class XmlDecoder implements MALListDecoder {
      * A stack holding the parent element of the actual element which needs to be decoded.
      */
     private Stack<XmlNodeListIterator> currentNodeStack;
+    /**
+     * Iterator of the root element.
+     * Kept separately since it is popped from the stack once all body elements are decoded.
+     */
+    private XmlNodeListIterator rootIterator;
+
+    /**
+     * Original encoded body. Remaining encoded data is taken from it when possible.
+     */
+    private byte[] source;
+    /**
+     * Byte offsets of body elements. created when remaining encoded data is requested.
+     */
+    private XmlBodyIndex bodyIndex = null;
+    private boolean isBodyIndexed = false;
+    /**
+     * text of a number element is copied here to be parsed without trimming or creating Strings.
+     */
+    private char[] numberChars = new char[NUMBER_CHARS_SIZE];
+    private static final int NUMBER_CHARS_SIZE = 32;
+    /**
+     * parts of a multipart/related body referred by Blobs. null if the body is not multipart.
+     */
+    private BlobAttachments attachments = null;
 
-    private InputStream inputStream;
     /**
      * Constructor with input stream.
      * Convert to Encoded Message container.
      * @param inputStream Stream holding an object which has header and body
      */
     public XmlDecoder(InputStream inputStream) {
-        this.inputStream = inputStream;
+        this(XmlBodyIndex.readAll(inputStream));
+    }
+
+    /**
+     * Constructor with encoded body.
+     * @param source encoded body
+     */
+    public XmlDecoder(byte[] source) {
+        this.source = source;
         init();
     }
 
+    /**
+     * Reusing this decoder for another encoded body.
+     * Used by XmlCodecPool. null drops the document of the previous body.
+     *
+     * @param source encoded body or null
+     */
+    void reset(byte[] source) {
+        this.source = source;
+        attachments = null;
+        bodyIndex = null;
+        isBodyIndexed = false;
+        if (source == null) {
+            document = null;
+            currentNodeStack = null;
+            rootIterator = null;
+        } else {
+            init();
+        }
+    }
+
+    @Override
+    public void setAttachments(BlobAttachments attachments) {
+        this.attachments = attachments;
+    }
+
+    /**
+     * Decoded nodes stay in the document. They are only marked as decoded in their iterators.
+     *
+     * @return document of the encoded body. null if it cannot be parsed or the decoder is reset with null.
+     */
+    Document getDocument() {
+        return document;
+    }
+
     /**
      * Initialization method.
      * To be used by constructors.
@@ -78,8 +142,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     private void init() {
         try {
-            document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
-                    .parse(inputStream);
+            document = XmlThreadCache.getDocumentBuilder().parse(new ByteArrayInputStream(source));
             currentNodeStack = new Stack<>();
         } catch (ParserConfigurationException | SAXException | IOException exp) {
             LOGGER.log(Level.SEVERE,
@@ -99,8 +162,8 @@ public class XmlDecoder implements MALListDecoder {
             throw new RuntimeException("Error while removing white spaces from XML document.", exp.getCause());
         }
         currentNodeStack = new Stack<>();
-        currentNodeStack.push(XmlNodeListIterator.createXmlNodeListIterator(document
-                .getElementsByTagName(document.getDocumentElement().getNodeName()).item(0)));
+        rootIterator = XmlNodeListIterator.createXmlNodeListIterator(document.getDocumentElement());
+        currentNodeStack.push(rootIterator);
     }
 
     /**
@@ -113,12 +176,9 @@ public class XmlDecoder implements MALListDecoder {
      * @throws XPathExpressionException rquired for XPaths
      */
     private static void emptyNodeRemoval(Document document) throws XPathExpressionException {
-        XPathFactory xpathFactory = XPathFactory.newInstance();
         // XPath to find empty text nodes.
-        XPathExpression xpathExp = xpathFactory.newXPath().compile(
-                "//text()[normalize-space(.) = '']");
         NodeList emptyTextNodes = (NodeList)
-                xpathExp.evaluate(document, XPathConstants.NODESET);
+                XmlThreadCache.getEmptyTextExpression().evaluate(document, XPathConstants.NODESET);
 
         // Remove each empty text node from document.
         for (int i = 0; i < emptyTextNodes.getLength(); i++) {
@@ -144,6 +204,14 @@ public class XmlDecoder implements MALListDecoder {
         }
     }
 
+    /**
+     * Skip the next element without decoding it.
+     */
+    @Override
+    public void skipNextElement() {
+        getNextNode();
+    }
+
     /**
      * Check if the node has a null attribute and if it is true.
      * @param node DOM node
@@ -183,7 +251,7 @@ public class XmlDecoder implements MALListDecoder {
 
     /**
      * Main method to decode all numbers
-     * Boolean, Byte, Short, Int, Long, BigInteger
+     * Boolean. Other numbers are parsed by parseNotNullableNumber()
      * 1. Get actual element.
      * 2. validate it is not null.
      * 3. try to convert with the provided method.
@@ -237,6 +305,62 @@ public class XmlDecoder implements MALListDecoder {
         }
     }
 
+    /**
+     * Same as decodeNotNullableNumber() for the types XmlNumberCodec can parse.
+     *
+     * @param parser Interface which is implemented by XmlNumberCodec
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T parseNotNullableNumber(XmlNumberCodec.NumberParser<T> parser) throws MALException {
+        Node elementNode = prepForDecodingElements();
+        EncodingHelper.checkForNull(isNullAttributeTrue(elementNode) ? null : elementNode);
+        return parseNumber(parser, elementNode);
+    }
+
+    /**
+     * Same as decodeNullableNumber() for the types XmlNumberCodec can parse.
+     *
+     * @param parser Interface which is implemented by XmlNumberCodec
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T parseNullableNumber(XmlNumberCodec.NumberParser<T> parser) throws MALException {
+        Node elementNode = prepForDecodingElements();
+        if (elementNode == null || isNullAttributeTrue(elementNode)) {
+            popFromNodeStack();
+            return null;
+        }
+        return parseNumber(parser, elementNode);
+    }
+
+    /**
+     * Same as decodeNumber().
+     * Text of the node is copied to a reused char array instead of being trimmed to a new String.
+     *
+     * @param parser Interface which is implemented by XmlNumberCodec
+     * @param elementNode Xml Element Node which has the number
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T parseNumber(XmlNumberCodec.NumberParser<T> parser, Node elementNode) throws MALException {
+        try {
+            String value = elementNode.getFirstChild().getNodeValue();
+            if (value.length() > numberChars.length) {
+                numberChars = new char[value.length()];
+            }
+            value.getChars(0, value.length(), numberChars, 0);
+            T result = parser.parse(numberChars, 0, value.length());
+            popFromNodeStack();
+            return result;
+        } catch (NumberFormatException exp) {
+            throw new MALException(exp.getLocalizedMessage(), exp);
+        }
+    }
+
     /**
      * Similar to decodeNotNullableNumber()
      * This method is responsible for all other types.
@@ -311,7 +435,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Float decodeFloat() throws MALException {
-        return decodeNotNullableNumber(Float::valueOf);
+        return parseNotNullableNumber(XmlNumberCodec::parseFloat);
     }
 
     /**
@@ -322,7 +446,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Float decodeNullableFloat() throws MALException {
-        return decodeNullableNumber(Float::valueOf);
+        return parseNullableNumber(XmlNumberCodec::parseFloat);
     }
 
     /**
@@ -333,7 +457,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Double decodeDouble() throws MALException {
-        return decodeNotNullableNumber(Double::valueOf);
+        return parseNotNullableNumber(XmlNumberCodec::parseDouble);
     }
 
     /**
@@ -344,7 +468,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Double decodeNullableDouble() throws MALException {
-        return decodeNullableNumber(Double::valueOf);
+        return parseNullableNumber(XmlNumberCodec::parseDouble);
     }
 
     /**
@@ -355,7 +479,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Byte decodeOctet() throws MALException {
-        return decodeNotNullableNumber(Byte::valueOf);
+        return parseNotNullableNumber(XmlNumberCodec::parseByte);
 
     }
 
@@ -367,7 +491,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Byte decodeNullableOctet() throws MALException {
-        return decodeNullableNumber(Byte::valueOf);
+        return parseNullableNumber(XmlNumberCodec::parseByte);
     }
 
     /**
@@ -378,7 +502,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public UOctet decodeUOctet() throws MALException {
-        return new UOctet(decodeNotNullableNumber(Short::valueOf));
+        return new UOctet(parseNotNullableNumber(XmlNumberCodec::parseShort));
 
     }
 
@@ -390,7 +514,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public UOctet decodeNullableUOctet() throws MALException {
-        Short result = decodeNullableNumber(Short::valueOf);
+        Short result = parseNullableNumber(XmlNumberCodec::parseShort);
         return result == null ? null : new UOctet(result);
     }
 
@@ -402,7 +526,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Short decodeShort() throws MALException {
-        return decodeNotNullableNumber(Short::valueOf);
+        return parseNotNullableNumber(XmlNumberCodec::parseShort);
     }
 
     /**
@@ -413,7 +537,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Short decodeNullableShort() throws MALException {
-        return decodeNullableNumber(Short::valueOf);
+        return parseNullableNumber(XmlNumberCodec::parseShort);
     }
 
     /**
@@ -424,7 +548,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public UShort decodeUShort() throws MALException {
-        return new UShort(decodeNotNullableNumber(Integer::valueOf));
+        return new UShort(parseNotNullableNumber(XmlNumberCodec::parseInt));
     }
 
     /**
@@ -435,7 +559,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public UShort decodeNullableUShort() throws MALException {
-        Integer result = decodeNullableNumber(Integer::valueOf);
+        Integer result = parseNullableNumber(XmlNumberCodec::parseInt);
         return result == null ? null : new UShort(result);
     }
 
@@ -447,7 +571,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Integer decodeInteger() throws MALException {
-        return decodeNotNullableNumber(Integer::valueOf);
+        return parseNotNullableNumber(XmlNumberCodec::parseInt);
     }
 
     /**
@@ -458,7 +582,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Integer decodeNullableInteger() throws MALException {
-        return decodeNullableNumber(Integer::valueOf);
+        return parseNullableNumber(XmlNumberCodec::parseInt);
     }
 
     /**
@@ -469,7 +593,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public UInteger decodeUInteger() throws MALException {
-        return new UInteger(decodeNotNullableNumber(Long::valueOf));
+        return new UInteger(parseNotNullableNumber(XmlNumberCodec::parseLong));
     }
 
     /**
@@ -480,7 +604,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public UInteger decodeNullableUInteger() throws MALException {
-        Long result = decodeNullableNumber(Long::valueOf);
+        Long result = parseNullableNumber(XmlNumberCodec::parseLong);
         return result == null ? null : new UInteger(result);
     }
 
@@ -492,7 +616,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Long decodeLong() throws MALException {
-        return decodeNotNullableNumber(Long::valueOf);
+        return parseNotNullableNumber(XmlNumberCodec::parseLong);
     }
 
     /**
@@ -503,7 +627,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Long decodeNullableLong() throws MALException {
-        return decodeNullableNumber(Long::valueOf);
+        return parseNullableNumber(XmlNumberCodec::parseLong);
     }
 
     /**
@@ -514,7 +638,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public ULong decodeULong() throws MALException {
-        return new ULong(decodeNotNullableNumber(BigInteger::new));
+        return new ULong(parseNotNullableNumber(XmlNumberCodec::parseBigInteger));
     }
 
     /**
@@ -525,7 +649,7 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public ULong decodeNullableULong() throws MALException {
-        BigInteger result = decodeNullableNumber(BigInteger::new);
+        BigInteger result = parseNullableNumber(XmlNumberCodec::parseBigInteger);
         return result == null ? null : new ULong(result);
     }
 
@@ -559,12 +683,11 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Blob decodeBlob() throws MALException {
-        byte[] value = decodeObject(prepForDecodingElements(), EncodingHelper::convertHexStringToByteArray);
-        if (value == null) {
-            return new Blob();
-        } else {
-            return new Blob(value);
-        }
+        Node elementNode = prepForDecodingElements();
+        EncodingHelper.checkForNull(isNullAttributeTrue(elementNode) ? null : elementNode);
+        Blob result = toBlob(elementNode);
+        popFromNodeStack();
+        return result;
     }
 
     /**
@@ -575,8 +698,41 @@ public class XmlDecoder implements MALListDecoder {
      */
     @Override
     public Blob decodeNullableBlob() throws MALException {
-        byte[] result = decodeNullableObject(EncodingHelper::convertHexStringToByteArray);
-        return result == null ? null : new Blob(result);
+        Node elementNode = prepForDecodingElements();
+        if (elementNode == null || isNullAttributeTrue(elementNode)) {
+            popFromNodeStack();
+            return null;
+        }
+        Blob result = toBlob(elementNode);
+        popFromNodeStack();
+        return result;
+    }
+
+    /**
+     * Blob content is either hexadecimal text or xop:Include element referring to a multipart/related part.
+     *
+     * @param elementNode Blob element
+     * @return Blob from the text, or the part from attachments
+     * @throws MALException if there is no such part
+     */
+    private Blob toBlob(Node elementNode) throws MALException {
+        Node child = elementNode.getFirstChild();
+        if (child != null && child.getNodeType() == Node.ELEMENT_NODE) {
+            return resolveInclude(((org.w3c.dom.Element) child).getAttribute(Constants.XOP_HREF_ATTRIBUTE_NAME));
+        }
+        return new Blob(EncodingHelper.convertHexStringToByteArray(child == null ? "" : child.getNodeValue().trim()));
+    }
+
+    /**
+     * @param href "cid:" URL of xop:Include
+     * @return the part from attachments
+     * @throws MALException if there are no attachments or no such part
+     */
+    private Blob resolveInclude(String href) throws MALException {
+        if (attachments == null) {
+            throw new MALException("Blob refers to a multipart/related part without attachments: " + href);
+        }
+        return attachments.get(href);
     }
 
     /**
@@ -835,7 +991,7 @@ public class XmlDecoder implements MALListDecoder {
     public Element decodeNullableElement(Element element) throws IllegalArgumentException, MALException {
         if (!currentNodeStack.peek().hasNext() || isNullAttributeTrue(currentNodeStack.peek().peek())) {
             currentNodeStack.peek().next();
-            currentNodeStack.peek().removeCurrentChildNode();
+            currentNodeStack.peek().markCurrentChildNodeDecoded();
             return null;
         } else {
             return decodeElement(element);
@@ -910,7 +1066,7 @@ public class XmlDecoder implements MALListDecoder {
     public Attribute decodeNullableAttribute() throws MALException {
         if (!currentNodeStack.peek().hasNext() || isNullAttributeTrue(currentNodeStack.peek().peek())) {
             currentNodeStack.peek().next();
-            currentNodeStack.peek().removeCurrentChildNode();
+            currentNodeStack.peek().markCurrentChildNodeDecoded();
             return null;
         } else {
             return decodeAttribute();
@@ -962,6 +1118,7 @@ public class XmlDecoder implements MALListDecoder {
      *
      * @return Long or null
      */
+    @Override
     public Long getShortForm() throws MALException{
         if (!currentNodeStack.peek().hasNext()) {
             return null;
@@ -979,19 +1136,117 @@ public class XmlDecoder implements MALListDecoder {
 
     /**
      * Creating a byte array with the remaining XML data.
+     * Decoded elements are not removed from XML document.
+     * 1. If no element is being decoded, remaining data is taken from the original bytes by XmlBodyIndex.
+     * 2. Otherwise, a new document is created with the elements which are not decoded yet.
+     *
      * @return serialized byte array of SerializedEncodedMessage object with the remaining data
      * @throws MALException IO
      */
+    @Override
     public byte[] getRemainingEncodedData() throws MALException {
+        BitSet decodedElements = getDecodedBodyElements();
+        if (decodedElements != null) {
+            return getBodyIndex().getRemainingEncodedData(decodedElements);
+        }
+        Document remainingDocument = new XmlDocGenerator().getDocument();
+        remainingDocument.appendChild(importRemainingNodes(remainingDocument, rootIterator, 1));
         try {
-            return XmlDocGenerator.xmlDocToByteArray(document);
+            return XmlDocGenerator.xmlDocToByteArray(remainingDocument);
         } catch (TransformerException exp) {
             throw new MALException("Error while converting the remaining xml document to byte array", exp);
         }
     }
 
     /**
-     * removing decoded element node from the XML document.
+     * Index is created only once.
+     *
+     * @return byte offsets of body elements or null if it cannot be indexed.
+     */
+    private XmlBodyIndex getBodyIndex() {
+        if (!isBodyIndexed) {
+            bodyIndex = XmlBodyIndex.create(source);
+            isBodyIndexed = true;
+        }
+        return bodyIndex;
+    }
+
+    /**
+     * Only possible when no element is being decoded.
+     *
+     * @return indexes of decoded body elements
+     *          or null if an element is being decoded or the body cannot be indexed.
+     */
+    @Override
+    public BitSet getDecodedBodyElements() {
+        if (currentNodeStack.size() > 1) {
+            return null;
+        }
+        XmlBodyIndex index = getBodyIndex();
+        return index == null ? null : getDecodedBodyElements(index.getElementCount());
+    }
+
+    /**
+     * Converting decoded child node indexes of the root element to body element indexes.
+     * Other nodes such as comments are not counted as body elements.
+     *
+     * @param elementCount number of body elements in XmlBodyIndex
+     * @return indexes of decoded body elements
+     *          or null if a node which is not an element is decoded or the number of elements is different.
+     */
+    private BitSet getDecodedBodyElements(int elementCount) {
+        BitSet decodedElements = new BitSet();
+        NodeList childNodes = rootIterator.getBaseNode().getChildNodes();
+        int elementIndex = 0;
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            boolean isElement = childNodes.item(i).getNodeType() == Node.ELEMENT_NODE;
+            if (rootIterator.isChildNodeDecoded(i)) {
+                if (!isElement) {
+                    return null;
+                }
+                decodedElements.set(elementIndex);
+            }
+            if (isElement) {
+                elementIndex++;
+            }
+        }
+        return elementIndex == elementCount ? decodedElements : null;
+    }
+
+    /**
+     * Copy the base node of the iterator to the new document without the decoded child nodes.
+     * 1. decoded child nodes are skipped.
+     * 2. child node which is currently being decoded is next in the stack. copy it in the same way.
+     * 3. all other child nodes are copied with their children.
+     *
+     * @param remainingDocument new XML document
+     * @param iterator iterator of the node to copy
+     * @param stackIndex index of the next iterator in the stack
+     * @return copied node
+     */
+    private Node importRemainingNodes(Document remainingDocument, XmlNodeListIterator iterator, int stackIndex) {
+        Node baseNode = iterator.getBaseNode();
+        Node decodingNode = stackIndex < currentNodeStack.size() && currentNodeStack.get(stackIndex - 1) == iterator
+                ? currentNodeStack.get(stackIndex).getBaseNode() : null;
+        Node copiedNode = remainingDocument.importNode(baseNode, false);
+        NodeList childNodes = baseNode.getChildNodes();
+        for (int i = 0; i < childNodes.getLength(); i++) {
+            Node childNode = childNodes.item(i);
+            if (iterator.isChildNodeDecoded(i)) {
+                continue;
+            }
+            if (childNode == decodingNode) {
+                copiedNode.appendChild(importRemainingNodes(remainingDocument,
+                        currentNodeStack.get(stackIndex), stackIndex + 1));
+            } else {
+                copiedNode.appendChild(remainingDocument.importNode(childNode, true));
+            }
+        }
+        return copiedNode;
+    }
+
+    /**
+     * marking decoded element node in the XML document.
      * This is required in case the decoder stops halfway and retrieve the rest of the encoded element.
      * Example: a body has 3 elements
      * <Body> <elem1 /> <elem2 /> <elem3 /></Body>
@@ -999,15 +1254,16 @@ public class XmlDecoder implements MALListDecoder {
      * assuming we are decoding elem1, stack has Body | elem1
      *
      * By calling this method, the assumption is that it has successfully decoded.
-     * So <elem1 /> needs to be removed from the XML document.
+     * So <elem1 /> needs to be excluded from the remaining data.
      *
      * So pop the elem1 from the stack. Now stack has Body.
-     * Body.removeCurrentChildNode() will remove <elem1 />.
+     * Body.markCurrentChildNodeDecoded() will mark <elem1 /> as decoded.
+     * It is not removed from the document since removing a node re-indexes the node list.
      */
     private void popFromNodeStack() {
         currentNodeStack.pop();
         if (!currentNodeStack.isEmpty()) {
-            currentNodeStack.peek().removeCurrentChildNode();
+            currentNodeStack.peek().markCurrentChildNodeDecoded();
         }
     }
-}
\ No newline at end of file
+}
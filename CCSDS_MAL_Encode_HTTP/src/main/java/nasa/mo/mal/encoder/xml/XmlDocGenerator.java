@@ -15,10 +15,8 @@ import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.ByteArrayOutputStream;
@@ -42,14 +40,16 @@ class XmlDocGenerator {
      * Basic namespaces and links from whitebook
      * TODO will there be different namespaces for different message types?
      */
-    private static final String XMLNS_XSI = "xmlns:xsi";
+    static final String XMLNS_XSI = "xmlns:xsi";
     private Document document;
-    private static final String XML_VERSION = "1.0";
-    private static final String MAL_XML = "xmlns:malxml";
-    private static final String NULLABLE_ATTRIBUTE_VALUE = "true";
-    private static final String MAL_XML_NAMESPACE_URL = "http://www.ccsds.org/schema/malxml/MAL";
-    private static final String XML_XSI_NAMESPACE_URL = "http://www.w3.org/2001/XMLSchema-instance";
+    static final String XML_VERSION = "1.0";
+    static final String MAL_XML = "xmlns:malxml";
+    static final String NULLABLE_ATTRIBUTE_VALUE = "true";
+    static final String MAL_XML_NAMESPACE_URL = "http://www.ccsds.org/schema/malxml/MAL";
+    static final String XML_XSI_NAMESPACE_URL = "http://www.w3.org/2001/XMLSchema-instance";
     private static final String XML_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+    static final String XMLNS_XOP = "xmlns:xop";
+    static final String XOP_NAMESPACE_URL = "http://www.w3.org/2004/08/xop/include";
 
     /**
      * Constructor.
@@ -57,7 +57,7 @@ class XmlDocGenerator {
      */
     XmlDocGenerator() {
         try {
-            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+            document = XmlThreadCache.getDocumentBuilder().newDocument();
             document.setXmlVersion(XML_VERSION);
             document.setXmlStandalone(true);
         } catch (ParserConfigurationException exp) {
@@ -134,8 +134,7 @@ class XmlDocGenerator {
         }
         try {
             StringWriter writer = new StringWriter();
-            TransformerFactory.newInstance().newTransformer()
-                    .transform(new DOMSource(document), new StreamResult(writer));
+            XmlThreadCache.getTransformer().transform(new DOMSource(document), new StreamResult(writer));
             return writer.toString();
         } catch (TransformerException transformerException) {
             LOGGER.log(Level.SEVERE, "TransformerException while converting XML Document to String {0}",
@@ -169,6 +168,18 @@ class XmlDocGenerator {
         return element;
     }
 
+    /**
+     * Create xop:Include element which refers to a multipart/related part.
+     * @param href "cid:" URL of the part
+     * @return new DOM element
+     */
+    Element createIncludeElement(String href) {
+        Element element = document.createElement(Constants.XOP_INCLUDE);
+        element.setAttribute(Constants.XOP_HREF_ATTRIBUTE_NAME, href);
+        element.setAttributeNS(XML_NAMESPACE, XMLNS_XOP, XOP_NAMESPACE_URL);
+        return element;
+    }
+
     /**
      * Helper method to convert document to byte array
      * @param document
@@ -180,8 +191,7 @@ class XmlDocGenerator {
             return null;
         }
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        TransformerFactory.newInstance().newTransformer()
-                .transform(new DOMSource(document), new StreamResult(outputStream));
+        XmlThreadCache.getTransformer().transform(new DOMSource(document), new StreamResult(outputStream));
         return outputStream.toByteArray();
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import org.ccsds.moims.mo.mal.MALException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Stack;
+
+/**
+ * Default writer for XmlEncoder.
+ * Builds the whole XML Document in memory and serializes it when it is closed.
+ */
+class XmlDomNodeWriter implements XmlNodeWriter {
+    private final OutputStream outputStream;
+    private final XmlDocGenerator xmlDocGenerator;
+    private final Document document;
+    /**
+     * Currently open elements. Root element is always at the bottom.
+     */
+    private final Stack<Element> elementStack;
+
+    /**
+     * Constructor.
+     * Create a new XML Document with root / Body element.
+     *
+     * @param outputStream Stream encoded message is written to.
+     */
+    XmlDomNodeWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        xmlDocGenerator = new XmlDocGenerator();
+        document = xmlDocGenerator.getDocument();
+        elementStack = new Stack<>();
+        Element root = xmlDocGenerator.createRootElement();
+        document.appendChild(root);
+        elementStack.push(root);
+    }
+
+    @Override
+    public void startElement(String name) {
+        addElement(document.createElement(name));
+    }
+
+    @Override
+    public void startElement(String name, long type) {
+        Element element = document.createElement(name);
+        element.setAttributeNode(xmlDocGenerator.getNewTypeAttribute(type));
+        addElement(element);
+    }
+
+    @Override
+    public void endElement() {
+        elementStack.pop();
+    }
+
+    @Override
+    public void writeSimpleElement(String name, String value) {
+        elementStack.peek().appendChild(xmlDocGenerator.createSimpleElementWithValue(name, value));
+    }
+
+    @Override
+    public void writeIncludeElement(String name, String href) {
+        Element element = document.createElement(name);
+        element.appendChild(xmlDocGenerator.createIncludeElement(href));
+        elementStack.peek().appendChild(element);
+    }
+
+    @Override
+    public void writeNullElement(String name) {
+        elementStack.peek().appendChild(xmlDocGenerator.createEmptyElementWithNullAttr(name));
+    }
+
+    /**
+     * Write the XML Document to output stream.
+     *
+     * NOTE: in order for GENMessageBody to copy the encoded body properly,
+     * nothing is written if there is something in the stream already.
+     * At the moment, this is only checking it for bytearray stream.
+     *
+     * @throws MALException IOException or TransformerException while writing
+     */
+    @Override
+    public void close() throws MALException {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            if (outputStream instanceof ByteArrayOutputStream &&
+                    ((ByteArrayOutputStream) outputStream).size() > 0) {
+                outputStream.close();
+                return;
+            }
+            XmlThreadCache.getTransformer().transform(new DOMSource(document), new StreamResult(outputStream));
+            outputStream.close();
+        } catch (IOException | TransformerException exp) {
+            throw new MALException("Error while writing XML Doc to Output Stream", exp);
+        }
+    }
+
+    /**
+     * Append element to current parent and make it the current parent.
+     *
+     * @param element new DOM element
+     */
+    private void addElement(Element element) {
+        elementStack.peek().appendChild(element);
+        elementStack.push(element);
+    }
+}
@@ -12,6 +12,7 @@ package nasa.mo.mal.encoder.xml;
 
 import com.sun.istack.internal.NotNull;
 import esa.mo.mal.encoder.gen.GENElementInputStream;
+import nasa.mo.mal.encoder.BlobAttachments;
 import org.ccsds.moims.mo.mal.MALContextFactory;
 import org.ccsds.moims.mo.mal.MALElementFactory;
 import org.ccsds.moims.mo.mal.MALException;
@@ -20,6 +21,7 @@ import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
 import org.ccsds.moims.mo.mal.structures.*;
 
 import java.io.InputStream;
+import java.util.BitSet;
 
 /**
  * @author Wai Phyo
@@ -32,7 +34,36 @@ import java.io.InputStream;
  */
 public class XmlElementInputStream extends GENElementInputStream {
 
-    private XmlDecoder xmlDecoder;
+    /**
+     * Encoded body. Decoders are created from it only when an element is read.
+     */
+    private final byte[] source;
+    private final boolean isStreamingDecoder;
+    /**
+     * number of body elements to skip before decoding.
+     */
+    private final int elementOffset;
+    /**
+     * Decoder reading body elements one after another. created at the first read.
+     */
+    private XmlBodyDecoder xmlDecoder = null;
+    /**
+     * Byte offsets of body elements. created at the first read by index.
+     */
+    private XmlBodyIndex bodyIndex = null;
+    private boolean isBodyIndexed = false;
+    /**
+     * indexes of body elements decoded by index.
+     */
+    private final BitSet decodedElements = new BitSet();
+    /**
+     * pool of DOM based decoders used for reading by index. null if they are not pooled.
+     */
+    private final XmlCodecPool codecPool;
+    /**
+     * parts of a multipart/related body which Blobs refer to. null if the body is not multipart.
+     */
+    private final BlobAttachments attachments;
 
     /**
      * Constructor with an Encoded Message as a byte stream
@@ -40,8 +71,17 @@ public class XmlElementInputStream extends GENElementInputStream {
      * @param inputStream Encoded Message Stream
      */
     protected XmlElementInputStream(InputStream inputStream) {
-        super(null);
-        xmlDecoder = new XmlDecoder(inputStream);
+        this(inputStream, false);
+    }
+
+    /**
+     * Constructor with an Encoded Message as a byte stream
+     *
+     * @param inputStream Encoded Message Stream
+     * @param isStreamingDecoder flag to use pull parser based decoder instead of DOM based decoder
+     */
+    protected XmlElementInputStream(InputStream inputStream, boolean isStreamingDecoder) {
+        this(XmlBodyIndex.readAll(inputStream), 0, isStreamingDecoder);
     }
 
     /**
@@ -52,20 +92,159 @@ public class XmlElementInputStream extends GENElementInputStream {
      * @param offset number of body elements to skip before decoding.
      */
     protected XmlElementInputStream(InputStream inputStream, int offset) {
-        super(null);
-        xmlDecoder = new XmlDecoder(inputStream);
-        init(offset);
+        this(XmlBodyIndex.readAll(inputStream), offset, false);
+    }
+
+    /**
+     * Constructor with an Encoded Message as a byte array
+     * It has an offset which means it needs to skip that number of body elements
+     * Nothing is parsed until an element is read.
+     *
+     * @param bytes Encoded Message
+     * @param offset number of body elements to skip before decoding.
+     * @param isStreamingDecoder flag to use pull parser based decoder instead of DOM based decoder
+     */
+    protected XmlElementInputStream(byte[] bytes, int offset, boolean isStreamingDecoder) {
+        this(bytes, offset, isStreamingDecoder, null);
     }
 
     /**
-     * private method SOLELY for constructors.
-     * To skip the number of elements
+     * Constructor with an Encoded Message as a byte array and decoder pool
      *
+     * @param bytes Encoded Message
      * @param offset number of body elements to skip before decoding.
+     * @param isStreamingDecoder flag to use pull parser based decoder instead of DOM based decoder
+     * @param codecPool pool of decoders for reading by index. null to create new ones.
+     */
+    XmlElementInputStream(byte[] bytes, int offset, boolean isStreamingDecoder, XmlCodecPool codecPool) {
+        this(bytes, offset, isStreamingDecoder, codecPool, null);
+    }
+
+    /**
+     * Constructor with an Encoded Message as a byte array, decoder pool, and attachments
+     *
+     * @param bytes Encoded Message
+     * @param offset number of body elements to skip before decoding.
+     * @param isStreamingDecoder flag to use pull parser based decoder instead of DOM based decoder
+     * @param codecPool pool of decoders for reading by index. null to create new ones.
+     * @param attachments parts of a multipart/related body which Blobs refer to. null if the body is not multipart.
+     */
+    XmlElementInputStream(byte[] bytes, int offset, boolean isStreamingDecoder, XmlCodecPool codecPool,
+                          BlobAttachments attachments) {
+        super(null);
+        if (bytes == null) {
+            throw new IllegalArgumentException("Null Encoded Message");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        this.source = bytes;
+        this.elementOffset = offset;
+        this.isStreamingDecoder = isStreamingDecoder;
+        this.codecPool = codecPool;
+        this.attachments = attachments;
+    }
+
+    /**
+     * @param bytes XML document
+     * @return decoder selected by the streaming decoder flag
      */
-    private void init(int offset) {
-        for (int i = 0; i < offset; i++) {
-            xmlDecoder.getNextNode();
+    private XmlBodyDecoder createDecoder(byte[] bytes) {
+        XmlBodyDecoder decoder = isStreamingDecoder ? new XmlStreamingDecoder(bytes) : new XmlDecoder(bytes);
+        decoder.setAttachments(attachments);
+        return decoder;
+    }
+
+    /**
+     * Decoder for a single read by index. DOM based one is taken from the pool if there is one.
+     *
+     * @param bytes XML document
+     * @return decoder selected by the streaming decoder flag
+     */
+    private XmlBodyDecoder createIndexDecoder(byte[] bytes) {
+        if (codecPool == null || isStreamingDecoder) {
+            return createDecoder(bytes);
+        }
+        XmlBodyDecoder decoder = codecPool.acquireDecoder(bytes);
+        decoder.setAttachments(attachments);
+        return decoder;
+    }
+
+    /**
+     * Decoder for reading body elements one after another.
+     * It is created at the first read and skips the number of elements in offset.
+     *
+     * @return sequential decoder
+     * @throws MALException any error while skipping
+     */
+    private XmlBodyDecoder getDecoder() throws MALException {
+        if (xmlDecoder == null) {
+            XmlBodyDecoder decoder = createDecoder(source);
+            for (int i = 0; i < elementOffset; i++) {
+                decoder.skipNextElement();
+            }
+            xmlDecoder = decoder;
+        }
+        return xmlDecoder;
+    }
+
+    /**
+     * Index is created only once.
+     *
+     * @return byte offsets of body elements or null if it cannot be indexed.
+     */
+    private XmlBodyIndex getBodyIndex() {
+        if (!isBodyIndexed) {
+            bodyIndex = XmlBodyIndex.create(source);
+            isBodyIndexed = true;
+        }
+        return bodyIndex;
+    }
+
+    /**
+     * Decoding a single element by its index without decoding the elements before it.
+     * The index is counted after the skipped elements in offset.
+     * Only that element is parsed. Reading by index does not move the position of readElement.
+     *
+     * Steps:
+     * 1. find the element in XmlBodyIndex and create a decoder with that element only.
+     * 2. if the body cannot be indexed, create a new decoder and skip the elements before it.
+     * 3. decode in the same way as readElement.
+     * 4. DOM based decoder is returned to the pool since it is not used after that element.
+     *
+     * @param index   index of the element after the skipped elements
+     * @param element Element to decode, may be null.
+     * @param ctx     MALEncodingContext to be used in order to decode an Element
+     * @return The decoded element.
+     * @throws IllegalArgumentException If the parameter ‘ctx’ is NULL
+     * @throws MALException             If there is no element at the index or any decoding error
+     */
+    public Object readElement(int index, Object element, MALEncodingContext ctx)
+            throws IllegalArgumentException, MALException {
+        int elementIndex = elementOffset + index;
+        XmlBodyIndex elementPositions = getBodyIndex();
+        XmlBodyDecoder decoder;
+        if (elementPositions != null) {
+            if (index < 0 || elementIndex >= elementPositions.getElementCount()) {
+                throw new MALException("No body element at index: " + index);
+            }
+            decoder = createIndexDecoder(elementPositions.getElementDocument(elementIndex));
+        } else {
+            decoder = createIndexDecoder(source);
+        }
+        try {
+            if (elementPositions == null) {
+                for (int i = 0; i < elementIndex; i++) {
+                    decoder.skipNextElement();
+                }
+            }
+            Object result = readElement(decoder, element, ctx);
+            decodedElements.set(elementIndex);
+            return result;
+        } finally {
+            if (codecPool != null && decoder instanceof XmlDecoder) {
+                codecPool.release((XmlDecoder) decoder);
+            }
         }
     }
 
@@ -82,17 +261,32 @@ public class XmlElementInputStream extends GENElementInputStream {
     @Override
     public Object readElement(Object element, @NotNull MALEncodingContext ctx)
             throws IllegalArgumentException, MALException {
+        return readElement(getDecoder(), element, ctx);
+    }
+
+    /**
+     * decode header or body with the given decoder
+     *
+     * @param decoder decoder positioned at the element
+     * @param element Element to decode, may be null.
+     * @param ctx     MALEncodingContext to be used in order to decode an Element
+     * @return The decoded element.
+     * @throws IllegalArgumentException If the parameter ‘ctx’ is NULL
+     * @throws MALException             If the MALElementInputStream is closed
+     */
+    private Object readElement(XmlBodyDecoder decoder, Object element, MALEncodingContext ctx)
+            throws IllegalArgumentException, MALException {
         if (element instanceof Blob && ctx == null) {
-            return xmlDecoder.decodeElement((Element) element);
+            return decoder.decodeElement((Element) element);
         }
         if (ctx == null) {
             throw new MALException("Invalid operation");
         }
         if (element == ctx.getHeader()) {
-            return xmlDecoder.decodeElement((Element) element);
+            return decoder.decodeElement((Element) element);
             //return xmlDecoder.fillHeader((MALMessageHeader) element);
         } else {
-            return readBodyElement(element, ctx);
+            return readBodyElement(decoder, element, ctx);
         }
     }
 
@@ -100,23 +294,24 @@ public class XmlElementInputStream extends GENElementInputStream {
      * reading body element
      * Body can be error message, PubSub or others
      *
+     * @param decoder decoder positioned at the element
      * @param element Element to decode, may be null.
      * @param ctx     MALEncodingContext to be used in order to decode an Element
      * @return The decoded element.
      * @throws IllegalArgumentException If the parameter ‘ctx’ is NULL
      * @throws MALException             If the MALElementInputStream is closed
      */
-    private Object readBodyElement(Object element, MALEncodingContext ctx)
+    private Object readBodyElement(XmlBodyDecoder decoder, Object element, MALEncodingContext ctx)
             throws IllegalArgumentException, MALException {
         if (ctx.getHeader() == null) {
             throw new MALException("Null MAL Message Header in Encoding Context");
         }
         if (ctx.getHeader().getIsErrorMessage()) {
-            return readErrorMsgElement(ctx);
+            return readErrorMsgElement(decoder, ctx);
         } else if (InteractionType._PUBSUB_INDEX == ctx.getHeader().getInteractionType().getOrdinal()) {
-            return readPubSubElement(ctx);
+            return readPubSubElement(decoder, ctx);
         } else {
-            return readOtherBodyElement(element, ctx);
+            return readOtherBodyElement(decoder, element, ctx);
         }
     }
 
@@ -126,17 +321,18 @@ public class XmlElementInputStream extends GENElementInputStream {
      * 1st element is error number in UInteger type
      * If there are others, type id should be in xml doc.
      *
+     * @param decoder decoder positioned at the element
      * @param ctx     MALEncodingContext to be used in order to decode an Element
      * @return The decoded element.
      * @throws IllegalArgumentException If the parameter ‘ctx’ is NULL
      * @throws MALException             If the MALElementInputStream is closed
      */
-    private Object readErrorMsgElement(MALEncodingContext ctx)
+    private Object readErrorMsgElement(XmlBodyDecoder decoder, MALEncodingContext ctx)
             throws IllegalArgumentException, MALException {
         if (ctx.getBodyElementIndex() == 0) {
-            return xmlDecoder.decodeUInteger();
+            return decoder.decodeUInteger();
         } else {
-            return decodeSubElement(xmlDecoder.getShortForm(), ctx);
+            return decodeSubElement(decoder, decoder.getShortForm(), ctx);
         }
     }
 
@@ -145,40 +341,41 @@ public class XmlElementInputStream extends GENElementInputStream {
      * Note1: not sure we need this since Transport doesn't support PubSub.
      * Node2: We do since Transport still supports transfer of PubSub messages.
      *
+     * @param decoder decoder positioned at the element
      * @param ctx     MALEncodingContext to be used in order to decode an Element
      * @return The decoded element.
      * @throws IllegalArgumentException If the parameter ‘ctx’ is NULL
      * @throws MALException             If the MALElementInputStream is closed
      */
-    private Object readPubSubElement(MALEncodingContext ctx)
+    private Object readPubSubElement(XmlBodyDecoder decoder, MALEncodingContext ctx)
             throws IllegalArgumentException, MALException {
         switch (ctx.getHeader().getInteractionStage().getValue()) {
             case MALPubSubOperation._REGISTER_STAGE:
-                return xmlDecoder.decodeElement(new Subscription());
+                return decoder.decodeElement(new Subscription());
             case MALPubSubOperation._PUBLISH_REGISTER_STAGE:
-                return xmlDecoder.decodeElement(new EntityKeyList());
+                return decoder.decodeElement(new EntityKeyList());
             case MALPubSubOperation._DEREGISTER_STAGE:
-                return xmlDecoder.decodeElement(new IdentifierList());
+                return decoder.decodeElement(new IdentifierList());
             case MALPubSubOperation._PUBLISH_STAGE: {
                 int idx = ctx.getBodyElementIndex();
                 if (0 == idx) {
-                    return xmlDecoder.decodeElement(new UpdateHeaderList());
+                    return decoder.decodeElement(new UpdateHeaderList());
                 } else {
-                    return decodeSubElement(getShortForm(ctx), ctx);
+                    return decodeSubElement(decoder, getShortForm(decoder, ctx), ctx);
                 }
             }
             case MALPubSubOperation._NOTIFY_STAGE: {
                 int idx = ctx.getBodyElementIndex();
                 if (0 == idx) {
-                    return xmlDecoder.decodeIdentifier();
+                    return decoder.decodeIdentifier();
                 } else if (1 == idx) {
-                    return xmlDecoder.decodeElement(new UpdateHeaderList());
+                    return decoder.decodeElement(new UpdateHeaderList());
                 } else {
-                    return decodeSubElement(getShortForm(ctx), ctx);
+                    return decodeSubElement(decoder, getShortForm(decoder, ctx), ctx);
                 }
             }
             default:
-                return decodeSubElement(xmlDecoder.getShortForm(), ctx);
+                return decodeSubElement(decoder, decoder.getShortForm(), ctx);
         }
     }
 
@@ -189,15 +386,16 @@ public class XmlElementInputStream extends GENElementInputStream {
      * 1. try to find it in the short form array from Encoding Context.
      * 2. if not found, it must be hard coded in XML doc. get it from there.
      *
+     * @param decoder decoder positioned at the element
      * @param encodingContext   MALEncodingContext to be used in order to decode an Element
      * @return Short form ID (long data type) of current decoding MAL element
      * @throws MALException     any exception from decoder.
      */
-    private long getShortForm(MALEncodingContext encodingContext) throws MALException {
+    private long getShortForm(XmlBodyDecoder decoder, MALEncodingContext encodingContext) throws MALException {
         Object sf = encodingContext.getOperation().getOperationStage(encodingContext.getHeader().getInteractionStage())
                 .getElementShortForms()[encodingContext.getBodyElementIndex()];
         if (null == sf) {
-            return xmlDecoder.getShortForm();
+            return decoder.getShortForm();
         } else {
             return (long) sf;
         }
@@ -207,13 +405,14 @@ public class XmlElementInputStream extends GENElementInputStream {
      * Decoding a body element.
      * 1. find the short form.
      * 2. decode an element by passing shortform as a reference to which data type
+     * @param decoder decoder positioned at the element
      * @param element Element to decode, may be null.
      * @param ctx     MALEncodingContext to be used in order to decode an Element
      * @return The decoded element.
      * @throws IllegalArgumentException If the parameter ‘ctx’ is NULL
      * @throws MALException             If the MALElementInputStream is closed
      */
-    private Object readOtherBodyElement(Object element, MALEncodingContext ctx)
+    private Object readOtherBodyElement(XmlBodyDecoder decoder, Object element, MALEncodingContext ctx)
             throws IllegalArgumentException, MALException {
         if (null == element) {
             Long shortForm;
@@ -222,19 +421,19 @@ public class XmlElementInputStream extends GENElementInputStream {
             Object[] finalEleShortForms = ctx.getOperation().getOperationStage(ctx.getHeader().getInteractionStage()).getLastElementShortForms();
 
             if ((null != finalEleShortForms) && (Attribute._URI_TYPE_SHORT_FORM == finalEleShortForms.length) && ((((Long) finalEleShortForms[0]) & 0x800000L) == 0)) {
-                Byte sf = Byte.parseByte(xmlDecoder.getShortForm().toString());
+                Byte sf = Byte.parseByte(decoder.getShortForm().toString());
                 if (null == sf) {
                     return null;
                 }
 
                 shortForm = Attribute.ABSOLUTE_AREA_SERVICE_NUMBER + sf;
             } else {
-                shortForm = xmlDecoder.getShortForm();
+                shortForm = decoder.getShortForm();
             }
 
-            return decodeSubElement(shortForm, ctx);
+            return decodeSubElement(decoder, shortForm, ctx);
         } else {
-            return xmlDecoder.decodeNullableElement((Element) element);
+            return decoder.decodeNullableElement((Element) element);
         }
     }
 
@@ -249,6 +448,20 @@ public class XmlElementInputStream extends GENElementInputStream {
      */
     @Override
     protected Object decodeSubElement(final Long shortForm, final MALEncodingContext ctx) throws MALException {
+        return decodeSubElement(getDecoder(), shortForm, ctx);
+    }
+
+    /**
+     * Find a MAL Element and decode it with the given decoder.
+     *
+     * @param decoder decoder positioned at the element
+     * @param shortForm ID of MAL data type which can be looked up to find out which MAL element this is.
+     * @param ctx     MALEncodingContext to be used in order to decode an Element
+     * @return The decoded element.
+     * @throws MALException             If the MALElementInputStream is closed
+     */
+    private Object decodeSubElement(XmlBodyDecoder decoder, final Long shortForm, final MALEncodingContext ctx)
+            throws MALException {
         if (shortForm == null) {
             return null;
         }
@@ -257,7 +470,7 @@ public class XmlElementInputStream extends GENElementInputStream {
             throw new MALException("GEN transport unable to find element factory for short type: " + shortForm);
         }
 
-        return xmlDecoder.decodeElement((Element) malElementFactory.createElement());
+        return decoder.decodeElement((Element) malElementFactory.createElement());
     }
 
     /**
@@ -271,13 +484,28 @@ public class XmlElementInputStream extends GENElementInputStream {
     }
 
     /**
-     * Relaying the method from decoder
+     * Remaining encoded data.
+     * 1. if the body cannot be indexed, relaying the method from decoder.
+     * 2. if nothing is read one after another, taken from XmlBodyIndex without parsing.
+     * 3. otherwise, elements decoded by the decoder and elements read by index are removed.
      *
      * @return serialized byte array of SerializedEncodedMessage object with the remaining encoded data
      * @throws MALException IO
      */
     @Override
     public byte[] getRemainingEncodedData() throws MALException {
-        return xmlDecoder.getRemainingEncodedData();
+        XmlBodyIndex elementPositions = getBodyIndex();
+        if (elementPositions == null) {
+            return getDecoder().getRemainingEncodedData();
+        }
+        if (xmlDecoder == null) {
+            return elementPositions.getRemainingEncodedData(decodedElements);
+        }
+        BitSet sequentialElements = xmlDecoder.getDecodedBodyElements();
+        if (sequentialElements == null || decodedElements.isEmpty()) {
+            return xmlDecoder.getRemainingEncodedData();
+        }
+        sequentialElements.or(decodedElements);
+        return elementPositions.getRemainingEncodedData(sequentialElements);
     }
 }
@@ -11,6 +11,7 @@
 package nasa.mo.mal.encoder.xml;
 
 import com.sun.istack.internal.NotNull;
+import nasa.mo.mal.encoder.BlobAttachments;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALPubSubOperation;
 import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
@@ -37,6 +38,19 @@ public class XmlElementOutputStream implements MALElementOutputStream {
 
     protected XmlEncoder encoder = null;
 
+    /**
+     * flag to use streaming encoder instead of DOM based encoder.
+     */
+    protected final boolean isStreamingEncoder;
+    /**
+     * pool the encoder is taken from and returned to when closed. null if it is not pooled.
+     */
+    private final XmlCodecPool codecPool;
+    /**
+     * parts of a multipart/related body for large Blobs. null to encode all Blobs in hex.
+     */
+    private final BlobAttachments attachments;
+
     /**
      * Logger to log info
      */
@@ -47,8 +61,55 @@ public class XmlElementOutputStream implements MALElementOutputStream {
      * @param os Output stream to write to.
      */
     protected XmlElementOutputStream(final OutputStream os) {
+        this(os, false);
+    }
+
+    /**
+     * Constructor with encoding mode.
+     *
+     * @param os Output stream to write to.
+     * @param isStreamingEncoder flag to write encoded elements directly to the stream.
+     */
+    protected XmlElementOutputStream(final OutputStream os, final boolean isStreamingEncoder) {
+        this(os, isStreamingEncoder, null);
+    }
+
+    /**
+     * Constructor with encoding mode and encoder pool.
+     *
+     * @param os Output stream to write to.
+     * @param isStreamingEncoder flag to write encoded elements directly to the stream.
+     * @param codecPool pool to take the encoder from. null to create a new one.
+     */
+    XmlElementOutputStream(final OutputStream os, final boolean isStreamingEncoder, final XmlCodecPool codecPool) {
+        this(os, isStreamingEncoder, codecPool, null);
+    }
+
+    /**
+     * Constructor with encoding mode, encoder pool, and attachments.
+     *
+     * @param os Output stream to write to.
+     * @param isStreamingEncoder flag to write encoded elements directly to the stream.
+     * @param codecPool pool to take the encoder from. null to create a new one.
+     * @param attachments Blobs at or above its threshold are added to it. null to encode all Blobs in hex.
+     */
+    XmlElementOutputStream(final OutputStream os, final boolean isStreamingEncoder, final XmlCodecPool codecPool,
+                           final BlobAttachments attachments) {
         this.dos = os;
-        this.encoder = new XmlEncoder(dos);
+        this.isStreamingEncoder = isStreamingEncoder;
+        this.codecPool = codecPool;
+        this.attachments = attachments;
+        this.encoder = createEncoder();
+    }
+
+    /**
+     * @return encoder from the pool if there is one. otherwise, a new encoder.
+     */
+    private XmlEncoder createEncoder() {
+        XmlEncoder newEncoder = codecPool == null ? new XmlEncoder(dos, isStreamingEncoder)
+                : codecPool.acquireEncoder(dos, isStreamingEncoder);
+        newEncoder.setAttachments(attachments);
+        return newEncoder;
     }
 
     /**
@@ -70,7 +131,7 @@ public class XmlElementOutputStream implements MALElementOutputStream {
             throw new MALException("Null MALEncodingContext");
         }
         if (encoder == null) {
-            this.encoder = new XmlEncoder(dos);
+            this.encoder = createEncoder();
         }
         if (element == ctx.getHeader()) {
             encoder.encodeElement((Element) element);
@@ -95,6 +156,7 @@ public class XmlElementOutputStream implements MALElementOutputStream {
     /**
      * Close the encoder ( which has logic to write to stream)
      * Closes the stream.
+     * The encoder is returned to the pool and a new one is taken if elements are written again.
      *
      * @throws MALException If an internal error occurs
      */
@@ -109,6 +171,11 @@ public class XmlElementOutputStream implements MALElementOutputStream {
             }
         } catch (IOException ex) {
             throw new MALException(ex.getLocalizedMessage(), ex);
+        } finally {
+            if (codecPool != null && encoder != null) {
+                codecPool.release(encoder);
+                encoder = null;
+            }
         }
     }
 
@@ -10,27 +10,22 @@
 
 package nasa.mo.mal.encoder.xml;
 
+import nasa.mo.mal.encoder.BlobAttachments;
 import nasa.mo.mal.encoder.Constants;
 import nasa.mo.mal.encoder.util.BiConsumerWithMALException;
+import nasa.mo.mal.encoder.util.ConsumerWithMALException;
+import nasa.mo.mal.encoder.util.DurationCodec;
 import nasa.mo.mal.encoder.util.EncodingHelper;
 import nasa.mo.mal.encoder.util.RunnableWithMALException;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALListEncoder;
 import org.ccsds.moims.mo.mal.structures.*;
 import org.ccsds.moims.mo.mal.structures.Element;
-import org.w3c.dom.*;
-
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.Stack;
-import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,8 +34,11 @@ import java.util.logging.Logger;
  *         Created on 5/3/17.
  */
 public class XmlEncoder implements MALListEncoder {
-    private Document document;
     private OutputStream outputStream;
+    /**
+     * flag to write each element directly to the stream instead of building a DOM document.
+     */
+    private final boolean isStreaming;
     /**
      * This stack holds encoding Xml element.
      * This is required since complex elements like list and composites have several children to be encoded.
@@ -58,7 +56,11 @@ public class XmlEncoder implements MALListEncoder {
      */
     private Stack<XmlElementContainer> parentStack;
     private static final Logger LOGGER = Logger.getLogger(XmlEncoder.class.toString());
-    private XmlDocGenerator xmlDocGenerator;
+    private XmlNodeWriter nodeWriter;
+    /**
+     * Blobs at or above its threshold are added to it and encoded as references. null to encode all of them in hex.
+     */
+    private BlobAttachments attachments = null;
 
     /**
      * Constructor with Output Stream
@@ -69,28 +71,67 @@ public class XmlEncoder implements MALListEncoder {
      * @param outputStream Stream encoded message is written to.
      */
     public XmlEncoder(OutputStream outputStream) {
+        this(outputStream, false);
+    }
+
+    /**
+     * Constructor with Output Stream and encoding mode
+     * In streaming mode, each element is written to the stream as soon as it is encoded.
+     * The output is the same as the default mode.
+     *
+     * @param outputStream Stream encoded message is written to.
+     * @param isStreaming flag to use streaming mode instead of DOM document
+     */
+    public XmlEncoder(OutputStream outputStream, boolean isStreaming) {
         this.outputStream = outputStream;
+        this.isStreaming = isStreaming;
         init();
     }
 
+    /**
+     * Reusing this encoder for another stream.
+     * Used by XmlCodecPool. null drops the node writer of the previous stream.
+     *
+     * @param outputStream Stream encoded message is written to or null
+     */
+    void reset(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        attachments = null;
+        if (outputStream == null) {
+            nodeWriter = null;
+            parentStack = null;
+        } else {
+            init();
+        }
+    }
+
+    /**
+     * @param attachments parts of a multipart/related body for large Blobs. null to encode all Blobs in hex.
+     */
+    void setAttachments(BlobAttachments attachments) {
+        this.attachments = attachments;
+    }
+
+    boolean isStreaming() {
+        return isStreaming;
+    }
+
     /**
      * Initialization method.
      * To be used by constructors.
-     * 1. Create a new XML Document to store the body
-     * 2. get document from it for easier access to write.
-     * 3. a stack to store current parent.
-     * 4. create root / Body element, store to document, push to stack as it is current parent.
-     * 5. encoding list flag is used in close() method when encoding lists.
-     * 6. Set Content Type to XML as using this class means encoding is done in XML.
+     * 1. Create a new node writer which holds root / Body element.
+     *    DOM writer creates a new XML Document to store the body.
+     *    Streaming writer writes directly to output stream.
+     * 2. a stack to store current parent.
+     * 3. push root to stack as it is current parent.
+     * 4. encoding list flag is used in close() method when encoding lists.
+     * 5. Set Content Type to XML as using this class means encoding is done in XML.
      * TODO since Content-Type header values is set in Encoder, other encoders should follow section 3.6.5
      */
     private void init() {
-        xmlDocGenerator = new XmlDocGenerator();
-        document = xmlDocGenerator.getDocument();
+        nodeWriter = isStreaming ? new XmlStreamingNodeWriter(outputStream) : new XmlDomNodeWriter(outputStream);
         parentStack = new Stack<>();
-        org.w3c.dom.Element root = xmlDocGenerator.createRootElement();
-        document.appendChild(root);
-        parentStack.push(new XmlElementContainer(root, false));
+        parentStack.push(new XmlElementContainer(false));
     }
 
     /**
@@ -105,31 +146,21 @@ public class XmlEncoder implements MALListEncoder {
      * The original workflow is to write encoded body parts to the stream.
      * Since this encoder write everything to the stream just before it is closed,
      * if there is something written to the stream, this will append it.
-     * To avoid this problem, first it checks if the stream is empty.
+     * To avoid this problem, node writer first checks if the stream is empty.
      * At the moment, this is only checking it for bytearray stream.
      * write everything to output stream
      * If there is exception, write to log.
      */
     @Override
     public void close() {
-        if (parentStack.peek().isList) {
-            parentStack.pop();
-        } else {
-            try {
-                if (outputStream == null) {
-                    return;
-                }
-                if (outputStream instanceof ByteArrayOutputStream &&
-                        ((ByteArrayOutputStream) outputStream).toByteArray().length > 0) {
-                    outputStream.close();
-                    return;
-                }
-                TransformerFactory.newInstance().newTransformer()
-                        .transform(new DOMSource(document), new StreamResult(outputStream));
-                outputStream.close();
-            } catch (IOException | TransformerException ioException) {
-                LOGGER.log(Level.SEVERE, "IOException while writing XML Doc to Output Stream {0}.", ioException);
+        try {
+            if (parentStack.peek().isList) {
+                removeParent();
+            } else {
+                nodeWriter.close();
             }
+        } catch (MALException exp) {
+            LOGGER.log(Level.SEVERE, "IOException while writing XML Doc to Output Stream {0}.", exp);
         }
     }
 
@@ -167,7 +198,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeFloat(Float att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.FLOAT, att.toString());
+        internalEncodeFloat(Constants.FLOAT, att);
     }
 
     /**
@@ -191,7 +222,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeDouble(Double att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.DOUBLE, att.toString());
+        internalEncodeDouble(Constants.DOUBLE, att);
     }
 
     /**
@@ -215,7 +246,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeOctet(Byte att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.OCTET, att.toString());
+        internalEncodeLong(Constants.OCTET, att);
     }
 
     /**
@@ -239,7 +270,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeUOctet(UOctet att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.U_OCTET, att.toString());
+        internalEncodeLong(Constants.U_OCTET, att.getValue());
     }
 
     /**
@@ -263,7 +294,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeShort(Short att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.SHORT, att.toString());
+        internalEncodeLong(Constants.SHORT, att);
 
     }
 
@@ -288,7 +319,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeUShort(UShort att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.U_SHORT, att.toString());
+        internalEncodeLong(Constants.U_SHORT, att.getValue());
     }
 
     /**
@@ -312,7 +343,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeInteger(Integer att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.INTEGER, att.toString());
+        internalEncodeLong(Constants.INTEGER, att);
     }
 
     /**
@@ -336,7 +367,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeUInteger(UInteger att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.U_INTEGER, att.toString());
+        internalEncodeLong(Constants.U_INTEGER, att.getValue());
     }
 
     /**
@@ -360,7 +391,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeLong(Long att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.LONG, att.toString());
+        internalEncodeLong(Constants.LONG, att);
     }
 
     /**
@@ -384,7 +415,12 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeULong(ULong att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.U_LONG, att.toString());
+        BigInteger value = att.getValue();
+        if (value.signum() >= 0 && value.bitLength() <= Long.SIZE) {
+            internalEncodeUnsignedLong(Constants.U_LONG, value.longValue());
+        } else {
+            internalEncodeAttributes(Constants.U_LONG, att.toString());
+        }
     }
 
     /**
@@ -433,10 +469,10 @@ public class XmlEncoder implements MALListEncoder {
     public void encodeBlob(Blob att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
         //EncodingHelper.checkForNull(att.getValue());
-        if (att.getValue() == null || att.getValue().length == 0) {
-            internalEncodeAttributes(Constants.BLOB, "");
+        if (attachments != null && attachments.isAttachable(att)) {
+            internalEncodeInclude(Constants.BLOB, BlobAttachments.CID_SCHEME + attachments.add(att));
         } else {
-            internalEncodeAttributes(Constants.BLOB, EncodingHelper.convertByteArrayToHexString(att.getValue()));
+            internalEncodeBlob(Constants.BLOB, att.getValue());
         }
     }
 
@@ -461,7 +497,8 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeDuration(Duration att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.DURATION, EncodingHelper.encodeDuration(att.getValue()));
+        DurationCodec.checkDuration(att.getValue());
+        internalEncodeDuration(Constants.DURATION, att.getValue());
     }
 
     /**
@@ -485,7 +522,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeFineTime(FineTime att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.FINE_TIME, EncodingHelper.encodeFineTimeToXML(att.getValue()));
+        internalEncodeFineTime(Constants.FINE_TIME, att.getValue());
     }
 
     /**
@@ -534,7 +571,7 @@ public class XmlEncoder implements MALListEncoder {
     @Override
     public void encodeTime(Time att) throws IllegalArgumentException, MALException {
         EncodingHelper.checkForNull(att);
-        internalEncodeAttributes(Constants.TIME, EncodingHelper.encodeTimeToXML(att.getValue()));
+        internalEncodeTime(Constants.TIME, att.getValue());
     }
 
     /**
@@ -631,24 +668,23 @@ public class XmlEncoder implements MALListEncoder {
      * @param createParentXmlElement method parameter how to create parent xml element for current MAL element
      * @throws MALException null or invalid type exceptions
      */
-    private void internalEncodeElement(Element element, Function<String, org.w3c.dom.Element> createParentXmlElement)
+    private void internalEncodeElement(Element element, ConsumerWithMALException<String> createParentXmlElement)
             throws MALException {
         EncodingHelper.checkForNull(element);
         if (element instanceof ElementList) {
             if (element instanceof EnumerationList) {
                 encodeElementList((EnumerationList) element,
-                        (name) -> addParentUnderChild(createParentXmlElement.apply(name), false, true),
-                        (name, each) -> parentStack.peek().currentElement
-                                .appendChild(xmlDocGenerator.createSimpleElementWithValue(name, each.toString())),
+                        (name) -> addParentUnderChild(name, createParentXmlElement, false, true),
+                        (name, each) -> nodeWriter.writeSimpleElement(name, each.toString()),
                         false);
             } else if (element instanceof CompositeList) {
                 encodeElementList((List) element,
-                        (name) -> addParentUnderChild(createParentXmlElement.apply(name), false, true),
+                        (name) -> addParentUnderChild(name, createParentXmlElement, false, true),
                         (name, each) -> ((Element) each).encode(this),
                         true);
             } else if (element instanceof AttributeList) {
                 encodeElementList((List) element,
-                        (name) -> addParentUnderChild(createParentXmlElement.apply(name), false, true),
+                        (name) -> addParentUnderChild(name, createParentXmlElement, false, true),
                         (name, each) -> {
                             if (each instanceof Element) {
                                 ((Element) each).encode(this);
@@ -681,19 +717,18 @@ public class XmlEncoder implements MALListEncoder {
         } else {
             if (element instanceof Enumeration) {
                 String name = element.getClass().getSimpleName();
-                addParentUnderChild(createParentXmlElement.apply(name), false, false);
-                parentStack.peek().currentElement.appendChild(xmlDocGenerator.createSimpleElementWithValue(name,
-                        element.toString()));
+                addParentUnderChild(name, createParentXmlElement, false, false);
+                nodeWriter.writeSimpleElement(name, element.toString());
             } else if (element instanceof Composite) {
-                addParentUnderChild(createParentXmlElement.apply(element.getClass().getSimpleName()), true, false);
+                addParentUnderChild(element.getClass().getSimpleName(), createParentXmlElement, true, false);
                 element.encode(this);
             } else if (element instanceof Attribute) {
-                addParentUnderChild(createParentXmlElement.apply(element.getClass().getSimpleName()), false, false);
+                addParentUnderChild(element.getClass().getSimpleName(), createParentXmlElement, false, false);
                 element.encode(this);
             } else {
                 throw new MALException("Unknown element type");
             }
-            parentStack.pop();
+            removeParent();
 
         }
     }
@@ -741,16 +776,156 @@ public class XmlEncoder implements MALListEncoder {
      *
      * @param name Name of the core element
      * @param value Value of the core element
+     * @throws MALException error while writing
      */
-    private void internalEncodeAttributes(final String name, final String value) {
-        if (parentStack.peek().isComposite) {
-            addParentUnderChild(document.createElement(name), false, false);
-            parentStack.peek().currentElement.appendChild(xmlDocGenerator.createSimpleElementWithValue(name, value));
-            parentStack.pop();
+    private void internalEncodeAttributes(final String name, final String value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeSimpleElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
 
-        } else {
-            parentStack.peek().currentElement.appendChild(xmlDocGenerator.createSimpleElementWithValue(name, value));
+    /**
+     * Same as internalEncodeAttributes() for integers.
+     * Value is written without creating a String if the node writer supports it.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element
+     * @throws MALException error while writing
+     */
+    private void internalEncodeLong(final String name, final long value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeLongElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
 
+    /**
+     * Same as internalEncodeLong() for unsigned 64 bit integers.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element as unsigned value
+     * @throws MALException error while writing
+     */
+    private void internalEncodeUnsignedLong(final String name, final long value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeUnsignedLongElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeLong() for Double.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element
+     * @throws MALException error while writing
+     */
+    private void internalEncodeDouble(final String name, final double value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeDoubleElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeLong() for Float.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element
+     * @throws MALException error while writing
+     */
+    private void internalEncodeFloat(final String name, final float value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeFloatElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeLong() for Time.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element in millisecond
+     * @throws MALException error while writing
+     */
+    private void internalEncodeTime(final String name, final long value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeTimeElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeLong() for FineTime.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element in nanosecond
+     * @throws MALException error while writing
+     */
+    private void internalEncodeFineTime(final String name, final long value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeFineTimeElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeLong() for Duration.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element in second. Must be checked by DurationCodec.checkDuration()
+     * @throws MALException error while writing
+     */
+    private void internalEncodeDuration(final String name, final double value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeDurationElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeLong() for Blob.
+     *
+     * @param name Name of the core element
+     * @param value Value of the core element. null or empty array results in an empty element.
+     * @throws MALException error while writing
+     */
+    private void internalEncodeBlob(final String name, final byte[] value) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeHexElement(name, value);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Same as internalEncodeBlob() for a Blob which is sent as a multipart/related part.
+     *
+     * @param name Name of the core element
+     * @param href "cid:" URL of the part
+     * @throws MALException error while writing
+     */
+    private void internalEncodeInclude(final String name, final String href) throws MALException {
+        boolean hasExtraParent = addAttributeParent(name);
+        nodeWriter.writeIncludeElement(name, href);
+        removeAttributeParent(hasExtraParent);
+    }
+
+    /**
+     * Extra layer for an attribute which is part of a composite.
+     *
+     * @param name Name of the core element
+     * @return flag if the extra layer is added
+     * @throws MALException error while writing
+     */
+    private boolean addAttributeParent(final String name) throws MALException {
+        if (parentStack.peek().isComposite) {
+            addParentUnderChild(name, this::createParentXmlElement, false, false);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove the extra layer added by addAttributeParent().
+     *
+     * @param hasExtraParent flag if the extra layer is added
+     * @throws MALException error while writing
+     */
+    private void removeAttributeParent(final boolean hasExtraParent) throws MALException {
+        if (hasExtraParent) {
+            removeParent();
         }
     }
 
@@ -769,7 +944,7 @@ public class XmlEncoder implements MALListEncoder {
                                                  RunnableWithMALException attributeEncoder)
             throws MALException {
         if (att == null) {
-            parentStack.peek().currentElement.appendChild(xmlDocGenerator.createEmptyElementWithNullAttr(name));
+            nodeWriter.writeNullElement(name);
         } else {
             attributeEncoder.run();
         }
@@ -813,7 +988,7 @@ public class XmlEncoder implements MALListEncoder {
      * 4.1. if each element is null, add a null child element
      * 4.2. if each element is not null, place a parent xml element
      *      and let the method parameter take care of how to encode it.
-     * 5.   call close() which will revert the conditions and flags to say list is encoded.
+     * 5.   remove list parent which will revert the conditions and flags to say list is encoded.
      * TODO commented adding null element if the list is empty. Need to verify
      * @param list MAL element list
      * @param createListParentXmlElement method parameter of how xml parent element is created.
@@ -821,7 +996,7 @@ public class XmlEncoder implements MALListEncoder {
      * @throws MALException null or other possible exceptions
      */
     private void encodeElementList(List list,
-                                   Consumer<String> createListParentXmlElement,
+                                   ConsumerWithMALException<String> createListParentXmlElement,
                                    BiConsumerWithMALException<String, Object> createEachXmlElement,
                                    boolean isComposite) throws MALException {
         String elementName = list.getClass().getSimpleName();
@@ -833,60 +1008,67 @@ public class XmlEncoder implements MALListEncoder {
 //        }
         for (Object each : list) {
             if (each == null) {
-                parentStack.peek().currentElement
-                        .appendChild(xmlDocGenerator.createEmptyElementWithNullAttr(elementName));
+                nodeWriter.writeNullElement(elementName);
             } else {
-                addParentUnderChild(createParentXmlElement(elementName), isComposite, false);
+                addParentUnderChild(elementName, this::createParentXmlElement, isComposite, false);
                 createEachXmlElement.accept(elementName, each);
-                parentStack.pop();
+                removeParent();
             }
         }
-        close();
+        removeParent();
     }
 
     /**
-     * Adding Xml element from parameter to the main stack.
+     * Adding Xml element under current parent and push it to the main stack.
      *
-     * @param currentXmlElement current Xml element
+     * @param name name of the new XML element
+     * @param createParentXmlElement method parameter of how xml element is created
      * @param isComposite flag if this element will hold encoded MAL composite element
+     * @param isList flag if this element will hold encoded MAL list
+     * @throws MALException error while writing
      */
-    private void addParentUnderChild(org.w3c.dom.Element currentXmlElement, boolean isComposite, boolean isList) {
-        parentStack.peek().currentElement.appendChild(currentXmlElement);
-        parentStack.push(new XmlElementContainer(currentXmlElement, isComposite, isList));
+    private void addParentUnderChild(String name, ConsumerWithMALException<String> createParentXmlElement,
+                                     boolean isComposite, boolean isList) throws MALException {
+        createParentXmlElement.accept(name);
+        parentStack.push(new XmlElementContainer(isComposite, isList));
     }
 
     /**
-     * Simple method to create an element from the main Xml document
+     * Remove current parent from the main stack and close its Xml element.
+     *
+     * @throws MALException error while writing
+     */
+    private void removeParent() throws MALException {
+        parentStack.pop();
+        nodeWriter.endElement();
+    }
+
+    /**
+     * Simple method to create an element under current parent
      * 1 liner method used by lambda methods
      *
      * @param name name of the new XML element
-     * @return Xml element
+     * @throws MALException error while writing
      */
-    private org.w3c.dom.Element createParentXmlElement(final String name) {
-        return document.createElement(name);
+    private void createParentXmlElement(final String name) throws MALException {
+        nodeWriter.startElement(name);
     }
 
     /**
-     * Creating an XML element and add a malxml:type attribute  from the main Xml document
+     * Creating an XML element with a malxml:type attribute under current parent
      *
      * @param name name of the new XML element
      * @param typeAttribute value of malxml:type
-     * @return Xml element
+     * @throws MALException error while writing
      */
-    private org.w3c.dom.Element createParentXmlElement(final String name, final long typeAttribute) {
-        org.w3c.dom.Element parent = document.createElement(name);
-        parent.setAttributeNode(xmlDocGenerator.getNewTypeAttribute(typeAttribute));
-        return parent;
+    private void createParentXmlElement(final String name, final long typeAttribute) throws MALException {
+        nodeWriter.startElement(name, typeAttribute);
     }
 
     /**
-     * Container class with XML element and a flag.
+     * Container class with flags of current Xml element.
      */
     private final class XmlElementContainer {
-        /**
-         * Xml element
-         */
-        org.w3c.dom.Element currentElement;
         /**
          * flag if the MAL element of the Xml element is a composite
          */
@@ -898,23 +1080,19 @@ public class XmlEncoder implements MALListEncoder {
 
         /**
          * Simple Constructor
-         * @param currentElement created XML element
          * @param isComposite flag if the MAL element of the Xml element is a composite
          */
-        XmlElementContainer(org.w3c.dom.Element currentElement, boolean isComposite) {
-            this.currentElement = currentElement;
+        XmlElementContainer(boolean isComposite) {
             this.isComposite = isComposite;
             isList = false;
         }
 
         /**
          * Constructor with List flag
-         * @param currentElement created XML element
          * @param isComposite flag if the MAL element of the Xml element is a composite
          * @param isList flag if MAL element is a list
          */
-        XmlElementContainer(org.w3c.dom.Element currentElement, boolean isComposite, boolean isList) {
-            this.currentElement = currentElement;
+        XmlElementContainer(boolean isComposite, boolean isList) {
             this.isComposite = isComposite;
             this.isList = isList;
         }
@@ -13,6 +13,7 @@ package nasa.mo.mal.encoder.xml;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -26,7 +27,13 @@ import java.util.NoSuchElementException;
  */
 public class XmlNodeListIterator implements Iterator<Node> {
     private final NodeList nodeList;
+    private final Node baseNode;
     private int index = 0;
+    /**
+     * indexes of child nodes which are already decoded.
+     * Child nodes are not removed from XML document.
+     */
+    private final BitSet decodedIndexes = new BitSet();
 
     /**
      * Copied constructor of org.apache.commons.collections4.iterators.NodeListIterator
@@ -36,6 +43,7 @@ public class XmlNodeListIterator implements Iterator<Node> {
         if(baseNode == null) {
             throw new NullPointerException("Node must not be null.");
         } else {
+            this.baseNode = baseNode;
             this.nodeList = baseNode.getChildNodes();
         }
     }
@@ -48,6 +56,7 @@ public class XmlNodeListIterator implements Iterator<Node> {
         if(nodeList == null) {
             throw new NullPointerException("NodeList must not be null.");
         } else {
+            this.baseNode = null;
             this.nodeList = nodeList;
         }
     }
@@ -108,34 +117,34 @@ public class XmlNodeListIterator implements Iterator<Node> {
     }
 
     /**
-     * Removing current Child node from the parent node.
-     * index needs to be updated.
+     * Marking current Child node as decoded.
+     * Child node is NOT removed from the XML document so that the node list does not need to be re-indexed.
      *
      * Example: a body has 3 elements
      * <Body> <elem1 /> <elem2 /> <elem3 /></Body>
      *
      * Current Iterator is the Body.
-     * valid indexes are 0, 1, 2
-     *
      * if it is 0, iterator hasn't started looping. do nothing.
-     * if it is 4 and above (not possible), invalid index & do nothing.
-     *
-     * if it is 1 or 2 or 3, valid index.
-     *
-     * example: index is 1
-     * It means the caller has elem1. and wants to remove elem1 from XML document.
-     *
-     * 1. So retrieve the same node by reducing the index to 0.
-     * 2. get the parent of elem1 which is Body
-     * 3. remove the child named elem1.
-     *
-     * But the index remained at 0 since elem1 is removed, elem2's index is 0.
-     * Hence, no need to readjust the index.
+     * if index is 1, the caller has elem1. and wants to mark elem1 as decoded.
      */
-    public void removeCurrentChildNode() {
+    public void markCurrentChildNodeDecoded() {
         if (index > 0 && index <= this.nodeList.getLength()) {
-            Node removingNode = nodeList.item(--index);
-            removingNode.getParentNode().removeChild(removingNode);
+            decodedIndexes.set(index - 1);
         }
     }
+
+    /**
+     * @param childIndex index of a child node
+     * @return flag if the child node is decoded
+     */
+    public boolean isChildNodeDecoded(int childIndex) {
+        return decodedIndexes.get(childIndex);
+    }
+
+    /**
+     * @return Node whose child nodes are iterated. null if it is created with a node list.
+     */
+    public Node getBaseNode() {
+        return baseNode;
+    }
 }
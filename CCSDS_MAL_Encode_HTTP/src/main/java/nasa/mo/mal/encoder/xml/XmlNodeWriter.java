@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import nasa.mo.mal.encoder.util.EncodingHelper;
+import org.ccsds.moims.mo.mal.MALException;
+
+/**
+ * Sink used by XmlEncoder to produce malxml elements.
+ * Encoder keeps track of MAL semantics (composite, list), writer only deals with XML structure.
+ * Implementations must produce the same bytes for the same sequence of calls.
+ */
+interface XmlNodeWriter {
+    /**
+     * Open a new element under the current element.
+     *
+     * @param name name of the element
+     * @throws MALException any error while writing
+     */
+    void startElement(String name) throws MALException;
+
+    /**
+     * Open a new element with malxml:type attribute under the current element.
+     *
+     * @param name name of the element
+     * @param type value of malxml:type
+     * @throws MALException any error while writing
+     */
+    void startElement(String name, long type) throws MALException;
+
+    /**
+     * Close the most recently opened element.
+     *
+     * @throws MALException any error while writing
+     */
+    void endElement() throws MALException;
+
+    /**
+     * Write a complete element with text value under the current element.
+     *
+     * @param name name of the element
+     * @param value text value. empty value results in an empty element.
+     * @throws MALException any error while writing
+     */
+    void writeSimpleElement(String name, String value) throws MALException;
+
+    /**
+     * Write a complete element with integer value under the current element.
+     *
+     * @param name name of the element
+     * @param value value written as Long.toString()
+     * @throws MALException any error while writing
+     */
+    default void writeLongElement(String name, long value) throws MALException {
+        writeSimpleElement(name, Long.toString(value));
+    }
+
+    /**
+     * Write a complete element with unsigned 64 bit integer value under the current element.
+     *
+     * @param name name of the element
+     * @param value value written as Long.toUnsignedString()
+     * @throws MALException any error while writing
+     */
+    default void writeUnsignedLongElement(String name, long value) throws MALException {
+        writeSimpleElement(name, Long.toUnsignedString(value));
+    }
+
+    /**
+     * Write a complete element with Double value under the current element.
+     *
+     * @param name name of the element
+     * @param value value written as Double.toString()
+     * @throws MALException any error while writing
+     */
+    default void writeDoubleElement(String name, double value) throws MALException {
+        writeSimpleElement(name, Double.toString(value));
+    }
+
+    /**
+     * Write a complete element with Float value under the current element.
+     *
+     * @param name name of the element
+     * @param value value written as Float.toString()
+     * @throws MALException any error while writing
+     */
+    default void writeFloatElement(String name, float value) throws MALException {
+        writeSimpleElement(name, Float.toString(value));
+    }
+
+    /**
+     * Write a complete element with Time value under the current element.
+     *
+     * @param name name of the element
+     * @param value millisecond written as EncodingHelper.encodeTimeToXML()
+     * @throws MALException any error while writing
+     */
+    default void writeTimeElement(String name, long value) throws MALException {
+        writeSimpleElement(name, EncodingHelper.encodeTimeToXML(value));
+    }
+
+    /**
+     * Write a complete element with FineTime value under the current element.
+     *
+     * @param name name of the element
+     * @param value nanosecond written as EncodingHelper.encodeFineTimeToXML()
+     * @throws MALException any error while writing
+     */
+    default void writeFineTimeElement(String name, long value) throws MALException {
+        writeSimpleElement(name, EncodingHelper.encodeFineTimeToXML(value));
+    }
+
+    /**
+     * Write a complete element with Duration value under the current element.
+     *
+     * @param name name of the element
+     * @param value seconds written as EncodingHelper.encodeDuration()
+     * @throws MALException invalid duration or any error while writing
+     */
+    default void writeDurationElement(String name, double value) throws MALException {
+        writeSimpleElement(name, EncodingHelper.encodeDuration(value));
+    }
+
+    /**
+     * Write a complete element with bytes in hexadecimal under the current element.
+     *
+     * @param name name of the element
+     * @param value bytes written as EncodingHelper.convertByteArrayToHexString(). empty element for null or empty array.
+     * @throws MALException any error while writing
+     */
+    default void writeHexElement(String name, byte[] value) throws MALException {
+        writeSimpleElement(name, EncodingHelper.convertByteArrayToHexString(value));
+    }
+
+    /**
+     * Write a complete element with xop:Include child under the current element.
+     * Used for Blobs which are sent as separate parts of a multipart/related body.
+     *
+     * @param name name of the element
+     * @param href "cid:" URL of the part
+     * @throws MALException any error while writing
+     */
+    void writeIncludeElement(String name, String href) throws MALException;
+
+    /**
+     * Write a complete empty element with xsi:nil attribute under the current element.
+     *
+     * @param name name of the element
+     * @throws MALException any error while writing
+     */
+    void writeNullElement(String name) throws MALException;
+
+    /**
+     * Finish the document and write everything left to the output stream.
+     * Output stream is closed afterwards.
+     *
+     * @throws MALException any error while writing
+     */
+    void close() throws MALException;
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import java.math.BigInteger;
+
+/**
+ * Number formatting and parsing without intermediate Strings.
+ * Output and accepted input are the same as toString() and valueOf() of the boxed types.
+ *
+ * Formatting writes ASCII bytes directly to a byte buffer.
+ * 1. integers are written digit by digit.
+ * 2. integral Float and Double values below 10^7 are written as integers with ".0".
+ * 3. other Float and Double values are appended to a reused StringBuilder by the JDK algorithm
+ *    which is exact on round trip (and shortest since Java 19) and copied from there.
+ *
+ * Parsing reads a char array which is already trimmed or not.
+ * 1. plain decimal integers up to 18 digits are parsed digit by digit.
+ * 2. decimal Float and Double values whose digits and power of ten are exact in the type
+ *    are a single correctly rounded multiplication or division. i.e. 123.456, -0.5, 1.5E3
+ * 3. anything else (e.g. NaN, hex, large exponents, malformed text) goes to the JDK parser
+ *    so that results and error messages stay the same.
+ */
+final class XmlNumberCodec {
+    /**
+     * biggest output of formatLong, formatUnsignedLong. i.e. -9223372036854775808
+     */
+    static final int MAX_LONG_SIZE = 20;
+    /**
+     * biggest output of formatDouble, formatFloat. i.e. -2.2250738585072014E-308
+     */
+    static final int MAX_DOUBLE_SIZE = 24;
+    /**
+     * Float and Double toString() use plain notation below this.
+     */
+    private static final long PLAIN_NOTATION_LIMIT = 10000000L;
+    /**
+     * up to this number of digits cannot overflow a long.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final long MAX_EXACT_DOUBLE_MANTISSA = 1L << 53;
+    private static final long MAX_EXACT_FLOAT_MANTISSA = 1L << 24;
+    private static final double[] DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private XmlNumberCodec() {
+    }
+
+    /**
+     * Parser from a range of a char array.
+     *
+     * @param <T> parsed type
+     */
+    @FunctionalInterface
+    interface NumberParser<T> {
+        /**
+         * @param chars text
+         * @param start index of the first char
+         * @param end index after the last char
+         * @return parsed value
+         * @throws NumberFormatException malformed or out of range
+         */
+        T parse(char[] chars, int start, int end);
+    }
+
+    /**
+     * Write decimal digits of a long.
+     * Caller must ensure MAX_LONG_SIZE bytes of capacity.
+     *
+     * @param value value
+     * @param buffer output
+     * @param position index to write to
+     * @return index after the last written byte
+     */
+    static int formatLong(long value, byte[] buffer, int position) {
+        if (value >= 0) {
+            return formatUnsignedLong(value, buffer, position);
+        }
+        buffer[position++] = '-';
+        if (value == Long.MIN_VALUE) {
+            // its negation doesn't fit in a long, but it is the right unsigned value.
+            return formatUnsignedLong(value, buffer, position);
+        }
+        return formatUnsignedLong(-value, buffer, position);
+    }
+
+    /**
+     * Write decimal digits of a long as unsigned 64 bit value.
+     * Caller must ensure MAX_LONG_SIZE bytes of capacity.
+     *
+     * @param value unsigned value
+     * @param buffer output
+     * @param position index to write to
+     * @return index after the last written byte
+     */
+    static int formatUnsignedLong(long value, byte[] buffer, int position) {
+        int end = position + unsignedDigitCount(value);
+        int index = end;
+        if (value < 0) {
+            // unsigned division once. the rest fits in a signed long.
+            long quotient = (value >>> 1) / 5;
+            buffer[--index] = (byte) ('0' + (value - quotient * 10));
+            value = quotient;
+        }
+        do {
+            buffer[--index] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return end;
+    }
+
+    /**
+     * Write a Double in the format of Double.toString().
+     * Caller must ensure MAX_DOUBLE_SIZE bytes of capacity.
+     *
+     * @param value value
+     * @param buffer output
+     * @param position index to write to
+     * @param scratch reused for non integral values
+     * @return index after the last written byte
+     */
+    static int formatDouble(double value, byte[] buffer, int position, StringBuilder scratch) {
+        long integral = (long) value;
+        if (integral == value && integral > -PLAIN_NOTATION_LIMIT && integral < PLAIN_NOTATION_LIMIT
+                && (integral != 0 || Double.doubleToRawLongBits(value) == 0)) {
+            return formatIntegral(integral, buffer, position);
+        }
+        scratch.setLength(0);
+        scratch.append(value);
+        return copyAscii(scratch, buffer, position);
+    }
+
+    /**
+     * Write a Float in the format of Float.toString().
+     * Caller must ensure MAX_DOUBLE_SIZE bytes of capacity.
+     *
+     * @param value value
+     * @param buffer output
+     * @param position index to write to
+     * @param scratch reused for non integral values
+     * @return index after the last written byte
+     */
+    static int formatFloat(float value, byte[] buffer, int position, StringBuilder scratch) {
+        long integral = (long) value;
+        if (integral == value && integral > -PLAIN_NOTATION_LIMIT && integral < PLAIN_NOTATION_LIMIT
+                && (integral != 0 || Float.floatToRawIntBits(value) == 0)) {
+            return formatIntegral(integral, buffer, position);
+        }
+        scratch.setLength(0);
+        scratch.append(value);
+        return copyAscii(scratch, buffer, position);
+    }
+
+    static byte parseByte(char[] chars, int start, int end) {
+        long value = parseLong(chars, start, end);
+        if (value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            return Byte.parseByte(trimmedString(chars, start, end));
+        }
+        return (byte) value;
+    }
+
+    static short parseShort(char[] chars, int start, int end) {
+        long value = parseLong(chars, start, end);
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            return Short.parseShort(trimmedString(chars, start, end));
+        }
+        return (short) value;
+    }
+
+    static int parseInt(char[] chars, int start, int end) {
+        long value = parseLong(chars, start, end);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return Integer.parseInt(trimmedString(chars, start, end));
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param chars text
+     * @param start index of the first char
+     * @param end index after the last char
+     * @return parsed value
+     * @throws NumberFormatException same as Long.parseLong()
+     */
+    static long parseLong(char[] chars, int start, int end) {
+        int first = trimStart(chars, start, end);
+        int last = trimEnd(chars, first, end);
+        int index = first;
+        boolean isNegative = false;
+        if (index < last && (chars[index] == '-' || chars[index] == '+')) {
+            isNegative = chars[index] == '-';
+            index++;
+        }
+        if (index == last || last - index > MAX_LONG_DIGITS) {
+            return Long.parseLong(new String(chars, first, last - first));
+        }
+        long value = 0;
+        for (; index < last; index++) {
+            int digit = chars[index] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(new String(chars, first, last - first));
+            }
+            value = value * 10 + digit;
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * @param chars text
+     * @param start index of the first char
+     * @param end index after the last char
+     * @return parsed value
+     * @throws NumberFormatException same as new BigInteger()
+     */
+    static BigInteger parseBigInteger(char[] chars, int start, int end) {
+        int first = trimStart(chars, start, end);
+        int last = trimEnd(chars, first, end);
+        int index = first < last && (chars[first] == '-' || chars[first] == '+') ? first + 1 : first;
+        if (index == last || last - index > MAX_LONG_DIGITS) {
+            return new BigInteger(new String(chars, first, last - first));
+        }
+        for (; index < last; index++) {
+            if (chars[index] < '0' || chars[index] > '9') {
+                return new BigInteger(new String(chars, first, last - first));
+            }
+        }
+        return BigInteger.valueOf(parseLong(chars, first, last));
+    }
+
+    /**
+     * @param chars text
+     * @param start index of the first char
+     * @param end index after the last char
+     * @return parsed value
+     * @throws NumberFormatException same as Double.parseDouble()
+     */
+    static double parseDouble(char[] chars, int start, int end) {
+        int first = trimStart(chars, start, end);
+        int last = trimEnd(chars, first, end);
+        double value = parseExactDecimal(chars, first, last, false);
+        return Double.isNaN(value) ? Double.parseDouble(new String(chars, first, last - first)) : value;
+    }
+
+    /**
+     * @param chars text
+     * @param start index of the first char
+     * @param end index after the last char
+     * @return parsed value
+     * @throws NumberFormatException same as Float.parseFloat()
+     */
+    static float parseFloat(char[] chars, int start, int end) {
+        int first = trimStart(chars, start, end);
+        int last = trimEnd(chars, first, end);
+        double value = parseExactDecimal(chars, first, last, true);
+        return Double.isNaN(value) ? Float.parseFloat(new String(chars, first, last - first)) : (float) value;
+    }
+
+    /**
+     * Parse [+-]digits[.digits][(e|E)[+-]digits] if the mantissa and the power of ten are both exact.
+     * Then the result is a single correctly rounded operation. (Clinger's fast path)
+     * For Float, the operation is done in float to avoid rounding twice.
+     *
+     * @param chars text
+     * @param first index of the first char. not white space.
+     * @param last index after the last char. not white space.
+     * @param isFloat flag to parse as Float
+     * @return parsed value or NaN if it cannot be parsed exactly here.
+     */
+    private static double parseExactDecimal(char[] chars, int first, int last, boolean isFloat) {
+        int index = first;
+        boolean isNegative = false;
+        if (index < last && (chars[index] == '-' || chars[index] == '+')) {
+            isNegative = chars[index] == '-';
+            index++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean isFraction = false;
+        for (; index < last; index++) {
+            char c = chars[index];
+            if (c == '.' && !isFraction) {
+                isFraction = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            hasDigits = true;
+            if (mantissa != 0 || c != '0') {
+                if (++significantDigits > MAX_LONG_DIGITS) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+            }
+            if (isFraction) {
+                exponent--;
+            }
+        }
+        if (!hasDigits) {
+            return Double.NaN;
+        }
+        if (index < last) {
+            if (chars[index] != 'e' && chars[index] != 'E') {
+                return Double.NaN;
+            }
+            index++;
+            boolean isNegativeExponent = false;
+            if (index < last && (chars[index] == '-' || chars[index] == '+')) {
+                isNegativeExponent = chars[index] == '-';
+                index++;
+            }
+            if (index == last || last - index > 3) {
+                return Double.NaN;
+            }
+            int exponentValue = 0;
+            for (; index < last; index++) {
+                if (chars[index] < '0' || chars[index] > '9') {
+                    return Double.NaN;
+                }
+                exponentValue = exponentValue * 10 + (chars[index] - '0');
+            }
+            exponent += isNegativeExponent ? -exponentValue : exponentValue;
+        }
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (isFloat) {
+            if (mantissa > MAX_EXACT_FLOAT_MANTISSA || exponent < -(FLOAT_POWERS_OF_TEN.length - 1)
+                    || exponent > FLOAT_POWERS_OF_TEN.length - 1) {
+                return Double.NaN;
+            }
+            value = exponent < 0 ? (float) mantissa / FLOAT_POWERS_OF_TEN[-exponent]
+                    : (float) mantissa * FLOAT_POWERS_OF_TEN[exponent];
+        } else {
+            if (mantissa > MAX_EXACT_DOUBLE_MANTISSA || exponent < -(DOUBLE_POWERS_OF_TEN.length - 1)
+                    || exponent > DOUBLE_POWERS_OF_TEN.length - 1) {
+                return Double.NaN;
+            }
+            value = exponent < 0 ? mantissa / DOUBLE_POWERS_OF_TEN[-exponent]
+                    : mantissa * DOUBLE_POWERS_OF_TEN[exponent];
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * integral value below 10^7 followed by ".0"
+     */
+    private static int formatIntegral(long value, byte[] buffer, int position) {
+        position = formatLong(value, buffer, position);
+        buffer[position++] = '.';
+        buffer[position++] = '0';
+        return position;
+    }
+
+    private static int copyAscii(CharSequence text, byte[] buffer, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer[position++] = (byte) text.charAt(i);
+        }
+        return position;
+    }
+
+    private static int unsignedDigitCount(long value) {
+        if (value < 0) {
+            // 2^63 and above has 19 or 20 digits.
+            return Long.compareUnsigned(value, -8446744073709551616L) >= 0 ? 20 : 19;
+        }
+        int count = 1;
+        for (long limit = 10; count < 19 && value >= limit; limit *= 10) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Same as String.trim()
+     */
+    private static int trimStart(char[] chars, int start, int end) {
+        while (start < end && chars[start] <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Same as String.trim()
+     */
+    private static int trimEnd(char[] chars, int start, int end) {
+        while (end > start && chars[end - 1] <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static String trimmedString(char[] chars, int start, int end) {
+        int first = trimStart(chars, start, end);
+        return new String(chars, first, trimEnd(chars, first, end) - first);
+    }
+}
@@ -10,6 +10,9 @@
 
 package nasa.mo.mal.encoder.xml;
 
+import nasa.mo.mal.encoder.AttachmentAwareStreamFactory;
+import nasa.mo.mal.encoder.BlobAttachments;
+import nasa.mo.mal.encoder.Constants;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.encoding.MALElementInputStream;
 import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
@@ -17,7 +20,6 @@ import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
 import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
 import org.ccsds.moims.mo.mal.structures.Blob;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -28,11 +30,31 @@ import java.util.Map;
  *         Created on 5/3/17.
  * Entry point to encoder & decoder.
  * Following BinaryStreamFactory from MO_TRANS package.
+ * A copy for a single message can be created with attachments so that large Blobs travel as multipart/related parts.
  */
-public class XmlStreamFactory extends MALElementStreamFactory {
+public class XmlStreamFactory extends MALElementStreamFactory implements AttachmentAwareStreamFactory {
+    /**
+     * flag to use streaming encoder instead of DOM based encoder.
+     */
+    private boolean isStreamingEncoder = false;
+    /**
+     * flag to use pull parser based decoder instead of DOM based decoder.
+     */
+    private boolean isStreamingDecoder = false;
+    /**
+     * idle encoders and decoders kept for reuse. null if they are not reused.
+     */
+    private XmlCodecPool codecPool = new XmlCodecPool(Constants.DEFAULT_POOLED_CODECS);
+    /**
+     * parts of a multipart/related body of a single message. null for the factory created by MAL.
+     */
+    private BlobAttachments attachments = null;
+
     /**
      * The method enables the specific implementation class to initialize the encoding module.
-     * No initialization required.
+     * 1. streaming encoder flag from properties. default is DOM based encoder.
+     * 2. streaming decoder flag from properties. default is DOM based decoder.
+     * 3. number of pooled encoders and decoders from properties. 0 disables the pool.
      *
      * @param protocol   Name of the protocol passed through the instantiation method
      * @param properties Properties passed through the instantiation method, may be null
@@ -41,7 +63,25 @@ public class XmlStreamFactory extends MALElementStreamFactory {
      */
     @Override
     protected void init(String protocol, Map properties) throws IllegalArgumentException, MALException {
-
+        if (properties != null && properties.containsKey(Constants.STREAMING_ENCODER_KEY)) {
+            isStreamingEncoder = "true".equalsIgnoreCase(String.valueOf(properties.get(Constants.STREAMING_ENCODER_KEY)));
+        }
+        if (properties != null && properties.containsKey(Constants.STREAMING_DECODER_KEY)) {
+            isStreamingDecoder = "true".equalsIgnoreCase(String.valueOf(properties.get(Constants.STREAMING_DECODER_KEY)));
+        }
+        if (properties != null && properties.containsKey(Constants.POOLED_CODECS_KEY)) {
+            int pooledCodecs;
+            try {
+                pooledCodecs = Integer.parseInt(String.valueOf(properties.get(Constants.POOLED_CODECS_KEY)).trim());
+            } catch (NumberFormatException exp) {
+                throw new MALException("Invalid number of pooled codecs: "
+                        + properties.get(Constants.POOLED_CODECS_KEY), exp);
+            }
+            if (pooledCodecs < 0) {
+                throw new MALException("Invalid number of pooled codecs: " + pooledCodecs);
+            }
+            codecPool = pooledCodecs == 0 ? null : new XmlCodecPool(pooledCodecs);
+        }
     }
 
     /**
@@ -54,12 +94,12 @@ public class XmlStreamFactory extends MALElementStreamFactory {
      */
     @Override
     public MALElementInputStream createInputStream(InputStream is) throws IllegalArgumentException, MALException {
-        return new XmlElementInputStream(is);
+        return new XmlElementInputStream(XmlBodyIndex.readAll(is), 0, isStreamingDecoder, codecPool, attachments);
     }
 
     /**
      * Creates a MALElementInputStream using a byte array as the data source.
-     * TODO This might not work for XML.
+     * Pull parser based decoder reads the byte array directly.
      * @param bytes  Bytes to be decoded
      * @param offset Index of the first byte to decode
      * @return The new MALElementInputStream.
@@ -69,7 +109,7 @@ public class XmlStreamFactory extends MALElementStreamFactory {
     @Override
     public MALElementInputStream createInputStream(byte[] bytes, int offset)
             throws IllegalArgumentException, MALException {
-        return new XmlElementInputStream(new ByteArrayInputStream(bytes), offset);
+        return new XmlElementInputStream(bytes, offset, isStreamingDecoder, codecPool, attachments);
     }
 
     /**
@@ -82,7 +122,26 @@ public class XmlStreamFactory extends MALElementStreamFactory {
      */
     @Override
     public MALElementOutputStream createOutputStream(OutputStream os) throws IllegalArgumentException, MALException {
-        return new XmlElementOutputStream(os);
+        return new XmlElementOutputStream(os, isStreamingEncoder, codecPool, attachments);
+    }
+
+    /**
+     * Copy of this factory for a single message. Encoders and decoders are still taken from the same pool.
+     * 1. Output streams add Blobs at or above the threshold of attachments, and URL based Blobs, to it.
+     *    They are encoded as xop:Include elements with "cid:" references instead of hexadecimal text.
+     * 2. Input streams resolve xop:Include elements from attachments.
+     *
+     * @param attachments Blobs of the message
+     * @return stream factory for the message
+     */
+    @Override
+    public MALElementStreamFactory withAttachments(BlobAttachments attachments) {
+        XmlStreamFactory factory = new XmlStreamFactory();
+        factory.isStreamingEncoder = isStreamingEncoder;
+        factory.isStreamingDecoder = isStreamingDecoder;
+        factory.codecPool = codecPool;
+        factory.attachments = attachments;
+        return factory;
     }
 
     /**
@@ -0,0 +1,1238 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import nasa.mo.mal.encoder.BlobAttachments;
+import nasa.mo.mal.encoder.Constants;
+import nasa.mo.mal.encoder.util.EncodingHelper;
+import nasa.mo.mal.encoder.util.FunctionWithMALException;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALListDecoder;
+import org.ccsds.moims.mo.mal.structures.*;
+import org.ccsds.moims.mo.mal.structures.Element;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pull parser (StAX) based decoder.
+ * Same semantics as XmlDecoder without building a DOM document.
+ * The encoded body is read in a single forward pass while decoding.
+ * Ignorable white spaces, comments, and processing instructions are skipped as they are read.
+ *
+ * Reader is always at one of these positions of the current (last entered) element.
+ * 1. before next child. nothing is read yet.
+ * 2. at the start tag of next child. (pending child) Its attributes can be checked without entering it.
+ * 3. at the end tag of current element. (level ended) There is no more child.
+ */
+public class XmlStreamingDecoder implements XmlBodyDecoder {
+    private static final Logger LOGGER = Logger.getLogger(XmlStreamingDecoder.class.toString());
+    /**
+     * Factory is configured once. Creating readers from a configured factory does not change it.
+     */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    /**
+     * Encoded body. kept to create remaining encoded data.
+     */
+    private final byte[] source;
+    private XMLStreamReader reader;
+    /**
+     * Position of each entered element. Root element is always at index 0.
+     */
+    private final List<ElementCursor> cursorStack = new ArrayList<>();
+    /**
+     * flag if reader is at the start tag of the next child of current element.
+     */
+    private boolean hasPendingChild = false;
+    /**
+     * flag if reader has read the end tag of current element.
+     */
+    private boolean isLevelEnded = false;
+    /**
+     * flag set by decodeAttribute() since it needs to enter the attribute to find out its type.
+     */
+    private boolean isAttributeEntered = false;
+    /**
+     * Byte offsets of body elements. created when remaining encoded data is requested.
+     */
+    private XmlBodyIndex bodyIndex = null;
+    private boolean isBodyIndexed = false;
+    /**
+     * text of a number element is copied here from the reader to be parsed without creating Strings.
+     */
+    private char[] numberChars = new char[NUMBER_CHARS_SIZE];
+    private static final int NUMBER_CHARS_SIZE = 32;
+    /**
+     * parts of a multipart/related body referred by Blobs. null if the body is not multipart.
+     */
+    private BlobAttachments attachments = null;
+
+    /**
+     * Constructor with input stream.
+     * The stream is read into a byte array as it is required to create remaining encoded data.
+     *
+     * @param inputStream Stream holding encoded body
+     */
+    public XmlStreamingDecoder(InputStream inputStream) {
+        this(XmlBodyIndex.readAll(inputStream));
+    }
+
+    /**
+     * Constructor with encoded body.
+     * 1. create a new reader
+     * 2. move to root element and validate it is named "malxml:Body"
+     * 3. put root element to stack.
+     *
+     * @param source encoded body
+     */
+    public XmlStreamingDecoder(byte[] source) {
+        this.source = source;
+        try {
+            reader = createReader(source);
+            moveToRoot(reader);
+        } catch (XMLStreamException exp) {
+            LOGGER.log(Level.SEVERE, "Some exception while reading XML from input stream {0}", exp);
+            throw new IllegalArgumentException("Error while reading XML from input stream", exp);
+        }
+        if (!Constants.ROOT_ELEMENT.equals(reader.getLocalName())) {
+            LOGGER.log(Level.SEVERE, "Invalid root element name for XML document at XmlStreamingDecoder.");
+        }
+        cursorStack.add(new ElementCursor());
+    }
+
+    /**
+     * Create and configure the shared factory.
+     * 1. Not namespace aware. Same as DocumentBuilderFactory default.
+     * 2. Coalescing. text, CDATA, and entity references are returned as a single text.
+     * 3. No DTD.
+     *
+     * @return XMLInputFactory
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    /**
+     * @param source encoded body
+     * @return new reader at the beginning of the document
+     * @throws XMLStreamException any error from the factory
+     */
+    static XMLStreamReader createReader(byte[] source) throws XMLStreamException {
+        return INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(source));
+    }
+
+    /**
+     * Move the reader to the start tag of the root element.
+     *
+     * @param reader XML reader at the beginning of the document
+     * @throws XMLStreamException any error while reading or there is no root element
+     */
+    private static void moveToRoot(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                return;
+            }
+        }
+        throw new XMLStreamException("No root element in XML document");
+    }
+
+    /**
+     * Name of the element or attribute including its prefix
+     *
+     * @param prefix prefix or null
+     * @param localName local name
+     * @return prefix:localName
+     */
+    private static String getQualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * @param reader XML reader at a start tag
+     * @param name qualified name of the attribute
+     * @return value of the attribute or null
+     */
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Move reader to the start tag of next child of current element if it is not there yet.
+     * Text, comments, and processing instructions between elements are skipped.
+     *
+     * @throws MALException any error while reading
+     */
+    private void peekChild() throws MALException {
+        if (hasPendingChild || isLevelEnded) {
+            return;
+        }
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    hasPendingChild = true;
+                    return;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    isLevelEnded = true;
+                    return;
+                }
+            }
+            isLevelEnded = true;
+        } catch (XMLStreamException exp) {
+            throw new MALException("Error while reading XML document", exp);
+        }
+    }
+
+    /**
+     * @return current element
+     */
+    private ElementCursor currentCursor() {
+        return cursorStack.get(cursorStack.size() - 1);
+    }
+
+    /**
+     * Check if the pending child has a null attribute and if it is true.
+     * @return flag if it is null
+     */
+    private boolean isNullAttributeTrue() {
+        String value = getAttribute(reader, Constants.NULLABLE_ATTRIBUTE_NAME);
+        return value != null && value.trim().equals(Boolean.TRUE.toString());
+    }
+
+    /**
+     * Make next child the current element.
+     *
+     * @throws MALException if there is no child
+     */
+    private void enterChild() throws MALException {
+        peekChild();
+        if (!hasPendingChild) {
+            EncodingHelper.checkForNull(null);
+        }
+        hasPendingChild = false;
+        cursorStack.add(new ElementCursor());
+    }
+
+    /**
+     * Skip the whole element at the start tag of the reader.
+     *
+     * @throws MALException any error while reading
+     */
+    private void skipElement() throws MALException {
+        try {
+            int depth = 1;
+            while (depth > 0) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException exp) {
+            throw new MALException("Error while reading XML document", exp);
+        }
+    }
+
+    /**
+     * Skip the rest of current element and mark it as decoded.
+     * Same as XmlDecoder.popFromNodeStack()
+     * Root element is never removed.
+     *
+     * @throws MALException any error while reading
+     */
+    private void popFromNodeStack() throws MALException {
+        if (cursorStack.size() <= 1) {
+            return;
+        }
+        while (!isLevelEnded) {
+            if (hasPendingChild) {
+                hasPendingChild = false;
+                skipElement();
+            }
+            peekChild();
+        }
+        isLevelEnded = false;
+        cursorStack.remove(cursorStack.size() - 1);
+        currentCursor().removeChild();
+    }
+
+    /**
+     * Skip next child and mark it as decoded.
+     *
+     * @throws MALException any error while reading
+     */
+    private void removeNextChild() throws MALException {
+        peekChild();
+        if (hasPendingChild) {
+            hasPendingChild = false;
+            skipElement();
+            currentCursor().removeChild();
+        }
+    }
+
+    /**
+     * Skip the next element without decoding it.
+     * Skipped element is still part of the remaining XML data.
+     *
+     * @throws MALException any error while reading
+     */
+    @Override
+    public void skipNextElement() throws MALException {
+        peekChild();
+        if (hasPendingChild) {
+            hasPendingChild = false;
+            skipElement();
+            currentCursor().childIndex++;
+        }
+    }
+
+    /**
+     * Getting actual value element of the element which is decoded
+     * example:
+     * <Body>
+     *     <Attribute>
+     *         <Identifier>TestString</Identifier>
+     *     </Attribute>
+     * </Body>
+     *
+     * Enter Attribute and move to the start tag of Identifier.
+     * If decodeAttribute() has already done it, nothing to do.
+     *
+     * @return flag if there is a value element
+     * @throws MALException null exception
+     */
+    private boolean prepForDecodingElements() throws MALException {
+        if (isAttributeEntered) {
+            isAttributeEntered = false;
+        } else {
+            enterChild();
+            peekChild();
+        }
+        return hasPendingChild;
+    }
+
+    /**
+     * Read the text of the value element and skip the rest of its parent.
+     *
+     * @return trimmed text
+     * @throws MALException any error while reading
+     */
+    private String readValue() throws MALException {
+        try {
+            String value = reader.getElementText().trim();
+            hasPendingChild = false;
+            currentCursor().childIndex++;
+            popFromNodeStack();
+            return value;
+        } catch (XMLStreamException exp) {
+            throw new MALException("Error while reading XML document", exp);
+        }
+    }
+
+    /**
+     * Main method to decode all numbers
+     * Boolean. Other numbers are parsed by parseNotNullableNumber()
+     * 1. Get actual element.
+     * 2. validate it is not null.
+     * 3. try to convert with the provided method.
+     *
+     * @param objectConverter Interface which is implemented by individual decoding methods
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T decodeNotNullableNumber(FunctionWithMALException<String, T> objectConverter) throws MALException {
+        return decodeNumber(objectConverter, decodeObject(value -> value));
+    }
+
+    /**
+     * Similar to decodeNotNullableNumber()
+     * Difference is
+     * if it is null, instead of throwing exception, return null.
+     *
+     * @param objectConverter Interface which is implemented by individual decoding methods
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T decodeNullableNumber(FunctionWithMALException<String, T> objectConverter) throws MALException {
+        String value = decodeNullableObject(each -> each);
+        return value == null ? null : decodeNumber(objectConverter, value);
+    }
+
+    /**
+     * Converting the Xml number value to actual number.
+     *
+     * @param objectConverter Interface which is implemented by individual decoding methods
+     * @param value text of Xml element
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException malformed exception
+     */
+    private <T> T decodeNumber(FunctionWithMALException<String, T> objectConverter, String value)
+            throws MALException {
+        try {
+            return objectConverter.apply(value);
+        } catch (NumberFormatException exp) {
+            throw new MALException(exp.getLocalizedMessage(), exp);
+        }
+    }
+
+    /**
+     * Same as decodeNotNullableNumber() for the types XmlNumberCodec can parse.
+     *
+     * @param parser Interface which is implemented by XmlNumberCodec
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T parseNotNullableNumber(XmlNumberCodec.NumberParser<T> parser) throws MALException {
+        if (!prepForDecodingElements() || isNullAttributeTrue()) {
+            EncodingHelper.checkForNull(null);
+        }
+        return parseNumber(parser, readNumberChars());
+    }
+
+    /**
+     * Same as decodeNullableNumber() for the types XmlNumberCodec can parse.
+     *
+     * @param parser Interface which is implemented by XmlNumberCodec
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T parseNullableNumber(XmlNumberCodec.NumberParser<T> parser) throws MALException {
+        if (!prepForDecodingElements() || isNullAttributeTrue()) {
+            popFromNodeStack();
+            return null;
+        }
+        return parseNumber(parser, readNumberChars());
+    }
+
+    /**
+     * @param parser Interface which is implemented by XmlNumberCodec
+     * @param length number of chars in numberChars
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException malformed exception
+     */
+    private <T> T parseNumber(XmlNumberCodec.NumberParser<T> parser, int length) throws MALException {
+        try {
+            return parser.parse(numberChars, 0, length);
+        } catch (NumberFormatException exp) {
+            throw new MALException(exp.getLocalizedMessage(), exp);
+        }
+    }
+
+    /**
+     * Same as readValue() except the text is copied to numberChars from the char buffer of the reader.
+     * Text is not trimmed. XmlNumberCodec ignores surrounding white spaces.
+     * Same as XMLStreamReader.getElementText(), comments and processing instructions are skipped
+     * and a child element is an error.
+     *
+     * @return number of chars in numberChars
+     * @throws MALException any error while reading
+     */
+    private int readNumberChars() throws MALException {
+        try {
+            int length = 0;
+            int event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    int textLength = reader.getTextLength();
+                    ensureNumberChars(length + textLength);
+                    reader.getTextCharacters(0, numberChars, length, textLength);
+                    length += textLength;
+                } else if (event == XMLStreamConstants.ENTITY_REFERENCE) {
+                    String text = reader.getText();
+                    ensureNumberChars(length + text.length());
+                    text.getChars(0, text.length(), numberChars, length);
+                    length += text.length();
+                } else if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+                    throw new XMLStreamException("Number element has unexpected content", reader.getLocation());
+                }
+                event = reader.next();
+            }
+            hasPendingChild = false;
+            currentCursor().childIndex++;
+            popFromNodeStack();
+            return length;
+        } catch (XMLStreamException exp) {
+            throw new MALException("Error while reading XML document", exp);
+        }
+    }
+
+    /**
+     * @param size required number of chars in numberChars
+     */
+    private void ensureNumberChars(int size) {
+        if (size > numberChars.length) {
+            numberChars = Arrays.copyOf(numberChars, Math.max(size, numberChars.length * 2));
+        }
+    }
+
+    /**
+     * Decoding non null Attributes and Enumerations.
+     *
+     * @param objectConverter Interface which is implemented by individual decoding methods
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T decodeObject(FunctionWithMALException<String, T> objectConverter) throws MALException {
+        if (!prepForDecodingElements() || isNullAttributeTrue()) {
+            EncodingHelper.checkForNull(null);
+        }
+        return objectConverter.apply(readValue());
+    }
+
+    /**
+     * Similar to decodeObject()
+     * allowing nulls to return null
+     *
+     * @param objectConverter Interface which is implemented by individual decoding methods
+     * @param <T> decoded type. Mainly Attribute types
+     * @return decoded object
+     * @throws MALException null or malformed exception
+     */
+    private <T> T decodeNullableObject(FunctionWithMALException<String, T> objectConverter) throws MALException {
+        if (!prepForDecodingElements() || isNullAttributeTrue()) {
+            popFromNodeStack();
+            return null;
+        }
+        return objectConverter.apply(readValue());
+    }
+
+    @Override
+    public Boolean decodeBoolean() throws MALException {
+        return decodeNotNullableNumber(Boolean::valueOf);
+    }
+
+    @Override
+    public Boolean decodeNullableBoolean() throws MALException {
+        return decodeNullableNumber(Boolean::valueOf);
+    }
+
+    @Override
+    public Float decodeFloat() throws MALException {
+        return parseNotNullableNumber(XmlNumberCodec::parseFloat);
+    }
+
+    @Override
+    public Float decodeNullableFloat() throws MALException {
+        return parseNullableNumber(XmlNumberCodec::parseFloat);
+    }
+
+    @Override
+    public Double decodeDouble() throws MALException {
+        return parseNotNullableNumber(XmlNumberCodec::parseDouble);
+    }
+
+    @Override
+    public Double decodeNullableDouble() throws MALException {
+        return parseNullableNumber(XmlNumberCodec::parseDouble);
+    }
+
+    @Override
+    public Byte decodeOctet() throws MALException {
+        return parseNotNullableNumber(XmlNumberCodec::parseByte);
+    }
+
+    @Override
+    public Byte decodeNullableOctet() throws MALException {
+        return parseNullableNumber(XmlNumberCodec::parseByte);
+    }
+
+    @Override
+    public UOctet decodeUOctet() throws MALException {
+        return new UOctet(parseNotNullableNumber(XmlNumberCodec::parseShort));
+    }
+
+    @Override
+    public UOctet decodeNullableUOctet() throws MALException {
+        Short result = parseNullableNumber(XmlNumberCodec::parseShort);
+        return result == null ? null : new UOctet(result);
+    }
+
+    @Override
+    public Short decodeShort() throws MALException {
+        return parseNotNullableNumber(XmlNumberCodec::parseShort);
+    }
+
+    @Override
+    public Short decodeNullableShort() throws MALException {
+        return parseNullableNumber(XmlNumberCodec::parseShort);
+    }
+
+    @Override
+    public UShort decodeUShort() throws MALException {
+        return new UShort(parseNotNullableNumber(XmlNumberCodec::parseInt));
+    }
+
+    @Override
+    public UShort decodeNullableUShort() throws MALException {
+        Integer result = parseNullableNumber(XmlNumberCodec::parseInt);
+        return result == null ? null : new UShort(result);
+    }
+
+    @Override
+    public Integer decodeInteger() throws MALException {
+        return parseNotNullableNumber(XmlNumberCodec::parseInt);
+    }
+
+    @Override
+    public Integer decodeNullableInteger() throws MALException {
+        return parseNullableNumber(XmlNumberCodec::parseInt);
+    }
+
+    @Override
+    public UInteger decodeUInteger() throws MALException {
+        return new UInteger(parseNotNullableNumber(XmlNumberCodec::parseLong));
+    }
+
+    @Override
+    public UInteger decodeNullableUInteger() throws MALException {
+        Long result = parseNullableNumber(XmlNumberCodec::parseLong);
+        return result == null ? null : new UInteger(result);
+    }
+
+    @Override
+    public Long decodeLong() throws MALException {
+        return parseNotNullableNumber(XmlNumberCodec::parseLong);
+    }
+
+    @Override
+    public Long decodeNullableLong() throws MALException {
+        return parseNullableNumber(XmlNumberCodec::parseLong);
+    }
+
+    @Override
+    public ULong decodeULong() throws MALException {
+        return new ULong(parseNotNullableNumber(XmlNumberCodec::parseBigInteger));
+    }
+
+    @Override
+    public ULong decodeNullableULong() throws MALException {
+        BigInteger result = parseNullableNumber(XmlNumberCodec::parseBigInteger);
+        return result == null ? null : new ULong(result);
+    }
+
+    @Override
+    public String decodeString() throws MALException {
+        return decodeObject(EncodingHelper::decodeString);
+    }
+
+    @Override
+    public String decodeNullableString() throws MALException {
+        return decodeNullableObject(EncodingHelper::decodeString);
+    }
+
+    @Override
+    public Blob decodeBlob() throws MALException {
+        if (!prepForDecodingElements() || isNullAttributeTrue()) {
+            EncodingHelper.checkForNull(null);
+        }
+        return readBlob();
+    }
+
+    @Override
+    public Blob decodeNullableBlob() throws MALException {
+        if (!prepForDecodingElements() || isNullAttributeTrue()) {
+            popFromNodeStack();
+            return null;
+        }
+        return readBlob();
+    }
+
+    /**
+     * Same as readValue() for Blob.
+     * Content is either hexadecimal text or xop:Include element referring to a multipart/related part.
+     *
+     * @return Blob from the text, or the part from attachments
+     * @throws MALException any error while reading or if there is no such part
+     */
+    private Blob readBlob() throws MALException {
+        StringBuilder text = new StringBuilder();
+        String href = null;
+        try {
+            int event = reader.next();
+            while (event != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE) {
+                    text.append(reader.getText());
+                } else if (event == XMLStreamConstants.START_ELEMENT && href == null && Constants.XOP_INCLUDE
+                        .equals(getQualifiedName(reader.getPrefix(), reader.getLocalName()))) {
+                    href = getAttribute(reader, Constants.XOP_HREF_ATTRIBUTE_NAME);
+                    href = href == null ? "" : href;
+                    skipElement();
+                } else if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_DOCUMENT) {
+                    throw new XMLStreamException("Blob element has unexpected content", reader.getLocation());
+                }
+                event = reader.next();
+            }
+            hasPendingChild = false;
+            currentCursor().childIndex++;
+            popFromNodeStack();
+        } catch (XMLStreamException exp) {
+            throw new MALException("Error while reading XML document", exp);
+        }
+        if (href == null) {
+            return new Blob(EncodingHelper.convertHexStringToByteArray(text.toString().trim()));
+        }
+        if (attachments == null) {
+            throw new MALException("Blob refers to a multipart/related part without attachments: " + href);
+        }
+        return attachments.get(href);
+    }
+
+    @Override
+    public Duration decodeDuration() throws MALException {
+        return new Duration(decodeObject(EncodingHelper::decodeDuration));
+    }
+
+    @Override
+    public Duration decodeNullableDuration() throws MALException {
+        Double result = decodeNullableObject(EncodingHelper::decodeDuration);
+        return result == null ? null : new Duration(result);
+    }
+
+    @Override
+    public FineTime decodeFineTime() throws MALException {
+        return new FineTime(decodeObject(EncodingHelper::decodeFineTimeFromXML));
+    }
+
+    @Override
+    public FineTime decodeNullableFineTime() throws MALException {
+        Long result = decodeNullableObject(EncodingHelper::decodeFineTimeFromXML);
+        return result == null ? null : new FineTime(result);
+    }
+
+    @Override
+    public Identifier decodeIdentifier() throws MALException {
+        String value = decodeObject(EncodingHelper::decodeString);
+        return value == null ? new Identifier() : new Identifier(value);
+    }
+
+    @Override
+    public Identifier decodeNullableIdentifier() throws MALException {
+        String result = decodeNullableObject(EncodingHelper::decodeString);
+        return result == null ? null : new Identifier(result);
+    }
+
+    @Override
+    public Time decodeTime() throws MALException {
+        return new Time(decodeObject(EncodingHelper::decodeTimeFromXML));
+    }
+
+    @Override
+    public Time decodeNullableTime() throws MALException {
+        Long result = decodeNullableObject(EncodingHelper::decodeTimeFromXML);
+        return result == null ? null : new Time(result);
+    }
+
+    @Override
+    public URI decodeURI() throws MALException {
+        return new URI(decodeObject(EncodingHelper::decodeURI));
+    }
+
+    @Override
+    public URI decodeNullableURI() throws MALException {
+        String result = decodeNullableObject(EncodingHelper::decodeURI);
+        return result == null ? null : new URI(result);
+    }
+
+    /**
+     * Decodes an Element.
+     * Same logic as XmlDecoder.decodeElement()
+     *
+     * @param element An instance of the element to decode.
+     * @return The decoded Element.
+     * @throws IllegalArgumentException If the argument is null.
+     * @throws MALException             If an error detected during decoding.
+     */
+    @Override
+    public Element decodeElement(Element element) throws IllegalArgumentException, MALException {
+        if (element instanceof ElementList || element instanceof Attribute) {
+            return element.decode(this);
+        } else if (element instanceof Enumeration) {
+            return decodeEnumeration(element);
+        } else {
+            return decodeComposite(element);
+        }
+    }
+
+    /**
+     * Decoding single Enumeration objects.
+     * Encoded using string based on WhiteBook.
+     *
+     * @param element An instance of the element to decode.
+     * @return The decoded Element.
+     * @throws MALException If an error detected during decoding.
+     */
+    private Element decodeEnumeration(Element element) throws MALException {
+        if (element instanceof QoSLevel) {
+            return decodeObject(QoSLevel::fromString);
+        } else if (element instanceof UpdateType) {
+            return decodeObject(UpdateType::fromString);
+        } else if (element instanceof SessionType) {
+            return decodeObject(SessionType::fromString);
+        } else if (element instanceof InteractionType) {
+            return decodeObject(InteractionType::fromString);
+        } else if (element instanceof Enumeration) {
+            return decodeObject(value -> decodeUnknownEnumeration(element, value));
+        } else {
+            throw new MALException("Unknown Enumeration Type");
+        }
+    }
+
+    /**
+     * Helper method to decode new Enumeration classes.
+     * Same reflection logic as XmlDecoder.decodeUnknownEnumeration()
+     *
+     * @param element sample Enumeration object
+     * @param value string value from XML
+     * @return Enumeration object with the correct value
+     * @throws MALException all possible Reflection exceptions
+     */
+    private Element decodeUnknownEnumeration(Element element, String value) throws MALException {
+        try {
+            Constructor constructor = element.getClass().getDeclaredConstructor(int.class);
+            constructor.setAccessible(true);
+            int startPosition = 0;
+            while (true) {
+                try {
+                    Enumeration enumeration = (Enumeration) constructor.newInstance(startPosition++);
+                    if (enumeration.toString().equals(value)) {
+                        return enumeration;
+                    }
+                } catch (RuntimeException exp) {
+                    LOGGER.log(Level.SEVERE, "Attempting to decode invalid Enumeration", exp);
+                    return null;
+                }
+            }
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException exp) {
+            throw new MALException("Unknown Enumeration Class", exp);
+        }
+    }
+
+    /**
+     * 1. enter the composite element.
+     * 2. call element.decode().
+     * 3. skip the rest of the composite element.
+     *
+     * @param element An instance of the element to decode.
+     * @return The decoded Element.
+     * @throws MALException If an error detected during decoding.
+     */
+    private Element decodeComposite(Element element) throws MALException {
+        enterChild();
+        Element result = element.decode(this);
+        popFromNodeStack();
+        return result;
+    }
+
+    /**
+     * Check if next element is null or missing.
+     * If so, remove it.
+     *
+     * @return flag if it is null
+     * @throws MALException any error while reading
+     */
+    private boolean removeIfNull() throws MALException {
+        peekChild();
+        if (!hasPendingChild || isNullAttributeTrue()) {
+            removeNextChild();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Element decodeNullableElement(Element element) throws IllegalArgumentException, MALException {
+        return removeIfNull() ? null : decodeElement(element);
+    }
+
+    /**
+     * Decodes an Attribute.
+     * Enter the attribute element, and use the name of the value element to find out which attribute it is.
+     *
+     * @return The decoded Attribute.
+     * @throws MALException If an error detected during decoding.
+     */
+    @Override
+    public Attribute decodeAttribute() throws MALException {
+        peekChild();
+        if (!hasPendingChild || isNullAttributeTrue()) {
+            EncodingHelper.checkForNull(null);
+        }
+        enterChild();
+        peekChild();
+        if (!hasPendingChild) {
+            throw new MALException("Unknown Attribute Type");
+        }
+        isAttributeEntered = true;
+        switch (reader.getLocalName()) {
+            case Constants.BOOLEAN:
+                return new Union(decodeBoolean());
+            case Constants.OCTET:
+                return new Union(decodeOctet());
+            case Constants.SHORT:
+                return new Union(decodeShort());
+            case Constants.INTEGER:
+                return new Union(decodeInteger());
+            case Constants.LONG:
+                return new Union(decodeLong());
+            case Constants.FLOAT:
+                return new Union(decodeFloat());
+            case Constants.DOUBLE:
+                return new Union(decodeDouble());
+            case Constants.STRING:
+                return new Union(decodeString());
+            case Constants.U_OCTET:
+                return decodeUOctet();
+            case Constants.U_SHORT:
+                return decodeUShort();
+            case Constants.U_INTEGER:
+                return decodeUInteger();
+            case Constants.U_LONG:
+                return decodeULong();
+            case Constants.URI:
+                return decodeURI();
+            case Constants.IDENTIFIER:
+                return decodeIdentifier();
+            case Constants.TIME:
+                return decodeTime();
+            case Constants.FINE_TIME:
+                return decodeFineTime();
+            case Constants.BLOB:
+                return decodeBlob();
+            case Constants.DURATION:
+                return decodeDuration();
+            default:
+                isAttributeEntered = false;
+                throw new MALException("Unknown Attribute Type");
+        }
+    }
+
+    @Override
+    public Attribute decodeNullableAttribute() throws MALException {
+        return removeIfNull() ? null : decodeAttribute();
+    }
+
+    /**
+     * Creates a list decoder for decoding a list element.
+     * enter the list element.
+     *
+     * @param list The list to decode, java.lang.IllegalArgumentException exception thrown if null.
+     * @return The new list decoder.
+     * @throws IllegalArgumentException If the list argument is null.
+     * @throws MALException             If an error detected during list decoder creation.
+     */
+    @Override
+    public MALListDecoder createListDecoder(List list) throws IllegalArgumentException, MALException {
+        enterChild();
+        return this;
+    }
+
+    /**
+     * Determines if there are any more elements in the lists to decode.
+     * If not, list element is done.
+     *
+     * @return True if more elements in list, else false.
+     */
+    @Override
+    public boolean hasNext() {
+        try {
+            peekChild();
+            if (!hasPendingChild) {
+                popFromNodeStack();
+                return false;
+            }
+            return true;
+        } catch (MALException exp) {
+            LOGGER.log(Level.SEVERE, "Error while reading XML list", exp);
+            return false;
+        }
+    }
+
+    /**
+     * NOT supported.
+     * @return -1
+     */
+    @Override
+    public int size() {
+        return -1;
+    }
+
+    /**
+     * try to get the malxml:type of the next xml element.
+     *
+     * @return Long or null
+     * @throws MALException malformed number
+     */
+    @Override
+    public Long getShortForm() throws MALException {
+        peekChild();
+        if (!hasPendingChild) {
+            return null;
+        }
+        String type = getAttribute(reader, Constants.MALXML_TYPE_ATTRIBUTE_NAME);
+        if (type == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(type.trim());
+        } catch (NumberFormatException exp) {
+            throw new MALException(exp.getLocalizedMessage(), exp);
+        }
+    }
+
+    /**
+     * Creating a byte array with the remaining XML data.
+     * Same result as XmlDecoder where decoded elements are removed from the document.
+     *
+     * The encoded body is read again with a new reader.
+     * Position of each entered element is used to find out which elements are already decoded.
+     * Remaining elements are always written under the root element from XmlDocGenerator.
+     *
+     * If no element is being decoded, remaining data is taken from the original bytes by XmlBodyIndex.
+     *
+     * @return XML document with elements which are not decoded yet
+     * @throws MALException any error while reading or writing
+     */
+    @Override
+    public byte[] getRemainingEncodedData() throws MALException {
+        BitSet decodedElements = getDecodedBodyElements();
+        if (decodedElements != null) {
+            return getBodyIndex().getRemainingEncodedData(decodedElements);
+        }
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream(source.length);
+            XmlStreamingNodeWriter writer = new XmlStreamingNodeWriter(outputStream);
+            XMLStreamReader replayReader = createReader(source);
+            moveToRoot(replayReader);
+            writeRemainingChildren(replayReader, writer, 0);
+            writer.close();
+            return outputStream.toByteArray();
+        } catch (XMLStreamException exp) {
+            throw new MALException("Error while converting the remaining xml document to byte array", exp);
+        }
+    }
+
+    /**
+     * Only possible when no element is being decoded.
+     * Removed children of the root element are the decoded body elements.
+     *
+     * @return indexes of decoded body elements
+     *          or null if an element is being decoded or the body cannot be indexed.
+     */
+    @Override
+    public BitSet getDecodedBodyElements() {
+        if (cursorStack.size() != 1 || getBodyIndex() == null) {
+            return null;
+        }
+        return (BitSet) cursorStack.get(0).removedChildren.clone();
+    }
+
+    @Override
+    public void setAttachments(BlobAttachments attachments) {
+        this.attachments = attachments;
+    }
+
+    /**
+     * Index is created only once.
+     *
+     * @return byte offsets of body elements or null if it cannot be indexed.
+     */
+    private XmlBodyIndex getBodyIndex() {
+        if (!isBodyIndexed) {
+            bodyIndex = XmlBodyIndex.create(source);
+            isBodyIndexed = true;
+        }
+        return bodyIndex;
+    }
+
+    /**
+     * Write children of the element at given level which are not decoded yet.
+     * 1. decoded children are skipped.
+     * 2. element currently being decoded is written with its remaining children.
+     * 3. all other children are written.
+     *
+     * @param replayReader reader at the start tag of the element at given level
+     * @param writer writer for remaining data
+     * @param level index in cursor stack
+     * @throws XMLStreamException any error while reading
+     * @throws MALException any error while writing
+     */
+    private void writeRemainingChildren(XMLStreamReader replayReader, XmlStreamingNodeWriter writer, int level)
+            throws XMLStreamException, MALException {
+        ElementCursor cursor = cursorStack.get(level);
+        boolean hasEnteredChild = level + 1 < cursorStack.size();
+        int index = 0;
+        while (replayReader.hasNext()) {
+            int event = replayReader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                if (cursor.removedChildren.get(index)) {
+                    skipElement(replayReader);
+                } else if (index == cursor.childIndex && hasEnteredChild) {
+                    writeStartTag(replayReader, writer);
+                    writeRemainingChildren(replayReader, writer, level + 1);
+                    writer.endElement();
+                } else {
+                    copyElement(replayReader, writer);
+                }
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Skip the whole element at the start tag of the reader.
+     *
+     * @param replayReader reader at a start tag
+     * @throws XMLStreamException any error while reading
+     */
+    private static void skipElement(XMLStreamReader replayReader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = replayReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Write start tag with all attributes.
+     * Attributes are sorted by name in the same order as DOM.
+     *
+     * @param replayReader reader at a start tag
+     * @param writer writer for remaining data
+     * @throws MALException any error while writing
+     */
+    private static void writeStartTag(XMLStreamReader replayReader, XmlStreamingNodeWriter writer)
+            throws MALException {
+        writer.startElement(getQualifiedName(replayReader.getPrefix(), replayReader.getLocalName()));
+        int attributeCount = replayReader.getAttributeCount();
+        if (attributeCount == 1) {
+            writer.writeAttribute(getQualifiedName(replayReader.getAttributePrefix(0),
+                    replayReader.getAttributeLocalName(0)), replayReader.getAttributeValue(0));
+        } else if (attributeCount > 1) {
+            TreeMap<String, String> attributes = new TreeMap<>();
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.put(getQualifiedName(replayReader.getAttributePrefix(i),
+                        replayReader.getAttributeLocalName(i)), replayReader.getAttributeValue(i));
+            }
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                writer.writeAttribute(attribute.getKey(), attribute.getValue());
+            }
+        }
+    }
+
+    /**
+     * Copy the whole element at the start tag of the reader.
+     * White spaces are removed in the same way as XmlDecoder.
+     * They are kept only if they are the only content of an element.
+     *
+     * @param replayReader reader at a start tag
+     * @param writer writer for remaining data
+     * @throws XMLStreamException any error while reading
+     * @throws MALException any error while writing
+     */
+    private static void copyElement(XMLStreamReader replayReader, XmlStreamingNodeWriter writer)
+            throws XMLStreamException, MALException {
+        writeStartTag(replayReader, writer);
+        int depth = 1;
+        boolean hasContent = false;
+        String whiteSpace = null;
+        while (depth > 0) {
+            int event = replayReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                whiteSpace = null;
+                writeStartTag(replayReader, writer);
+                hasContent = false;
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (whiteSpace != null && !hasContent) {
+                    writer.writeCharacters(whiteSpace);
+                }
+                whiteSpace = null;
+                writer.endElement();
+                hasContent = true;
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                if (!replayReader.isWhiteSpace()) {
+                    whiteSpace = null;
+                    writer.writeCharacters(replayReader.getText());
+                    hasContent = true;
+                } else if (!hasContent && whiteSpace == null) {
+                    whiteSpace = replayReader.getText();
+                } else {
+                    whiteSpace = null;
+                    hasContent = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Position of an entered element.
+     */
+    private static final class ElementCursor {
+        /**
+         * index of the next child. children before it are either decoded or skipped.
+         */
+        int childIndex = 0;
+        /**
+         * indexes of decoded children. Same as the children removed by XmlDecoder.
+         */
+        final BitSet removedChildren = new BitSet();
+
+        /**
+         * mark the next child as decoded and move to the child after it.
+         */
+        void removeChild() {
+            removedChildren.set(childIndex++);
+        }
+    }
+}
@@ -0,0 +1,535 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import nasa.mo.mal.encoder.Constants;
+import nasa.mo.mal.encoder.util.DateTimeCodec;
+import nasa.mo.mal.encoder.util.DurationCodec;
+import nasa.mo.mal.encoder.util.EncodingHelper;
+import nasa.mo.mal.encoder.util.HexCodec;
+import org.ccsds.moims.mo.mal.MALException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Streaming writer for XmlEncoder.
+ * Each element is written as UTF-8 bytes as soon as it is encoded. No DOM or Transformer is involved.
+ *
+ * Output is byte compatible with XmlDomNodeWriter (JDK Transformer):
+ * 1. no new line after XML declaration
+ * 2. elements without child or text are written as empty element tag (e.g. <Blob/>)
+ * 3. numbers are written by XmlNumberCodec, and times and durations by DateTimeCodec and DurationCodec
+ *    without creating Strings. Blobs are written by HexCodec in chunks straight into the buffer.
+ * 4. &lt; &gt; &amp; are escaped in text. control characters, C1 characters,
+ *    and supplementary characters are written as numeric character reference.
+ *    '\n' and '\t' are written as they are.
+ */
+class XmlStreamingNodeWriter implements XmlNodeWriter {
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * biggest possible output for a single character. i.e. &#1114111;
+     */
+    private static final int MAX_CHAR_SIZE = 10;
+    private static final byte[] XML_DECLARATION = ("<?xml version=\"" + XmlDocGenerator.XML_VERSION +
+            "\" encoding=\"UTF-8\"?>").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ROOT_START_TAG = ("<" + Constants.ROOT_ELEMENT + " " +
+            XmlDocGenerator.MAL_XML + "=\"" + XmlDocGenerator.MAL_XML_NAMESPACE_URL + "\" " +
+            XmlDocGenerator.XMLNS_XSI + "=\"" + XmlDocGenerator.XML_XSI_NAMESPACE_URL + "\"")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_ATTRIBUTE = (" " + Constants.NULLABLE_ATTRIBUTE_NAME + "=\"" +
+            XmlDocGenerator.NULLABLE_ATTRIBUTE_VALUE + "\"").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TYPE_ATTRIBUTE_START = (" " + Constants.MALXML_TYPE_ATTRIBUTE_NAME + "=\"")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] AMP = "&amp;".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LT = "&lt;".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] GT = "&gt;".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] QUOT = "&quot;".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream outputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    /**
+     * reused by XmlNumberCodec to format Float and Double.
+     */
+    private final StringBuilder numberScratch = new StringBuilder(XmlNumberCodec.MAX_DOUBLE_SIZE);
+    /**
+     * names of currently open elements. Root element is always at the bottom.
+     */
+    private final Deque<String> elementStack = new ArrayDeque<>();
+    /**
+     * flag if the start tag of the last opened element is not closed with '>' yet.
+     * It is kept open so that an element without content can be closed with "/>"
+     */
+    private boolean isStartTagOpen = false;
+    /**
+     * flag if output stream has been checked for existing content.
+     */
+    private boolean isOutputChecked = false;
+    /**
+     * flag to drop everything instead of writing to output stream.
+     */
+    private boolean isDiscarding = false;
+    private boolean isClosed = false;
+
+    /**
+     * Constructor.
+     * Write XML declaration and root element to buffer.
+     * Nothing is written to the stream until buffer is full or writer is closed.
+     *
+     * @param outputStream Stream encoded message is written to.
+     */
+    XmlStreamingNodeWriter(OutputStream outputStream) {
+        this.outputStream = outputStream;
+        appendBytes(XML_DECLARATION);
+        appendBytes(ROOT_START_TAG);
+        elementStack.push(Constants.ROOT_ELEMENT);
+        isStartTagOpen = true;
+    }
+
+    @Override
+    public void startElement(String name) throws MALException {
+        openStartTag(name);
+    }
+
+    @Override
+    public void startElement(String name, long type) throws MALException {
+        openStartTag(name);
+        writeBytes(TYPE_ATTRIBUTE_START);
+        ensureCapacity(XmlNumberCodec.MAX_LONG_SIZE + 1);
+        position = XmlNumberCodec.formatLong(type, buffer, position);
+        writeByte('"');
+    }
+
+    /**
+     * Close the last opened element.
+     * 1. if its start tag is still open, there is no content. close it with "/>"
+     * 2. if not, write end tag.
+     *
+     * @throws MALException IOException while writing
+     */
+    @Override
+    public void endElement() throws MALException {
+        if (elementStack.isEmpty()) {
+            return;
+        }
+        String name = elementStack.pop();
+        if (isStartTagOpen) {
+            ensureCapacity(2);
+            writeByte('/');
+            writeByte('>');
+            isStartTagOpen = false;
+        } else {
+            ensureCapacity(2);
+            writeByte('<');
+            writeByte('/');
+            writeName(name);
+            ensureCapacity(1);
+            writeByte('>');
+        }
+    }
+
+    @Override
+    public void writeSimpleElement(String name, String value) throws MALException {
+        openStartTag(name);
+        if (value != null && !value.isEmpty()) {
+            closeStartTag();
+            writeText(value);
+        }
+        endElement();
+    }
+
+    @Override
+    public void writeLongElement(String name, long value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(XmlNumberCodec.MAX_LONG_SIZE);
+        position = XmlNumberCodec.formatLong(value, buffer, position);
+        endElement();
+    }
+
+    @Override
+    public void writeUnsignedLongElement(String name, long value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(XmlNumberCodec.MAX_LONG_SIZE);
+        position = XmlNumberCodec.formatUnsignedLong(value, buffer, position);
+        endElement();
+    }
+
+    @Override
+    public void writeDoubleElement(String name, double value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(XmlNumberCodec.MAX_DOUBLE_SIZE);
+        position = XmlNumberCodec.formatDouble(value, buffer, position, numberScratch);
+        endElement();
+    }
+
+    @Override
+    public void writeFloatElement(String name, float value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(XmlNumberCodec.MAX_DOUBLE_SIZE);
+        position = XmlNumberCodec.formatFloat(value, buffer, position, numberScratch);
+        endElement();
+    }
+
+    @Override
+    public void writeTimeElement(String name, long value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(DateTimeCodec.MAX_SIZE);
+        position = EncodingHelper.encodeTimeToXML(value, buffer, position);
+        endElement();
+    }
+
+    @Override
+    public void writeFineTimeElement(String name, long value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(DateTimeCodec.MAX_SIZE);
+        position = EncodingHelper.encodeFineTimeToXML(value, buffer, position);
+        endElement();
+    }
+
+    @Override
+    public void writeDurationElement(String name, double value) throws MALException {
+        openStartTag(name);
+        closeStartTag();
+        ensureCapacity(DurationCodec.MAX_SIZE);
+        position = EncodingHelper.encodeDuration(value, buffer, position);
+        endElement();
+    }
+
+    /**
+     * Hex text of a large Blob does not fit into the buffer.
+     * Bytes are encoded in chunks of half the buffer size, flushing the buffer in between.
+     *
+     * @param name name of the element
+     * @param value bytes to write. empty element for null or empty array.
+     * @throws MALException IOException while writing
+     */
+    @Override
+    public void writeHexElement(String name, byte[] value) throws MALException {
+        openStartTag(name);
+        if (value != null && value.length > 0) {
+            closeStartTag();
+            int offset = 0;
+            while (offset < value.length) {
+                int length = Math.min(value.length - offset, BUFFER_SIZE / 2);
+                ensureCapacity(length * 2);
+                position = HexCodec.encode(value, offset, length, buffer, position);
+                offset += length;
+            }
+        }
+        endElement();
+    }
+
+    /**
+     * Attributes are in the same order as the Transformer writes them for XmlDomNodeWriter.
+     *
+     * @param name name of the element
+     * @param href "cid:" URL of the part
+     * @throws MALException IOException while writing
+     */
+    @Override
+    public void writeIncludeElement(String name, String href) throws MALException {
+        openStartTag(name);
+        openStartTag(Constants.XOP_INCLUDE);
+        writeAttribute(XmlDocGenerator.XMLNS_XOP, XmlDocGenerator.XOP_NAMESPACE_URL);
+        writeAttribute(Constants.XOP_HREF_ATTRIBUTE_NAME, href);
+        endElement();
+        endElement();
+    }
+
+    @Override
+    public void writeNullElement(String name) throws MALException {
+        openStartTag(name);
+        writeBytes(NULL_ATTRIBUTE);
+        endElement();
+    }
+
+    /**
+     * Write an attribute to the last opened element.
+     * Must be called right after startElement.
+     *
+     * @param name attribute name
+     * @param value attribute value
+     * @throws MALException IOException while writing
+     */
+    void writeAttribute(String name, String value) throws MALException {
+        if (!isStartTagOpen) {
+            throw new MALException("Writing attribute " + name + " outside of start tag");
+        }
+        ensureCapacity(1);
+        writeByte(' ');
+        writeName(name);
+        ensureCapacity(2);
+        writeByte('=');
+        writeByte('"');
+        writeText(value, true);
+        ensureCapacity(1);
+        writeByte('"');
+    }
+
+    /**
+     * Write text value under the last opened element.
+     *
+     * @param text text value
+     * @throws MALException IOException while writing
+     */
+    void writeCharacters(String text) throws MALException {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        closeStartTag();
+        writeText(text);
+    }
+
+    /**
+     * 1. close all open elements including root
+     * 2. write remaining buffer to stream
+     * 3. close stream
+     *
+     * @throws MALException IOException while writing
+     */
+    @Override
+    public void close() throws MALException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        while (!elementStack.isEmpty()) {
+            endElement();
+        }
+        flushBuffer();
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException exp) {
+                throw new MALException("Error while closing XML Output Stream", exp);
+            }
+        }
+    }
+
+    /**
+     * Write '<' + name and push the name to stack.
+     * start tag of the parent is closed first.
+     *
+     * @param name name of the element
+     * @throws MALException IOException while writing
+     */
+    private void openStartTag(String name) throws MALException {
+        closeStartTag();
+        ensureCapacity(1);
+        writeByte('<');
+        writeName(name);
+        elementStack.push(name);
+        isStartTagOpen = true;
+    }
+
+    /**
+     * close current start tag with '>' if it is still open.
+     *
+     * @throws MALException IOException while writing
+     */
+    private void closeStartTag() throws MALException {
+        if (isStartTagOpen) {
+            ensureCapacity(1);
+            writeByte('>');
+            isStartTagOpen = false;
+        }
+    }
+
+    /**
+     * Write element name or attribute value in UTF-8 without escaping.
+     *
+     * @param name element name or attribute value
+     * @throws MALException IOException while writing
+     */
+    private void writeName(String name) throws MALException {
+        for (int i = 0; i < name.length(); i++) {
+            ensureCapacity(MAX_CHAR_SIZE);
+            char c = name.charAt(i);
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < name.length()
+                    && Character.isLowSurrogate(name.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, name.charAt(++i)));
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * Write text value in UTF-8 with escaping.
+     *
+     * @param text text value
+     * @throws MALException IOException while writing
+     */
+    private void writeText(String text) throws MALException {
+        writeText(text, false);
+    }
+
+    /**
+     * Write text or attribute value in UTF-8 with escaping.
+     * In attribute value, '"' is escaped and new line and tab are written as numeric character reference.
+     *
+     * @param text text value
+     * @param isAttribute flag if it is an attribute value
+     * @throws MALException IOException while writing
+     */
+    private void writeText(String text, boolean isAttribute) throws MALException {
+        for (int i = 0; i < text.length(); i++) {
+            ensureCapacity(MAX_CHAR_SIZE);
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (c == '<') {
+                    appendBytes(LT);
+                } else if (c == '>') {
+                    appendBytes(GT);
+                } else if (c == '&') {
+                    appendBytes(AMP);
+                } else if (c == '"' && isAttribute) {
+                    appendBytes(QUOT);
+                } else if (((c == '\n' || c == '\t') && !isAttribute) || (c >= 0x20 && c < 0x7F)) {
+                    writeByte(c);
+                } else {
+                    writeCharacterReference(c);
+                }
+            } else if (c <= 0x9F) {
+                writeCharacterReference(c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writeCharacterReference(Character.toCodePoint(c, text.charAt(++i)));
+            } else if (Character.isSurrogate(c)) {
+                writeCharacterReference(c);
+            } else {
+                writeCodePoint(c);
+            }
+        }
+    }
+
+    /**
+     * Write numeric character reference. i.e. &#13;
+     * Caller must ensure buffer capacity.
+     *
+     * @param codePoint unicode code point
+     */
+    private void writeCharacterReference(int codePoint) {
+        writeByte('&');
+        writeByte('#');
+        int divisor = 1;
+        while (divisor <= codePoint / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            writeByte('0' + (codePoint / divisor) % 10);
+        }
+        writeByte(';');
+    }
+
+    /**
+     * Write UTF-8 bytes of a non-ASCII code point.
+     * Caller must ensure buffer capacity.
+     *
+     * @param codePoint unicode code point
+     */
+    private void writeCodePoint(int codePoint) {
+        if (codePoint < 0x800) {
+            writeByte(0xC0 | (codePoint >> 6));
+            writeByte(0x80 | (codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            writeByte(0xE0 | (codePoint >> 12));
+            writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+            writeByte(0x80 | (codePoint & 0x3F));
+        } else {
+            writeByte(0xF0 | (codePoint >> 18));
+            writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+            writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+            writeByte(0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    /**
+     * Caller must ensure buffer capacity.
+     *
+     * @param b byte to write
+     */
+    private void writeByte(int b) {
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * Write constant bytes.
+     * Constants are always smaller than the buffer.
+     *
+     * @param bytes constant bytes
+     * @throws MALException IOException while writing
+     */
+    private void writeBytes(byte[] bytes) throws MALException {
+        ensureCapacity(bytes.length);
+        appendBytes(bytes);
+    }
+
+    /**
+     * Caller must ensure buffer capacity.
+     *
+     * @param bytes constant bytes
+     */
+    private void appendBytes(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Flush buffer if there is not enough space
+     *
+     * @param size required space
+     * @throws MALException IOException while writing
+     */
+    private void ensureCapacity(int size) throws MALException {
+        if (position + size > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Write buffer to stream.
+     *
+     * NOTE: in order for GENMessageBody to copy the encoded body properly,
+     * nothing is written if there is something in the stream before first write.
+     * Same validation as XmlDomNodeWriter.
+     *
+     * @throws MALException IOException while writing
+     */
+    private void flushBuffer() throws MALException {
+        if (!isOutputChecked) {
+            isOutputChecked = true;
+            isDiscarding = outputStream == null || (outputStream instanceof ByteArrayOutputStream &&
+                    ((ByteArrayOutputStream) outputStream).size() > 0);
+        }
+        if (!isDiscarding && position > 0) {
+            try {
+                outputStream.write(buffer, 0, position);
+            } catch (IOException exp) {
+                throw new MALException("Error while writing XML to Output Stream", exp);
+            }
+        }
+        position = 0;
+    }
+}
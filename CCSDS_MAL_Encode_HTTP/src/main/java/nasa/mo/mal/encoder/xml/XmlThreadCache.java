@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+/**
+ * JAXP objects cached per thread.
+ * Factories are looked up once since each lookup scans the classpath and service loaders.
+ * Builders, transformers, and XPath expressions are not thread safe. So each thread gets its own,
+ * created at its first use and reset before each use.
+ *
+ * Factories are only used while holding their lock as they are not thread safe either.
+ */
+final class XmlThreadCache {
+    private static final String EMPTY_TEXT_XPATH = "//text()[normalize-space(.) = '']";
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+    private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory.newInstance();
+    private static final XPathFactory XPATH_FACTORY = XPathFactory.newInstance();
+    private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<>();
+    private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<>();
+    private static final ThreadLocal<XPathExpression> EMPTY_TEXT_EXPRESSION = new ThreadLocal<>();
+
+    private XmlThreadCache() {
+    }
+
+    /**
+     * @return document builder of the current thread
+     * @throws ParserConfigurationException if a builder cannot be created
+     */
+    static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = DOCUMENT_BUILDER.get();
+        if (builder == null) {
+            synchronized (DOCUMENT_BUILDER_FACTORY) {
+                builder = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder();
+            }
+            DOCUMENT_BUILDER.set(builder);
+        } else {
+            builder.reset();
+        }
+        return builder;
+    }
+
+    /**
+     * @return identity transformer of the current thread
+     * @throws TransformerConfigurationException if a transformer cannot be created
+     */
+    static Transformer getTransformer() throws TransformerConfigurationException {
+        Transformer transformer = TRANSFORMER.get();
+        if (transformer == null) {
+            synchronized (TRANSFORMER_FACTORY) {
+                transformer = TRANSFORMER_FACTORY.newTransformer();
+            }
+            TRANSFORMER.set(transformer);
+        } else {
+            transformer.reset();
+        }
+        return transformer;
+    }
+
+    /**
+     * @return XPath expression of the current thread finding empty text nodes
+     * @throws XPathExpressionException if the expression cannot be compiled
+     */
+    static XPathExpression getEmptyTextExpression() throws XPathExpressionException {
+        XPathExpression expression = EMPTY_TEXT_EXPRESSION.get();
+        if (expression == null) {
+            synchronized (XPATH_FACTORY) {
+                expression = XPATH_FACTORY.newXPath().compile(EMPTY_TEXT_XPATH);
+            }
+            EMPTY_TEXT_EXPRESSION.set(expression);
+        }
+        return expression;
+    }
+}
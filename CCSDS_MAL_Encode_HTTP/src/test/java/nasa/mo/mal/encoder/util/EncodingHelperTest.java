@@ -228,7 +228,7 @@ public class EncodingHelperTest {
 
     @Test
     public void parseDurationSegmentTest01() throws Exception {
-        Method parseDurationSegmentMethod = EncodingHelper.class.getDeclaredMethod("parseDurationSegment", String.class);
+        Method parseDurationSegmentMethod = DurationCodec.class.getDeclaredMethod("parseDurationSegment", String.class);
         parseDurationSegmentMethod.setAccessible(true);
         Assert.assertEquals(34, (int) parseDurationSegmentMethod.invoke(null, "34T"));
         Assert.assertEquals(987, (int) parseDurationSegmentMethod.invoke(null, "987R"));
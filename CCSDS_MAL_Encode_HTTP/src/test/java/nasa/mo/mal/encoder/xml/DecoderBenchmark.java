@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for decoding large lists with both decoders.
+ * Time per list should grow linearly with the number of entries.
+ *
+ * Run main() with test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+    @Param({"10000", "100000"})
+    private int size;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws MALException {
+        encoded = LargeListDecodeTest.encodeList(LargeListDecodeTest.createList(size));
+    }
+
+    @Benchmark
+    public Object domDecoder() throws MALException {
+        return new XmlDecoder(encoded).decodeElement(new IdentifierList());
+    }
+
+    @Benchmark
+    public Object streamingDecoder() throws MALException {
+        return new XmlStreamingDecoder(encoded).decodeElement(new IdentifierList());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(DecoderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Decoding large lists.
+ * DOM decoder must not remove decoded nodes from the document, since each removal re-indexes the siblings
+ * and makes decoding quadratic. Decoding time is measured in DecoderBenchmark.
+ */
+public class LargeListDecodeTest {
+    private static final int LIST_SIZE = 100000;
+
+    /**
+     * @param size number of list entries
+     * @return identifier list
+     */
+    static IdentifierList createList(int size) {
+        IdentifierList identifierList = new IdentifierList();
+        for (int i = 0; i < size; i++) {
+            identifierList.add(new Identifier("Identifier-" + i));
+        }
+        return identifierList;
+    }
+
+    /**
+     * @param identifierList list to encode
+     * @return encoded body with the list
+     * @throws MALException any exception from encoder
+     */
+    static byte[] encodeList(IdentifierList identifierList) throws MALException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XmlEncoder encoder = new XmlEncoder(outputStream, true);
+        encoder.encodeElement(identifierList);
+        encoder.close();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Number of elements in the document is the same before and after decoding.
+     *
+     * @throws MALException any exception from encoder or decoder
+     */
+    @Test
+    public void domDecoderTest01() throws MALException {
+        IdentifierList identifierList = createList(LIST_SIZE);
+        XmlDecoder decoder = new XmlDecoder(encodeList(identifierList));
+        int elementCount = decoder.getDocument().getElementsByTagName("*").getLength();
+        Assert.assertTrue(elementCount > LIST_SIZE);
+        Assert.assertEquals(identifierList, decoder.decodeElement(new IdentifierList()));
+        Assert.assertEquals(elementCount, decoder.getDocument().getElementsByTagName("*").getLength());
+        Assert.assertEquals(AbstractEncoderTest.XML_EMPTY_DOCUMENT, new String(decoder.getRemainingEncodedData()));
+    }
+
+    @Test
+    public void streamingDecoderTest01() throws MALException {
+        IdentifierList identifierList = createList(LIST_SIZE);
+        XmlStreamingDecoder decoder = new XmlStreamingDecoder(encodeList(identifierList));
+        Assert.assertEquals(identifierList, decoder.decodeElement(new IdentifierList()));
+        Assert.assertEquals(AbstractEncoderTest.XML_EMPTY_DOCUMENT, new String(decoder.getRemainingEncodedData()));
+    }
+}
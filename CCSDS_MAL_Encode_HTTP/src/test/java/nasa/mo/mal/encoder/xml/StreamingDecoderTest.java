@@ -0,0 +1,320 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import nasa.mo.mal.encoder.BlobAttachments;
+import nasa.mo.mal.encoder.Constants;
+import nasa.mo.mal.encoder.util.builders.FileBuilder;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Test cases for XmlStreamingDecoder.
+ * Pull parser based decoder must decode the same elements and return the same remaining data as DOM based decoder.
+ */
+public class StreamingDecoderTest extends AbstractEncoderTest {
+
+    /**
+     * Decode the encoded body by both decoders and compare the results.
+     * Remaining data is compared after each element.
+     *
+     * @param encoded encoded body
+     * @param samples sample element for each encoded element
+     * @return decoded elements from pull parser based decoder
+     * @throws MALException any exception from decoder
+     */
+    private List<Element> compareDecoding(byte[] encoded, List<Element> samples) throws MALException {
+        return compareDecoding(encoded, samples, null);
+    }
+
+    /**
+     * Same as compareDecoding() with parts of a multipart/related body.
+     *
+     * @param encoded encoded body
+     * @param samples sample element for each encoded element
+     * @param attachments parts which Blobs refer to
+     * @return decoded elements from pull parser based decoder
+     * @throws MALException any exception from decoder
+     */
+    private List<Element> compareDecoding(byte[] encoded, List<Element> samples, BlobAttachments attachments)
+            throws MALException {
+        XmlDecoder domDecoder = new XmlDecoder(new ByteArrayInputStream(encoded));
+        XmlStreamingDecoder streamingDecoder = new XmlStreamingDecoder(encoded);
+        domDecoder.setAttachments(attachments);
+        streamingDecoder.setAttachments(attachments);
+        Assert.assertEquals(new String(domDecoder.getRemainingEncodedData()),
+                new String(streamingDecoder.getRemainingEncodedData()));
+        List<Element> result = new ArrayList<>();
+        for (Element sample : samples) {
+            Element expected = domDecoder.decodeNullableElement(sample.createElement());
+            Element actual = streamingDecoder.decodeNullableElement(sample.createElement());
+            Assert.assertEquals(expected, actual);
+            Assert.assertEquals(new String(domDecoder.getRemainingEncodedData()),
+                    new String(streamingDecoder.getRemainingEncodedData()));
+            result.add(actual);
+        }
+        return result;
+    }
+
+    /**
+     * Encode elements with DOM based encoder.
+     *
+     * @param elements elements to encode
+     * @return encoded body
+     * @throws MALException any exception from encoder
+     */
+    private byte[] encode(List<Element> elements) throws MALException {
+        for (Element each : elements) {
+            encoder.encodeNullableElement(each);
+        }
+        encoder.close();
+        return message.toByteArray();
+    }
+
+    @Test
+    public void emptyDocumentTest01() throws MALException {
+        XmlStreamingDecoder decoder = new XmlStreamingDecoder(XML_EMPTY_DOCUMENT.getBytes());
+        Assert.assertNull(decoder.getShortForm());
+        Assert.assertFalse(decoder.hasNext());
+        Assert.assertEquals(XML_EMPTY_DOCUMENT, new String(decoder.getRemainingEncodedData()));
+    }
+
+    @Test
+    public void mixedElementsTest01() throws MALException {
+        InteractionTypeList interactionTypes = new InteractionTypeList();
+        interactionTypes.add(InteractionType.INVOKE);
+        interactionTypes.add(null);
+        interactionTypes.add(InteractionType.PUBSUB);
+
+        DoubleList doubles = new DoubleList();
+        doubles.add(Double.MIN_VALUE);
+        doubles.add(null);
+
+        UpdateHeaderList updateHeaders = new UpdateHeaderList();
+        updateHeaders.add(new UpdateHeader(new Time(0L), new URI(""), UpdateType.CREATION, new EntityKey()));
+        updateHeaders.add(null);
+
+        List<Element> original = new ArrayList<>();
+        original.add(new Identifier("Tämä on testi."));
+        original.add(UpdateType.CREATION);
+        original.add(new IdBooleanPair(new Identifier("Això és un test."), null));
+        original.add(new FloatList());
+        original.add(new URI("https://drive.google.com/drive/my-drive"));
+        original.add(new EntityKey(null, 1L, null, 2L));
+        original.add(interactionTypes);
+        original.add(doubles);
+        original.add(new EntityRequest(new IdentifierList(), false, true, false, true, new EntityKeyList()));
+        original.add(updateHeaders);
+        compareDecoding(encode(original), original);
+    }
+
+    @Test
+    public void nullElementTest01() throws MALException {
+        List<Element> original = new ArrayList<>();
+        original.add(null);
+        original.add(new Union("<a href=\"x\">&amp;</a> ]]>"));
+        original.add(null);
+        byte[] encoded = encode(original);
+
+        XmlStreamingDecoder decoder = new XmlStreamingDecoder(encoded);
+        Assert.assertNull(decoder.decodeNullableAttribute());
+        Assert.assertEquals(new Union("<a href=\"x\">&amp;</a> ]]>"), decoder.decodeNullableAttribute());
+        Assert.assertEquals(XML_BEGINNING + "<Element xsi:nil=\"true\"/></malxml:Body>",
+                new String(decoder.getRemainingEncodedData()));
+        Assert.assertNull(decoder.decodeNullableElement(new Identifier()));
+        Assert.assertEquals(XML_EMPTY_DOCUMENT, new String(decoder.getRemainingEncodedData()));
+    }
+
+    /**
+     * Same malformed XML as MixingElementsTest.spaceTest01()
+     *
+     * @throws MALException required for XML-Decoder
+     */
+    @Test
+    public void spaceTest01() throws MALException {
+        String sampleXML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n\n<Body xmlns:malxml=\"http://www.ccsds.org/schema/malxml/MAL\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"> <Union malxml:type=\"281474993487887\">\n" +
+                " \n" +
+                "        <String>Hello\n</String></Union>\n" +
+                "\n\t   \t<Union> \t\t<Boolean>True\n</Boolean>\t\n\n</Union>\t  \t  \n " +
+                "\n\t   \t  <Time>\n \t\t<Time>    1970-01-01T00:00:00.999\n</Time>\t\n\n</Time>\t     \t  \n " +
+                "\n\t   \t<QoSLevel> \t\t<QoSLevel>\n\tBESTEFFORT\n   </QoSLevel>\t\n\n</QoSLevel>\t  \t  \n " +
+                "\t  \t<Pair>" +
+                "\n\t   \t<Union> \t\t<Double>\n\t123\n   </Double>\t\n\n</Union>\t  \t  \n " +
+                "<Attribute   \t\t  \n xsi:nil=\"  \t true \n   \"/>" +
+                "</Pair>    " +
+                " \n\n<Union>       <String>  \t  \n  </String></Union>\n" +
+                "</Body>";
+        XmlStreamingDecoder decoder = new XmlStreamingDecoder(sampleXML.getBytes());
+        Assert.assertEquals(Long.valueOf(281474993487887L), decoder.getShortForm());
+        Assert.assertTrue((decoder.decodeAttribute()).equals(new Union("Hello")));
+        Assert.assertTrue((decoder.decodeAttribute()).equals(new Union(true)));
+        Assert.assertTrue(decoder.decodeElement(new Time(0)).equals(new Time(999)));
+        Assert.assertTrue(decoder.decodeElement(QoSLevel.ASSURED).equals(QoSLevel.BESTEFFORT));
+        Assert.assertTrue(decoder.decodeElement(new Pair()).equals(new Pair(new Union(123.0), null)));
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n\n\n<Body xmlns:malxml=\"http://www.ccsds.org/schema/malxml/MAL\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">" +
+                "<Union>       <String>  \t  \n  </String></Union></Body>",
+                new String(decoder.getRemainingEncodedData()));
+        Assert.assertTrue((decoder.decodeAttribute()).equals(new Union("")));
+    }
+
+    @Test
+    public void largeListTest01() throws MALException {
+        IdentifierList identifierList = new IdentifierList();
+        for (int i = 0; i < 10000; i++) {
+            identifierList.add(i % 10 == 0 ? null : new Identifier("Identifier-" + i));
+        }
+        List<Element> original = new ArrayList<>();
+        original.add(identifierList);
+        original.add(new Identifier("Last"));
+        Assert.assertEquals(original, compareDecoding(encode(original), original));
+    }
+
+    /**
+     * Skipped elements stay in the remaining data.
+     *
+     * @throws MALException any exception from decoder
+     */
+    @Test
+    public void offsetTest01() throws MALException {
+        List<Element> original = new ArrayList<>();
+        original.add(new Identifier("First"));
+        original.add(new Blob(new byte[]{1, 2, 3}));
+        original.add(new Identifier("Last"));
+        byte[] encoded = encode(original);
+
+        XmlElementInputStream domStream = new XmlElementInputStream(encoded, 1, false);
+        XmlElementInputStream streamingStream = new XmlElementInputStream(encoded, 1, true);
+        Assert.assertEquals(new Blob(new byte[]{1, 2, 3}), domStream.readElement(new Blob(), null));
+        Assert.assertEquals(new Blob(new byte[]{1, 2, 3}), streamingStream.readElement(new Blob(), null));
+        Assert.assertEquals(XML_BEGINNING + "<Identifier><Identifier>First</Identifier></Identifier>" +
+                "<Identifier><Identifier>Last</Identifier></Identifier></malxml:Body>",
+                new String(streamingStream.getRemainingEncodedData()));
+        Assert.assertEquals(new String(domStream.getRemainingEncodedData()),
+                new String(streamingStream.getRemainingEncodedData()));
+    }
+
+    @Test
+    public void streamFactoryTest01() throws MALException {
+        List<Element> original = new ArrayList<>();
+        original.add(new Identifier("First"));
+        original.add(new Blob(new byte[]{1, 2, 3}));
+        byte[] encoded = encode(original);
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(Constants.STREAMING_DECODER_KEY, "true");
+        XmlStreamFactory factory = new XmlStreamFactory();
+        factory.init("malhttp", properties);
+        XmlElementInputStream inputStream = (XmlElementInputStream) factory.createInputStream(encoded, 1);
+        Assert.assertEquals(new Blob(new byte[]{1, 2, 3}), inputStream.readElement(new Blob(), null));
+        Assert.assertEquals(XML_BEGINNING + "<Identifier><Identifier>First</Identifier></Identifier></malxml:Body>",
+                new String(inputStream.getRemainingEncodedData()));
+    }
+
+    /**
+     * Blobs referring to parts are resolved from attachments by both decoders.
+     * URL based part is not loaded by the decoder.
+     *
+     * @throws MALException any exception from encoder or decoder
+     * @throws IOException error while writing the temporary file
+     */
+    @Test
+    public void attachmentTest01() throws MALException, IOException {
+        byte[] value = new byte[20000];
+        new Random(26).nextBytes(value);
+        File file = File.createTempFile("attachmentTest", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), value);
+        Blob urlBlob = new Blob(file.toURI().toString());
+        List<Element> original = new ArrayList<>();
+        original.add(new Blob(new byte[]{1, 2, 3}));
+        original.add(new Blob(value));
+        original.add(null);
+        original.add(FileBuilder.create().name(new Identifier("image")).content(urlBlob).build());
+        BlobAttachments attachments = new BlobAttachments(1024);
+        encoder.setAttachments(attachments);
+        byte[] encoded = encode(original);
+        Assert.assertEquals(2, attachments.getParts().size());
+
+        List<Element> samples = new ArrayList<>();
+        samples.add(new Blob());
+        samples.add(new Blob());
+        samples.add(new Blob());
+        samples.add(new org.ccsds.moims.mo.mal.structures.File());
+        List<Element> result = compareDecoding(encoded, samples, attachments);
+        Assert.assertEquals(original.get(0), result.get(0));
+        Assert.assertEquals(original.get(1), result.get(1));
+        Assert.assertNull(result.get(2));
+        Blob content = ((org.ccsds.moims.mo.mal.structures.File) result.get(3)).getContent();
+        Assert.assertSame(urlBlob, content);
+        Assert.assertTrue(content.isURLBased());
+        Assert.assertTrue(Arrays.equals(value, content.getValue()));
+    }
+
+    /**
+     * Reference without attachments or to a missing part is an error.
+     *
+     * @throws MALException any exception from encoder or decoder
+     */
+    @Test
+    public void attachmentTest02() throws MALException {
+        encoder.setAttachments(new BlobAttachments(1));
+        List<Element> original = new ArrayList<>();
+        original.add(new Blob(new byte[]{1, 2, 3}));
+        byte[] encoded = encode(original);
+        XmlBodyDecoder[] decoders = {new XmlDecoder(encoded), new XmlStreamingDecoder(encoded),
+                new XmlDecoder(encoded), new XmlStreamingDecoder(encoded)};
+        decoders[2].setAttachments(new BlobAttachments());
+        decoders[3].setAttachments(new BlobAttachments());
+        for (XmlBodyDecoder decoder : decoders) {
+            try {
+                decoder.decodeNullableBlob();
+                Assert.fail("Missing part should not be decoded");
+            } catch (MALException exp) {
+                Assert.assertTrue(exp.getMessage(), exp.getMessage().contains("cid:blob0."));
+            }
+        }
+    }
+
+    @Test
+    public void streamFactoryTest02() throws MALException {
+        BlobAttachments attachments = new BlobAttachments(2);
+        encoder.setAttachments(attachments);
+        List<Element> original = new ArrayList<>();
+        original.add(new Blob(new byte[]{1}));
+        original.add(new Blob(new byte[]{1, 2, 3}));
+        byte[] encoded = encode(original);
+
+        for (String isStreaming : new String[] {"false", "true"}) {
+            Map<String, String> properties = new HashMap<>();
+            properties.put(Constants.STREAMING_DECODER_KEY, isStreaming);
+            XmlStreamFactory factory = new XmlStreamFactory();
+            factory.init("malhttp", properties);
+            XmlElementInputStream inputStream = (XmlElementInputStream) factory.withAttachments(attachments)
+                    .createInputStream(encoded, 0);
+            Assert.assertEquals(new Blob(new byte[]{1, 2, 3}), inputStream.readElement(1, new Blob(), null));
+            Assert.assertEquals(new Blob(new byte[]{1}), inputStream.readElement(new Blob(), null));
+            Assert.assertEquals(new Blob(new byte[]{1, 2, 3}), inputStream.readElement(new Blob(), null));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import nasa.mo.mal.encoder.BlobAttachments;
+import nasa.mo.mal.encoder.Constants;
+import nasa.mo.mal.encoder.util.HexCodec;
+import nasa.mo.mal.encoder.util.builders.FileBuilder;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.encoding.MALEncodingContext;
+import org.ccsds.moims.mo.mal.structures.*;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test cases for streaming mode of XmlEncoder.
+ * Streaming mode must produce the same bytes as DOM mode.
+ */
+public class StreamingEncoderTest extends AbstractEncoderTest {
+
+    /**
+     * Encode elements by both modes and compare the outputs.
+     *
+     * @param elements elements to encode
+     * @param type malxml:type of each element. null for no type.
+     * @return encoded bytes from streaming mode
+     * @throws MALException any exception from encoder
+     */
+    private byte[] compareOutputs(List<Element> elements, Long type) throws MALException {
+        ByteArrayOutputStream domStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream streamingStream = new ByteArrayOutputStream();
+        XmlEncoder domEncoder = new XmlEncoder(domStream);
+        XmlEncoder streamingEncoder = new XmlEncoder(streamingStream, true);
+        for (Element each : elements) {
+            if (type == null) {
+                domEncoder.encodeNullableElement(each);
+                streamingEncoder.encodeNullableElement(each);
+            } else {
+                domEncoder.encodeElement(each, type);
+                streamingEncoder.encodeElement(each, type);
+            }
+        }
+        domEncoder.close();
+        streamingEncoder.close();
+        Assert.assertEquals(new String(domStream.toByteArray()), new String(streamingStream.toByteArray()));
+        Assert.assertTrue(Arrays.equals(domStream.toByteArray(), streamingStream.toByteArray()));
+        return streamingStream.toByteArray();
+    }
+
+    @Test
+    public void emptyDocumentTest01() throws MALException {
+        byte[] result = compareOutputs(new ArrayList<>(), null);
+        Assert.assertTrue(Arrays.equals(XML_EMPTY_DOCUMENT.getBytes(), result));
+    }
+
+    @Test
+    public void mixedElementsTest01() throws MALException {
+        InteractionTypeList interactionTypes = new InteractionTypeList();
+        interactionTypes.add(InteractionType.INVOKE);
+        interactionTypes.add(null);
+        interactionTypes.add(InteractionType.PUBSUB);
+
+        DoubleList doubles = new DoubleList();
+        doubles.add(Double.MIN_VALUE);
+        doubles.add(null);
+
+        UpdateHeaderList updateHeaders = new UpdateHeaderList();
+        updateHeaders.add(new UpdateHeader(new Time(0L), new URI(""), UpdateType.CREATION, new EntityKey()));
+        updateHeaders.add(null);
+
+        List<Element> original = new ArrayList<>();
+        original.add(new Identifier("Tämä on testi."));
+        original.add(UpdateType.CREATION);
+        original.add(new IdBooleanPair(new Identifier("Això és un test."), null));
+        original.add(new FloatList());
+        original.add(new FileList());
+        original.add(new URI("https://drive.google.com/drive/my-drive"));
+        original.add(new EntityKey(null, 1L, null, 2L));
+        original.add(interactionTypes);
+        original.add(null);
+        original.add(doubles);
+        original.add(new EntityRequest(new IdentifierList(), false, true, false, true, new EntityKeyList()));
+        original.add(updateHeaders);
+        compareOutputs(original, null);
+        compareOutputs(original.subList(0, 8), 123L);
+    }
+
+    @Test
+    public void specialCharacterTest01() throws MALException {
+        List<Element> original = new ArrayList<>();
+        original.add(new Union("<a href=\"x\">&amp;</a>\r\n\t\u0001 ]]>"));
+        original.add(new Union("Tämä on testi. 😀"));
+        original.add(new Union(""));
+        original.add(new Blob(new byte[0]));
+        original.add(new Blob(new byte[]{1, 2, 3}));
+        compareOutputs(original, null);
+    }
+
+    @Test
+    public void numbersTest01() throws MALException {
+        List<Element> original = new ArrayList<>();
+        original.add(new Union(Long.MIN_VALUE));
+        original.add(new Union(Long.MAX_VALUE));
+        original.add(new Union(Integer.MIN_VALUE));
+        original.add(new Union((short) -1));
+        original.add(new Union((byte) 127));
+        original.add(new Union(-0.0));
+        original.add(new Union(1234567.0));
+        original.add(new Union(0.1));
+        original.add(new Union(1.0E-7));
+        original.add(new Union(Double.NaN));
+        original.add(new Union(3.4028235E38f));
+        original.add(new Union(-1.5f));
+        original.add(new UOctet((short) 255));
+        original.add(new UShort(65535));
+        original.add(new UInteger(4294967295L));
+        original.add(new ULong(new BigInteger("18446744073709551615")));
+        original.add(new ULong(new BigInteger("0")));
+        compareOutputs(original, null);
+        compareOutputs(original, 123L);
+    }
+
+    /**
+     * Times and durations are written by the codecs directly to the buffer.
+     * Values in the same second, the same day, and outside of 1970 to 9999 are included.
+     *
+     * @throws MALException any exception from encoder
+     */
+    @Test
+    public void timesTest01() throws MALException {
+        List<Element> original = new ArrayList<>();
+        original.add(new Time(1508284800123L));
+        original.add(new Time(1508284800999L));
+        original.add(new Time(1508288400000L));
+        original.add(new Time(-1000L));
+        original.add(new Time(253402300800000L));
+        original.add(new FineTime(1508284800123456789L));
+        original.add(new FineTime(0L));
+        original.add(new Duration(0.0));
+        original.add(new Duration(-90095.12));
+        original.add(new Duration(2.5e11));
+        original.add(new Duration(1e20));
+        compareOutputs(original, null);
+        compareOutputs(original, 123L);
+    }
+
+    /**
+     * Hex text of a Blob bigger than the buffer is written in chunks.
+     *
+     * @throws MALException any exception from encoder
+     */
+    @Test
+    public void largeBlobTest01() throws MALException {
+        byte[] value = new byte[20000];
+        new Random(24).nextBytes(value);
+        List<Element> original = new ArrayList<>();
+        original.add(new Blob(new byte[]{-1}));
+        original.add(new Blob(value));
+        original.add(new Blob(Arrays.copyOf(value, 4096)));
+        compareOutputs(original, null);
+        compareOutputs(original, 123L);
+    }
+
+    /**
+     * Blobs at or above the threshold are written as xop:Include in both modes.
+     * Content-IDs are different for each BlobAttachments. They are replaced before comparing.
+     *
+     * @throws MALException any exception from encoder
+     */
+    @Test
+    public void attachmentTest01() throws MALException {
+        byte[] value = new byte[20000];
+        new Random(25).nextBytes(value);
+        Blob largeBlob = new Blob(value);
+        List<Element> original = new ArrayList<>();
+        original.add(new Blob(new byte[]{-1}));
+        original.add(largeBlob);
+        original.add(null);
+        original.add(FileBuilder.create().name(new Identifier("image")).content(largeBlob).build());
+
+        ByteArrayOutputStream domStream = new ByteArrayOutputStream();
+        ByteArrayOutputStream streamingStream = new ByteArrayOutputStream();
+        XmlEncoder domEncoder = new XmlEncoder(domStream);
+        XmlEncoder streamingEncoder = new XmlEncoder(streamingStream, true);
+        BlobAttachments domAttachments = new BlobAttachments(1024);
+        BlobAttachments streamingAttachments = new BlobAttachments(1024);
+        domEncoder.setAttachments(domAttachments);
+        streamingEncoder.setAttachments(streamingAttachments);
+        for (Element each : original) {
+            domEncoder.encodeNullableElement(each);
+            streamingEncoder.encodeNullableElement(each);
+        }
+        domEncoder.close();
+        streamingEncoder.close();
+
+        Assert.assertEquals(2, domAttachments.getParts().size());
+        Assert.assertEquals(2, streamingAttachments.getParts().size());
+        List<String> domIds = new ArrayList<>(domAttachments.getParts().keySet());
+        List<String> streamingIds = new ArrayList<>(streamingAttachments.getParts().keySet());
+        String streamingResult = new String(streamingStream.toByteArray());
+        for (int i = 0; i < domIds.size(); i++) {
+            Assert.assertSame(largeBlob, streamingAttachments.get(BlobAttachments.CID_SCHEME + streamingIds.get(i)));
+            streamingResult = streamingResult.replace(streamingIds.get(i), domIds.get(i));
+        }
+        String domResult = new String(domStream.toByteArray());
+        Assert.assertEquals(domResult, streamingResult);
+        Assert.assertTrue(domResult.startsWith(XML_BEGINNING + "<Blob><Blob>ff</Blob></Blob><Blob><Blob>" +
+                "<xop:Include xmlns:xop=\"http://www.w3.org/2004/08/xop/include\" href=\"cid:" + domIds.get(0) +
+                "\"/></Blob></Blob>"));
+        Assert.assertFalse(domResult.contains(HexCodec.encode(Arrays.copyOf(value, 16))));
+    }
+
+    @Test
+    public void largeListTest01() throws MALException {
+        IdentifierList identifierList = new IdentifierList();
+        for (int i = 0; i < 10000; i++) {
+            identifierList.add(i % 10 == 0 ? null : new Identifier("Identifier-" + i));
+        }
+        List<Element> original = new ArrayList<>();
+        original.add(identifierList);
+        compareOutputs(original, null);
+    }
+
+    /**
+     * Stream with existing content should not be changed.
+     *
+     * @throws MALException any exception from encoder
+     */
+    @Test
+    public void existingContentTest01() throws MALException {
+        stringToOutputStream(message, XML_EMPTY_DOCUMENT);
+        encoder = new XmlEncoder(message, true);
+        encoder.encodeElement(new Identifier("Test Identifier"));
+        encoder.close();
+        Assert.assertTrue(Arrays.equals(XML_EMPTY_DOCUMENT.getBytes(), message.toByteArray()));
+    }
+
+    @Test
+    public void streamFactoryTest01() throws MALException {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(Constants.STREAMING_ENCODER_KEY, "true");
+        XmlStreamFactory factory = new XmlStreamFactory();
+        factory.init("malhttp", properties);
+        MALEncodingContext context = new MALEncodingContext(mock(MALMessageHeader.class), null, 0, null, null);
+        Blob result = factory.encode(new Object[0], context);
+        Assert.assertTrue(Arrays.equals(XML_EMPTY_DOCUMENT.getBytes(), result.getValue()));
+
+        XmlElementOutputStream outputStream = (XmlElementOutputStream) factory.createOutputStream(message);
+        Assert.assertTrue(outputStream.isStreamingEncoder);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+
+/**
+ * Test cases for byte offsets of body elements.
+ */
+public class XmlBodyIndexTest {
+    private static final String FIRST = "<Identifier><Identifier>First</Identifier></Identifier>";
+    private static final String NULL_ELEMENT = "<Element xsi:nil=\"true\"/>";
+    private static final String LAST = "<Union malxml:type=\"1\"><String>a &gt; b</String></Union>";
+
+    @Test
+    public void noDecodedElementTest01() {
+        byte[] source = (AbstractEncoderTest.XML_BEGINNING + FIRST + NULL_ELEMENT + LAST + "</malxml:Body>").getBytes();
+        XmlBodyIndex bodyIndex = XmlBodyIndex.create(source);
+        Assert.assertNotNull(bodyIndex);
+        Assert.assertEquals(3, bodyIndex.getElementCount());
+        Assert.assertSame(source, bodyIndex.getRemainingEncodedData(new BitSet()));
+    }
+
+    @Test
+    public void someDecodedElementsTest01() {
+        byte[] source = (AbstractEncoderTest.XML_BEGINNING + FIRST + NULL_ELEMENT + LAST + "</malxml:Body>").getBytes();
+        XmlBodyIndex bodyIndex = XmlBodyIndex.create(source);
+        BitSet decodedElements = new BitSet();
+        decodedElements.set(1);
+        Assert.assertEquals(AbstractEncoderTest.XML_BEGINNING + FIRST + LAST + "</malxml:Body>",
+                new String(bodyIndex.getRemainingEncodedData(decodedElements)));
+        decodedElements.set(0);
+        Assert.assertEquals(AbstractEncoderTest.XML_BEGINNING + LAST + "</malxml:Body>",
+                new String(bodyIndex.getRemainingEncodedData(decodedElements)));
+        decodedElements.set(2);
+        Assert.assertEquals(AbstractEncoderTest.XML_EMPTY_DOCUMENT,
+                new String(bodyIndex.getRemainingEncodedData(decodedElements)));
+    }
+
+    /**
+     * Comments, CDATA, and '>' in attribute values should not be taken as elements.
+     */
+    @Test
+    public void specialContentTest01() {
+        String special = "<String a='&quot;>' b=\">\"><![CDATA[<a></a>]]></String>";
+        byte[] source = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- <Comment> -->\n" +
+                "<malxml:Body xmlns:malxml=\"http://www.ccsds.org/schema/malxml/MAL\">\n  " + special +
+                "\n  <!-- <Element/> -->\n  " + NULL_ELEMENT + "\n</malxml:Body>\n").getBytes();
+        XmlBodyIndex bodyIndex = XmlBodyIndex.create(source);
+        Assert.assertNotNull(bodyIndex);
+        Assert.assertEquals(2, bodyIndex.getElementCount());
+        BitSet decodedElements = new BitSet();
+        decodedElements.set(1);
+        Assert.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- <Comment> -->\n" +
+                "<malxml:Body xmlns:malxml=\"http://www.ccsds.org/schema/malxml/MAL\">" + special + "</malxml:Body>",
+                new String(bodyIndex.getRemainingEncodedData(decodedElements)));
+    }
+
+    @Test
+    public void emptyBodyTest01() {
+        byte[] source = AbstractEncoderTest.XML_EMPTY_DOCUMENT.getBytes();
+        XmlBodyIndex bodyIndex = XmlBodyIndex.create(source);
+        Assert.assertNotNull(bodyIndex);
+        Assert.assertEquals(0, bodyIndex.getElementCount());
+        Assert.assertSame(source, bodyIndex.getRemainingEncodedData(new BitSet()));
+    }
+
+    @Test
+    public void malformedBodyTest01() {
+        Assert.assertNull(XmlBodyIndex.create(null));
+        Assert.assertNull(XmlBodyIndex.create("".getBytes()));
+        Assert.assertNull(XmlBodyIndex.create((AbstractEncoderTest.XML_BEGINNING + FIRST).getBytes()));
+    }
+
+    /**
+     * Decoder returns the original bytes if nothing is decoded.
+     *
+     * @throws Exception any exception from decoder
+     */
+    @Test
+    public void decoderTest01() throws Exception {
+        byte[] source = (AbstractEncoderTest.XML_BEGINNING + NULL_ELEMENT + "</malxml:Body>").getBytes();
+        Assert.assertSame(source, new XmlDecoder(source).getRemainingEncodedData());
+        Assert.assertSame(source, new XmlStreamingDecoder(source).getRemainingEncodedData());
+    }
+
+    @Test
+    public void elementDocumentTest01() {
+        byte[] source = (AbstractEncoderTest.XML_BEGINNING + FIRST + NULL_ELEMENT + LAST + "</malxml:Body>").getBytes();
+        XmlBodyIndex bodyIndex = XmlBodyIndex.create(source);
+        Assert.assertEquals(AbstractEncoderTest.XML_BEGINNING + NULL_ELEMENT + "</malxml:Body>",
+                new String(bodyIndex.getElementDocument(1)));
+        Assert.assertEquals(AbstractEncoderTest.XML_BEGINNING + LAST + "</malxml:Body>",
+                new String(bodyIndex.getElementDocument(2)));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void elementDocumentTest02() {
+        byte[] source = (AbstractEncoderTest.XML_BEGINNING + FIRST + "</malxml:Body>").getBytes();
+        XmlBodyIndex.create(source).getElementDocument(1);
+    }
+}
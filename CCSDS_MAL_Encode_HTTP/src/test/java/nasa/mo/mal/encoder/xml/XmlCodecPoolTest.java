@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Identifier;
+import org.ccsds.moims.mo.mal.structures.IdentifierList;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Test cases for reusing encoders and decoders.
+ * Reused ones must produce the same results as new ones.
+ */
+public class XmlCodecPoolTest extends AbstractEncoderTest {
+
+    private byte[] encode(XmlEncoder xmlEncoder, ByteArrayOutputStream stream, String value) throws MALException {
+        IdentifierList identifiers = new IdentifierList();
+        identifiers.add(new Identifier(value));
+        identifiers.add(null);
+        xmlEncoder.encodeNullableElement(identifiers);
+        xmlEncoder.encodeElement(new UInteger(7L));
+        xmlEncoder.close();
+        return stream.toByteArray();
+    }
+
+    @Test
+    public void encoderTest01() throws MALException {
+        for (boolean isStreaming : new boolean[] {false, true}) {
+            XmlCodecPool pool = new XmlCodecPool(2);
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            XmlEncoder pooled = pool.acquireEncoder(stream, isStreaming);
+            byte[] first = encode(pooled, stream, "first");
+            pool.release(pooled);
+            Assert.assertEquals(1, pool.getPooledEncoderCount());
+
+            stream = new ByteArrayOutputStream();
+            XmlEncoder reused = pool.acquireEncoder(stream, isStreaming);
+            Assert.assertSame(pooled, reused);
+            Assert.assertEquals(0, pool.getPooledEncoderCount());
+            byte[] second = encode(reused, stream, "second");
+
+            ByteArrayOutputStream expectedStream = new ByteArrayOutputStream();
+            Assert.assertArrayEquals(encode(new XmlEncoder(expectedStream, isStreaming), expectedStream, "second"),
+                    second);
+            Assert.assertEquals(new String(first).replace("first", "second"), new String(second));
+        }
+    }
+
+    /**
+     * DOM and streaming encoders are pooled separately.
+     */
+    @Test
+    public void encoderTest02() {
+        XmlCodecPool pool = new XmlCodecPool(1);
+        XmlEncoder domEncoder = pool.acquireEncoder(new ByteArrayOutputStream(), false);
+        pool.release(domEncoder);
+        XmlEncoder streamingEncoder = pool.acquireEncoder(new ByteArrayOutputStream(), true);
+        Assert.assertNotSame(domEncoder, streamingEncoder);
+        Assert.assertEquals(1, pool.getPooledEncoderCount());
+        Assert.assertSame(domEncoder, pool.acquireEncoder(new ByteArrayOutputStream(), false));
+    }
+
+    @Test
+    public void decoderTest01() throws MALException {
+        XmlCodecPool pool = new XmlCodecPool(1);
+        XmlDecoder decoder = pool.acquireDecoder((XML_BEGINNING +
+                "<UInteger><UInteger>1</UInteger></UInteger></malxml:Body>").getBytes());
+        Assert.assertEquals(1L, ((UInteger) decoder.decodeElement(new UInteger())).getValue());
+        pool.release(decoder);
+
+        byte[] second = (XML_BEGINNING + "<UInteger><UInteger>2</UInteger></UInteger>" +
+                "<UInteger><UInteger>3</UInteger></UInteger></malxml:Body>").getBytes();
+        XmlDecoder reused = pool.acquireDecoder(second);
+        Assert.assertSame(decoder, reused);
+        Assert.assertEquals(2L, ((UInteger) reused.decodeElement(new UInteger())).getValue());
+        Assert.assertEquals(XML_BEGINNING + "<UInteger><UInteger>3</UInteger></UInteger></malxml:Body>",
+                new String(reused.getRemainingEncodedData()));
+        Assert.assertEquals(3L, ((UInteger) reused.decodeElement(new UInteger())).getValue());
+    }
+
+    /**
+     * Released codecs beyond the pool size are dropped.
+     */
+    @Test
+    public void boundedTest01() {
+        XmlCodecPool pool = new XmlCodecPool(2);
+        byte[] source = (XML_BEGINNING + "</malxml:Body>").getBytes();
+        for (int i = 0; i < 5; i++) {
+            pool.release(new XmlDecoder(source));
+            pool.release(new XmlEncoder(new ByteArrayOutputStream()));
+        }
+        Assert.assertEquals(2, pool.getPooledDecoderCount());
+        Assert.assertEquals(2, pool.getPooledEncoderCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSizeTest01() {
+        new XmlCodecPool(0);
+    }
+}
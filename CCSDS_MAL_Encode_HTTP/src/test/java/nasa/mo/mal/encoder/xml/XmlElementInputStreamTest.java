@@ -617,4 +617,59 @@ public class XmlElementInputStreamTest extends AbstractEncoderTest {
                 null, null);
         Assert.assertTrue(inputStream.readElement(null, context) instanceof IdentifierList);
     }
+
+    /**
+     * Testing reading an element by index.
+     * Other elements are not decoded and remain in the remaining data.
+     * @throws Exception any exception
+     */
+    @Test
+    public void readElementByIndexTest01() throws Exception {
+        String first = "<UInteger><UInteger>1</UInteger></UInteger>";
+        String second = "<UInteger><UInteger>2</UInteger></UInteger>";
+        String third = "<UInteger><UInteger>3</UInteger></UInteger>";
+        byte[] source = (XML_BEGINNING + first + second + third + "</malxml:Body>").getBytes();
+        header.setIsErrorMessage(true);
+        Object[] shortForms = new Object[1];
+        MALOperationStage stage = new MALOperationStage(uOctet, shortForms, shortForms);
+        MALOperation operation = new MALSendOperation(uShort, identifier, true, uShort, stage);
+        MALEncodingContext context = new MALEncodingContext(header, operation, 0,
+                null, null);
+        for (boolean isStreamingDecoder : new boolean[] {false, true}) {
+            inputStream = new XmlElementInputStream(source, 0, isStreamingDecoder);
+            Assert.assertSame(source, inputStream.getRemainingEncodedData());
+            Assert.assertEquals(3L, ((UInteger) inputStream.readElement(2, new UInteger(), context)).getValue());
+            Assert.assertEquals(XML_BEGINNING + first + second + "</malxml:Body>",
+                    new String(inputStream.getRemainingEncodedData()));
+            Assert.assertEquals(1L, ((UInteger) inputStream.readElement(new UInteger(), context)).getValue());
+            Assert.assertEquals(XML_BEGINNING + second + "</malxml:Body>",
+                    new String(inputStream.getRemainingEncodedData()));
+        }
+    }
+
+    /**
+     * Testing reading an element by index with offset.
+     * index is counted after the skipped elements.
+     * @throws Exception any exception
+     */
+    @Test
+    public void readElementByIndexTest02() throws Exception {
+        byte[] source = (XML_BEGINNING + "<UInteger><UInteger>1</UInteger></UInteger>" +
+                "<UInteger><UInteger>2</UInteger></UInteger></malxml:Body>").getBytes();
+        header.setIsErrorMessage(true);
+        Object[] shortForms = new Object[1];
+        MALOperationStage stage = new MALOperationStage(uOctet, shortForms, shortForms);
+        MALOperation operation = new MALSendOperation(uShort, identifier, true, uShort, stage);
+        MALEncodingContext context = new MALEncodingContext(header, operation, 0,
+                null, null);
+        inputStream = new XmlElementInputStream(source, 1, false);
+        Assert.assertEquals(2L, ((UInteger) inputStream.readElement(0, new UInteger(), context)).getValue());
+        Assert.assertEquals(2L, ((UInteger) inputStream.readElement(new UInteger(), context)).getValue());
+        try {
+            inputStream.readElement(1, new UInteger(), context);
+            Assert.fail("No element at index 1 after offset");
+        } catch (MALException exp) {
+            Assert.assertTrue(exp.getMessage().contains("index"));
+        }
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.xml;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Test cases for XmlNumberCodec.
+ * Output and parsed values must be the same as the boxed types.
+ */
+public class XmlNumberCodecTest {
+    private final byte[] buffer = new byte[64];
+    private final StringBuilder scratch = new StringBuilder();
+
+    private String formatLong(long value) {
+        return new String(buffer, 0, XmlNumberCodec.formatLong(value, buffer, 0), StandardCharsets.US_ASCII);
+    }
+
+    private String formatUnsignedLong(long value) {
+        return new String(buffer, 0, XmlNumberCodec.formatUnsignedLong(value, buffer, 0), StandardCharsets.US_ASCII);
+    }
+
+    private String formatDouble(double value) {
+        return new String(buffer, 0, XmlNumberCodec.formatDouble(value, buffer, 0, scratch),
+                StandardCharsets.US_ASCII);
+    }
+
+    private String formatFloat(float value) {
+        return new String(buffer, 0, XmlNumberCodec.formatFloat(value, buffer, 0, scratch),
+                StandardCharsets.US_ASCII);
+    }
+
+    private static Object parseByCodec(XmlNumberCodec.NumberParser<?> parser, String text) {
+        try {
+            return parser.parse(text.toCharArray(), 0, text.length());
+        } catch (NumberFormatException exp) {
+            return exp.getMessage();
+        }
+    }
+
+    private static Object parseByJdk(Function<String, ?> parser, String text) {
+        try {
+            return parser.apply(text.trim());
+        } catch (NumberFormatException exp) {
+            return exp.getMessage();
+        }
+    }
+
+    @Test
+    public void formatLongTest01() {
+        long[] values = {0, 1, -1, 9, 10, -10, 999999999999999999L, 1000000000000000000L,
+                Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            Assert.assertEquals(Long.toString(value), formatLong(value));
+            Assert.assertEquals(Long.toUnsignedString(value), formatUnsignedLong(value));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >> random.nextInt(64);
+            Assert.assertEquals(Long.toString(value), formatLong(value));
+            Assert.assertEquals(Long.toUnsignedString(value), formatUnsignedLong(value));
+        }
+    }
+
+    @Test
+    public void formatDoubleTest01() {
+        double[] values = {0.0, -0.0, 1.0, -1.0, 9999999.0, 1e7, 0.5, 0.001, 1e-300, 0.1, 4.35, 1e23,
+                Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double value : values) {
+            Assert.assertEquals(Double.toString(value), formatDouble(value));
+            Assert.assertEquals(Float.toString((float) value), formatFloat((float) value));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double value = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong())
+                    : Math.round(random.nextGaussian() * 1e6) / 1000.0;
+            Assert.assertEquals(Double.toString(value), formatDouble(value));
+            Assert.assertEquals(Float.toString((float) value), formatFloat((float) value));
+        }
+    }
+
+    /**
+     * Exact decimals are parsed here. Others are passed to the JDK. Both must give the same results.
+     */
+    @Test
+    public void parseDoubleTest01() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double value = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong())
+                    : Math.round(random.nextGaussian() * 1e6) / 1000.0;
+            String[] texts = {Double.toString(value), Float.toString((float) value),
+                    String.format(Locale.ROOT, "%." + random.nextInt(12) + "f", value),
+                    String.format(Locale.ROOT, "%." + random.nextInt(8) + "E", value)};
+            for (String text : texts) {
+                Assert.assertEquals(text, parseByJdk(Double::valueOf, text), parseByCodec(XmlNumberCodec::parseDouble, text));
+                Assert.assertEquals(text, parseByJdk(Float::valueOf, text), parseByCodec(XmlNumberCodec::parseFloat, text));
+            }
+        }
+    }
+
+    @Test
+    public void parseTest01() {
+        String[] texts = {"", " ", "+", "-", "1.", " .5 ", ".", "e5", "1e", "1e+", "1e-5", "1E400", "NaN",
+                "-Infinity", "0x1p3", "1d", "1f", "+12", "--1", "1_0", " 42\n", "\t-7 ", "007", "127", "128",
+                "-128", "-129", "12345678901234567890", "-9223372036854775808", "9223372036854775808",
+                "0000000000000000000000001", "1.000000000000000000000001", "\u0661\u0662"};
+        for (String text : texts) {
+            Assert.assertEquals(text, parseByJdk(Double::valueOf, text), parseByCodec(XmlNumberCodec::parseDouble, text));
+            Assert.assertEquals(text, parseByJdk(Float::valueOf, text), parseByCodec(XmlNumberCodec::parseFloat, text));
+            Assert.assertEquals(text, parseByJdk(Long::valueOf, text), parseByCodec(XmlNumberCodec::parseLong, text));
+            Assert.assertEquals(text, parseByJdk(Integer::valueOf, text), parseByCodec(XmlNumberCodec::parseInt, text));
+            Assert.assertEquals(text, parseByJdk(Short::valueOf, text), parseByCodec(XmlNumberCodec::parseShort, text));
+            Assert.assertEquals(text, parseByJdk(Byte::valueOf, text), parseByCodec(XmlNumberCodec::parseByte, text));
+            Assert.assertEquals(text, parseByJdk(BigInteger::new, text), parseByCodec(XmlNumberCodec::parseBigInteger, text));
+        }
+    }
+
+    @Test
+    public void parseRangeTest01() {
+        char[] chars = "xx 123 yy".toCharArray();
+        Assert.assertEquals(123L, XmlNumberCodec.parseLong(chars, 2, 7));
+        Assert.assertEquals(12.0, XmlNumberCodec.parseDouble(chars, 3, 5), 0);
+    }
+}
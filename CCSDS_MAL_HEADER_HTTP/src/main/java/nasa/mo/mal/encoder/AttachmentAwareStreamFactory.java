@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+
+package nasa.mo.mal.encoder;
+
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
+
+/**
+ * Stream factory which can send Blobs as parts of a multipart/related body.
+ * Transport checks for this interface since the encoding module is loaded by name.
+ */
+public interface AttachmentAwareStreamFactory {
+    /**
+     * Stream factory for a single message with the same settings as this one.
+     * Its output streams add Blobs to the attachments. Its input streams resolve references from the attachments.
+     *
+     * @param attachments Blobs of the message
+     * @return stream factory for the message
+     */
+    MALElementStreamFactory withAttachments(BlobAttachments attachments);
+}
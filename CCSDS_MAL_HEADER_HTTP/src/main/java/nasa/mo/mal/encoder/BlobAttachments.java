@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder;
+
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Blob values of a single message which travel as separate parts of a multipart/related body.
+ * Encoded body refers to each of them with "cid:" and its Content-ID instead of hexadecimal content.
+ *
+ * 1. Encoding side: encoder adds Blobs at or above the threshold. Transport writes them after the body.
+ * 2. Decoding side: transport puts the parts it has read. Decoder resolves references when a Blob is decoded.
+ *    Parts may be URL based Blobs. Their content is not loaded until Blob.getValue() is called.
+ *    Their files are deleted with deleteFiles() if the message is not handed over to the application.
+ *
+ * Not thread safe. All parts are added before the message is handed over to another thread.
+ */
+public final class BlobAttachments {
+    /**
+     * URL scheme of references to parts. RFC 2392
+     */
+    public static final String CID_SCHEME = "cid:";
+    private static final String FILE_SCHEME = "file:";
+    private static final String CONTENT_ID_DOMAIN = "@malhttp";
+
+    /**
+     * smallest Blob length which is sent as a part. 0 if nothing is added by the encoder.
+     */
+    private final int threshold;
+    private final String prefix;
+    private final Map<String, Blob> parts = new LinkedHashMap<>();
+
+    /**
+     * Constructor for decoding. Parts are put by the transport.
+     */
+    public BlobAttachments() {
+        this(0);
+    }
+
+    /**
+     * Constructor for encoding.
+     *
+     * @param threshold smallest Blob length which is sent as a part. 0 or less adds nothing.
+     */
+    public BlobAttachments(int threshold) {
+        this.threshold = threshold;
+        prefix = UUID.randomUUID().toString();
+    }
+
+    /**
+     * URL based Blobs are always attachable so that their content is not loaded into the encoded body.
+     *
+     * @param blob Blob to encode
+     * @return flag if the Blob is added as a part instead of being encoded in the body
+     */
+    public boolean isAttachable(Blob blob) {
+        return threshold > 0 && (blob.isURLBased() || blob.getLength() >= threshold);
+    }
+
+    /**
+     * Add a Blob as a new part.
+     *
+     * @param blob Blob to send as a part
+     * @return Content-ID of the part without angle brackets
+     */
+    public String add(Blob blob) {
+        String contentId = "blob" + parts.size() + "." + prefix + CONTENT_ID_DOMAIN;
+        parts.put(contentId, blob);
+        return contentId;
+    }
+
+    /**
+     * Put a part which is read from a multipart body.
+     *
+     * @param contentId Content-ID of the part without angle brackets
+     * @param blob content of the part
+     */
+    public void put(String contentId, Blob blob) {
+        parts.put(contentId, blob);
+    }
+
+    /**
+     * Resolving a reference from the encoded body.
+     *
+     * @param reference "cid:" URL or Content-ID
+     * @return content of the part
+     * @throws MALException if there is no such part
+     */
+    public Blob get(String reference) throws MALException {
+        String contentId = reference.regionMatches(true, 0, CID_SCHEME, 0, CID_SCHEME.length()) ?
+                reference.substring(CID_SCHEME.length()) : reference;
+        Blob blob = parts.get(contentId);
+        if (blob == null) {
+            throw new MALException("No multipart/related part for reference: " + reference);
+        }
+        return blob;
+    }
+
+    /**
+     * @return parts by Content-ID in the order they are added
+     */
+    public Map<String, Blob> getParts() {
+        return Collections.unmodifiableMap(parts);
+    }
+
+    public boolean isEmpty() {
+        return parts.isEmpty();
+    }
+
+    /**
+     * Deleting the files of URL based parts which are read into temporary files.
+     * Only for the decoding side. Blobs added by the encoder belong to the application.
+     */
+    public void deleteFiles() {
+        for (Blob blob : parts.values()) {
+            if (blob.isURLBased() && blob.getURL().regionMatches(true, 0, FILE_SCHEME, 0, FILE_SCHEME.length())) {
+                try {
+                    new File(URI.create(blob.getURL())).delete();
+                } catch (IllegalArgumentException exp) {
+                    // not a local file. nothing to delete.
+                }
+            }
+        }
+    }
+}
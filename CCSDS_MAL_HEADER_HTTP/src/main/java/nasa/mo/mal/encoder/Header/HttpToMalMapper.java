@@ -21,6 +21,7 @@ import java.util.Map;
  * @author Wai Phyo
  *         Created on 4/24/17.
  * Singleton instance to convert Http Head values to MAL Header
+ * There is no state. It is used by all threads without locking.
  */
 public class HttpToMalMapper {
     private static class SingletonHolder {
@@ -119,6 +120,8 @@ public class HttpToMalMapper {
 
     /**
      * Converting "." separated encoded String to decoded List
+     * Splitting is done by searching "." instead of regex.
+     * Same as String.split, trailing empty values are ignored.
      * @param encodedString Http Header Value of encoded Strings separated by "."
      * @return new Identifier List MAL object
      * @throws MALException null exceptions & possible exceptions from helper
@@ -127,10 +130,26 @@ public class HttpToMalMapper {
     private IdentifierList mapDomain(String encodedString) throws MALException {
         HeaderMappingHelper.checkForNull(encodedString);
         IdentifierList identifiers = new IdentifierList();
-        if (!encodedString.isEmpty()) {
-            for (String each : encodedString.trim().split(HeaderMappingHelper.DEC_MILLISECOND_SEPARATOR)) {
-                identifiers.add(new Identifier(HeaderMappingHelper.decodeString(each)));
+        if (encodedString.isEmpty()) {
+            return identifiers;
+        }
+        String trimmedString = encodedString.trim();
+        if (trimmedString.isEmpty()) {
+            identifiers.add(new Identifier(HeaderMappingHelper.decodeString(trimmedString)));
+            return identifiers;
+        }
+        int end = trimmedString.length();
+        while (end > 0 && trimmedString.startsWith(HeaderMappingHelper.DOT_SEPARATOR, end - 1)) {
+            end--;
+        }
+        int start = 0;
+        while (start < end) {
+            int separator = trimmedString.indexOf(HeaderMappingHelper.DOT_SEPARATOR, start);
+            if (separator < 0 || separator > end) {
+                separator = end;
             }
+            identifiers.add(new Identifier(HeaderMappingHelper.decodeString(trimmedString.substring(start, separator))));
+            start = separator + 1;
         }
         return identifiers;
     }
@@ -270,11 +289,13 @@ public class HttpToMalMapper {
 
     /**
      * Fill all fields of header with values
+     * NOTE: no lock is needed since only parameters are used.
+     * @param httpHeaderMap Http Headers of incoming message
      * @param malMessageHeader new MAL Message header to be updated with values
      * @throws MALException null exceptions
      */
-    public synchronized MALMessageHeader fillMalMessageHeader(final Map<String, String> httpHeaderMap,
-                                                              final MALMessageHeader malMessageHeader)
+    public MALMessageHeader fillMalMessageHeader(final Map<String, String> httpHeaderMap,
+                                                 final MALMessageHeader malMessageHeader)
             throws MALException {
         malMessageHeader.setURIFrom(mapURIFrom(httpHeaderMap.get(HttpHeaderKeys.URI_FROM.toString())));
         malMessageHeader.setAuthenticationId(mapAuthenticationId(httpHeaderMap.get(HttpHeaderKeys.AUTH_ID.toString())));
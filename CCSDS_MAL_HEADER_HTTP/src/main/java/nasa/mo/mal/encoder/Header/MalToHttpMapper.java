@@ -13,19 +13,21 @@ package nasa.mo.mal.encoder.Header;
 import com.sun.istack.internal.Nullable;
 import nasa.mo.mal.encoder.HttpBodyContentType;
 import nasa.mo.mal.encoder.util.HeaderMappingHelper;
+import nasa.mo.mal.encoder.util.HexCodec;
 import nasa.mo.mal.encoder.util.ObjectFactory;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.structures.*;
 import org.ccsds.moims.mo.mal.structures.URI;
 import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
 
-import java.net.*;
 import java.util.Iterator;
 import java.util.Map;
 
 /**
  * @author Wai Phyo
  *         Created on 4/3/17.
+ * Singleton instance to convert MAL Header to Http Header values
+ * There is no state. It is used by all threads without locking.
  */
 public class MalToHttpMapper implements HttpHeaderMapper {
 
@@ -38,8 +40,11 @@ public class MalToHttpMapper implements HttpHeaderMapper {
      * and shall refer to the Mission Operations HTTP Transport and XML Encoding document ‘CCSDS 000.0-W-0’.
      */
     private static final String MAL_VERSION_NUMBER = "1";
-    private static final String EMPTY_PORT = "-1";
     private static final String SCHEME_HOST_SEPARATOR = "://";
+    private static final String USER_INFO_SEPARATOR = "@";
+    private static final String IPV6_END = "]";
+    private static final String PATH_SEPARATORS = "/?#";
+    private static final String QUERY_SEPARATORS = "?#";
 
     private static class SingletonHolder {
         private static final MalToHttpMapper INSTANCE = new MalToHttpMapper();
@@ -82,40 +87,68 @@ public class MalToHttpMapper implements HttpHeaderMapper {
     private String mapAuthID(Blob authenticationId) throws MALException {
         HeaderMappingHelper.checkForNull(authenticationId);
         HeaderMappingHelper.checkForNull(authenticationId.getValue());
-        return HeaderMappingHelper.convertByteArrayToHexString(authenticationId.getValue());
+        return HexCodec.encode(authenticationId.getValue());
 
     }
 
     /**
      * This helper function will split URL into domain and paths.
-     * 1. split url with '/' and limit to 2. Hence, [domain, path].
+     * 1. find scheme, authority, and path by searching separators. java.net.URI is not created.
      * 2. validation for malformed url
      * 3. create new uniformed array with length 2.
      * 4. update values based on whitebook specification.
-     * TODO need thorough testing
+     *    port is added only if the url has a port. user info, query, and fragment are ignored.
      * @param uri incoming URL
      * @return String array with 2 cells. [Domain, path]
      * @throws MALException malformed uri
      */
     private String[] uriPathSplitter(final String uri) throws MALException {
-        String[] splitURI = new String[2];
-        try {
-            java.net.URI javaURI = new java.net.URI(uri);
-            StringBuilder uriFirstPart = ObjectFactory.createStringBuilder();
-            uriFirstPart.append(javaURI.getScheme())
-                    .append(SCHEME_HOST_SEPARATOR)
-                    .append(javaURI.getHost());
-            if (!javaURI.getPath().equals(EMPTY_PORT)) {
-                uriFirstPart.append(IP_PORT_SEPARATOR).append(javaURI.getPort());
+        int schemeEnd = uri.indexOf(SCHEME_HOST_SEPARATOR);
+        if (schemeEnd <= 0) {
+            throw new MALException(BAD_URI_ERR + ": " + uri);
+        }
+        int authorityStart = schemeEnd + SCHEME_HOST_SEPARATOR.length();
+        int authorityEnd = indexOfAny(uri, authorityStart, PATH_SEPARATORS);
+        int pathEnd = indexOfAny(uri, authorityEnd, QUERY_SEPARATORS);
+        int hostStart = uri.lastIndexOf(USER_INFO_SEPARATOR, authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+        int hostEnd = uri.lastIndexOf(IP_PORT_SEPARATOR, authorityEnd - 1);
+        if (hostEnd < hostStart || uri.lastIndexOf(IPV6_END, authorityEnd - 1) > hostEnd) {
+            hostEnd = authorityEnd;
+        }
+        if (hostEnd == hostStart) {
+            throw new MALException(BAD_URI_ERR + ": " + uri);
+        }
+        for (int i = hostEnd + 1; i < authorityEnd; i++) {
+            if (!Character.isDigit(uri.charAt(i))) {
+                throw new MALException(BAD_URI_ERR + ": " + uri);
             }
-            splitURI[0] = uriFirstPart.toString();
-            splitURI[1] = javaURI.getPath();
-        } catch (URISyntaxException exp) {
-            throw new MALException("URISyntaxException in splitting URI " + exp.toString());
         }
+        int domainEnd = hostEnd + 1 < authorityEnd ? authorityEnd : hostEnd;
+        String[] splitURI = new String[2];
+        splitURI[0] = hostStart == authorityStart ? uri.substring(0, domainEnd)
+                : uri.substring(0, authorityStart) + uri.substring(hostStart, domainEnd);
+        splitURI[1] = uri.substring(authorityEnd, pathEnd);
         return splitURI;
     }
 
+    /**
+     * @param value String to search
+     * @param start index to start searching
+     * @param characters characters to find
+     * @return index of the first character found or length of the String
+     */
+    private static int indexOfAny(final String value, final int start, final String characters) {
+        for (int i = start; i < value.length(); i++) {
+            if (characters.indexOf(value.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return value.length();
+    }
+
     /**
      * Encoding URL-To to several fields.
      *
@@ -132,30 +165,44 @@ public class MalToHttpMapper implements HttpHeaderMapper {
      *
      * @param uriTo Target URL
      * @param httpEndPoint Http Endpoint URL
+     * @param host Host header is appended
+     * @param requestTarget Request Target header is appended
+     * @param malUriTo URI-To header is appended
      * @throws MALException malformed uris
      */
     public void mapUrlTo(URI uriTo, URI httpEndPoint, StringBuffer host, StringBuffer requestTarget, StringBuffer malUriTo) throws MALException {
+        String[] mappedUrlTo = mapUrlTo(uriTo, httpEndPoint);
+        host.append(mappedUrlTo[0]);
+        requestTarget.append(mappedUrlTo[1]);
+        malUriTo.append(mappedUrlTo[2]);
+    }
+
+    /**
+     * Encoding URL-To to Host, Request Target, and URI-To.
+     * Same as {@link #mapUrlTo(URI, URI, StringBuffer, StringBuffer, StringBuffer)}
+     * without buffers.
+     *
+     * @param uriTo Target URL
+     * @param httpEndPoint Http Endpoint URL
+     * @return String array with 3 cells. [Host, Request Target, URI-To]. Unused cells are empty.
+     * @throws MALException malformed uris
+     */
+    private String[] mapUrlTo(URI uriTo, URI httpEndPoint) throws MALException {
         HeaderMappingHelper.checkForNull(uriTo);
         HeaderMappingHelper.checkForNull(uriTo.getValue());
         HeaderMappingHelper.checkForNull(httpEndPoint);
         HeaderMappingHelper.checkForNull(httpEndPoint.getValue());
 
+        String[] mappedUrlTo = {HeaderMappingHelper.EMPTY_STRING, HeaderMappingHelper.EMPTY_STRING,
+                HeaderMappingHelper.EMPTY_STRING};
+        String[] splitURI = uriPathSplitter(httpEndPoint.getValue());
+        mappedUrlTo[0] = HeaderMappingHelper.encodeURI(splitURI[0]);
         if (uriTo.getValue().equals(httpEndPoint.getValue())) {
-            String[] splitURI = uriPathSplitter(httpEndPoint.getValue());
-            if (splitURI.length != 2) {
-                throw new MALException(BAD_URI_ERR);
-            }
-            host.append(HeaderMappingHelper.encodeURI(splitURI[0]));
-            requestTarget.append(HeaderMappingHelper.encodeURI(splitURI[1].length() == 0 ? "/" : splitURI[1]));
+            mappedUrlTo[1] = HeaderMappingHelper.encodeURI(splitURI[1].length() == 0 ? "/" : splitURI[1]);
         } else {
-            malUriTo.append(HeaderMappingHelper.encodeURI(uriTo.getValue()));
-            String[] splitURI = uriPathSplitter(httpEndPoint.getValue());
-            if (splitURI.length != 2) {
-                throw new MALException(BAD_URI_ERR);
-            }
-            host.append(HeaderMappingHelper.encodeURI(splitURI[0]));
+            mappedUrlTo[2] = HeaderMappingHelper.encodeURI(uriTo.getValue());
         }
-
+        return mappedUrlTo;
     }
 
     /**
@@ -406,9 +453,15 @@ public class MalToHttpMapper implements HttpHeaderMapper {
         return MAL_VERSION_NUMBER;
     }
 
-    public synchronized void generateHeader(MALMessageHeader malMessageHeader,
-                                                           Map<String, String> headerMap) throws MALException {
-        //Map<String, String> headerMap = new HashMap<>();
+    /**
+     * Mapping fields in MAL Message Header which don't depend on Http endpoint.
+     * NOTE: no lock is needed since only parameters are used.
+     * @param malMessageHeader MAL Message Header with all properties
+     * @param headerMap map to be filled with http keys and values
+     * @throws MALException null and other exceptions
+     */
+    public void generateHeader(MALMessageHeader malMessageHeader,
+                               Map<String, String> headerMap) throws MALException {
         headerMap.put(HttpHeaderKeys.URI_FROM.toString(),
                 mapUrlFrom(malMessageHeader.getURIFrom()));
         headerMap.put(HttpHeaderKeys.AUTH_ID.toString(),
@@ -445,33 +498,30 @@ public class MalToHttpMapper implements HttpHeaderMapper {
                 mapVersionNumber());
         headerMap.put(HttpHeaderKeys.DOMAIN.toString(),
                 mapDomain(malMessageHeader.getDomain()));
-        //return headerMap;
     }
 
     /**
      * Mapping all fields in MAL Message Header to respective Http Headers
+     * NOTE: no lock is needed since only parameters are used.
      * @param malMessageHeader MAL Message Header with all properties
      * @return a map of http keys and values
      * @throws MALException null and other exceptions
      */
-    public synchronized Map<String, String> generateHeader(MALMessageHeader malMessageHeader,
-                                                           Map<String, String> headerMap,
-                                                           URI httpEndPoint, boolean xmlEncoded,
-                                                           @Nullable String encoderName) throws MALException {
+    public Map<String, String> generateHeader(MALMessageHeader malMessageHeader,
+                                              Map<String, String> headerMap,
+                                              URI httpEndPoint, boolean xmlEncoded,
+                                              @Nullable String encoderName) throws MALException {
         generateHeader(malMessageHeader, headerMap);
         try {
-            StringBuffer host = ObjectFactory.createStringBuffer();
-            StringBuffer requestTarget = ObjectFactory.createStringBuffer();
-            StringBuffer malUriTo = ObjectFactory.createStringBuffer();
-            mapUrlTo(malMessageHeader.getURITo(), httpEndPoint, host, requestTarget, malUriTo);
-            if (host.length() > 0) {
-                headerMap.put(HttpHeaderKeys.HOST.toString(), host.toString());
+            String[] mappedUrlTo = mapUrlTo(malMessageHeader.getURITo(), httpEndPoint);
+            if (!mappedUrlTo[0].isEmpty()) {
+                headerMap.put(HttpHeaderKeys.HOST.toString(), mappedUrlTo[0]);
             }
-            if (requestTarget.length() > 0) {
-                headerMap.put(HttpHeaderKeys.REQUEST_TARGET.toString(), requestTarget.toString());
+            if (!mappedUrlTo[1].isEmpty()) {
+                headerMap.put(HttpHeaderKeys.REQUEST_TARGET.toString(), mappedUrlTo[1]);
             }
-            if (malUriTo.length() > 0) {
-                headerMap.put(HttpHeaderKeys.URI_TO.toString(), malUriTo.toString());
+            if (!mappedUrlTo[2].isEmpty()) {
+                headerMap.put(HttpHeaderKeys.URI_TO.toString(), mappedUrlTo[2]);
             }
         } catch (MALException malException) {
             throw new MALException("Pattern not supported");
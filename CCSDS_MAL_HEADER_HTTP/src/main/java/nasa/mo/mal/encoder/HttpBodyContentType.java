@@ -16,7 +16,11 @@ package nasa.mo.mal.encoder;
  */
 public enum HttpBodyContentType {
     XML_ENCODED("application/mal-xml"),
-    OTHER_ENCODED("application/mal");
+    OTHER_ENCODED("application/mal"),
+    /**
+     * body with Blobs as separate parts. RFC 2387
+     */
+    MULTIPART_RELATED("multipart/related");
 
     private String contentType;
 
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.util;
+
+import net.time4j.Moment;
+import net.time4j.format.expert.ChronoFormatter;
+import net.time4j.format.expert.PatternType;
+import net.time4j.scale.TimeScale;
+import net.time4j.tz.ZonalOffset;
+import org.ccsds.moims.mo.mal.MALException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codec for UTC date times with a fixed number of digits for fraction of second.
+ * Output is identical to Time4J ChronoFormatter with the patterns in Format.
+ *
+ * 1. Values are written to byte arrays and parsed from char sequences without Time4J objects.
+ * 2. Date time prefix (e.g. yyyy-MM-ddTHH:mm:ss) of the last formatted second is kept.
+ *    A value in the same second only writes its fraction. In the same day, only HH:mm:ss is updated.
+ * 3. Values before 1970 or after 9999 are formatted and parsed by Time4J.
+ * 4. Text which is not exactly in the format (e.g. leap second, invalid date) is parsed by Time4J.
+ *    So lenient inputs and error messages stay the same.
+ *
+ * Not thread safe. Each thread is expected to have its own instance.
+ */
+public final class DateTimeCodec {
+    /**
+     * biggest possible output including values formatted by Time4J.
+     */
+    public static final int MAX_SIZE = 32;
+    private static final long SECONDS_PER_DAY = 86400L;
+    /**
+     * epoch day of 0001-01-01
+     */
+    private static final long EPOCH_DAY_OF_YEAR_ONE = -719162L;
+    private static final int MIN_FAST_YEAR = 1970;
+    private static final int MAX_FAST_YEAR = 9999;
+    /**
+     * days before each month in a non leap year.
+     */
+    private static final int[] DAYS_BEFORE_MONTH = {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365};
+
+    /**
+     * Supported formats.
+     */
+    public enum Format {
+        /**
+         * xsd:dateTime of MAL Time in millisecond.
+         */
+        XML_TIME("uuuu-MM-dd'T'HH:mm:ss.SSS", false, TimeUnit.MILLISECONDS),
+        /**
+         * xsd:dateTime of MAL FineTime in nanosecond.
+         */
+        XML_FINE_TIME("uuuu-MM-dd'T'HH:mm:ss.SSSSSSSSS", false, TimeUnit.NANOSECONDS),
+        /**
+         * CCSDS ASCII Time Code B (day of year) of Http headers in millisecond.
+         */
+        HEADER_TIME("uuuu-DDD'T'HH:mm:ss.SSS", true, TimeUnit.MILLISECONDS);
+
+        private final ChronoFormatter<Moment> formatter;
+        private final boolean isDayOfYear;
+        private final TimeUnit unit;
+        private final long unitsPerSecond;
+        private final int fractionDigits;
+        private final long maxFastSecond;
+
+        Format(String pattern, boolean isDayOfYear, TimeUnit unit) {
+            formatter = ChronoFormatter.ofMomentPattern(pattern, PatternType.CLDR, Locale.ROOT, ZonalOffset.UTC);
+            this.isDayOfYear = isDayOfYear;
+            this.unit = unit;
+            unitsPerSecond = unit.convert(1, TimeUnit.SECONDS);
+            fractionDigits = Long.toString(unitsPerSecond).length() - 1;
+            maxFastSecond = Math.min(Long.MAX_VALUE / unitsPerSecond,
+                    (epochDayOfYear(MAX_FAST_YEAR + 1) * SECONDS_PER_DAY)) - 1;
+        }
+    }
+
+    private final Format format;
+    /**
+     * yyyy-MM-ddTHH:mm:ss or yyyy-DDDTHH:mm:ss of prefixSecond.
+     */
+    private final byte[] prefix;
+    private final byte[] scratch = new byte[MAX_SIZE];
+    private final int timeOfDayIndex;
+    private long prefixSecond = -1;
+    private long prefixDay = -1;
+
+    /**
+     * Constructor
+     *
+     * @param format date time format of this codec
+     */
+    public DateTimeCodec(Format format) {
+        this.format = format;
+        prefix = (format.isDayOfYear ? "0000-000T00:00:00" : "0000-00-00T00:00:00")
+                .getBytes(StandardCharsets.US_ASCII);
+        timeOfDayIndex = prefix.length - 8;
+    }
+
+    /**
+     * @return date time format of this codec
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @param value time since 1970-01-01T00:00:00 in the unit of the format
+     * @return formatted date time
+     */
+    public String format(long value) {
+        if (value < 0 || value / format.unitsPerSecond > format.maxFastSecond) {
+            return formatByTime4J(value);
+        }
+        int length = format(value, scratch, 0);
+        return new String(scratch, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write formatted date time as ASCII bytes.
+     *
+     * @param value time since 1970-01-01T00:00:00 in the unit of the format
+     * @param buffer destination which has at least MAX_SIZE bytes after position
+     * @param position index of the first byte
+     * @return position after the last written byte
+     */
+    public int format(long value, byte[] buffer, int position) {
+        long second = value / format.unitsPerSecond;
+        if (value < 0 || second > format.maxFastSecond) {
+            String text = formatByTime4J(value);
+            for (int i = 0; i < text.length(); i++) {
+                buffer[position++] = (byte) text.charAt(i);
+            }
+            return position;
+        }
+        if (second != prefixSecond) {
+            updatePrefix(second);
+        }
+        System.arraycopy(prefix, 0, buffer, position, prefix.length);
+        position += prefix.length;
+        buffer[position++] = '.';
+        long fraction = value - second * format.unitsPerSecond;
+        for (int i = position + format.fractionDigits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return position + format.fractionDigits;
+    }
+
+    /**
+     * @param text formatted date time
+     * @return time since 1970-01-01T00:00:00 in the unit of the format
+     * @throws MALException invalid date time
+     */
+    public long parse(CharSequence text) throws MALException {
+        long result = parseExactFormat(text);
+        return result < 0 ? parseByTime4J(text.toString()) : result;
+    }
+
+    /**
+     * Format as before via Moment.
+     * Second and fraction are split by truncating. So negative values have negative fractions.
+     *
+     * @param value time since 1970-01-01T00:00:00 in the unit of the format
+     * @return formatted date time
+     */
+    private String formatByTime4J(long value) {
+        long second = format.unit.toSeconds(value);
+        long nanosecond = format.unit.toNanos(value - format.unit.convert(second, TimeUnit.SECONDS));
+        return format.formatter.format(Moment.of(second, (int) nanosecond, TimeScale.POSIX));
+    }
+
+    /**
+     * Parse as before via Moment.
+     *
+     * @param text formatted date time
+     * @return time since 1970-01-01T00:00:00 in the unit of the format
+     * @throws MALException Time4J parse exception
+     */
+    private long parseByTime4J(String text) throws MALException {
+        try {
+            Moment parsedMoment = format.formatter.parse(text);
+            return format.unit.convert(parsedMoment.getPosixTime(), TimeUnit.SECONDS)
+                    + format.unit.convert(parsedMoment.getNanosecond(), TimeUnit.NANOSECONDS);
+        } catch (java.text.ParseException exp) {
+            throw new MALException(exp.getLocalizedMessage(), exp);
+        }
+    }
+
+    /**
+     * Rewrite the prefix for a new second.
+     * Date part is only rewritten if the day is changed.
+     *
+     * @param second seconds since 1970-01-01T00:00:00
+     */
+    private void updatePrefix(long second) {
+        long day = second / SECONDS_PER_DAY;
+        if (day != prefixDay) {
+            writeDate(day);
+            prefixDay = day;
+        }
+        int secondOfDay = (int) (second - day * SECONDS_PER_DAY);
+        writeTwoDigits(secondOfDay / 3600, timeOfDayIndex);
+        writeTwoDigits(secondOfDay / 60 % 60, timeOfDayIndex + 3);
+        writeTwoDigits(secondOfDay % 60, timeOfDayIndex + 6);
+        prefixSecond = second;
+    }
+
+    /**
+     * @param day days since 1970-01-01
+     */
+    private void writeDate(long day) {
+        int year = yearOfEpochDay(day);
+        int dayOfYear = (int) (day - epochDayOfYear(year));
+        prefix[0] = (byte) ('0' + year / 1000);
+        prefix[1] = (byte) ('0' + year / 100 % 10);
+        writeTwoDigits(year % 100, 2);
+        if (format.isDayOfYear) {
+            dayOfYear++;
+            prefix[5] = (byte) ('0' + dayOfYear / 100);
+            writeTwoDigits(dayOfYear % 100, 6);
+            return;
+        }
+        int leapDay = isLeapYear(year) ? 1 : 0;
+        int month = 1;
+        while (dayOfYear >= daysBeforeMonth(month + 1, leapDay)) {
+            month++;
+        }
+        writeTwoDigits(month, 5);
+        writeTwoDigits(dayOfYear - daysBeforeMonth(month, leapDay) + 1, 8);
+    }
+
+    private void writeTwoDigits(int value, int index) {
+        prefix[index] = (byte) ('0' + value / 10);
+        prefix[index + 1] = (byte) ('0' + value % 10);
+    }
+
+    /**
+     * Parse the exact format between 1970 and 9999 without Time4J.
+     *
+     * @param text formatted date time
+     * @return time in the unit of the format, or -1 if it needs to be parsed by Time4J
+     */
+    private long parseExactFormat(CharSequence text) {
+        int dateLength = format.isDayOfYear ? 8 : 10;
+        if (text.length() != dateLength + 10 + format.fractionDigits) {
+            return -1;
+        }
+        int year = parseDigits(text, 0, 4);
+        if (year < MIN_FAST_YEAR || text.charAt(4) != '-') {
+            return -1;
+        }
+        int leapDay = isLeapYear(year) ? 1 : 0;
+        int dayOfYear;
+        if (format.isDayOfYear) {
+            dayOfYear = parseDigits(text, 5, 8);
+            if (dayOfYear < 1 || dayOfYear > 365 + leapDay) {
+                return -1;
+            }
+        } else {
+            int month = parseDigits(text, 5, 7);
+            if (month < 1 || month > 12 || text.charAt(7) != '-') {
+                return -1;
+            }
+            int dayOfMonth = parseDigits(text, 8, 10);
+            if (dayOfMonth < 1 || dayOfMonth > daysBeforeMonth(month + 1, leapDay) - daysBeforeMonth(month, leapDay)) {
+                return -1;
+            }
+            dayOfYear = daysBeforeMonth(month, leapDay) + dayOfMonth;
+        }
+        int hour = parseDigits(text, dateLength + 1, dateLength + 3);
+        int minute = parseDigits(text, dateLength + 4, dateLength + 6);
+        int second = parseDigits(text, dateLength + 7, dateLength + 9);
+        if (text.charAt(dateLength) != 'T' || text.charAt(dateLength + 3) != ':' ||
+                text.charAt(dateLength + 6) != ':' || text.charAt(dateLength + 9) != '.' ||
+                hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return -1;
+        }
+        long fraction = 0;
+        for (int i = dateLength + 10; i < text.length(); i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            fraction = fraction * 10 + digit;
+        }
+        long seconds = (epochDayOfYear(year) + dayOfYear - 1) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+        if (seconds > format.maxFastSecond) {
+            return -1;
+        }
+        return seconds * format.unitsPerSecond + fraction;
+    }
+
+    /**
+     * @param text text
+     * @param start index of the first digit
+     * @param end index after the last digit
+     * @return parsed value or -1 if there is a non ASCII digit
+     */
+    private static int parseDigits(CharSequence text, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * @param month 1 to 13
+     * @param leapDay 1 for a leap year. 0 otherwise.
+     * @return days in the year before the first day of the month
+     */
+    static int daysBeforeMonth(int month, int leapDay) {
+        return DAYS_BEFORE_MONTH[month - 1] + (month > 2 ? leapDay : 0);
+    }
+
+    static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * @param year year after 0
+     * @return days since 1970-01-01 of the first day of the year
+     */
+    static long epochDayOfYear(int year) {
+        long previousYear = year - 1;
+        return EPOCH_DAY_OF_YEAR_ONE + previousYear * 365 + previousYear / 4 - previousYear / 100 + previousYear / 400;
+    }
+
+    /**
+     * @param day days since 1970-01-01. not negative.
+     * @return year of the day
+     */
+    static int yearOfEpochDay(long day) {
+        int year = MIN_FAST_YEAR + (int) (day / 365);
+        while (epochDayOfYear(year) > day) {
+            year--;
+        }
+        return year;
+    }
+}
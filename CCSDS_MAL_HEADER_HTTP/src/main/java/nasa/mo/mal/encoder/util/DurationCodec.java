@@ -0,0 +1,616 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.util;
+
+import org.ccsds.moims.mo.mal.MALException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Codec for MAL Duration (seconds with fraction) in xsd:duration format.
+ * Output is identical to the Calendar based encoding:
+ * Years, months, and days are counted from 1970-01-01T00:00:00.
+ *
+ * 1. Date and time parts are calculated from epoch days without Calendar.
+ * 2. Fraction of second is taken from the decimal digits of Double.toString() without BigDecimal.
+ * 3. Parsing is a single pass over the text without regular expressions.
+ * 4. Durations over 9999 years, and text which is not in the usual form are handled by Calendar and regular expressions.
+ *    So unusual inputs and error messages stay the same.
+ *
+ * Not thread safe. Each thread is expected to have its own instance.
+ */
+public final class DurationCodec {
+    /**
+     * biggest possible output including values formatted by Calendar.
+     */
+    public static final int MAX_SIZE = 64;
+    private static final long SECONDS_PER_DAY = 86400L;
+    private static final int MAX_FAST_YEAR = 9999;
+    private static final long MAX_FAST_SECOND = DateTimeCodec.epochDayOfYear(MAX_FAST_YEAR + 1) * SECONDS_PER_DAY - 1;
+    /**
+     * biggest number of digits in a date or time part which is parsed without Integer.parseInt()
+     */
+    private static final int MAX_FAST_DIGITS = 9;
+    /**
+     * biggest mantissa which is exact in a double. 2^53
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /**
+     * number of digits which is always smaller than MAX_EXACT_MANTISSA
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+    /**
+     * powers of ten which are exact in a double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final long[] LONG_POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+    private static final TimeZone UTC_TIME_ZONE = TimeZone.getTimeZone("UTC");
+    private static final Pattern XSD_DURATION_PATTERN = Pattern.compile("([-]?)P([0-9]+Y)?([0-9]+M)?([0-9]+D)?(T.+)?");
+    private static final Pattern XSD_DURATION_TIME_PATTERN =
+            Pattern.compile("T([0-9]+H)?([0-9]+M)?([0-9]+(\\.[0-9]+)?S)?");
+
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int DAY = 2;
+    private static final int HOUR = 3;
+    private static final int MINUTE = 4;
+    private static final int SECOND = 5;
+
+    /**
+     * digits of the formatted double.
+     */
+    private final StringBuilder number = new StringBuilder(32);
+    /**
+     * parsed years, months, days, hours, minutes. Seconds are kept as double.
+     */
+    private final int[] parts = new int[SECOND];
+    private final byte[] scratch = new byte[MAX_SIZE];
+    /**
+     * year, month, day of month of the last calculated day. 0 based month and day.
+     */
+    private int year;
+    private int month;
+    private int dayOfMonth;
+
+    /**
+     * @param duration seconds with fraction of second
+     * @return xsd:duration https://www.w3schools.com/xml/schema_dtypes_date.asp
+     * @throws MALException NaN or infinite
+     */
+    public String format(double duration) throws MALException {
+        int length = format(duration, scratch, 0);
+        return new String(scratch, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write xsd:duration as ASCII bytes.
+     *
+     * Steps.
+     * 1. prefix "-" if double is negative value.
+     * 2. Convert whole seconds to days since 1970-01-01 and second of day.
+     * 3. Convert days to year, month, date since 1970-01-01.
+     * 4. if each part is bigger than 0, add that date or time part to duration.
+     * 5. Fraction of second is added to seconds as double.
+     *
+     * @param duration seconds with fraction of second
+     * @param buffer destination which has at least MAX_SIZE bytes after position
+     * @param position index of the first byte
+     * @return position after the last written byte
+     * @throws MALException NaN or infinite
+     */
+    public int format(double duration, byte[] buffer, int position) throws MALException {
+        checkDuration(duration);
+        if (Math.abs(duration) > MAX_FAST_SECOND) {
+            String text = formatByCalendar(duration);
+            for (int i = 0; i < text.length(); i++) {
+                buffer[position++] = (byte) text.charAt(i);
+            }
+            return position;
+        }
+        if (duration < 0) {
+            buffer[position++] = '-';
+        }
+        buffer[position++] = 'P';
+        long wholeSeconds = Math.abs((long) duration);
+        long day = wholeSeconds / SECONDS_PER_DAY;
+        int secondOfDay = (int) (wholeSeconds - day * SECONDS_PER_DAY);
+        setDate(day);
+        position = writePart(year - 1970, 'Y', buffer, position);
+        position = writePart(month, 'M', buffer, position);
+        position = writePart(dayOfMonth, 'D', buffer, position);
+
+        double fraction = getFractionOfSecond(duration);
+        if (secondOfDay == 0 && fraction == 0) {
+            return position;
+        }
+        buffer[position++] = 'T';
+        position = writePart(secondOfDay / 3600, 'H', buffer, position);
+        position = writePart(secondOfDay / 60 % 60, 'M', buffer, position);
+        int second = secondOfDay % 60;
+        if (fraction != 0) {
+            number.setLength(0);
+            number.append(second + fraction);
+            for (int i = 0; i < number.length(); i++) {
+                buffer[position++] = (byte) number.charAt(i);
+            }
+            buffer[position++] = 'S';
+        } else {
+            position = writePart(second, 'S', buffer, position);
+        }
+        return position;
+    }
+
+    /**
+     * @param duration seconds with fraction of second
+     * @throws MALException NaN or infinite
+     */
+    public static void checkDuration(double duration) throws MALException {
+        if (Double.isNaN(duration) || Double.isInfinite(duration)) {
+            throw new MALException("Invalid Duration");
+        }
+    }
+
+    /**
+     * Decoding XSD Duration format back to seconds.
+     *
+     * 1. Optional '-' followed by 'P'.
+     * 2. Date parts in the order of Y, M, D.
+     * 3. If 'T' exists, at least one time part must follow it in the order of H, M, S.
+     * 4. Hours and minutes are added to 1970-01-01 first. Then years, months, days as Calendar.add() does.
+     * 5. Seconds with fraction are added to the seconds since 1970-01-01.
+     *
+     * @param xsdDuration String in XSD formation
+     * @return seconds in double
+     * @throws MALException invalid types or number format exceptions
+     */
+    public double parse(CharSequence xsdDuration) throws MALException {
+        int length = xsdDuration.length();
+        boolean isNegative = length > 0 && xsdDuration.charAt(0) == '-';
+        int index = isNegative ? 1 : 0;
+        if (index >= length || xsdDuration.charAt(index++) != 'P') {
+            return parseByCalendar(xsdDuration.toString());
+        }
+        Arrays.fill(parts, 0);
+        double seconds = 0.0;
+        int lastPart = -1;
+        boolean hasTime = false;
+        while (index < length) {
+            if (!hasTime && xsdDuration.charAt(index) == 'T') {
+                hasTime = true;
+                lastPart = HOUR - 1;
+                index++;
+                continue;
+            }
+            int end = index;
+            while (end < length && isDigit(xsdDuration.charAt(end))) {
+                end++;
+            }
+            if (end == index || end >= length) {
+                return parseByCalendar(xsdDuration.toString());
+            }
+            int part = getPart(xsdDuration.charAt(end), hasTime);
+            if (part <= lastPart) {
+                return parseByCalendar(xsdDuration.toString());
+            }
+            if (part == SECOND) {
+                if (xsdDuration.charAt(end) == '.') {
+                    end++;
+                    int fractionStart = end;
+                    while (end < length && isDigit(xsdDuration.charAt(end))) {
+                        end++;
+                    }
+                    if (end == fractionStart || end >= length || xsdDuration.charAt(end) != 'S') {
+                        return parseByCalendar(xsdDuration.toString());
+                    }
+                }
+                seconds = parseSeconds(xsdDuration, index, end);
+            } else if (end - index > MAX_FAST_DIGITS) {
+                return parseByCalendar(xsdDuration.toString());
+            } else {
+                parts[part] = parseDigits(xsdDuration, index, end);
+            }
+            lastPart = part;
+            index = end + 1;
+        }
+        if (lastPart == HOUR - 1) {
+            return parseByCalendar(xsdDuration.toString());
+        }
+        long calendarSeconds = addToEpoch(parts);
+        if (calendarSeconds < 0) {
+            return parseByCalendar(xsdDuration.toString());
+        }
+        double duration = seconds + calendarSeconds;
+        if (isNegative) {
+            duration *= -1;
+        }
+        return duration;
+    }
+
+    /**
+     * @param designator character after the digits
+     * @param hasTime flag if 'T' has been passed
+     * @return index of the part. or Integer.MIN_VALUE if the designator is invalid.
+     */
+    private static int getPart(char designator, boolean hasTime) {
+        if (hasTime) {
+            switch (designator) {
+                case 'H':
+                    return HOUR;
+                case 'M':
+                    return MINUTE;
+                case 'S':
+                case '.':
+                    return SECOND;
+                default:
+                    return Integer.MIN_VALUE;
+            }
+        }
+        switch (designator) {
+            case 'Y':
+                return YEAR;
+            case 'M':
+                return MONTH;
+            case 'D':
+                return DAY;
+            default:
+                return Integer.MIN_VALUE;
+        }
+    }
+
+    private static boolean isDigit(char value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private static int parseDigits(CharSequence text, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            result = result * 10 + text.charAt(i) - '0';
+        }
+        return result;
+    }
+
+    /**
+     * Same as Double.parseDouble() for [0-9]+(\.[0-9]+)?
+     * The value is exact if there are at most 15 digits and they are divided by an exact power of ten.
+     *
+     * @param text text
+     * @param start index of the first digit
+     * @param end index after the last digit
+     * @return seconds
+     */
+    private static double parseSeconds(CharSequence text, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            char current = text.charAt(i);
+            if (current == '.') {
+                fractionDigits = 0;
+                continue;
+            }
+            if (mantissa != 0 || current != '0') {
+                digits++;
+            }
+            mantissa = mantissa * 10 + current - '0';
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+            if (digits > MAX_EXACT_DIGITS) {
+                return Double.parseDouble(text.subSequence(start, end).toString());
+            }
+        }
+        if (fractionDigits <= 0) {
+            return mantissa;
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        return mantissa / POWERS_OF_TEN[fractionDigits];
+    }
+
+    /**
+     * Same as Calendar.add() to 1970-01-01 in the order of hour, minute, year, month, day.
+     * Day of month is pinned to the last day of month after adding years and after adding months.
+     *
+     * @param parts years, months, days, hours, minutes
+     * @return seconds since 1970-01-01. -1 if it is after 9999
+     */
+    private long addToEpoch(int[] parts) {
+        long secondsOfTime = parts[HOUR] * 3600L + parts[MINUTE] * 60L;
+        long day = secondsOfTime / SECONDS_PER_DAY;
+        long secondOfDay = secondsOfTime - day * SECONDS_PER_DAY;
+        if (secondsOfTime > MAX_FAST_SECOND) {
+            return -1;
+        }
+        setDate(day);
+        long newYear = (long) year + parts[YEAR];
+        if (newYear > MAX_FAST_YEAR) {
+            return -1;
+        }
+        pinDayOfMonth((int) newYear, month);
+        long newMonth = (long) month + parts[MONTH];
+        newYear += newMonth / 12;
+        if (newYear > MAX_FAST_YEAR) {
+            return -1;
+        }
+        pinDayOfMonth((int) newYear, (int) (newMonth % 12));
+        int leapDay = DateTimeCodec.isLeapYear(year) ? 1 : 0;
+        day = DateTimeCodec.epochDayOfYear(year) + DateTimeCodec.daysBeforeMonth(month + 1, leapDay)
+                + dayOfMonth + parts[DAY];
+        long seconds = day * SECONDS_PER_DAY + secondOfDay;
+        return seconds > MAX_FAST_SECOND ? -1 : seconds;
+    }
+
+    /**
+     * Set year and month. Day of month is changed to the last day of month if it is after that.
+     *
+     * @param newYear year
+     * @param newMonth 0 based month
+     */
+    private void pinDayOfMonth(int newYear, int newMonth) {
+        year = newYear;
+        month = newMonth;
+        int leapDay = DateTimeCodec.isLeapYear(year) ? 1 : 0;
+        int daysInMonth = DateTimeCodec.daysBeforeMonth(month + 2, leapDay)
+                - DateTimeCodec.daysBeforeMonth(month + 1, leapDay);
+        dayOfMonth = Math.min(dayOfMonth, daysInMonth - 1);
+    }
+
+    /**
+     * Set year, month and day of month of the day.
+     *
+     * @param day days since 1970-01-01
+     */
+    private void setDate(long day) {
+        year = DateTimeCodec.yearOfEpochDay(day);
+        int dayOfYear = (int) (day - DateTimeCodec.epochDayOfYear(year));
+        int leapDay = DateTimeCodec.isLeapYear(year) ? 1 : 0;
+        month = 0;
+        while (dayOfYear >= DateTimeCodec.daysBeforeMonth(month + 2, leapDay)) {
+            month++;
+        }
+        dayOfMonth = dayOfYear - DateTimeCodec.daysBeforeMonth(month + 1, leapDay);
+    }
+
+    /**
+     * Write the value followed by the designator if the value is bigger than 0.
+     */
+    private static int writePart(int value, char designator, byte[] buffer, int position) {
+        if (value <= 0) {
+            return position;
+        }
+        int end = position + stringSize(value);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        buffer[end] = (byte) designator;
+        return end + 1;
+    }
+
+    private static int stringSize(int value) {
+        int size = 1;
+        while (value >= 10) {
+            value /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Same as BigDecimal.valueOf(duration).remainder(BigDecimal.ONE).abs().doubleValue()
+     * Decimal digits of Double.toString() is an unscaled value with a scale as in BigDecimal.
+     * Fraction is the unscaled value modulo 10^scale. It is exact if it is divided by an exact power of ten.
+     *
+     * @param duration finite value
+     * @return fraction of second. not negative.
+     */
+    private double getFractionOfSecond(double duration) {
+        number.setLength(0);
+        number.append(duration);
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean isFraction = false;
+        int length = number.length();
+        for (int i = 0; i < length; i++) {
+            char current = number.charAt(i);
+            if (current == '.') {
+                isFraction = true;
+            } else if (current == 'E') {
+                boolean isNegativeExponent = number.charAt(i + 1) == '-';
+                int exponent = 0;
+                for (int j = isNegativeExponent ? i + 2 : i + 1; j < length; j++) {
+                    exponent = exponent * 10 + number.charAt(j) - '0';
+                }
+                scale += isNegativeExponent ? exponent : -exponent;
+                break;
+            } else if (current != '-') {
+                if (unscaled != 0 || current != '0') {
+                    digits++;
+                }
+                unscaled = unscaled * 10 + current - '0';
+                if (isFraction) {
+                    scale++;
+                }
+            }
+        }
+        if (digits >= LONG_POWERS_OF_TEN.length) {
+            return BigDecimal.valueOf(duration).remainder(BigDecimal.ONE).abs().doubleValue();
+        }
+        if (scale <= 0) {
+            return 0.0;
+        }
+        long fraction = scale < LONG_POWERS_OF_TEN.length ? unscaled % LONG_POWERS_OF_TEN[scale] : unscaled;
+        if (fraction == 0) {
+            return 0.0;
+        }
+        if (fraction <= MAX_EXACT_MANTISSA && scale < POWERS_OF_TEN.length) {
+            return fraction / POWERS_OF_TEN[scale];
+        }
+        return BigDecimal.valueOf(fraction, scale).doubleValue();
+    }
+
+    /**
+     * Calendar based encoding for durations after 9999 years.
+     *
+     * 1. Start the time with beginning of POSIX time. (1970-01-01T00:00:00.000...)
+     * 2. Add the seconds from duration.
+     * 3. Subtract from beginning of POSIX time for year, month, date, ...
+     * 4. if each subtraction is bigger than 0, add that date or time part to duration.
+     * 5. prefix "-" if double is negative value.
+     *
+     * @param duration second with fraction of second in decimal.
+     * @return xsd: duration
+     */
+    private static String formatByCalendar(double duration) {
+        StringBuilder result = ObjectFactory.createStringBuilder();
+        if (duration < 0) {
+            result.append("-");
+        }
+        result.append("P");
+
+        Calendar minCalendar = Calendar.getInstance(UTC_TIME_ZONE);
+        Calendar durationCalendar = Calendar.getInstance(UTC_TIME_ZONE);
+
+        minCalendar.setTimeInMillis(0);
+        durationCalendar.setTimeInMillis(TimeUnit.SECONDS.toMillis(Math.abs((long) duration)));
+
+        int year = durationCalendar.get(Calendar.YEAR) - minCalendar.get(Calendar.YEAR);
+        int month = durationCalendar.get(Calendar.MONTH) - minCalendar.get(Calendar.MONTH);
+        int day = durationCalendar.get(Calendar.DAY_OF_MONTH) - minCalendar.get(Calendar.DAY_OF_MONTH);
+        int hour = durationCalendar.get(Calendar.HOUR_OF_DAY) - minCalendar.get(Calendar.HOUR_OF_DAY);
+        int minute = durationCalendar.get(Calendar.MINUTE) - minCalendar.get(Calendar.MINUTE);
+        int second = durationCalendar.get(Calendar.SECOND) - minCalendar.get(Calendar.SECOND);
+        BigDecimal fractionOfSecond = BigDecimal.valueOf(duration).remainder(BigDecimal.ONE).abs();
+        boolean hasFraction = BigDecimal.ZERO.compareTo(fractionOfSecond) != 0;
+        if (year > 0) {
+            result.append(year).append("Y");
+        }
+        if (month > 0) {
+            result.append(month).append("M");
+        }
+        if (day > 0) {
+            result.append(day).append("D");
+        }
+        if (hour == 0 && minute == 0 && second == 0 && !hasFraction) {
+            return result.toString();
+        }
+        result.append("T");
+        if (hour > 0) {
+            result.append(hour).append("H");
+        }
+        if (minute > 0) {
+            result.append(minute).append("M");
+        }
+        if (second > 0 || hasFraction) {
+            if (hasFraction) {
+                result.append(second + fractionOfSecond.doubleValue()).append("S");
+            } else {
+                result.append(second).append("S");
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Regular expression and Calendar based decoding for durations which are not in the usual form.
+     *
+     * 1. Check Date part of duration is correct.
+     * 1.1 If time part (T) exists in duration, there must be something following it.
+     * 2. Check Time part.
+     * 3. Create a calendar and set to minimum POSIX time.
+     * 4. start filling in values if they are not null.
+     * 5. get seconds.
+     *
+     * @param xsdDuration String in XSD formation
+     * @return seconds in double
+     * @throws MALException invalid types or number format exceptions
+     */
+    private static double parseByCalendar(String xsdDuration) throws MALException {
+        Matcher dateMatcher = XSD_DURATION_PATTERN.matcher(xsdDuration);
+        double duration = 0.0;
+        if (!dateMatcher.matches()) {
+            throw new MALException("Invalid Date Expression in XSD Duration.");
+        }
+        Calendar durationCalendar = Calendar.getInstance(UTC_TIME_ZONE);
+        durationCalendar.setTimeInMillis(0);
+        String negative = dateMatcher.group(1);
+        String year = dateMatcher.group(2);
+        String month = dateMatcher.group(3);
+        String day = dateMatcher.group(4);
+        String time = dateMatcher.group(5);
+        if (time != null) {
+            Matcher timeMatcher = XSD_DURATION_TIME_PATTERN.matcher(time);
+            if (!timeMatcher.matches()) {
+                throw new MALException("Invalid Time Expression in XSD Duration.");
+            }
+            String hour = timeMatcher.group(1);
+            String minute = timeMatcher.group(2);
+            String second = timeMatcher.group(3);
+            if (hour != null) {
+                durationCalendar.add(Calendar.HOUR_OF_DAY, parseDurationSegment(hour));
+            }
+            if (minute != null) {
+                durationCalendar.add(Calendar.MINUTE, parseDurationSegment(minute));
+            }
+            if (second != null) {
+                try {
+                    duration += Double.parseDouble(second.substring(0, second.length() - 1));
+                } catch (NumberFormatException exp) {
+                    throw new MALException(exp.getLocalizedMessage(), exp);
+                }
+            }
+        }
+        if (year != null) {
+            durationCalendar.add(Calendar.YEAR, parseDurationSegment(year));
+        }
+        if (month != null) {
+            durationCalendar.add(Calendar.MONTH, parseDurationSegment(month));
+        }
+        if (day != null) {
+            durationCalendar.add(Calendar.DAY_OF_MONTH, parseDurationSegment(day));
+        }
+        duration += TimeUnit.MILLISECONDS.toSeconds(durationCalendar.getTimeInMillis());
+        if (negative != null && negative.equals("-")) {
+            duration *= -1;
+        }
+        return duration;
+    }
+
+    /**
+     * Converting to integer
+     * @param input String starts with 1 or more numbers, ending with 1 character.
+     * @return integer
+     * @throws MALException Number Format Exception
+     */
+    private static int parseDurationSegment(String input) throws MALException {
+        try {
+            return Integer.parseInt(input.substring(0, input.length() - 1));
+        } catch (NumberFormatException exp) {
+            throw new MALException(exp.getLocalizedMessage(), exp);
+        }
+    }
+}
@@ -11,11 +11,6 @@
 package nasa.mo.mal.encoder.util;
 
 import com.sun.xml.internal.messaging.saaj.packaging.mime.internet.MimeUtility;
-import net.time4j.Moment;
-import net.time4j.format.expert.ChronoFormatter;
-import net.time4j.format.expert.PatternType;
-import net.time4j.scale.TimeScale;
-import net.time4j.tz.ZonalOffset;
 import org.ccsds.moims.mo.mal.MALException;
 
 import java.io.IOException;
@@ -23,8 +18,6 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Locale;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author wphyo
@@ -32,11 +25,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class HeaderMappingHelper {
 
-    private static final ChronoFormatter<Moment> HEADER_TIME_FORMATTER = ChronoFormatter.ofMomentPattern(
-            "uuuu-DDD'T'HH:mm:ss.SSS", PatternType.CLDR, Locale.ROOT, ZonalOffset.UTC);
+    /**
+     * Codec is not thread safe. Each thread keeps its own so that the cached date prefix is reused.
+     */
+    private static final ThreadLocal<DateTimeCodec> HEADER_TIME_CODEC =
+            ThreadLocal.withInitial(() -> new DateTimeCodec(DateTimeCodec.Format.HEADER_TIME));
 
     private static final String URI_ENCODE_ERR = "Bad URI Encoding";
-    private static final String BYTE_TO_HEX_STRING_FORMATTER = "%02x";
     public static final String EMPTY_STRING = "";
     public static final String DOT_SEPARATOR = ".";
     public static final String DEC_MILLISECOND_SEPARATOR = "\\.";
@@ -69,9 +64,8 @@ public class HeaderMappingHelper {
      * NOTE: in BlueBook, 'd' stands for fraction of a second which can have 1 to n characters.
      * Since the incoming timeInMilliSeconds is in milliseconds, d is translated as milliseconds.
      *
-     * Since Java.Time does not support leap second, Time4J is used.
+     * Since Java.Time does not support leap second, Time4J is used for values which DateTimeCodec does not format.
      * Time4J moment can create leap seconds.
-     * Formatting is done via ChronoFormatter.
      * https://stackoverflow.com/questions/44205662/formatting-time4j-moment/44208333#44208333
      *
      * @param timeInMilliSeconds Input timeInMilliSeconds in millisecond
@@ -80,17 +74,13 @@ public class HeaderMappingHelper {
      */
     public static String encodeTime(Long timeInMilliSeconds) throws MALException {
         checkForNull(timeInMilliSeconds);
-
-        long timeInSec = TimeUnit.MILLISECONDS.toSeconds(timeInMilliSeconds);
-        long millisecond = timeInMilliSeconds - TimeUnit.SECONDS.toMillis(timeInSec);
-        Moment ls = Moment.of(timeInSec, (int)TimeUnit.MILLISECONDS.toNanos(millisecond), TimeScale.POSIX);
-        return HEADER_TIME_FORMATTER.format(ls);
+        return HEADER_TIME_CODEC.get().format(timeInMilliSeconds);
     }
 
     /**
      * Decoding back to milliseonds in long form from Date Time format.
      *
-     * Moment is used to account for leap seconds.
+     * Text which is not exactly in the format (e.g. leap seconds) is parsed via Moment.
      * Moment.POSIX will return POSIX time in second.
      * Moment.Nanosecond will return the nanosecond.
      * Combine them to get to the original value.
@@ -100,15 +90,7 @@ public class HeaderMappingHelper {
      * @throws MALException invalid formats
      */
     public static long decodeTime(String dateTime) throws MALException {
-        long result = 0;
-        try {
-            Moment parsedMoment = HEADER_TIME_FORMATTER.parse(dateTime);
-            result += TimeUnit.SECONDS.toMillis(parsedMoment.getPosixTime());
-            result += TimeUnit.NANOSECONDS.toMillis(parsedMoment.getNanosecond());
-        } catch (java.text.ParseException exp) {
-            throw new MALException(exp.getLocalizedMessage(), exp);
-        }
-        return result;
+        return HEADER_TIME_CODEC.get().parse(dateTime);
     }
 
     /**
@@ -176,44 +158,26 @@ public class HeaderMappingHelper {
      * Converting Byte Array to String in hexadecimals.
      *
      * 1. Null and Empty Array validation to return empty string.
-     * 2. Convert each value to hex string.
+     * 2. Convert each value to hex string by HexCodec.
      * 3. return entire string
      *
      * @param byteArray Array of bytes
      * @return String with HEX character for each byte value.
      */
     public static String convertByteArrayToHexString(final byte[] byteArray) {
-        if (byteArray == null || byteArray.length == 0) {
-            return "";
-        }
-        StringBuilder result = ObjectFactory.createStringBuilder();
-        for (byte each : byteArray) {
-            result.append(String.format(BYTE_TO_HEX_STRING_FORMATTER, each));
-        }
-        return result.toString();
+        return HexCodec.encode(byteArray);
     }
 
     /**
      * Convert from String to Byte Array
      *
-     * if the string is empty -> nothing to convert, return null
-     * found algorithm from here
-     * https://stackoverflow.com/questions/140131/convert-a-string-representation-of-a-hex-dump-to-a-byte-array-using-java
+     * if the string is empty -> nothing to convert, return empty array
+     * Each pair of characters is converted by HexCodec.
      *
      * @param hexString String with Hexadecimal Values
      * @return byte array
      */
     public static byte[] convertHexStringToByteArray(String hexString) {
-        if (hexString.length() == 0) {
-            return new byte[0];
-        } else {
-            int len = hexString.length();
-            byte[] data = new byte[len / 2];
-            for (int i = 0; i < len; i += 2) {
-                data[i / 2] = (byte) ((Character.digit(hexString.charAt(i), 16) << 4)
-                        + Character.digit(hexString.charAt(i+1), 16));
-            }
-            return data;
-        }
+        return HexCodec.decode(hexString);
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Table driven codec for bytes in lower case hexadecimal. i.e. Blob and Authentication ID.
+ * Output is identical to String.format("%02x") for each byte.
+ *
+ * 1. Encoding looks up both characters of a byte in a single table. No String or Formatter is created per byte.
+ * 2. Decoding looks up ASCII characters in a table. Other characters are still converted by Character.digit()
+ *    so that unusual inputs are decoded the same way as before.
+ * 3. Byte arrays and ByteBuffers are supported. Heap ByteBuffers are processed with their backing arrays.
+ *
+ * Stateless and thread safe.
+ */
+public final class HexCodec {
+    private static final int BASE_16 = 16;
+    private static final int BITS_PER_DIGIT = 4;
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /**
+     * two lower case hex characters for each unsigned byte value.
+     */
+    private static final byte[] ENCODE_TABLE = new byte[256 * 2];
+    /**
+     * value of each ASCII character. -1 if it is not a hex digit. Same as Character.digit(c, 16)
+     */
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            ENCODE_TABLE[i * 2] = DIGITS[i >>> BITS_PER_DIGIT];
+            ENCODE_TABLE[i * 2 + 1] = DIGITS[i & 0x0f];
+        }
+        for (char c = 0; c < DECODE_TABLE.length; c++) {
+            DECODE_TABLE[c] = (byte) Character.digit(c, BASE_16);
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    /**
+     * Encode the whole array.
+     *
+     * @param bytes bytes to encode
+     * @return hex String. empty String for null or empty array.
+     */
+    public static String encode(final byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return "";
+        }
+        byte[] result = new byte[bytes.length * 2];
+        encode(bytes, 0, bytes.length, result, 0);
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encode part of an array as ASCII bytes.
+     *
+     * @param bytes bytes to encode
+     * @param offset index of the first byte to encode
+     * @param length number of bytes to encode
+     * @param buffer destination which has at least (length * 2) bytes after position
+     * @param position index of the first output byte
+     * @return position after the last written byte
+     */
+    public static int encode(final byte[] bytes, int offset, int length, byte[] buffer, int position) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int index = (bytes[i] & 0xff) * 2;
+            buffer[position++] = ENCODE_TABLE[index];
+            buffer[position++] = ENCODE_TABLE[index + 1];
+        }
+        return position;
+    }
+
+    /**
+     * Encode remaining bytes of source to destination as ASCII bytes.
+     * Position of both buffers are moved forward.
+     *
+     * @param source bytes to encode
+     * @param destination buffer which has at least (source.remaining() * 2) bytes remaining
+     * @throws BufferOverflowException if destination does not have enough space
+     */
+    public static void encode(final ByteBuffer source, ByteBuffer destination) {
+        int length = source.remaining();
+        if (destination.remaining() < length * 2) {
+            throw new BufferOverflowException();
+        }
+        if (source.hasArray() && destination.hasArray()) {
+            int end = encode(source.array(), source.arrayOffset() + source.position(), length,
+                    destination.array(), destination.arrayOffset() + destination.position());
+            source.position(source.position() + length);
+            destination.position(end - destination.arrayOffset());
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            int index = (source.get() & 0xff) * 2;
+            destination.put(ENCODE_TABLE[index]);
+            destination.put(ENCODE_TABLE[index + 1]);
+        }
+    }
+
+    /**
+     * Decode hex String to byte array.
+     * Same as the previous Character.digit() based conversion:
+     * 1. empty String results in empty array.
+     * 2. odd length results in StringIndexOutOfBoundsException (IndexOutOfBoundsException for other CharSequence).
+     * 3. invalid characters are not validated. They are decoded as -1.
+     *
+     * @param hex hex String
+     * @return decoded bytes
+     */
+    public static byte[] decode(final CharSequence hex) {
+        byte[] result = new byte[hex.length() / 2];
+        decode(hex, result, 0);
+        return result;
+    }
+
+    /**
+     * Decode hex text to remaining space of destination.
+     * Position of destination is moved forward.
+     *
+     * @param hex hex String
+     * @param destination buffer which has at least (hex.length() / 2) bytes remaining
+     * @throws BufferOverflowException if destination does not have enough space
+     */
+    public static void decode(final CharSequence hex, ByteBuffer destination) {
+        int length = hex.length() / 2;
+        if (destination.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        if (destination.hasArray()) {
+            int end = decode(hex, destination.array(), destination.arrayOffset() + destination.position());
+            destination.position(end - destination.arrayOffset());
+            return;
+        }
+        int hexLength = hex.length();
+        for (int i = 0; i < hexLength; i += 2) {
+            destination.put((byte) ((digit(hex.charAt(i)) << BITS_PER_DIGIT) + digit(hex.charAt(i + 1))));
+        }
+    }
+
+    /**
+     * Decode hex text to a byte array.
+     *
+     * @param hex hex String
+     * @param buffer destination which has at least (hex.length() / 2) bytes after position
+     * @param position index of the first output byte
+     * @return position after the last written byte
+     */
+    public static int decode(final CharSequence hex, byte[] buffer, int position) {
+        int hexLength = hex.length();
+        for (int i = 0; i < hexLength; i += 2) {
+            buffer[position++] = (byte) ((digit(hex.charAt(i)) << BITS_PER_DIGIT) + digit(hex.charAt(i + 1)));
+        }
+        return position;
+    }
+
+    /**
+     * @param c hex character
+     * @return value of the character. -1 if it is not a hex digit.
+     */
+    private static int digit(char c) {
+        return c < DECODE_TABLE.length ? DECODE_TABLE[c] : Character.digit(c, BASE_16);
+    }
+}
@@ -121,4 +121,22 @@ public class HttpToMalMapperTest {
         HttpToMalMapper.getInstance().fillMalMessageHeader(headerMap, resultHeader);
         verify(resultHeader, times(1)).setURITo(uriTo);
     }
+
+    /**
+     * Domain with several identifiers is split without regex.
+     * Empty identifiers in the middle are kept. trailing empty identifiers are ignored.
+     * @throws MALException null
+     */
+    @Test
+    public void test04() throws MALException {
+        Map<String, String> headerMap = new HashMap<>();
+        MalToHttpMapper.getInstance().generateHeader(originalHeader, headerMap);
+        headerMap.put(HttpHeaderKeys.DOMAIN.toString(), "spacecraft..A.");
+        HttpToMalMapper.getInstance().fillMalMessageHeader(headerMap, resultHeader);
+        IdentifierList expected = new IdentifierList();
+        expected.add(new Identifier("spacecraft"));
+        expected.add(new Identifier(""));
+        expected.add(new Identifier("A"));
+        verify(resultHeader, times(1)).setDomain(expected);
+    }
 }
@@ -156,6 +156,34 @@ public class MalToHttpMapperTest {
         MalToHttpMapper.getInstance().mapUrlTo(uriTo, httpEndpoint, host, requestTarget, mapUrlTo);
     }
 
+    @Test
+    public void mapUrlToTest10() throws MALException {
+        StringBuffer host = ObjectFactory.createStringBuffer();
+        StringBuffer requestTarget = ObjectFactory.createStringBuffer();
+        StringBuffer mapUrlTo = ObjectFactory.createStringBuffer();
+
+        URI uriTo = new URI("malhttp://user@localhost/Test1?query#fragment");
+        URI httpEndpoint = new URI("malhttp://user@localhost/Test1?query#fragment");
+
+        MalToHttpMapper.getInstance().mapUrlTo(uriTo, httpEndpoint, host, requestTarget, mapUrlTo);
+
+        Assert.assertEquals(HeaderMappingHelper.encodeURI("malhttp://localhost"), host.toString());
+        Assert.assertEquals(HeaderMappingHelper.encodeURI("/Test1"), requestTarget.toString());
+        Assert.assertEquals("", mapUrlTo.toString());
+    }
+
+    @Test(expected = MALException.class)
+    public void mapUrlToTest11() throws MALException {
+        StringBuffer host = ObjectFactory.createStringBuffer();
+        StringBuffer requestTarget = ObjectFactory.createStringBuffer();
+        StringBuffer mapUrlTo = ObjectFactory.createStringBuffer();
+
+        URI uriTo = new URI("localhost:8081/Test1");
+        URI httpEndpoint = new URI("localhost:8081/Test1");
+
+        MalToHttpMapper.getInstance().mapUrlTo(uriTo, httpEndpoint, host, requestTarget, mapUrlTo);
+    }
+
     /**
      * Testing Mapped Header logic.
      * 1.   Checking if the values are encoded based on specification
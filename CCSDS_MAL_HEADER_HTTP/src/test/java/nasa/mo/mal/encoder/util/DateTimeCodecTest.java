@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.util;
+
+import net.time4j.Moment;
+import net.time4j.format.expert.ChronoFormatter;
+import net.time4j.format.expert.PatternType;
+import net.time4j.scale.TimeScale;
+import net.time4j.tz.ZonalOffset;
+import org.ccsds.moims.mo.mal.MALException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for DateTimeCodec.
+ * Output and parsed values must be the same as Time4J ChronoFormatter.
+ */
+public class DateTimeCodecTest {
+    private static final ChronoFormatter<Moment> TIME_FORMATTER = ChronoFormatter.ofMomentPattern(
+            "uuuu-MM-dd'T'HH:mm:ss.SSS", PatternType.CLDR, Locale.ROOT, ZonalOffset.UTC);
+    private static final ChronoFormatter<Moment> HEADER_FORMATTER = ChronoFormatter.ofMomentPattern(
+            "uuuu-DDD'T'HH:mm:ss.SSS", PatternType.CLDR, Locale.ROOT, ZonalOffset.UTC);
+    private static final ChronoFormatter<Moment> FINE_TIME_FORMATTER = ChronoFormatter.ofMomentPattern(
+            "uuuu-MM-dd'T'HH:mm:ss.SSSSSSSSS", PatternType.CLDR, Locale.ROOT, ZonalOffset.UTC);
+    /**
+     * 10000-01-01T00:00:00 in millisecond
+     */
+    private static final long YEAR_10000 = 253402300800000L;
+
+    private static String formatByTime4J(ChronoFormatter<Moment> formatter, long millisecond) {
+        long second = TimeUnit.MILLISECONDS.toSeconds(millisecond);
+        return formatter.format(Moment.of(second, (int) TimeUnit.MILLISECONDS.toNanos(millisecond % 1000),
+                TimeScale.POSIX));
+    }
+
+    /**
+     * Random times in the same second, same day, and between 1970 and 10000.
+     * Values not in that range are formatted by Time4J.
+     *
+     * @throws MALException will not be thrown
+     */
+    @Test
+    public void formatTest01() throws MALException {
+        DateTimeCodec timeCodec = new DateTimeCodec(DateTimeCodec.Format.XML_TIME);
+        DateTimeCodec headerCodec = new DateTimeCodec(DateTimeCodec.Format.HEADER_TIME);
+        Random random = new Random(23);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 20000; i++) {
+            long value;
+            switch (i % 4) {
+                case 0:
+                    value = now + random.nextInt(1000);
+                    break;
+                case 1:
+                    value = now + random.nextInt(86400000);
+                    break;
+                case 2:
+                    value = (random.nextLong() & Long.MAX_VALUE) % YEAR_10000;
+                    break;
+                default:
+                    value = YEAR_10000 - 1000 + random.nextInt(2000);
+            }
+            String expected = formatByTime4J(TIME_FORMATTER, value);
+            Assert.assertEquals(expected, timeCodec.format(value));
+            Assert.assertEquals(value, timeCodec.parse(expected));
+            expected = formatByTime4J(HEADER_FORMATTER, value);
+            Assert.assertEquals(expected, headerCodec.format(value));
+            Assert.assertEquals(value, headerCodec.parse(expected));
+        }
+        Assert.assertEquals("1969-12-31T23:59:59.000", timeCodec.format(-1000L));
+        Assert.assertEquals(-1000L, timeCodec.parse("1969-12-31T23:59:59.000"));
+        Assert.assertEquals("2016-366T23:59:59.999", headerCodec.format(1483228799999L));
+        Assert.assertEquals("2017-001T00:00:00.000", headerCodec.format(1483228800000L));
+        Assert.assertEquals("2000-02-29T12:00:00.001", timeCodec.format(951825600001L));
+    }
+
+    /**
+     * FineTime keeps 9 digits of fraction.
+     *
+     * @throws MALException will not be thrown
+     */
+    @Test
+    public void formatTest02() throws MALException {
+        DateTimeCodec codec = new DateTimeCodec(DateTimeCodec.Format.XML_FINE_TIME);
+        Random random = new Random(17);
+        for (int i = 0; i < 20000; i++) {
+            long value = random.nextLong() & Long.MAX_VALUE;
+            long second = TimeUnit.NANOSECONDS.toSeconds(value);
+            String expected = FINE_TIME_FORMATTER.format(Moment.of(second,
+                    (int) (value - TimeUnit.SECONDS.toNanos(second)), TimeScale.POSIX));
+            Assert.assertEquals(expected, codec.format(value));
+            Assert.assertEquals(value, codec.parse(expected));
+        }
+        Assert.assertEquals("1970-01-01T00:00:00.000000001", codec.format(1L));
+    }
+
+    /**
+     * Writing to a byte array at an offset.
+     */
+    @Test
+    public void formatTest03() {
+        DateTimeCodec codec = new DateTimeCodec(DateTimeCodec.Format.XML_TIME);
+        byte[] buffer = new byte[DateTimeCodec.MAX_SIZE + 2];
+        int end = codec.format(1508284800123L, buffer, 2);
+        Assert.assertEquals("2017-10-18T00:00:00.123", new String(buffer, 2, end - 2, StandardCharsets.US_ASCII));
+        end = codec.format(-YEAR_10000, buffer, 2);
+        Assert.assertEquals(formatByTime4J(TIME_FORMATTER, -YEAR_10000),
+                new String(buffer, 2, end - 2, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Text not exactly in the format is parsed by Time4J.
+     *
+     * @throws Exception Time4J exception
+     */
+    @Test
+    public void parseTest01() throws Exception {
+        DateTimeCodec codec = new DateTimeCodec(DateTimeCodec.Format.XML_TIME);
+        String leapSecond = "2016-12-31T23:59:60.000";
+        Moment moment = TIME_FORMATTER.parse(leapSecond);
+        Assert.assertEquals(TimeUnit.SECONDS.toMillis(moment.getPosixTime()), codec.parse(leapSecond));
+        String[] invalidTimes = {"", "2017-02-29T00:00:00.000", "2017-13-01T00:00:00.000", "2017-01-01T24:00:00.000",
+                "2017-01-01L00:00:00.000", "2017-01-01T00:00:00.0000", "2017-1-1T00:00:00.000"};
+        for (String invalidTime : invalidTimes) {
+            String expected;
+            try {
+                TIME_FORMATTER.parse(invalidTime);
+                expected = null;
+            } catch (java.text.ParseException | RuntimeException exp) {
+                expected = exp.getLocalizedMessage();
+            }
+            try {
+                codec.parse(invalidTime);
+                Assert.assertNull(invalidTime, expected);
+            } catch (MALException | RuntimeException exp) {
+                Assert.assertEquals(invalidTime, expected, exp.getLocalizedMessage());
+            }
+        }
+    }
+
+    @Test(expected = MALException.class)
+    public void parseTest02() throws MALException {
+        new DateTimeCodec(DateTimeCodec.Format.HEADER_TIME).parse("2017-366T00:00:00.000");
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.util;
+
+import org.ccsds.moims.mo.mal.MALException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Test cases for DurationCodec.
+ * Expected values are from the Calendar and regular expression based implementation.
+ */
+public class DurationCodecTest {
+    private final DurationCodec codec = new DurationCodec();
+
+    /**
+     * Fractions are taken from decimal digits of the double.
+     * Durations over 9999 years are still formatted by Calendar.
+     *
+     * @throws MALException will not be thrown
+     */
+    @Test
+    public void formatTest01() throws MALException {
+        Assert.assertEquals("P", codec.format(-0.0));
+        Assert.assertEquals("PT0.5S", codec.format(0.5));
+        Assert.assertEquals("-PT0.25S", codec.format(-0.25));
+        Assert.assertEquals("PT1.0E-5S", codec.format(1e-5));
+        Assert.assertEquals("PT3.3333333333333335S", codec.format(3.3333333333333335));
+        Assert.assertEquals("P4M22DT21H21M18.9S", codec.format(12345678.9));
+        Assert.assertEquals("P1YT0.5S", codec.format(31536000.5));
+        Assert.assertEquals("P3Y", codec.format(94694400.0));
+        Assert.assertEquals("P7922Y2M7DT12H26M40S", codec.format(2.5e11));
+        Assert.assertEquals("P292277024Y7M16DT7H12M55S", codec.format(1e20));
+
+        byte[] buffer = new byte[DurationCodec.MAX_SIZE + 1];
+        int end = codec.format(-90095.00, buffer, 1);
+        Assert.assertEquals("-P1DT1H1M35S", new String(buffer, 1, end - 1, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Years, months and days are added to 1970-01-01 after hours and minutes.
+     * Day of month is pinned to the end of the month. i.e. 1970-01-31 + 1 month = 1970-02-28
+     *
+     * @throws MALException will not be thrown
+     */
+    @Test
+    public void parseTest01() throws MALException {
+        Assert.assertEquals(5011200.0, codec.parse("P1MT720H"), 0.0);
+        Assert.assertEquals(36633600.0, codec.parse("P1YT1416H"), 0.0);
+        Assert.assertEquals(71020800.0, codec.parse("P1Y1MT10200H"), 0.0);
+        Assert.assertEquals(36907506.7, codec.parse("P1Y2M3DT4H5M6.7S"), 0.0);
+        Assert.assertEquals(315569520000.0, codec.parse("P10000Y"), 0.0);
+        Assert.assertEquals(0.1, codec.parse("PT0.1S"), 0.0);
+        Assert.assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(codec.parse("-P")));
+    }
+
+    /**
+     * Random durations are parsed back to the same value.
+     *
+     * @throws MALException will not be thrown
+     */
+    @Test
+    public void parseTest02() throws MALException {
+        Random random = new Random(29);
+        for (int i = 0; i < 20000; i++) {
+            double value = random.nextInt(1000000000) / 1000.0;
+            if (random.nextBoolean()) {
+                value = -value;
+            }
+            Assert.assertEquals(value, codec.parse(codec.format(value)), 0.000001);
+        }
+    }
+
+    /**
+     * Invalid texts have the same error messages as the regular expressions.
+     */
+    @Test
+    public void parseTest03() {
+        String[][] invalidDurations = {
+                {"PT", "Invalid Date Expression in XSD Duration."},
+                {"", "Invalid Date Expression in XSD Duration."},
+                {"P1M1Y", "Invalid Date Expression in XSD Duration."},
+                {"PT1X", "Invalid Time Expression in XSD Duration."},
+                {"PT1.S", "Invalid Time Expression in XSD Duration."},
+                {"P2147483648D", "For input string: \"2147483648\""}
+        };
+        for (String[] invalidDuration : invalidDurations) {
+            try {
+                codec.parse(invalidDuration[0]);
+                Assert.fail(invalidDuration[0]);
+            } catch (MALException exp) {
+                Assert.assertEquals(invalidDuration[1], exp.getMessage());
+            }
+        }
+    }
+
+    @Test(expected = MALException.class)
+    public void checkDurationTest01() throws MALException {
+        DurationCodec.checkDuration(Double.NaN);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.encoder.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test cases for HexCodec.
+ * Expected values are from String.format("%02x") and Character.digit().
+ */
+public class HexCodecTest {
+
+    private static String encodeByFormat(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte each : bytes) {
+            result.append(String.format("%02x", each));
+        }
+        return result.toString();
+    }
+
+    private static byte[] decodeByDigit(String hexString) {
+        byte[] data = new byte[hexString.length() / 2];
+        for (int i = 0; i < hexString.length(); i += 2) {
+            data[i / 2] = (byte) ((Character.digit(hexString.charAt(i), 16) << 4)
+                    + Character.digit(hexString.charAt(i + 1), 16));
+        }
+        return data;
+    }
+
+    @Test
+    public void encodeTest01() {
+        byte[] allBytes = new byte[256];
+        for (int i = 0; i < allBytes.length; i++) {
+            allBytes[i] = (byte) i;
+        }
+        Assert.assertEquals(encodeByFormat(allBytes), HexCodec.encode(allBytes));
+        Assert.assertTrue(Arrays.equals(allBytes, HexCodec.decode(HexCodec.encode(allBytes))));
+        Assert.assertEquals("", HexCodec.encode(null));
+        Assert.assertEquals("", HexCodec.encode(new byte[0]));
+    }
+
+    /**
+     * Part of an array, and heap and direct ByteBuffers.
+     */
+    @Test
+    public void encodeTest02() {
+        byte[] value = new byte[1000];
+        new Random(24).nextBytes(value);
+        String expected = encodeByFormat(Arrays.copyOfRange(value, 10, 510));
+
+        byte[] buffer = new byte[1002];
+        int end = HexCodec.encode(value, 10, 500, buffer, 1);
+        Assert.assertEquals(1001, end);
+        Assert.assertEquals(expected, new String(buffer, 1, 1000, StandardCharsets.US_ASCII));
+
+        for (boolean isDirect : new boolean[] {false, true}) {
+            ByteBuffer source = isDirect ? ByteBuffer.allocateDirect(value.length) : ByteBuffer.allocate(value.length);
+            source.put(value);
+            source.position(10);
+            source.limit(510);
+            ByteBuffer destination = isDirect ? ByteBuffer.allocateDirect(1002) : ByteBuffer.allocate(1002);
+            destination.position(1);
+            HexCodec.encode(source, destination);
+            Assert.assertEquals(510, source.position());
+            Assert.assertEquals(1001, destination.position());
+            destination.flip();
+            destination.position(1);
+            Assert.assertEquals(expected, StandardCharsets.US_ASCII.decode(destination).toString());
+        }
+    }
+
+    /**
+     * Upper case, invalid, and non ASCII digits are decoded the same as Character.digit()
+     */
+    @Test
+    public void decodeTest01() {
+        String[] inputs = {"", "0ffe3f", "0FFE3F", "zz1g", "０１a١", "--"};
+        for (String input : inputs) {
+            Assert.assertTrue(input, Arrays.equals(decodeByDigit(input), HexCodec.decode(input)));
+        }
+        Random random = new Random(25);
+        char[] characters = new char[64];
+        for (int i = 0; i < 1000; i++) {
+            for (int j = 0; j < characters.length; j++) {
+                characters[j] = (char) random.nextInt(256);
+            }
+            String input = new String(characters);
+            Assert.assertTrue(input, Arrays.equals(decodeByDigit(input), HexCodec.decode(input)));
+        }
+    }
+
+    /**
+     * Heap and direct ByteBuffers.
+     */
+    @Test
+    public void decodeTest02() {
+        for (boolean isDirect : new boolean[] {false, true}) {
+            ByteBuffer destination = isDirect ? ByteBuffer.allocateDirect(5) : ByteBuffer.allocate(5);
+            destination.position(1);
+            HexCodec.decode(new StringBuilder("0ffe3f"), destination);
+            Assert.assertEquals(4, destination.position());
+            Assert.assertEquals(15, destination.get(1));
+            Assert.assertEquals(-2, destination.get(2));
+            Assert.assertEquals(63, destination.get(3));
+        }
+    }
+
+    @Test(expected = StringIndexOutOfBoundsException.class)
+    public void decodeTest03() {
+        HexCodec.decode("0ffe3");
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void decodeTest04() {
+        HexCodec.decode("0ffe3f", ByteBuffer.allocate(2));
+    }
+}
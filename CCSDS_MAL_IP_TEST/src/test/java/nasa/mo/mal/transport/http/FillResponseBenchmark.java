@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import com.sun.net.httpserver.HttpServer;
+import nasa.mo.mal.transport.http.util.HttpTransportHelper;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for writing responses from many threads.
+ * Each client reads the response body slowly, so writing a large body blocks until the client reads it.
+ * Throughput is expected to grow with the number of threads since responses are written concurrently.
+ *
+ * Run main() with test classpath. It runs the benchmark with 1, 2, 4, and 8 client threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FillResponseBenchmark {
+    private static final String LOCAL_HOST = "127.0.0.1";
+    private static final int BODY_SIZE = 4 * 1024 * 1024;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+    private static final int READ_DELAY_IN_MILLI_SECOND = 1;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private HttpMiniClient client;
+    private HttpHost target;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] body = new byte[BODY_SIZE];
+        int port = MessageTestBase.getAvailablePort();
+        target = new HttpHost(LOCAL_HOST, port, "http");
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(LOCAL_HOST), port), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                while (inputStream.read() != -1) {
+                    // drain request body
+                }
+                HttpTransportHelper.fillResponse(exchange, 200, body, null);
+            } catch (Exception exp) {
+                exchange.close();
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        int maxThreadCount = THREAD_COUNTS[THREAD_COUNTS.length - 1];
+        client = HttpMiniClient.custom().maxConnection(maxThreadCount).maxConnectionPerRoute(maxThreadCount).build();
+        client.create();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int slowResponse() throws IOException, InterruptedException {
+        HttpPost post = new HttpPost("/");
+        post.setEntity(new ByteArrayEntity(new byte[] {1}));
+        try (CloseableHttpResponse response = client.getClient().execute(target, post)) {
+            return readSlowly(response.getEntity().getContent());
+        }
+    }
+
+    /**
+     * Reading the response body in chunks with a delay after each chunk.
+     *
+     * @param inputStream response body
+     * @return number of bytes read
+     * @throws IOException any error while reading
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static int readSlowly(InputStream inputStream) throws IOException, InterruptedException {
+        byte[] buffer = new byte[READ_CHUNK_SIZE];
+        int total = 0;
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            total += length;
+            Thread.sleep(READ_DELAY_IN_MILLI_SECOND);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threadCount : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(FillResponseBenchmark.class.getSimpleName())
+                    .threads(threadCount)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
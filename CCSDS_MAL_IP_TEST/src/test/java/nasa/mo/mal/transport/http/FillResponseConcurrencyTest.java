@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import com.sun.net.httpserver.HttpServer;
+import nasa.mo.mal.transport.http.util.HttpTransportHelper;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writing responses from many threads.
+ * A client which doesn't read its response blocks the write of that response.
+ * Responses of other exchanges must still be written, since there is no lock shared by exchanges.
+ * Throughput is measured in FillResponseBenchmark.
+ */
+public class FillResponseConcurrencyTest {
+    private static final String LOCAL_HOST = "127.0.0.1";
+    /**
+     * bigger than socket buffers so that the write of an unread response blocks
+     */
+    private static final int BODY_SIZE = 16 * 1024 * 1024;
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private HttpMiniClient client;
+    private HttpHost target;
+    private byte[] body;
+    private AtomicInteger failedResponses;
+
+    @Before
+    public void setUp() throws Exception {
+        body = new byte[BODY_SIZE];
+        failedResponses = new AtomicInteger();
+        int port = MessageTestBase.getAvailablePort();
+        target = new HttpHost(LOCAL_HOST, port, "http");
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(LOCAL_HOST), port), 0);
+        server.createContext("/", exchange -> {
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                while (inputStream.read() != -1) {
+                    // drain request body
+                }
+                HttpTransportHelper.fillResponse(exchange, 200, body, null);
+            } catch (Exception exp) {
+                failedResponses.incrementAndGet();
+                exchange.close();
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        client = HttpMiniClient.custom().maxConnection(2).maxConnectionPerRoute(2).build();
+        client.create();
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    /**
+     * The first response is not read until the second response is fully read.
+     * If responses were serialized, the second response would wait for the first one forever.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void parallelResponseTest() throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(2);
+        CountDownLatch firstResponseStarted = new CountDownLatch(1);
+        CountDownLatch secondResponseRead = new CountDownLatch(1);
+        Future<Integer> first = clientExecutor.submit(() -> {
+            try (CloseableHttpResponse response = client.getClient().execute(target, createPost())) {
+                firstResponseStarted.countDown();
+                Assert.assertTrue(secondResponseRead.await(30, TimeUnit.SECONDS));
+                return read(response.getEntity().getContent());
+            }
+        });
+        Assert.assertTrue(firstResponseStarted.await(30, TimeUnit.SECONDS));
+        Future<Integer> second = clientExecutor.submit(() -> {
+            try (CloseableHttpResponse response = client.getClient().execute(target, createPost())) {
+                return read(response.getEntity().getContent());
+            } finally {
+                secondResponseRead.countDown();
+            }
+        });
+        Assert.assertEquals(BODY_SIZE, (int) second.get(30, TimeUnit.SECONDS));
+        Assert.assertEquals(BODY_SIZE, (int) first.get(30, TimeUnit.SECONDS));
+        clientExecutor.shutdown();
+        Assert.assertEquals(0, failedResponses.get());
+    }
+
+    private static HttpPost createPost() {
+        HttpPost post = new HttpPost("/");
+        post.setEntity(new ByteArrayEntity(new byte[] {1}));
+        return post;
+    }
+
+    /**
+     * @param inputStream response body
+     * @return number of bytes read
+     * @throws Exception any error while reading
+     */
+    private static int read(InputStream inputStream) throws Exception {
+        byte[] buffer = new byte[READ_CHUNK_SIZE];
+        int total = 0;
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            total += length;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import nasa.mo.mal.transport.http.server.JdkServerEngine;
+import nasa.mo.mal.transport.http.server.NioServerEngine;
+import nasa.mo.mal.transport.http.util.HttpTransportHelper;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * JMH benchmark of server engines with small messages on kept alive connections.
+ * Each engine runs the same handler on the same bounded executor, so the difference is in receiving and responding.
+ * Server executor statistics are logged after each trial.
+ *
+ * Run main() with test classpath. It runs the benchmark with 1, 4, and 16 client threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerEngineBenchmark {
+    private static final Logger LOGGER = Logger.getLogger(ServerEngineBenchmark.class.toString());
+    private static final String LOCAL_HOST = "127.0.0.1";
+    private static final int BODY_SIZE = 1024;
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+    private static final int SERVER_THREAD_COUNT = 8;
+
+    @Param({JdkServerEngine.NAME, NioServerEngine.NAME})
+    private String engineType;
+
+    private HttpMiniServer server;
+    private HttpMiniClient client;
+    private HttpHost target;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        body = new byte[BODY_SIZE];
+        int port = MessageTestBase.getAvailablePort();
+        target = new HttpHost(LOCAL_HOST, port, "http");
+        server = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(port).engineType(engineType)
+                .threadPoolCount(SERVER_THREAD_COUNT).mainHandler(exchange -> {
+                    try {
+                        HttpTransportHelper.fillResponse(exchange, 200,
+                                IOUtils.toByteArray(exchange.getRequestBody()), null);
+                    } catch (Exception exp) {
+                        exchange.close();
+                    }
+                }).build();
+        server.create();
+        server.start();
+        int maxThreadCount = THREAD_COUNTS[THREAD_COUNTS.length - 1];
+        client = HttpMiniClient.custom().maxConnection(maxThreadCount).maxConnectionPerRoute(maxThreadCount).build();
+        client.create();
+    }
+
+    @TearDown
+    public void tearDown() {
+        LOGGER.info(String.format("engine: %s, %s", engineType, server.getExecutor()));
+        client.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public int echo() throws IOException {
+        HttpPost post = new HttpPost("/Service1");
+        post.setEntity(new ByteArrayEntity(body));
+        try (CloseableHttpResponse response = client.getClient().execute(target, post)) {
+            return EntityUtils.toByteArray(response.getEntity()).length;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int threadCount : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(ServerEngineBenchmark.class.getSimpleName())
+                    .threads(threadCount)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
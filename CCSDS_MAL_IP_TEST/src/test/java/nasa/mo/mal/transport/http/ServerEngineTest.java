@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import nasa.mo.mal.transport.http.server.JdkServerEngine;
+import nasa.mo.mal.transport.http.server.NioServerEngine;
+import nasa.mo.mal.transport.http.util.HttpTransportHelper;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server engines with small messages on kept alive connections from many threads.
+ * Each engine runs the same handler on the same bounded executor and must answer every request.
+ * Throughput is measured in ServerEngineBenchmark.
+ */
+public class ServerEngineTest {
+    private static final String LOCAL_HOST = "127.0.0.1";
+    private static final int BODY_SIZE = 1024;
+    private static final int REQUESTS_PER_THREAD = 50;
+    private static final int THREAD_COUNT = 16;
+    private static final int SERVER_THREAD_COUNT = 8;
+
+    private HttpMiniServer server;
+    private HttpMiniClient client;
+    private HttpHost target;
+    private AtomicInteger failedResponses;
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void jdkEngineTest() throws Exception {
+        checkEngine(JdkServerEngine.NAME);
+    }
+
+    @Test
+    public void nioEngineTest() throws Exception {
+        checkEngine(NioServerEngine.NAME);
+    }
+
+    /**
+     * @param engineType name of the engine
+     * @throws Exception unexpected exception
+     */
+    private void checkEngine(String engineType) throws Exception {
+        failedResponses = new AtomicInteger();
+        int port = MessageTestBase.getAvailablePort();
+        target = new HttpHost(LOCAL_HOST, port, "http");
+        server = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(port).engineType(engineType)
+                .threadPoolCount(SERVER_THREAD_COUNT).mainHandler(exchange -> {
+                    try {
+                        byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+                        HttpTransportHelper.fillResponse(exchange, 200, body, null);
+                    } catch (Exception exp) {
+                        failedResponses.incrementAndGet();
+                        exchange.close();
+                    }
+                }).build();
+        server.create();
+        server.start();
+        client = HttpMiniClient.custom().maxConnection(THREAD_COUNT).maxConnectionPerRoute(THREAD_COUNT).build();
+        client.create();
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(THREAD_COUNT);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            results.add(clientExecutor.submit(() -> {
+                int received = 0;
+                for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+                    HttpPost post = new HttpPost("/Service1");
+                    post.setEntity(new ByteArrayEntity(new byte[BODY_SIZE]));
+                    try (CloseableHttpResponse response = client.getClient().execute(target, post)) {
+                        received += EntityUtils.toByteArray(response.getEntity()).length == BODY_SIZE ? 1 : 0;
+                    }
+                }
+                return received;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get(30, TimeUnit.SECONDS);
+        }
+        clientExecutor.shutdown();
+        Assert.assertEquals(THREAD_COUNT * REQUESTS_PER_THREAD, total);
+        Assert.assertEquals(0, failedResponses.get());
+    }
+}
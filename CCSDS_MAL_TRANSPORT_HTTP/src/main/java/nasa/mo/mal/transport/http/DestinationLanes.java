@@ -0,0 +1,342 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * Delivery lanes of new messages keyed by destination URI.
+ * Each lane runs at most laneConcurrency tasks at the same time in the order they are submitted.
+ * With laneConcurrency 1, messages to the same destination never overtake each other.
+ * Different lanes run in parallel on the shared executor, so a slow or ordered destination doesn't block others.
+ *
+ * Tasks are handed to the executor only when their lane has room, so schedulers still order them
+ * by their message header across lanes. A lane is removed when it is idle.
+ *
+ * Asynchronous tasks keep their slot until the future they start is completed,
+ * so messages waiting for their response are also counted by the lane.
+ */
+public class DestinationLanes {
+    private final Executor executor;
+    private final int laneConcurrency;
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong delayedCount = new AtomicLong();
+    private final AtomicInteger largestBacklog = new AtomicInteger();
+
+    /**
+     * Constructor
+     *
+     * @param executor executor running the tasks
+     * @param laneConcurrency maximum number of running tasks of a lane
+     */
+    public DestinationLanes(Executor executor, int laneConcurrency) {
+        if (executor == null || laneConcurrency <= 0) {
+            throw new IllegalArgumentException("Invalid executor or lane concurrency");
+        }
+        this.executor = executor;
+        this.laneConcurrency = laneConcurrency;
+    }
+
+    /**
+     * Submitting a task to the lane of the destination.
+     *
+     * @param destination destination URI
+     * @param task task to run. MessageTask keeps its header for the executor.
+     * @param <T> result type
+     * @return future of the task
+     * @throws RejectedExecutionException if the executor rejects the task
+     */
+    public <T> Future<T> submit(String destination, Callable<T> task) {
+        return submit(destination, task, null);
+    }
+
+    /**
+     * Submitting a task to the lane of the destination with a callback for its later rejection.
+     * A task which waited for its lane is cancelled if the executor rejects it when it gets its slot.
+     * Then the task never runs, so the callback frees what the caller holds for it.
+     *
+     * @param destination destination URI
+     * @param task task to run. MessageTask keeps its header for the executor.
+     * @param onRejected called when the executor rejects the task after it waited. not called if this throws.
+     *                   may be null.
+     * @param <T> result type
+     * @return future of the task
+     * @throws RejectedExecutionException if the executor rejects the task
+     */
+    public <T> Future<T> submit(String destination, Callable<T> task, Runnable onRejected) {
+        FutureTask<T> future = new FutureTask<>(task);
+        enqueue(new LaneTask(destination, future,
+                task instanceof MessageTask ? ((MessageTask) task).getMessageHeader() : null, future, true,
+                onRejected));
+        return future;
+    }
+
+    /**
+     * Submitting an asynchronous task to the lane of the destination.
+     * Its slot is freed when the future returned by the task is completed, not when the task returns.
+     *
+     * @param destination destination URI
+     * @param header MAL header of the message for the executor. may be null.
+     * @param task task starting the work and returning its future. called on the executor.
+     * @param <T> result type
+     * @return future completed in the same way as the future of the task. cancelled if the executor rejects it later.
+     * @throws RejectedExecutionException if the executor rejects the task
+     */
+    public <T> CompletableFuture<T> submitAsync(String destination, MALMessageHeader header,
+                                                Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(new LaneTask(destination, result, header, () -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (RuntimeException exp) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(exp);
+            }
+            future.whenComplete((value, exp) -> {
+                try {
+                    if (exp == null) {
+                        result.complete(value);
+                    } else {
+                        result.completeExceptionally(exp);
+                    }
+                } finally {
+                    dispatch(release(destination));
+                }
+            });
+        }, false, null));
+        return result;
+    }
+
+    /**
+     * Adding a task to its lane and handing the ready tasks to the executor.
+     *
+     * @param laneTask new task
+     * @throws RejectedExecutionException if the executor rejects the task
+     */
+    private void enqueue(LaneTask laneTask) {
+        String destination = laneTask.destination;
+        List<LaneTask> readyTasks = new ArrayList<>(1);
+        lanes.compute(destination, (key, lane) -> {
+            Lane current = lane == null ? new Lane() : lane;
+            updateLargestBacklog(current.add(laneTask, readyTasks));
+            return current;
+        });
+        submittedCount.incrementAndGet();
+        if (readyTasks.isEmpty()) {
+            delayedCount.incrementAndGet();
+        }
+        dispatch(readyTasks, laneTask);
+        if (laneTask.future.isCancelled()) {
+            throw new RejectedExecutionException("Lane task is rejected by executor: " + destination);
+        }
+    }
+
+    public int getLaneConcurrency() {
+        return laneConcurrency;
+    }
+
+    /**
+     * @return number of destinations with running or waiting tasks
+     */
+    public int getLaneCount() {
+        return lanes.size();
+    }
+
+    /**
+     * @param destination destination URI
+     * @return number of tasks waiting for their lane
+     */
+    public int getWaitingCount(String destination) {
+        Lane lane = lanes.get(destination);
+        if (lane == null) {
+            return 0;
+        }
+        synchronized (lane) {
+            return lane.waitingTasks.size();
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return number of tasks which had to wait for their lane
+     */
+    public long getDelayedCount() {
+        return delayedCount.get();
+    }
+
+    /**
+     * @return largest number of waiting tasks in a lane
+     */
+    public int getLargestBacklog() {
+        return largestBacklog.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DestinationLanes{laneConcurrency=" + laneConcurrency + ", lanes=" + lanes.size()
+                + ", submitted=" + submittedCount.get() + ", delayed=" + delayedCount.get()
+                + ", largestBacklog=" + largestBacklog.get() + '}';
+    }
+
+    /**
+     * Handing ready tasks to the executor.
+     *
+     * @param readyTasks tasks which got a slot in their lane
+     */
+    private void dispatch(List<LaneTask> readyTasks) {
+        dispatch(readyTasks, null);
+    }
+
+    /**
+     * Handing ready tasks to the executor.
+     * Rejected tasks are cancelled and free their slots, which may make more tasks of the lane ready.
+     * Their rejection callbacks are called, except for the submitted task whose rejection is thrown by enqueue.
+     *
+     * @param readyTasks tasks which got a slot in their lane
+     * @param submittedTask task being submitted. null if it is not a submit.
+     */
+    private void dispatch(List<LaneTask> readyTasks, LaneTask submittedTask) {
+        Deque<LaneTask> tasks = new ArrayDeque<>(readyTasks);
+        while (!tasks.isEmpty()) {
+            LaneTask task = tasks.poll();
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException exp) {
+                HttpTransport.LOGGER.log(Level.FINE, "Lane task is rejected: {0}", task.destination);
+                task.future.cancel(false);
+                tasks.addAll(release(task.destination));
+                if (task != submittedTask && task.onRejected != null) {
+                    task.onRejected.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Freeing the slot of a finished task.
+     *
+     * @param destination destination URI
+     * @return tasks of the lane which got a slot
+     */
+    private List<LaneTask> release(String destination) {
+        List<LaneTask> readyTasks = new ArrayList<>(1);
+        lanes.computeIfPresent(destination, (key, lane) -> lane.release(readyTasks) ? null : lane);
+        return readyTasks;
+    }
+
+    private void updateLargestBacklog(int backlog) {
+        int largest;
+        while (backlog > (largest = largestBacklog.get())) {
+            if (largestBacklog.compareAndSet(largest, backlog)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tasks of a destination. Changed only inside compute of the map, so it is serialized per destination.
+     * Its monitor is only for getWaitingCount.
+     */
+    private class Lane {
+        final Queue<LaneTask> waitingTasks = new ArrayDeque<>();
+        int runningCount = 0;
+
+        /**
+         * @param task new task
+         * @param readyTasks list to add tasks which got a slot
+         * @return number of waiting tasks
+         */
+        synchronized int add(LaneTask task, List<LaneTask> readyTasks) {
+            waitingTasks.add(task);
+            takeReadyTasks(readyTasks);
+            return waitingTasks.size();
+        }
+
+        /**
+         * @param readyTasks list to add tasks which got a slot
+         * @return flag if the lane is idle
+         */
+        synchronized boolean release(List<LaneTask> readyTasks) {
+            runningCount--;
+            takeReadyTasks(readyTasks);
+            return runningCount == 0 && waitingTasks.isEmpty();
+        }
+
+        private void takeReadyTasks(List<LaneTask> readyTasks) {
+            while (runningCount < laneConcurrency && !waitingTasks.isEmpty()) {
+                runningCount++;
+                readyTasks.add(waitingTasks.poll());
+            }
+        }
+    }
+
+    /**
+     * Task handed to the executor. Frees its slot after it runs, or later by itself if it is asynchronous.
+     * onRejected is called instead if the executor rejects it after it waited for its lane.
+     */
+    private class LaneTask implements Runnable, MessageTask {
+        final String destination;
+        final Future<?> future;
+        final MALMessageHeader header;
+        final Runnable action;
+        final boolean isReleasedAfterRun;
+        final Runnable onRejected;
+
+        LaneTask(String destination, Future<?> future, MALMessageHeader header, Runnable action,
+                 boolean isReleasedAfterRun, Runnable onRejected) {
+            this.destination = destination;
+            this.future = future;
+            this.header = header;
+            this.action = action;
+            this.isReleasedAfterRun = isReleasedAfterRun;
+            this.onRejected = onRejected;
+        }
+
+        @Override
+        public MALMessageHeader getMessageHeader() {
+            return header;
+        }
+
+        @Override
+        public void run() {
+            try {
+                action.run();
+            } finally {
+                if (isReleasedAfterRun) {
+                    dispatch(release(destination));
+                }
+            }
+        }
+    }
+}
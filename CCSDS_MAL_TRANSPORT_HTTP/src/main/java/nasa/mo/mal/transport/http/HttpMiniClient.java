@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import nasa.mo.mal.transport.http.util.Constants;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.ccsds.moims.mo.mal.MALException;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Http Client shared by all new message senders of a transport.
+ * Connections are pooled and kept alive so that TCP and TLS handshakes are not repeated for every message.
+ * Created in HttpTransport.init() and closed in HttpTransport.close().
+ *
+ * If asynchronous flag is set, a non-blocking client is created as well.
+ * It sends messages without holding a thread for the round trip.
+ * So the number of messages in flight is limited by the connection limits instead of the thread pool.
+ */
+public class HttpMiniClient {
+    private String keyStoreFile;
+    private String keyStorePassword;
+    private String trustStoreFile;
+    private String trustStorePassword;
+    private String keyStoreType;
+    private int maxConnection;
+    private int maxConnectionPerRoute;
+    private int idleTimeoutInMilliSecond;
+    private boolean isAsync;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient client;
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private CloseableHttpAsyncClient asyncClient;
+    /**
+     * asynchronous client doesn't close idle connections by itself.
+     */
+    private ScheduledExecutorService idleConnectionEvictor;
+
+    /**
+     * Constructor
+     *
+     * @param keyStoreFile Java Key Store file if secure http
+     * @param keyStorePassword Java Key Store password if secure http
+     * @param trustStoreFile Java Trust Store file if secure http
+     * @param trustStorePassword Java Trust Store password if secure http
+     * @param keyStoreType Key Store Type eg. PKCS12 / JKS
+     * @param maxConnection maximum number of connections in the pool
+     * @param maxConnectionPerRoute maximum number of connections to a single host
+     * @param idleTimeoutInMilliSecond time after which idle connections are closed
+     * @param isAsync flag to create a non-blocking client as well
+     */
+    HttpMiniClient(String keyStoreFile, String keyStorePassword, String trustStoreFile, String trustStorePassword,
+                   String keyStoreType, int maxConnection, int maxConnectionPerRoute, int idleTimeoutInMilliSecond,
+                   boolean isAsync) {
+        this.keyStoreFile = keyStoreFile;
+        this.keyStorePassword = keyStorePassword;
+        this.trustStoreFile = trustStoreFile;
+        this.trustStorePassword = trustStorePassword;
+        this.keyStoreType = keyStoreType;
+        this.maxConnection = maxConnection;
+        this.maxConnectionPerRoute = maxConnectionPerRoute;
+        this.idleTimeoutInMilliSecond = idleTimeoutInMilliSecond;
+        this.isAsync = isAsync;
+    }
+
+    /**
+     * Creating the connection pool and the client.
+     * 1. missing limits are replaced with default values.
+     * 2. plain and secure http are registered. SSL Context is shared with the server.
+     * 3. idle and expired connections are closed by a background thread of the client.
+     * 4. connection state is disabled so that connections authenticated with a client certificate can be reused.
+     * 5. if asynchronous flag is set, create and start the non-blocking client with the same settings.
+     *
+     * @throws MALException invalid limits or any error while creating SSL Context or IO reactor
+     */
+    public void create() throws MALException {
+        if (maxConnection == 0) {
+            maxConnection = Constants.DEFAULT_MAX_CONNECTION;
+        }
+        if (maxConnectionPerRoute == 0) {
+            maxConnectionPerRoute = Constants.DEFAULT_MAX_CONNECTION_PER_ROUTE;
+        }
+        if (idleTimeoutInMilliSecond == 0) {
+            idleTimeoutInMilliSecond = Constants.DEFAULT_IDLE_CONNECTION_TIMEOUT;
+        }
+        if (maxConnection < 0 || maxConnectionPerRoute < 0 || idleTimeoutInMilliSecond < 0) {
+            throw new MALException("Invalid connection limits or idle timeout for Http Client");
+        }
+        SSLContext sslContext = HttpMiniServer.getSSLContext(keyStoreFile, keyStorePassword,
+                trustStoreFile, trustStorePassword, keyStoreType);
+        SSLConnectionSocketFactory sslConnectionSocketFactory = new SSLConnectionSocketFactory(sslContext,
+                SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+        Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register(Constants.PLAIN_HTTP, PlainConnectionSocketFactory.INSTANCE)
+                .register(Constants.SECURE_HTTP, sslConnectionSocketFactory)
+                .build();
+        connectionManager = new PoolingHttpClientConnectionManager(registry);
+        connectionManager.setMaxTotal(maxConnection);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionPerRoute);
+        client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutInMilliSecond, TimeUnit.MILLISECONDS)
+                .disableConnectionState()
+                .build();
+        if (isAsync) {
+            createAsyncClient(sslContext);
+        }
+    }
+
+    /**
+     * Creating and starting the non-blocking client.
+     * Idle and expired connections are closed by a scheduled thread.
+     *
+     * @param sslContext SSL Context shared with the blocking client
+     * @throws MALException error while creating IO reactor
+     */
+    private void createAsyncClient(SSLContext sslContext) throws MALException {
+        Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register(Constants.PLAIN_HTTP, NoopIOSessionStrategy.INSTANCE)
+                .register(Constants.SECURE_HTTP, new SSLIOSessionStrategy(sslContext,
+                        SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                .build();
+        try {
+            asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(), registry);
+        } catch (IOReactorException exp) {
+            throw new MALException("Error while creating IO reactor for asynchronous Http Client", exp);
+        }
+        asyncConnectionManager.setMaxTotal(maxConnection);
+        asyncConnectionManager.setDefaultMaxPerRoute(maxConnectionPerRoute);
+        asyncClient = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .disableConnectionState()
+                .build();
+        asyncClient.start();
+        idleConnectionEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HttpMiniClient-idle-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        idleConnectionEvictor.scheduleWithFixedDelay(() -> {
+            asyncConnectionManager.closeExpiredConnections();
+            asyncConnectionManager.closeIdleConnections(idleTimeoutInMilliSecond, TimeUnit.MILLISECONDS);
+        }, idleTimeoutInMilliSecond, idleTimeoutInMilliSecond, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return shared client or null if it is not created.
+     */
+    public CloseableHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return non-blocking client or null if asynchronous flag is not set.
+     */
+    public CloseableHttpAsyncClient getAsyncClient() {
+        return asyncClient;
+    }
+
+    /**
+     * Opening a connection to the target and putting it back to the pool,
+     * so that the first message to the target doesn't wait for the handshakes.
+     * Failure is logged only. Messages will open a new connection in that case.
+     *
+     * @param targetURL http or https URL of the target
+     * @param connectTimeoutInMilliSecond maximum time to wait for the connection
+     */
+    void preConnect(String targetURL, int connectTimeoutInMilliSecond) {
+        if (connectionManager == null || targetURL == null || targetURL.isEmpty()) {
+            return;
+        }
+        try {
+            HttpRoute route = createRoute(new URI(targetURL));
+            HttpClientContext context = HttpClientContext.create();
+            ConnectionRequest request = connectionManager.requestConnection(route, null);
+            HttpClientConnection connection = request.get(connectTimeoutInMilliSecond, TimeUnit.MILLISECONDS);
+            try {
+                connectionManager.connect(connection, route, connectTimeoutInMilliSecond, context);
+                connectionManager.routeComplete(connection, route, context);
+            } finally {
+                connectionManager.releaseConnection(connection, null, idleTimeoutInMilliSecond, TimeUnit.MILLISECONDS);
+            }
+            HttpTransport.LOGGER.log(Level.FINE, "Pre-connected to " + targetURL);
+        } catch (URISyntaxException | IOException | ExecutionException | RuntimeException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Pre-connecting to " + targetURL + " failed.", exp);
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Route of a direct connection to the target.
+     * Default port of the scheme is filled in the same way as the route planner of the client does,
+     * so that the connection is pooled under the route which messages to the target use.
+     *
+     * @param uri http or https URI of the target
+     * @return route to the target with explicit port
+     * @throws IOException if the scheme is not supported
+     */
+    static HttpRoute createRoute(URI uri) throws IOException {
+        HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+        if (target.getPort() < 0) {
+            target = new HttpHost(target.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(target),
+                    target.getSchemeName());
+        }
+        return new HttpRoute(target, null, Constants.SECURE_HTTP.equalsIgnoreCase(target.getSchemeName()));
+    }
+
+    /**
+     * Closing the clients and all pooled connections.
+     */
+    public void close() {
+        if (idleConnectionEvictor != null) {
+            idleConnectionEvictor.shutdown();
+        }
+        closeQuietly(client);
+        closeQuietly(asyncClient);
+    }
+
+    /**
+     * @param closeable client to close. may be null.
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Error while closing Http Client.", exp);
+        }
+    }
+
+    /**
+     * Start to create the builder
+     * @return HttpMiniClientBuilder
+     */
+    public static HttpMiniClientBuilder custom() {
+        return HttpMiniClientBuilder.create();
+    }
+}
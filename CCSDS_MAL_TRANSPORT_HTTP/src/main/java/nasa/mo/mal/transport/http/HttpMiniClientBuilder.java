@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+/**
+ * Builder for Http Mini Client
+ */
+public class HttpMiniClientBuilder {
+    private String keyStoreFile;
+    private String keyStorePassword;
+    private String trustStoreFile;
+    private String trustStorePassword;
+    private String keyStoreType;
+    private int maxConnection;
+    private int maxConnectionPerRoute;
+    private int idleTimeoutInMilliSecond;
+    private boolean isAsync;
+    /**
+     * Static method to create a new builder
+     * @return HttpMiniClientBuilder
+     */
+    public static HttpMiniClientBuilder create() {
+        return new HttpMiniClientBuilder();
+    }
+
+    private HttpMiniClientBuilder() {
+
+    }
+
+    public HttpMiniClientBuilder keyStoreFile(final String keyStoreFile) {
+        this.keyStoreFile = keyStoreFile;
+        return this;
+    }
+
+    public HttpMiniClientBuilder keyStorePassword(final String keyStorePassword) {
+        this.keyStorePassword = keyStorePassword;
+        return this;
+    }
+
+    public HttpMiniClientBuilder trustStoreFile(final String trustStoreFile) {
+        this.trustStoreFile = trustStoreFile;
+        return this;
+    }
+
+    public HttpMiniClientBuilder trustStorePassword(final String trustStorePassword) {
+        this.trustStorePassword = trustStorePassword;
+        return this;
+    }
+
+    public HttpMiniClientBuilder keyStoreType(final String keyStoreType) {
+        this.keyStoreType = keyStoreType;
+        return this;
+    }
+
+    public HttpMiniClientBuilder maxConnection(final int maxConnection) {
+        this.maxConnection = maxConnection;
+        return this;
+    }
+
+    public HttpMiniClientBuilder maxConnectionPerRoute(final int maxConnectionPerRoute) {
+        this.maxConnectionPerRoute = maxConnectionPerRoute;
+        return this;
+    }
+
+    public HttpMiniClientBuilder idleTimeoutInMilliSecond(final int idleTimeoutInMilliSecond) {
+        this.idleTimeoutInMilliSecond = idleTimeoutInMilliSecond;
+        return this;
+    }
+
+    public HttpMiniClientBuilder isAsync(final boolean isAsync) {
+        this.isAsync = isAsync;
+        return this;
+    }
+
+    /**
+     * build the object it is supposed to build
+     * @return HttpMiniClient
+     */
+    public HttpMiniClient build() {
+        return new HttpMiniClient(keyStoreFile, keyStorePassword, trustStoreFile, trustStorePassword, keyStoreType,
+                maxConnection, maxConnectionPerRoute, idleTimeoutInMilliSecond, isAsync);
+    }
+}
@@ -10,14 +10,16 @@
 
 package nasa.mo.mal.transport.http;
 
-import com.sun.net.httpserver.*;
+import com.sun.net.httpserver.HttpHandler;
+import nasa.mo.mal.transport.http.server.HttpServerEngine;
+import nasa.mo.mal.transport.http.server.JdkServerEngine;
+import nasa.mo.mal.transport.http.server.NioServerEngine;
 import nasa.mo.mal.transport.http.util.Constants;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.ccsds.moims.mo.mal.MALException;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLParameters;
 import javax.net.ssl.TrustManagerFactory;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
@@ -28,7 +30,8 @@ import java.net.InetSocketAddress;
 import java.security.KeyStore;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
 
 /**
  * @author wphyo
@@ -44,13 +47,28 @@ public class HttpMiniServer {
     private String trustStoreFile;
     private String trustStorePassword;
     private int socketBacklog;
-    private HttpServer server;
+    private HttpServerEngine engine;
     private int threadPoolCount;
+    private String executorType;
+    private int queueLimit;
+    private Executor executor;
+    private ServerExecutor serverExecutor;
+    private String engineType;
+    private int selectorCount;
+    private int maxBodySize;
     private HttpHandler mainHandler;
     private String keyStoreType;
     private boolean isSecureServer;
     private static final Map<String, SSLContext> SSL_CONTEXT_MAP = new HashMap<>();
 
+    static {
+        // com.sun.net.httpserver doesn't set TCP_NODELAY by default.
+        // Responses on kept alive connections from pooled clients are then delayed until the client acknowledges.
+        if (System.getProperty(Constants.SERVER_NO_DELAY_PROPERTY) == null) {
+            System.setProperty(Constants.SERVER_NO_DELAY_PROPERTY, "true");
+        }
+    }
+
     /**
      * Constructor
      *
@@ -60,11 +78,19 @@ public class HttpMiniServer {
      * @param keyStorePassword Java Key Store password if secure http
      * @param socketBacklog maximum allowed socket backlog
      * @param threadPoolCount thread pool count
+     * @param executorType bounded or virtual. default is bounded
+     * @param queueLimit maximum number of requests waiting for a thread in bounded executor
+     * @param executor executor given by the caller. executor type is ignored if it is not null
+     * @param engineType jdk, nio, or class name of an HttpServerEngine. default is jdk
+     * @param selectorCount number of selector threads of nio engine. 0 means one per core
+     * @param maxBodySize largest request body in bytes of nio engine. 0 means 64 MB
      * @param mainHandler Http Handler
      */
     HttpMiniServer(String serverHost, int serverPort, String keyStoreFile, String keyStorePassword,
                    String trustStoreFile, String trustStorePassword, String keyStoreType,
-                   int socketBacklog, int threadPoolCount, boolean isSecureServer, HttpHandler mainHandler) {
+                   int socketBacklog, int threadPoolCount, String executorType, int queueLimit, Executor executor,
+                   String engineType, int selectorCount, int maxBodySize, boolean isSecureServer,
+                   HttpHandler mainHandler) {
         this.serverHost = serverHost;
         this.serverPort = serverPort;
         this.keyStoreFile = keyStoreFile;
@@ -73,6 +99,12 @@ public class HttpMiniServer {
         this.trustStorePassword = trustStorePassword;
         this.socketBacklog = socketBacklog;
         this.threadPoolCount = threadPoolCount;
+        this.executorType = executorType;
+        this.queueLimit = queueLimit;
+        this.executor = executor;
+        this.engineType = engineType;
+        this.selectorCount = selectorCount;
+        this.maxBodySize = maxBodySize;
         this.mainHandler = mainHandler;
         this.keyStoreType = keyStoreType;
         this.isSecureServer = isSecureServer;
@@ -90,25 +122,36 @@ public class HttpMiniServer {
         if (threadPoolCount < MIN_VALID_THREAD_COUNT) {
             throw new MALException("Invalid number of threads");
         }
+        if (queueLimit == 0) {
+            queueLimit = Constants.DEFAULT_SERVER_QUEUE_LIMIT;
+        }
+        if (queueLimit < 0) {
+            throw new MALException("Invalid queue limit");
+        }
+        if (maxBodySize < 0) {
+            throw new MALException("Invalid maximum body size");
+        }
         if (mainHandler == null || serverHost == null || serverPort == 0 || serverHost.isEmpty()) {
             throw new MALException("Null Host, Port, or Handler.");
         }
         try {
             InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(serverHost), serverPort);
-            if (!isSecureServer) {
-                server = HttpServer.create(address, socketBacklog);
-            } else {
+            SSLContext sslContext = null;
+            if (isSecureServer) {
                 if (isPlainServer()) {
                     throw new MALException("Null values in necessary keystore and password files");
                 }
-                HttpsConfigurator configurator = new ClientAuthenticatingConfigurator(
-                        getSSLContext(keyStoreFile, keyStorePassword, trustStoreFile, trustStorePassword, keyStoreType));
-                server = HttpsServer.create(address, socketBacklog);
-                ((HttpsServer) server).setHttpsConfigurator(configurator);
+                sslContext = getSSLContext(keyStoreFile, keyStorePassword, trustStoreFile, trustStorePassword,
+                        keyStoreType);
+            }
+            engine = createEngine();
+            serverExecutor = createExecutor();
+            try {
+                engine.create(address, socketBacklog, sslContext, mainHandler, serverExecutor);
+            } catch (IOException | MALException exp) {
+                serverExecutor.shutdown();
+                throw exp;
             }
-            server.createContext("/", mainHandler);
-            Executors.newFixedThreadPool(threadPoolCount);
-            server.setExecutor(Executors.newCachedThreadPool());
         } catch (IOException exp) {
             StringBuilder errorBuilder = new StringBuilder("Error creating Server: \n");
             errorBuilder.append("host: ").append(serverHost).append("\n");
@@ -118,6 +161,61 @@ public class HttpMiniServer {
         }
     }
 
+    /**
+     * Helper method for creating a server.
+     * Engine receiving requests.
+     * 1.   jdk: com.sun.net.httpserver. default.
+     * 2.   nio: plain Java NIO with a selector per thread. plain http only.
+     * 3.   otherwise, class name of an HttpServerEngine implementation.
+     *
+     * @return engine
+     * @throws MALException unknown engine
+     */
+    private HttpServerEngine createEngine() throws MALException {
+        if (engineType == null || engineType.isEmpty() || JdkServerEngine.NAME.equalsIgnoreCase(engineType)) {
+            return new JdkServerEngine();
+        }
+        if (NioServerEngine.NAME.equalsIgnoreCase(engineType)) {
+            return new NioServerEngine(selectorCount, maxBodySize);
+        }
+        try {
+            Object customEngine = Class.forName(engineType).newInstance();
+            if (customEngine instanceof HttpServerEngine) {
+                return (HttpServerEngine) customEngine;
+            }
+        } catch (ReflectiveOperationException | LinkageError exp) {
+            throw new MALException("Unknown server engine: " + engineType, exp);
+        }
+        throw new MALException("Unknown server engine: " + engineType);
+    }
+
+    /**
+     * Helper method for creating a server.
+     * Executor for request handlers.
+     * 1.   executor given by the caller if there is one.
+     * 2.   virtual thread per request. falling back to bounded executor if the JVM doesn't have virtual threads.
+     * 3.   bounded executor with thread pool count and queue limit.
+     *
+     * @return executor
+     * @throws MALException unknown executor type
+     */
+    private ServerExecutor createExecutor() throws MALException {
+        if (executor != null) {
+            return ServerExecutor.external(executor);
+        }
+        if (ServerExecutor.VIRTUAL.equalsIgnoreCase(executorType)) {
+            ServerExecutor virtualExecutor = ServerExecutor.virtual();
+            if (virtualExecutor != null) {
+                return virtualExecutor;
+            }
+            HttpTransport.LOGGER.log(Level.WARNING, "Virtual threads are not available. Using bounded executor.");
+        } else if (executorType != null && !executorType.isEmpty() &&
+                !ServerExecutor.BOUNDED.equalsIgnoreCase(executorType)) {
+            throw new MALException("Unknown server executor: " + executorType);
+        }
+        return ServerExecutor.bounded(threadPoolCount, queueLimit);
+    }
+
     /**
      * Helper method for creating a server.
      * Check if this server is a plain http or SSL by checking necessary parameters for SSL is null
@@ -157,18 +255,36 @@ public class HttpMiniServer {
      * Starting Server if it is not null.
      */
     void start() {
-        if (server != null) {
-            server.start();
+        if (engine != null) {
+            engine.start();
         }
     }
 
     /**
      * Stopping Server if it is not null.
+     * Executor is shut down unless it is given by the caller.
      */
     void stop() {
-        if (server != null) {
-            server.stop(0);
+        if (engine != null) {
+            engine.stop();
         }
+        if (serverExecutor != null) {
+            serverExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @return engine receiving requests. null before the server is created.
+     */
+    public HttpServerEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return executor of request handlers with its counters. null before the server is created.
+     */
+    public ServerExecutor getExecutor() {
+        return serverExecutor;
     }
 
     /**
@@ -241,35 +357,4 @@ public class HttpMiniServer {
     public static HttpMiniServerBuilder custom() {
         return HttpMiniServerBuilder.create();
     }
-
-    /**
-     * Custom Https Configurator to enable Client Authentication
-     */
-    private class ClientAuthenticatingConfigurator extends HttpsConfigurator {
-        /**
-         * Constructor
-         * @param sslContext SSL Context from server
-         */
-        ClientAuthenticatingConfigurator(SSLContext sslContext) {
-            super(sslContext);  }
-
-        /**
-         * Configuring SSL on each request
-         * Steps:
-         * 1.   Get SSL Context from constructor
-         * 2.   enable Client Authentication in that Context
-         * 3.   enable client Authentication in Https Parameters
-         * 4.   copy other parameters from context.
-         *
-         * @param params HttpsParameters from the request
-         */
-        @Override
-        public  void configure(HttpsParameters params) {
-            SSLContext sslContext = getSSLContext();
-            SSLParameters sslParams = sslContext.getDefaultSSLParameters();
-            sslParams.setNeedClientAuth(true);
-            params.setNeedClientAuth(true);
-            params.setSSLParameters(sslParams);
-        }
-    }
 }
@@ -12,6 +12,8 @@ package nasa.mo.mal.transport.http;
 
 import com.sun.net.httpserver.HttpHandler;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author wphyo
  *         Created on 8/8/17.
@@ -26,6 +28,12 @@ public class HttpMiniServerBuilder {
     private String trustStorePassword;
     private int socketBacklog;
     private int threadPoolCount;
+    private String executorType;
+    private int queueLimit;
+    private Executor executor;
+    private String engineType;
+    private int selectorCount;
+    private int maxBodySize;
     private HttpHandler mainHandler;
     private String keyStoreType;
     private boolean isSecureServer;
@@ -81,6 +89,36 @@ public class HttpMiniServerBuilder {
         return this;
     }
 
+    public HttpMiniServerBuilder executorType(final String executorType) {
+        this.executorType = executorType;
+        return this;
+    }
+
+    public HttpMiniServerBuilder queueLimit(final int queueLimit) {
+        this.queueLimit = queueLimit;
+        return this;
+    }
+
+    public HttpMiniServerBuilder executor(final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public HttpMiniServerBuilder engineType(final String engineType) {
+        this.engineType = engineType;
+        return this;
+    }
+
+    public HttpMiniServerBuilder selectorCount(final int selectorCount) {
+        this.selectorCount = selectorCount;
+        return this;
+    }
+
+    public HttpMiniServerBuilder maxBodySize(final int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
     public HttpMiniServerBuilder mainHandler(final HttpHandler mainHandler) {
         this.mainHandler = mainHandler;
         return this;
@@ -102,6 +140,7 @@ public class HttpMiniServerBuilder {
      */
     public HttpMiniServer build() {
         return new HttpMiniServer(serverHost, serverPort, keyStoreFile, keyStorePassword, trustStoreFile,
-                trustStorePassword, keyStoreType, socketBacklog, threadPoolCount, isSecureServer, mainHandler);
+                trustStorePassword, keyStoreType, socketBacklog, threadPoolCount, executorType, queueLimit, executor, engineType,
+                selectorCount, maxBodySize, isSecureServer, mainHandler);
     }
 }
@@ -11,6 +11,8 @@
 package nasa.mo.mal.transport.http;
 
 import com.sun.net.httpserver.*;
+import nasa.mo.mal.encoder.AttachmentAwareStreamFactory;
+import nasa.mo.mal.encoder.BlobAttachments;
 import nasa.mo.mal.encoder.Header.HttpHeaderKeys;
 import nasa.mo.mal.encoder.Header.MalToHttpMapper;
 import nasa.mo.mal.encoder.util.HeaderMappingHelper;
@@ -29,14 +31,17 @@ import nasa.mo.mal.transport.http.senders.ResponseMessageSender;
 import nasa.mo.mal.transport.http.util.Constants;
 import nasa.mo.mal.transport.http.util.HttpTransportHelper;
 import nasa.mo.mal.transport.http.util.MALTransmitErrorBuilder;
+import nasa.mo.mal.transport.http.util.MultipartRelated;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALHelper;
 import org.ccsds.moims.mo.mal.broker.MALBrokerBinding;
+import org.ccsds.moims.mo.mal.encoding.MALElementStreamFactory;
 import org.ccsds.moims.mo.mal.structures.*;
 import org.ccsds.moims.mo.mal.structures.URI;
 import org.ccsds.moims.mo.mal.transport.*;
 
 import java.io.*;
+import java.io.File;
 import java.net.*;
 import java.util.HashMap;
 import java.util.Map;
@@ -52,22 +57,75 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
     public static final Logger LOGGER = Logger.getLogger(HttpTransport.class.getName());
     private static final char PORT_DELIMITER = ':';
     /**
-     * A map to keep the Http messages that need a reply from MAL to respond.
-     * Key: Transaction ID
-     * Value: Incomplete Http Exchange Object.
+     * Interaction types which can have their own deadline for pending exchanges.
      */
-    private final Map<Long, HttpExchange> responseMessageMap = new HashMap<>();
+    private static final InteractionType[] PENDING_INTERACTION_TYPES = {InteractionType.SEND, InteractionType.SUBMIT,
+            InteractionType.REQUEST, InteractionType.INVOKE, InteractionType.PROGRESS, InteractionType.PUBSUB};
     private String serverHost;
     private int serverPort;
     private int socketBacklog;
     private int newFixedThreadPool;
+    private String threadMode;
+    private boolean isVirtualThreads;
+    private String serverExecutorType;
+    private int serverQueueLimit;
+    private Executor serverExecutor;
+    private String serverEngineType;
+    private int serverSelectorCount;
+    private int serverMaxBodySize;
     private boolean isClientOnly;
     private URI httpDestinationEndpoint;
     private boolean isSecureServer;
+    private int maxConnection;
+    private int maxConnectionPerRoute;
+    private int idleConnectionTimeout;
+    private boolean isPreConnect;
+    private boolean isAsyncSender;
+    private long pendingExchangeTimeout = Constants.DEFAULT_PENDING_EXCHANGE_TIMEOUT;
+    private long pendingExchangeTick = Constants.DEFAULT_PENDING_EXCHANGE_TICK;
+    private int inboundHighWaterMark;
+    private int inboundLimit;
+    private String inboundSchedulerType;
+    private long inboundAging = Constants.DEFAULT_INBOUND_AGING;
+    private String outboundSchedulerType;
+    private int outboundReserved = -1;
+    private long outboundAging = Constants.DEFAULT_OUTBOUND_AGING;
+    private int outboundLaneConcurrency;
+    private boolean isInboundOrdered;
+    private int inboundEndpointQueueLimit;
+    private long inboundSlowConsumer = Constants.DEFAULT_INBOUND_SLOW_CONSUMER;
+    private int attachmentThreshold;
+    private int attachmentMemoryLimit = Constants.DEFAULT_ATTACHMENT_MEMORY_LIMIT;
+    private long attachmentSpoolLimit = Constants.DEFAULT_ATTACHMENT_SPOOL_LIMIT;
+    private File attachmentDirectory;
+    /**
+     * Delivery lanes of new messages per destination. null if they are not enabled.
+     */
+    private DestinationLanes outboundLanes;
+    /**
+     * Admission control of incoming messages. created in init() if this is a server.
+     */
+    private InboundAdmission inboundAdmission;
+    /**
+     * Ordered delivery of incoming messages per URI-To and URI-From. null if it is not enabled.
+     */
+    private InboundDispatcher inboundDispatcher;
+    private final Map<Integer, Long> pendingExchangeTimeouts = new HashMap<>();
+    /**
+     * Http messages that need a reply from MAL to respond.
+     * Key: Source URI & Transaction ID
+     * Value: Incomplete Http Exchange Object.
+     * created in init() if this is a server and closed in close()
+     */
+    private PendingExchangeRegistry pendingExchanges;
     /**
      * Http Server which will be created in init() and close in close()
      */
     private HttpMiniServer server;
+    /**
+     * Http Client shared by new message senders. created in init() and closed in close()
+     */
+    private HttpMiniClient httpClient;
     /**
      * A pool of threads to process messages and send up to MAL
      */
@@ -81,9 +139,9 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
      */
     private ExecutorService newMessageProcessors;
     /**
-     * A pool of threads Log the errors.
+     * Results of senders and processors. recorded by the threads running them.
      */
-    private ExecutorService loggingResultProcessor;
+    private final ResultCounters resultCounters = new ResultCounters();
 
     private boolean isXmlEncodedFactory;
     private String encoderFactoryName;
@@ -139,6 +197,16 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
      * 2.   Server port
      * 3.   Socket Backlog
      * 4.   Thread Pool Number
+     * 5.   Client connection limits, idle timeout, and pre-connect flag
+     * 6.   Deadlines for Http Exchanges waiting for a reply from MAL
+     * 7.   Server executor type or executor object, and queue limit
+     * 8.   Server engine, its selector threads and maximum body size
+     * 9.   High-water mark and limit of incoming messages
+     * 10.  Inbound scheduler type and its aging
+     * 11.  Outbound scheduler type, its reserved threads and aging
+     * 12.  Concurrency of outbound lanes per destination
+     * 13.  Ordered inbound delivery, its queue limit per endpoint and slow consumer threshold
+     * 14.  Thread mode: platform or virtual
      *
      * @param properties property map having all the info
      * @throws MALException No exception from this.
@@ -158,9 +226,101 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
             if (properties.containsKey(Constants.THREAD_POOL_KEY)) {
                 newFixedThreadPool = Integer.parseInt((String) properties.get(Constants.THREAD_POOL_KEY));
             }
+            if (properties.containsKey(Constants.THREAD_MODE_KEY)) {
+                threadMode = (String) properties.get(Constants.THREAD_MODE_KEY);
+            }
+            if (properties.get(Constants.SERVER_EXECUTOR_KEY) instanceof Executor) {
+                serverExecutor = (Executor) properties.get(Constants.SERVER_EXECUTOR_KEY);
+            } else if (properties.containsKey(Constants.SERVER_EXECUTOR_KEY)) {
+                serverExecutorType = (String) properties.get(Constants.SERVER_EXECUTOR_KEY);
+            }
+            if (properties.containsKey(Constants.SERVER_QUEUE_LIMIT_KEY)) {
+                serverQueueLimit = Integer.parseInt((String) properties.get(Constants.SERVER_QUEUE_LIMIT_KEY));
+            }
+            if (properties.containsKey(Constants.SERVER_ENGINE_KEY)) {
+                serverEngineType = (String) properties.get(Constants.SERVER_ENGINE_KEY);
+            }
+            if (properties.containsKey(Constants.SERVER_SELECTOR_COUNT_KEY)) {
+                serverSelectorCount = Integer.parseInt((String) properties.get(Constants.SERVER_SELECTOR_COUNT_KEY));
+            }
+            if (properties.containsKey(Constants.SERVER_MAX_BODY_SIZE_KEY)) {
+                serverMaxBodySize = Integer.parseInt((String) properties.get(Constants.SERVER_MAX_BODY_SIZE_KEY));
+            }
+            if (properties.containsKey(Constants.INBOUND_HIGH_WATER_MARK_KEY)) {
+                inboundHighWaterMark = Integer.parseInt((String) properties.get(Constants.INBOUND_HIGH_WATER_MARK_KEY));
+            }
+            if (properties.containsKey(Constants.INBOUND_LIMIT_KEY)) {
+                inboundLimit = Integer.parseInt((String) properties.get(Constants.INBOUND_LIMIT_KEY));
+            }
+            if (properties.containsKey(Constants.INBOUND_SCHEDULER_KEY)) {
+                inboundSchedulerType = (String) properties.get(Constants.INBOUND_SCHEDULER_KEY);
+            }
+            if (properties.containsKey(Constants.INBOUND_AGING_KEY)) {
+                inboundAging = Long.parseLong((String) properties.get(Constants.INBOUND_AGING_KEY));
+            }
+            if (properties.containsKey(Constants.OUTBOUND_SCHEDULER_KEY)) {
+                outboundSchedulerType = (String) properties.get(Constants.OUTBOUND_SCHEDULER_KEY);
+            }
+            if (properties.containsKey(Constants.OUTBOUND_RESERVED_KEY)) {
+                outboundReserved = Integer.parseInt((String) properties.get(Constants.OUTBOUND_RESERVED_KEY));
+            }
+            if (properties.containsKey(Constants.OUTBOUND_AGING_KEY)) {
+                outboundAging = Long.parseLong((String) properties.get(Constants.OUTBOUND_AGING_KEY));
+            }
+            if (properties.containsKey(Constants.OUTBOUND_LANE_CONCURRENCY_KEY)) {
+                outboundLaneConcurrency = Integer.parseInt(
+                        (String) properties.get(Constants.OUTBOUND_LANE_CONCURRENCY_KEY));
+            }
+            isInboundOrdered = properties.containsKey(Constants.INBOUND_ORDERED_KEY) &&
+                    ((String) properties.get(Constants.INBOUND_ORDERED_KEY)).toLowerCase().equals("true");
+            if (properties.containsKey(Constants.INBOUND_ENDPOINT_QUEUE_LIMIT_KEY)) {
+                inboundEndpointQueueLimit = Integer.parseInt(
+                        (String) properties.get(Constants.INBOUND_ENDPOINT_QUEUE_LIMIT_KEY));
+            }
+            if (properties.containsKey(Constants.INBOUND_SLOW_CONSUMER_KEY)) {
+                inboundSlowConsumer = Long.parseLong((String) properties.get(Constants.INBOUND_SLOW_CONSUMER_KEY));
+            }
+            if (properties.containsKey(Constants.ATTACHMENT_THRESHOLD_KEY)) {
+                attachmentThreshold = Integer.parseInt((String) properties.get(Constants.ATTACHMENT_THRESHOLD_KEY));
+            }
+            if (properties.containsKey(Constants.ATTACHMENT_MEMORY_LIMIT_KEY)) {
+                attachmentMemoryLimit = Integer.parseInt(
+                        (String) properties.get(Constants.ATTACHMENT_MEMORY_LIMIT_KEY));
+            }
+            if (properties.containsKey(Constants.ATTACHMENT_SPOOL_LIMIT_KEY)) {
+                attachmentSpoolLimit = Long.parseLong((String) properties.get(Constants.ATTACHMENT_SPOOL_LIMIT_KEY));
+            }
+            if (properties.containsKey(Constants.ATTACHMENT_DIRECTORY_KEY)) {
+                attachmentDirectory = new File((String) properties.get(Constants.ATTACHMENT_DIRECTORY_KEY));
+            }
             if (properties.containsKey(Constants.HTTP_DESTINATION_ENDPOINT_KEY)) {
                 httpDestinationEndpoint = new URI((String) properties.get(Constants.HTTP_DESTINATION_ENDPOINT_KEY));
             }
+            if (properties.containsKey(Constants.MAX_CONNECTION_KEY)) {
+                maxConnection = Integer.parseInt((String) properties.get(Constants.MAX_CONNECTION_KEY));
+            }
+            if (properties.containsKey(Constants.MAX_CONNECTION_PER_ROUTE_KEY)) {
+                maxConnectionPerRoute = Integer.parseInt((String) properties.get(Constants.MAX_CONNECTION_PER_ROUTE_KEY));
+            }
+            if (properties.containsKey(Constants.IDLE_CONNECTION_TIMEOUT_KEY)) {
+                idleConnectionTimeout = Integer.parseInt((String) properties.get(Constants.IDLE_CONNECTION_TIMEOUT_KEY));
+            }
+            isPreConnect = properties.containsKey(Constants.PRE_CONNECT_KEY) &&
+                    ((String) properties.get(Constants.PRE_CONNECT_KEY)).toLowerCase().equals("true");
+            isAsyncSender = properties.containsKey(Constants.ASYNC_SENDER_KEY) &&
+                    ((String) properties.get(Constants.ASYNC_SENDER_KEY)).toLowerCase().equals("true");
+            if (properties.containsKey(Constants.PENDING_EXCHANGE_TIMEOUT_KEY)) {
+                pendingExchangeTimeout = Long.parseLong((String) properties.get(Constants.PENDING_EXCHANGE_TIMEOUT_KEY));
+            }
+            for (InteractionType interactionType : PENDING_INTERACTION_TYPES) {
+                String key = Constants.PENDING_EXCHANGE_TIMEOUT_KEY + "." + interactionType.toString().toLowerCase();
+                if (properties.containsKey(key)) {
+                    pendingExchangeTimeouts.put(interactionType.getOrdinal(), Long.parseLong((String) properties.get(key)));
+                }
+            }
+            if (properties.containsKey(Constants.PENDING_EXCHANGE_TICK_KEY)) {
+                pendingExchangeTick = Long.parseLong((String) properties.get(Constants.PENDING_EXCHANGE_TICK_KEY));
+            }
             if (properties.containsKey(Constants.KEY_STORE_FILE_KEY)) {
                 keyStoreFile = (String) properties.get(Constants.KEY_STORE_FILE_KEY);
             }
@@ -196,9 +356,10 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
     /**
      * Initialises this transport.
      * <p>
-     * 1.   if it is not a server, don't do anything.
-     * 2.   if it is server, then fill missing info (if any)
-     * 3.   start a new server.
+     * 1.   create the shared http client. pre-connect to the destination endpoint if it is enabled.
+     * 2.   if it is not a server, don't do anything else.
+     * 3.   if it is server, then fill missing info (if any)
+     * 4.   start a new server.
      *
      * @throws MALException On error
      */
@@ -208,8 +369,29 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         if (newFixedThreadPool == 0) {
             newFixedThreadPool = Constants.DEFAULT_THREAD_POOL;
         }
-        newMessageProcessors = Executors.newFixedThreadPool(newFixedThreadPool);
-        loggingResultProcessor = Executors.newSingleThreadExecutor();
+        isVirtualThreads = isVirtualThreadMode();
+        newMessageProcessors = createNewMessageProcessors();
+        if (outboundLaneConcurrency < 0) {
+            throw new MALException("Invalid outbound lane concurrency: " + outboundLaneConcurrency);
+        }
+        if (outboundLaneConcurrency == 0 && isVirtualThreads) {
+            outboundLaneConcurrency = newFixedThreadPool;
+        }
+        if (outboundLaneConcurrency > 0) {
+            outboundLanes = new DestinationLanes(newMessageProcessors, outboundLaneConcurrency);
+        }
+        httpClient = HttpMiniClient.custom()
+                .keyStoreFile(keyStoreFile).keyStorePassword(keyStorePassword)
+                .trustStoreFile(trustStoreFile).trustStorePassword(trustStorePassword).keyStoreType(keyStoreType)
+                .maxConnection(maxConnection).maxConnectionPerRoute(maxConnectionPerRoute)
+                .idleTimeoutInMilliSecond(idleConnectionTimeout).isAsync(isAsyncSender).build();
+        httpClient.create();
+        if (isPreConnect && httpDestinationEndpoint != null && httpDestinationEndpoint.getValue() != null &&
+                !httpDestinationEndpoint.getValue().isEmpty()) {
+            String targetURL = httpDestinationEndpoint.getValue().replaceAll("^malhttp",
+                    isSecureServer ? Constants.SECURE_HTTP : Constants.PLAIN_HTTP);
+            newMessageProcessors.submit(() -> httpClient.preConnect(targetURL, Constants.DEFAULT_PRE_CONNECT_TIMEOUT));
+        }
         if (serverHost == null || serverHost.trim().isEmpty()) {
             LOGGER.log(Level.INFO, "This is client. Server is not created");
             isClientOnly = true;
@@ -221,12 +403,45 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         if (socketBacklog == 0) {
             socketBacklog = Constants.DEFAULT_SOCKET_BACKLOG;
         }
-        incomingMessageProcessors = Executors.newFixedThreadPool(newFixedThreadPool);
-        responseMessageProcessors = Executors.newFixedThreadPool(newFixedThreadPool);
+        if (inboundLimit == 0) {
+            inboundLimit = Math.max(Constants.DEFAULT_INBOUND_LIMIT, inboundHighWaterMark);
+        }
+        if (inboundHighWaterMark == 0) {
+            inboundHighWaterMark = Math.max(1, inboundLimit * Constants.DEFAULT_INBOUND_HIGH_WATER_MARK_PERCENT / 100);
+        }
+        try {
+            inboundAdmission = new InboundAdmission(inboundHighWaterMark, inboundLimit);
+        } catch (IllegalArgumentException exp) {
+            throw new MALException(exp.getMessage(), exp);
+        }
+        incomingMessageProcessors = createIncomingMessageProcessors();
+        if (isInboundOrdered) {
+            try {
+                inboundDispatcher = new InboundDispatcher(incomingMessageProcessors,
+                        inboundEndpointQueueLimit == 0 ? inboundLimit : inboundEndpointQueueLimit,
+                        inboundSlowConsumer, inboundAdmission);
+            } catch (IllegalArgumentException exp) {
+                throw new MALException(exp.getMessage(), exp);
+            }
+        }
+        responseMessageProcessors = isVirtualThreads ?
+                VirtualThreadExecutor.create(null) : Executors.newFixedThreadPool(newFixedThreadPool);
+        try {
+            pendingExchanges = new PendingExchangeRegistry(pendingExchangeTimeout, pendingExchangeTimeouts,
+                    pendingExchangeTick);
+        } catch (IllegalArgumentException exp) {
+            throw new MALException(exp.getMessage(), exp);
+        }
+        pendingExchanges.start();
 
         HttpMiniServerBuilder builder = HttpMiniServer.custom()
                 .serverHost(serverHost).serverPort(serverPort).mainHandler(new MainHandler(this))
-                .socketBacklog(socketBacklog).threadPoolCount(newFixedThreadPool).isSecureServer(isSecureServer);
+                .socketBacklog(socketBacklog).threadPoolCount(newFixedThreadPool)
+                .executorType(serverExecutorType == null && isVirtualThreads ?
+                        ServerExecutor.VIRTUAL : serverExecutorType)
+                .queueLimit(serverQueueLimit).executor(serverExecutor)
+                .engineType(serverEngineType).selectorCount(serverSelectorCount).maxBodySize(serverMaxBodySize)
+                .isSecureServer(isSecureServer);
         if (isSecureServer) {
             builder.keyStoreFile(keyStoreFile).keyStorePassword(keyStorePassword)
                     .trustStoreFile(trustStoreFile).trustStorePassword(trustStorePassword)
@@ -237,44 +452,262 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         server.start();
     }
 
+    /**
+     * Checking the thread mode.
+     * 1.   platform (default): stages run on fixed pools of the thread pool count.
+     * 2.   virtual: stages run on virtual threads. falling back to platform if the JVM doesn't have them.
+     *
+     * @return flag if stages run on virtual threads
+     * @throws MALException if the thread mode is unknown
+     */
+    private boolean isVirtualThreadMode() throws MALException {
+        if (threadMode == null || threadMode.equalsIgnoreCase(Constants.PLATFORM_THREAD_MODE)) {
+            return false;
+        }
+        if (!threadMode.equalsIgnoreCase(Constants.VIRTUAL_THREAD_MODE)) {
+            throw new MALException("Unknown thread mode: " + threadMode);
+        }
+        if (VirtualThreadExecutor.isAvailable()) {
+            return true;
+        }
+        LOGGER.log(Level.WARNING, "Virtual threads are not available. Using platform threads.");
+        return false;
+    }
+
+    /**
+     * Creating the executor of new message senders.
+     * 1.   fifo (default): senders run in arrival order.
+     * 2.   priority: senders are ordered by MAL priority and QoS level with aging.
+     *          some threads are reserved for TIMELY and ASSURED messages. default is a quarter of the threads.
+     * With virtual threads, each sender runs on its own virtual thread and the scheduler type is not used.
+     *
+     * @return executor of new message senders
+     * @throws MALException if the scheduler type is unknown or its settings are not valid
+     */
+    private ExecutorService createNewMessageProcessors() throws MALException {
+        if (isVirtualThreads) {
+            if (outboundSchedulerType != null) {
+                LOGGER.log(Level.INFO, "Outbound scheduler is not used with virtual threads: {0}",
+                        outboundSchedulerType);
+            }
+            return VirtualThreadExecutor.create(null);
+        }
+        if (outboundSchedulerType == null || outboundSchedulerType.equals(OutboundScheduler.FIFO)) {
+            return Executors.newFixedThreadPool(newFixedThreadPool);
+        }
+        if (outboundSchedulerType.equals(OutboundScheduler.PRIORITY)) {
+            try {
+                return new OutboundScheduler(newFixedThreadPool,
+                        outboundReserved < 0 ? newFixedThreadPool / 4 : outboundReserved, outboundAging);
+            } catch (IllegalArgumentException exp) {
+                throw new MALException(exp.getMessage(), exp);
+            }
+        }
+        throw new MALException("Unknown outbound scheduler: " + outboundSchedulerType);
+    }
+
+    /**
+     * Creating the executor of incoming message processors.
+     * 1.   fifo (default): processors run in arrival order.
+     * 2.   priority: processors are ordered by MAL priority and QoS level with aging.
+     * With virtual threads, each processor runs on its own virtual thread and the scheduler type is not used.
+     * Admission of each message is released after its processor runs.
+     *
+     * @return executor of incoming message processors
+     * @throws MALException if the scheduler type is unknown or its aging is not valid
+     */
+    private ExecutorService createIncomingMessageProcessors() throws MALException {
+        if (isVirtualThreads) {
+            if (inboundSchedulerType != null) {
+                LOGGER.log(Level.INFO, "Inbound scheduler is not used with virtual threads: {0}",
+                        inboundSchedulerType);
+            }
+            return VirtualThreadExecutor.create(inboundAdmission::release);
+        }
+        if (inboundSchedulerType == null || inboundSchedulerType.equals(InboundScheduler.FIFO)) {
+            return new ThreadPoolExecutor(newFixedThreadPool, newFixedThreadPool,
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+                @Override
+                protected void afterExecute(Runnable runnable, Throwable throwable) {
+                    inboundAdmission.release();
+                }
+            };
+        }
+        if (inboundSchedulerType.equals(InboundScheduler.PRIORITY)) {
+            try {
+                return new InboundScheduler(newFixedThreadPool, inboundAging, inboundAdmission);
+            } catch (IllegalArgumentException exp) {
+                throw new MALException(exp.getMessage(), exp);
+            }
+        }
+        throw new MALException("Unknown inbound scheduler: " + inboundSchedulerType);
+    }
+
     /**
      * Adding a new processor thread to Executor Service
+     * The message must be admitted with getInboundAdmission() before. It is released when the processor finishes.
+     * If this throws an exception, the message is not released. The caller should release it.
      * TODO capture future object
      *
      * @param processor Incoming message processor
      */
     public void addNewIncomingMessageToProcess(Callable<Boolean> processor) throws MALTransmitErrorException {
         checkExecutorService(incomingMessageProcessors, null, "incomingMessageProcessors");
-        loggingResultProcessor.submit(new ResultLogger(incomingMessageProcessors.submit(processor),
-                IncomingMessageProcessor.class.getName()));
+        try {
+            submitIncoming(processor);
+        } catch (RejectedExecutionException exp) {
+            throw MALTransmitErrorBuilder.create().setProperties(qosProperties).setExtraInfo(exp)
+                    .setErrorNumber(getRejectedErrorNumber()).build();
+        }
+    }
+
+    /**
+     * @return TOO_MANY if a running executor or an endpoint queue rejected a message. INTERNAL after shutdown.
+     */
+    private UInteger getRejectedErrorNumber() {
+        return incomingMessageProcessors.isShutdown() ?
+                MALHelper.INTERNAL_ERROR_NUMBER : MALHelper.TOO_MANY_ERROR_NUMBER;
+    }
+
+    /**
+     * Submitting an admitted incoming message processor. Admission is released by the executor when it finishes.
+     * If ordered delivery is enabled, messages to an existing endpoint go through the dispatcher.
+     * Others are delivered directly as they only fail at their endpoint lookup.
+     *
+     * @param processor Incoming message processor
+     * @throws RejectedExecutionException if the executor or the queue of the endpoint is full
+     */
+    private void submitIncoming(Callable<Boolean> processor) {
+        MALMessageHeader header = processor instanceof MessageTask ?
+                ((MessageTask) processor).getMessageHeader() : null;
+        Callable<Boolean> task = resultCounters.counted(processor, IncomingMessageProcessor.class.getName());
+        if (inboundDispatcher != null && header != null && header.getURITo() != null
+                && getEndpoint(header.getURITo()) != null) {
+            inboundDispatcher.submit(header, task);
+        } else {
+            incomingMessageProcessors.submit(task);
+        }
+    }
+
+    /**
+     * @return priority scheduler of incoming messages with its per priority counters.
+     *          null if it is not enabled or this is client only transport.
+     */
+    public InboundScheduler getInboundScheduler() {
+        return incomingMessageProcessors instanceof InboundScheduler ?
+                (InboundScheduler) incomingMessageProcessors : null;
+    }
+
+    /**
+     * @return flag if all stages run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return isVirtualThreads;
+    }
+
+    /**
+     * @return results of senders and processors counted by outcome
+     */
+    public ResultCounters getResultCounters() {
+        return resultCounters;
+    }
+
+    /**
+     * @return ordered delivery of incoming messages with its per endpoint counters. null if it is not enabled.
+     */
+    public InboundDispatcher getInboundDispatcher() {
+        return inboundDispatcher;
     }
 
     /**
-     * Storing an Http Exchange object which requires response to the map
-     * TODO Check transaction ID is unique enough
+     * @return priority scheduler of new messages with its per priority counters. null if it is not enabled.
+     */
+    public OutboundScheduler getOutboundScheduler() {
+        return newMessageProcessors instanceof OutboundScheduler ? (OutboundScheduler) newMessageProcessors : null;
+    }
+
+    /**
+     * @return delivery lanes of new messages with their counters. null if they are not enabled.
+     */
+    public DestinationLanes getOutboundLanes() {
+        return outboundLanes;
+    }
+
+    /**
+     * @return admission control of incoming messages with its counters. null if this is client only transport.
+     */
+    public InboundAdmission getInboundAdmission() {
+        return inboundAdmission;
+    }
+
+    /**
+     * @return biggest received Blob part in bytes which is kept in memory
+     */
+    public int getAttachmentMemoryLimit() {
+        return attachmentMemoryLimit;
+    }
+
+    /**
+     * @return most bytes of a received body which are written to temporary files
+     */
+    public long getAttachmentSpoolLimit() {
+        return attachmentSpoolLimit;
+    }
+
+    /**
+     * @return directory of received Blob parts above the memory limit. null for java.io.tmpdir.
+     */
+    public File getAttachmentDirectory() {
+        return attachmentDirectory;
+    }
+
+    /**
+     * Storing an Http Exchange object which requires response to the registry
+     * It is answered with 504 if MAL doesn't reply before the deadline of the interaction.
      *
-     * @param header   MAL Message Header to get the transaction ID
+     * @param header   MAL Message Header to get the source URI and transaction ID
      * @param exchange Http Exchange Object
      */
     public void storeProcessingMessage(MALMessageHeader header, HttpExchange exchange) {
         LOGGER.log(Level.FINE, "New Message is stored in a map.", header.getTransactionId());
-        synchronized (responseMessageMap) {
-            responseMessageMap.put(header.getTransactionId(), exchange);
+        if (pendingExchanges == null) {
+            LOGGER.log(Level.WARNING, "No pending exchange registry. This is client only transport.");
+            return;
         }
+        pendingExchanges.register(header, exchange);
     }
 
     /**
      * Retrieving responding Http Exchange Object
-     * TODO depends on storeProcessingMessage(), key might need to be updated.
+     * Reply is sent to the source of the original message. So URI-To and transaction ID are the key.
      *
-     * @param header MAL Message Header to get the transaction ID
-     * @return Http Exchange Object
+     * @param header MAL Message Header of the reply
+     * @return Http Exchange Object or null if it is not found or expired
      */
     public HttpExchange getResponseMessage(MALMessageHeader header) {
         LOGGER.log(Level.FINE, "Message is retrieved from the map.", header.getTransactionId());
-        synchronized (responseMessageMap) {
-            return responseMessageMap.remove(header.getTransactionId());
-        }
+        return pendingExchanges == null ? null : pendingExchanges.remove(header);
+    }
+
+    /**
+     * @return number of Http Exchanges waiting for a reply from MAL
+     */
+    public int getPendingExchangeCount() {
+        return pendingExchanges == null ? 0 : pendingExchanges.getSize();
+    }
+
+    /**
+     * @return number of Http Exchanges answered with 504 since they are not replied in time
+     */
+    public long getEvictedExchangeCount() {
+        return pendingExchanges == null ? 0 : pendingExchanges.getEvictionCount();
+    }
+
+    /**
+     * @return executor of the Http server with its counters. null if this is client only transport.
+     */
+    public ServerExecutor getServerExecutor() {
+        return server == null ? null : server.getExecutor();
     }
 
     /**
@@ -285,9 +718,11 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
      * 1.   Validations
      * 2.   Internal / external send
      * 3.   Internal: create thread to process incoming message
-     * 4.   External: encode & check response / new message
+     * 4.   External: encode & check response / new message. Blobs above the attachment threshold become
+     *      parts of a multipart/related body.
      * 5.   External-Response: create thread to send response
-     * 6.   External-New: create thread to send new message
+     * 6.   External-New: create thread to send new message. with outbound lanes, it waits for the lane of
+     *      its destination. asynchronous sends hold their slot until the response is processed.
      *
      * @param multiSendHandle NOT Used
      * @param lastForHandle NOT Used
@@ -314,17 +749,34 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         }
         if (isLocalSend(message.getHeader().getURITo().getValue())) {
             LOGGER.log(Level.FINE, "Internal Sending");
+            checkExecutorService(incomingMessageProcessors, message, "incomingMessageProcessors");
+            if (inboundAdmission != null && !inboundAdmission.tryAdmit(message.getHeader().getQoSlevel())) {
+                throw MALTransmitErrorBuilder.create().setHeader(message.getHeader()).setProperties(qosProperties)
+                        .setErrorNumber(MALHelper.TOO_MANY_ERROR_NUMBER)
+                        .setExtraInfo("Too many incoming messages: " + inboundAdmission.getDepth()).build();
+            }
             try {
-                checkExecutorService(incomingMessageProcessors, message, "incomingMessageProcessors");
-                loggingResultProcessor.submit(new ResultLogger(incomingMessageProcessors.submit(
-                        new IncomingMessageProcessor(new HttpIncomingMessageHolder(null, message,
-                                true), this)), IncomingMessageProcessor.class.getName()));
+                submitIncoming(new IncomingMessageProcessor(new HttpIncomingMessageHolder(null, message,
+                        true), this));
             } catch (IOException | RejectedExecutionException exp) {
+                if (inboundAdmission != null) {
+                    inboundAdmission.release();
+                }
                 throw MALTransmitErrorBuilder.create().setHeader(message.getHeader()).setProperties(qosProperties)
+                        .setErrorNumber(exp instanceof RejectedExecutionException ?
+                                getRejectedErrorNumber() : MALHelper.INTERNAL_ERROR_NUMBER)
                         .setExtraInfo(exp).build();
             }
         } else { // external send
-            byte[] encodedMessage = internalEncodeMessage(message);
+            BlobAttachments attachments = null;
+            byte[] encodedMessage;
+            if (attachmentThreshold > 0 && getStreamFactory() instanceof AttachmentAwareStreamFactory) {
+                attachments = new BlobAttachments(attachmentThreshold);
+                encodedMessage = internalEncodeMessage(message,
+                        ((AttachmentAwareStreamFactory) getStreamFactory()).withAttachments(attachments));
+            } else {
+                encodedMessage = internalEncodeMessage(message, getStreamFactory());
+            }
             Map<String, String> headerMap = new HashMap<>();
             try {
                 MalToHttpMapper.getInstance().generateHeader(message.getHeader(), headerMap,
@@ -336,6 +788,13 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
                             HeaderMappingHelper.encodeURI("/"
                                     + getRoutingPart(httpDestinationEndpoint.getValue())));
                 }
+                if (attachments != null && !attachments.isEmpty()) {
+                    String boundary = MultipartRelated.createBoundary();
+                    String rootContentType = headerMap.get(HttpHeaderKeys.CONTENT_TYPE.toString());
+                    encodedMessage = MultipartRelated.write(encodedMessage, rootContentType, attachments, boundary);
+                    headerMap.put(HttpHeaderKeys.CONTENT_TYPE.toString(),
+                            MultipartRelated.createContentType(boundary, rootContentType));
+                }
             } catch (MALException exp) {
                 throw MALTransmitErrorBuilder.create().setHeader(message.getHeader()).setProperties(qosProperties)
                         .setExtraInfo(exp).setErrorNumber(MALHelper.BAD_ENCODING_ERROR_NUMBER).build();
@@ -348,14 +807,26 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
                             .build();
                 }
                 checkExecutorService(responseMessageProcessors, message, "responseMessageProcessors");
-                loggingResultProcessor.submit(new ResultLogger(responseMessageProcessors.submit(
-                        new ResponseMessageSender(this, message, encodedMessage, headerMap)),
+                responseMessageProcessors.submit(resultCounters.counted(
+                        new ResponseMessageSender(this, message, encodedMessage, headerMap),
                         ResponseMessageSender.class.getName()));
+            } else if (isAsyncSender) {
+                checkExecutorService(newMessageProcessors, message, "newMessageProcessors");
+                NewMessageSender sender = new NewMessageSender(this, message, encodedMessage, headerMap);
+                CompletableFuture<Boolean> sent = outboundLanes == null ? sender.send(newMessageProcessors) :
+                        outboundLanes.submitAsync(message.getHeader().getURITo().getValue(), message.getHeader(),
+                                () -> sender.send(newMessageProcessors));
+                sent.whenComplete((result, exp) ->
+                        resultCounters.record(NewMessageSender.class.getName(), result, exp));
             } else {
                 checkExecutorService(newMessageProcessors, message, "newMessageProcessors");
-                loggingResultProcessor.submit(new ResultLogger(newMessageProcessors.submit(
-                        new NewMessageSender(this, message, encodedMessage, headerMap)),
-                        NewMessageSender.class.getName()));
+                Callable<Boolean> sender = resultCounters.counted(
+                        new NewMessageSender(this, message, encodedMessage, headerMap), NewMessageSender.class.getName());
+                if (outboundLanes == null) {
+                    newMessageProcessors.submit(sender);
+                } else {
+                    outboundLanes.submit(message.getHeader().getURITo().getValue(), sender);
+                }
             }
         }
     }
@@ -385,6 +856,26 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         return new GENMessage(wrapBodyParts, false, header, qosProperties, packet, getStreamFactory());
     }
 
+    /**
+     * Creating GEN Message from the root part of a multipart/related body
+     * whose Blob references are resolved with the other parts.
+     *
+     * @param packet encoded Message
+     * @param header MAL Message Header
+     * @param attachments other parts of the body
+     * @return GEN Message
+     * @throws MALException if the encoding doesn't support attachments, or exceptions from HttpMessage
+     */
+    public GENMessage createMessage(byte[] packet, GENMessageHeader header, BlobAttachments attachments)
+            throws MALException {
+        if (!(getStreamFactory() instanceof AttachmentAwareStreamFactory)) {
+            throw new MALException("multipart/related body is not supported by " +
+                    getStreamFactory().getClass().getName());
+        }
+        return new GENMessage(wrapBodyParts, false, header, qosProperties, packet,
+                ((AttachmentAwareStreamFactory) getStreamFactory()).withAttachments(attachments));
+    }
+
     /**
      * Not SUPPORTED here
      * @param destinationRootURI NOT Used
@@ -543,7 +1034,8 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
      * 1.   Calling GenTransport's close method to release their resources
      * 2.   clearing result blocking queue
      * 3.   shutting down 3 executing services. (if server all 3, if client: only NewMessage Service)
-     * 4.   shutdown Http Server (only if it is server).
+     * 4.   closing the shared http client and its connections.
+     * 5.   shutdown Http Server (only if it is server).
      *
      * @throws MALException no exception yet.
      */
@@ -553,8 +1045,8 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         if (newMessageProcessors != null) {
             newMessageProcessors.shutdown();
         }
-        if (loggingResultProcessor != null) {
-            loggingResultProcessor.shutdown();
+        if (httpClient != null) {
+            httpClient.close();
         }
         if (!isClientOnly) {
             if (incomingMessageProcessors != null) {
@@ -566,6 +1058,9 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
             if (server != null) {
                 server.stop();
             }
+            if (pendingExchanges != null) {
+                pendingExchanges.close();
+            }
         }
     }
 
@@ -593,6 +1088,10 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
         return isSecureServer;
     }
 
+    public HttpMiniClient getHttpClient() {
+        return httpClient;
+    }
+
     /**
      * Helper method to check if the sending message is sent internally
      *
@@ -660,14 +1159,16 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
      * Use Http Message form parameter to create a serializable encoded message.
      *
      * @param malMessage Http Message with MAL Header, and specific Body type.
+     * @param factory stream factory of the encoding
      * @return encoded byte message
      * @throws MALTransmitErrorException any error during encoding process.
      */
-    private byte[] internalEncodeMessage(GENMessage malMessage) throws MALTransmitErrorException {
+    private byte[] internalEncodeMessage(GENMessage malMessage, MALElementStreamFactory factory)
+            throws MALTransmitErrorException {
         try {
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            malMessage.encodeMessage(getStreamFactory(),
-                    (getStreamFactory()).createOutputStream(outputStream),
+            malMessage.encodeMessage(factory,
+                    factory.createOutputStream(outputStream),
                     outputStream,
                     false);
             return outputStream.toByteArray();
@@ -703,35 +1204,4 @@ public class HttpTransport extends GENTransport<byte[], byte[]> {
             throw builder.build();
         }
     }
-
-    /**
-     * Private Class which will log if there is any error.
-     */
-    private class ResultLogger implements Runnable {
-        Future<Boolean> result;
-        String className;
-
-        ResultLogger(Future<Boolean> result, String className) {
-            this.result = result;
-            this.className = className;
-        }
-
-        /**
-         * Main method
-         * Steps:
-         * 1.   try to get the result.
-         * 2.   if the result is false, something went wrong. log it.
-         * 3.   if there is any exception, log it with Severe warning.
-         */
-        @Override
-        public void run() {
-            try {
-                if (!result.get()) {
-                    HttpTransport.LOGGER.log(Level.INFO, "Executor Service failed @ " + className);
-                }
-            } catch (Exception exp) {
-                HttpTransport.LOGGER.log(Level.SEVERE, "Executor Service throws an error", exp);
-            }
-        }
-    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admission control of incoming messages.
+ * Depth is the number of admitted messages which are queued or being processed.
+ *
+ * Each QoS level has its own threshold between the high-water mark and the limit.
+ * Lower ranks of PriorityOrdering are shed first: BESTEFFORT at the high-water mark, then QUEUED, ASSURED,
+ * and TIMELY at the limit, at equal steps. Messages without a valid QoS level are treated as BESTEFFORT.
+ * Rejected messages are answered with 429 (Too Many Requests) before they are read or decoded.
+ */
+public class InboundAdmission {
+    private final int highWaterMark;
+    private final int limit;
+    private final int[] thresholds = new int[PriorityOrdering.QOS_RANK_COUNT];
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger largestDepth = new AtomicInteger();
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLongArray rejectedCounts = new AtomicLongArray(PriorityOrdering.QOS_RANK_COUNT);
+
+    /**
+     * Constructor
+     *
+     * @param highWaterMark depth where BESTEFFORT messages start being rejected
+     * @param limit depth where all messages are rejected
+     */
+    public InboundAdmission(int highWaterMark, int limit) {
+        if (highWaterMark <= 0 || limit < highWaterMark) {
+            throw new IllegalArgumentException("Invalid high-water mark or limit for incoming messages");
+        }
+        this.highWaterMark = highWaterMark;
+        this.limit = limit;
+        for (int i = 0; i < thresholds.length; i++) {
+            thresholds[i] = highWaterMark + (int) ((long) (limit - highWaterMark) * i / (thresholds.length - 1));
+        }
+    }
+
+    /**
+     * Admitting a message if the depth is below the threshold of its QoS level.
+     * Admitted messages must be released once they are processed or dropped.
+     *
+     * @param qosLevel QoS level of the message. null for unknown.
+     * @return flag if the message is admitted
+     */
+    public boolean tryAdmit(QoSLevel qosLevel) {
+        int rank = PriorityOrdering.rankOf(qosLevel);
+        int threshold = thresholds[rank];
+        while (true) {
+            int current = depth.get();
+            if (current >= threshold) {
+                rejectedCounts.incrementAndGet(rank);
+                return false;
+            }
+            if (depth.compareAndSet(current, current + 1)) {
+                admittedCount.incrementAndGet();
+                updateLargestDepth(current + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releasing an admitted message.
+     */
+    public void release() {
+        depth.decrementAndGet();
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return number of admitted messages which are queued or being processed
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getLargestDepth() {
+        return largestDepth.get();
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /**
+     * @return number of rejected messages of all QoS levels
+     */
+    public long getRejectedCount() {
+        long total = 0;
+        for (int i = 0; i < rejectedCounts.length(); i++) {
+            total += rejectedCounts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param qosLevel QoS level. null for messages without a valid QoS level, which are counted as BESTEFFORT.
+     * @return number of rejected messages of the QoS level
+     */
+    public long getRejectedCount(QoSLevel qosLevel) {
+        return rejectedCounts.get(PriorityOrdering.rankOf(qosLevel));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("InboundAdmission{highWaterMark=").append(highWaterMark)
+                .append(", limit=").append(limit).append(", depth=").append(depth.get())
+                .append(", largestDepth=").append(largestDepth.get()).append(", admitted=").append(admittedCount.get());
+        for (int i = 0; i < rejectedCounts.length(); i++) {
+            builder.append(", rejected").append(PriorityOrdering.levelOf(i)).append('=').append(rejectedCounts.get(i));
+        }
+        return builder.append('}').toString();
+    }
+
+    private void updateLargestDepth(int current) {
+        int largest;
+        while (current > (largest = largestDepth.get())) {
+            if (largestDepth.compareAndSet(largest, current)) {
+                return;
+            }
+        }
+    }
+}
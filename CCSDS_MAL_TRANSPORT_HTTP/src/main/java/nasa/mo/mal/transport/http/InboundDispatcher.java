@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Ordered delivery of incoming messages to MAL endpoints.
+ * Messages of the same consumer (URI-To) and provider (URI-From) are delivered one at a time in arrival order.
+ * Different pairs are delivered in parallel on the shared executor.
+ *
+ * Each endpoint has its own bounded queue. Messages above its limit are rejected,
+ * so a slow endpoint fills its own queue instead of the pool.
+ * Deliveries longer than the slow consumer threshold are counted per endpoint.
+ */
+public class InboundDispatcher {
+    private static final char KEY_DELIMITER = ' ';
+    private final DestinationLanes lanes;
+    private final int endpointQueueLimit;
+    private final long slowConsumerNanos;
+    private final InboundAdmission admission;
+    private final Map<String, EndpointQueue> endpointQueues = new ConcurrentHashMap<>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong slowDeliveryCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param executor executor running the deliveries
+     * @param endpointQueueLimit maximum number of waiting and running messages of an endpoint
+     * @param slowConsumerInMilliSecond delivery time above which an endpoint is counted as slow
+     */
+    public InboundDispatcher(Executor executor, int endpointQueueLimit, long slowConsumerInMilliSecond) {
+        this(executor, endpointQueueLimit, slowConsumerInMilliSecond, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param executor executor running the deliveries
+     * @param endpointQueueLimit maximum number of waiting and running messages of an endpoint
+     * @param slowConsumerInMilliSecond delivery time above which an endpoint is counted as slow
+     * @param admission admission control to release when the executor rejects a waiting message.
+     *                  null if there is none.
+     */
+    public InboundDispatcher(Executor executor, int endpointQueueLimit, long slowConsumerInMilliSecond,
+                             InboundAdmission admission) {
+        if (endpointQueueLimit <= 0 || slowConsumerInMilliSecond <= 0) {
+            throw new IllegalArgumentException("Invalid endpoint queue limit or slow consumer threshold");
+        }
+        this.lanes = new DestinationLanes(executor, 1);
+        this.endpointQueueLimit = endpointQueueLimit;
+        this.slowConsumerNanos = TimeUnit.MILLISECONDS.toNanos(slowConsumerInMilliSecond);
+        this.admission = admission;
+    }
+
+    /**
+     * Submitting a message processor to the lane of its URI-To and URI-From.
+     * If the executor rejects it after it waited for its lane, its endpoint queue and admission are released here
+     * since the executor never runs it.
+     *
+     * @param header header of the message
+     * @param processor processor delivering the message to its endpoint
+     * @return future of the processor
+     * @throws RejectedExecutionException if the queue of the endpoint is full or the executor rejects the processor
+     */
+    public Future<Boolean> submit(MALMessageHeader header, Callable<Boolean> processor) {
+        String uriTo = header.getURITo().getValue();
+        String uriFrom = header.getURIFrom() == null ? "" : header.getURIFrom().getValue();
+        EndpointQueue endpointQueue = endpointQueues.computeIfAbsent(uriTo, key -> new EndpointQueue());
+        if (!endpointQueue.tryEnqueue()) {
+            rejectedCount.incrementAndGet();
+            endpointQueue.rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Endpoint queue is full: " + uriTo);
+        }
+        try {
+            return lanes.submit(uriTo + KEY_DELIMITER + uriFrom, new Delivery(uriTo, header, processor, endpointQueue),
+                    () -> rejected(endpointQueue));
+        } catch (RejectedExecutionException exp) {
+            endpointQueue.depth.decrementAndGet();
+            throw exp;
+        }
+    }
+
+    public int getEndpointQueueLimit() {
+        return endpointQueueLimit;
+    }
+
+    public long getSlowConsumerInMilliSecond() {
+        return TimeUnit.NANOSECONDS.toMillis(slowConsumerNanos);
+    }
+
+    /**
+     * @param uriTo URI of the endpoint
+     * @return number of waiting and running messages of the endpoint
+     */
+    public int getEndpointDepth(String uriTo) {
+        EndpointQueue endpointQueue = endpointQueues.get(uriTo);
+        return endpointQueue == null ? 0 : endpointQueue.depth.get();
+    }
+
+    /**
+     * @param uriTo URI of the endpoint
+     * @return number of messages rejected because the queue of the endpoint was full
+     */
+    public long getRejectedCount(String uriTo) {
+        EndpointQueue endpointQueue = endpointQueues.get(uriTo);
+        return endpointQueue == null ? 0 : endpointQueue.rejectedCount.get();
+    }
+
+    /**
+     * @param uriTo URI of the endpoint
+     * @return number of deliveries to the endpoint which took longer than the slow consumer threshold
+     */
+    public long getSlowDeliveryCount(String uriTo) {
+        EndpointQueue endpointQueue = endpointQueues.get(uriTo);
+        return endpointQueue == null ? 0 : endpointQueue.slowDeliveryCount.get();
+    }
+
+    /**
+     * @param uriTo URI of the endpoint
+     * @return longest delivery time to the endpoint
+     */
+    public long getMaxDeliveryInMilliSecond(String uriTo) {
+        EndpointQueue endpointQueue = endpointQueues.get(uriTo);
+        return endpointQueue == null ? 0 : TimeUnit.NANOSECONDS.toMillis(endpointQueue.maxDeliveryNanos.get());
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSlowDeliveryCount() {
+        return slowDeliveryCount.get();
+    }
+
+    /**
+     * @return lanes per URI-To and URI-From with their counters
+     */
+    public DestinationLanes getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Releasing a message which the executor rejected after it waited for its lane.
+     *
+     * @param endpointQueue queue of the endpoint of the message
+     */
+    private void rejected(EndpointQueue endpointQueue) {
+        endpointQueue.depth.decrementAndGet();
+        if (admission != null) {
+            admission.release();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InboundDispatcher{endpoints=" + endpointQueues.size() + ", endpointQueueLimit=" + endpointQueueLimit
+                + ", rejected=" + rejectedCount.get() + ", slowDeliveries=" + slowDeliveryCount.get()
+                + ", lanes=" + lanes + '}';
+    }
+
+    /**
+     * Counters of an endpoint.
+     */
+    private class EndpointQueue {
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicLong rejectedCount = new AtomicLong();
+        final AtomicLong slowDeliveryCount = new AtomicLong();
+        final AtomicLong maxDeliveryNanos = new AtomicLong();
+
+        boolean tryEnqueue() {
+            int current;
+            do {
+                current = depth.get();
+                if (current >= endpointQueueLimit) {
+                    return false;
+                }
+            } while (!depth.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        void delivered(long deliveryNanos) {
+            depth.decrementAndGet();
+            long max;
+            while (deliveryNanos > (max = maxDeliveryNanos.get())) {
+                if (maxDeliveryNanos.compareAndSet(max, deliveryNanos)) {
+                    break;
+                }
+            }
+            if (deliveryNanos > slowConsumerNanos) {
+                slowDeliveryCount.incrementAndGet();
+                InboundDispatcher.this.slowDeliveryCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Processor measured by its delivery time. Keeps the header for schedulers.
+     */
+    private class Delivery implements Callable<Boolean>, MessageTask {
+        final String uriTo;
+        final MALMessageHeader header;
+        final Callable<Boolean> processor;
+        final EndpointQueue endpointQueue;
+
+        Delivery(String uriTo, MALMessageHeader header, Callable<Boolean> processor, EndpointQueue endpointQueue) {
+            this.uriTo = uriTo;
+            this.header = header;
+            this.processor = processor;
+            this.endpointQueue = endpointQueue;
+        }
+
+        @Override
+        public MALMessageHeader getMessageHeader() {
+            return header;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            long start = System.nanoTime();
+            try {
+                return processor.call();
+            } finally {
+                long deliveryNanos = System.nanoTime() - start;
+                endpointQueue.delivered(deliveryNanos);
+                if (deliveryNanos > slowConsumerNanos) {
+                    HttpTransport.LOGGER.log(Level.WARNING, "Slow consumer {0} took {1} ms",
+                            new Object[] {uriTo, TimeUnit.NANOSECONDS.toMillis(deliveryNanos)});
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor of incoming message processors ordered by MAL priority and QoS level instead of arrival.
+ * Ordering and aging are described in PriorityOrdering.
+ *
+ * Admission of each message is released after its processor runs.
+ */
+public class InboundScheduler extends ThreadPoolExecutor {
+    public static final String FIFO = "fifo";
+    public static final String PRIORITY = "priority";
+    public static final int MAX_PRIORITY = PriorityOrdering.MAX_PRIORITY;
+
+    private final PriorityOrdering ordering;
+    private final InboundAdmission admission;
+
+    /**
+     * Constructor
+     *
+     * @param threadCount number of threads
+     * @param agingInMilliSecond waiting time which is worth one priority
+     * @param admission admission control to release after each processor. null if there is none.
+     */
+    public InboundScheduler(int threadCount, long agingInMilliSecond, InboundAdmission admission) {
+        super(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+        if (agingInMilliSecond <= 0) {
+            throw new IllegalArgumentException("Invalid aging for inbound scheduler");
+        }
+        this.ordering = new PriorityOrdering(agingInMilliSecond);
+        this.admission = admission;
+    }
+
+    /**
+     * Queueing a task. Tasks without a message are queued with the lowest priority.
+     *
+     * @param command task
+     */
+    @Override
+    public void execute(Runnable command) {
+        PriorityOrdering.Task<?> task = ordering.toTask(command);
+        ordering.queued(task);
+        try {
+            super.execute(task);
+        } catch (RejectedExecutionException exp) {
+            ordering.removed(task);
+            throw exp;
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return ordering.createTask(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return ordering.createTask(runnable, value);
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        ordering.dispatched((PriorityOrdering.Task<?>) runnable);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        if (admission != null) {
+            admission.release();
+        }
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return number of waiting messages with the priority
+     */
+    public int getQueuedCount(long priority) {
+        return (int) ordering.getQueuedCount(priority);
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return number of messages with the priority which are started
+     */
+    public long getDispatchedCount(long priority) {
+        return ordering.getDispatchedCount(priority);
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return average waiting time in queue of started messages with the priority
+     */
+    public double getAverageWaitInMilliSecond(long priority) {
+        return ordering.getAverageWaitInMilliSecond(priority);
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return longest waiting time in queue of started messages with the priority
+     */
+    public double getMaxWaitInMilliSecond(long priority) {
+        return ordering.getMaxWaitInMilliSecond(priority);
+    }
+
+    @Override
+    public String toString() {
+        return ordering.appendTo(new StringBuilder("InboundScheduler{queued=").append(getQueue().size()))
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+/**
+ * Task for a single MAL message. Schedulers and lanes order it with the header.
+ */
+public interface MessageTask {
+    /**
+     * @return header of the message. null if there is no message.
+     */
+    MALMessageHeader getMessageHeader();
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executor of new message senders ordered by MAL priority and QoS level instead of arrival.
+ * Ordering and aging are described in PriorityOrdering.
+ *
+ * Some threads are reserved for critical messages (TIMELY and ASSURED).
+ * Bulk messages (QUEUED, BESTEFFORT, and tasks without a message) never use more than the other threads,
+ * so critical messages don't wait behind bulk transfers which hold all threads.
+ * Critical messages can use all threads.
+ */
+public class OutboundScheduler extends AbstractExecutorService {
+    public static final String FIFO = "fifo";
+    public static final String PRIORITY = "priority";
+    public static final int MAX_PRIORITY = PriorityOrdering.MAX_PRIORITY;
+
+    private final int threadCount;
+    private final int bulkThreadLimit;
+    private final PriorityOrdering ordering;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final PriorityQueue<PriorityOrdering.Task<?>> criticalTasks = new PriorityQueue<>();
+    private final PriorityQueue<PriorityOrdering.Task<?>> bulkTasks = new PriorityQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private int runningBulkCount = 0;
+    private int liveWorkerCount;
+    private boolean isShutdown = false;
+
+    /**
+     * Constructor. Threads are started immediately.
+     *
+     * @param threadCount number of threads
+     * @param reservedCount number of threads reserved for TIMELY and ASSURED messages. less than threadCount.
+     * @param agingInMilliSecond waiting time which is worth one priority
+     */
+    public OutboundScheduler(int threadCount, int reservedCount, long agingInMilliSecond) {
+        if (threadCount <= 0 || reservedCount < 0 || reservedCount >= threadCount || agingInMilliSecond <= 0) {
+            throw new IllegalArgumentException("Invalid thread count, reserved count, or aging for outbound scheduler");
+        }
+        this.threadCount = threadCount;
+        this.bulkThreadLimit = threadCount - reservedCount;
+        this.ordering = new PriorityOrdering(agingInMilliSecond);
+        liveWorkerCount = threadCount;
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(this::work, "OutboundScheduler-" + i);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queueing a task for a message.
+     *
+     * @param command task
+     * @param header header of the message to order the task. null for the lowest priority.
+     */
+    public void execute(Runnable command, MALMessageHeader header) {
+        execute(ordering.createTask(Executors.callable(command), header));
+    }
+
+    /**
+     * Queueing a task. Tasks without a message are queued as bulk with the lowest priority.
+     *
+     * @param command task
+     */
+    @Override
+    public void execute(Runnable command) {
+        PriorityOrdering.Task<?> task = ordering.toTask(command);
+        lock.lock();
+        try {
+            if (isShutdown) {
+                throw new RejectedExecutionException("Outbound scheduler is shut down.");
+            }
+            (task.isCritical ? criticalTasks : bulkTasks).add(task);
+            ordering.queued(task);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return ordering.createTask(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return ordering.createTask(runnable, value);
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            isShutdown = true;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> remainingTasks = new ArrayList<>();
+        lock.lock();
+        try {
+            isShutdown = true;
+            remainingTasks.addAll(criticalTasks);
+            remainingTasks.addAll(bulkTasks);
+            criticalTasks.clear();
+            bulkTasks.clear();
+            remainingTasks.forEach(task -> ordering.removed((PriorityOrdering.Task<?>) task));
+            workers.forEach(Thread::interrupt);
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return remainingTasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return isShutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return isShutdown && liveWorkerCount == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(isShutdown && liveWorkerCount == 0)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = terminated.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @return number of threads which bulk messages can use
+     */
+    public int getBulkThreadLimit() {
+        return bulkThreadLimit;
+    }
+
+    /**
+     * @return number of bulk messages being sent
+     */
+    public int getRunningBulkCount() {
+        lock.lock();
+        try {
+            return runningBulkCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return number of waiting messages with the priority
+     */
+    public long getQueuedCount(long priority) {
+        return ordering.getQueuedCount(priority);
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return number of messages with the priority which are started
+     */
+    public long getDispatchedCount(long priority) {
+        return ordering.getDispatchedCount(priority);
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return average waiting time in queue of started messages with the priority
+     */
+    public double getAverageWaitInMilliSecond(long priority) {
+        return ordering.getAverageWaitInMilliSecond(priority);
+    }
+
+    /**
+     * @param priority MAL priority
+     * @return longest waiting time in queue of started messages with the priority
+     */
+    public double getMaxWaitInMilliSecond(long priority) {
+        return ordering.getMaxWaitInMilliSecond(priority);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("OutboundScheduler{threads=").append(threadCount)
+                .append(", bulkThreadLimit=").append(bulkThreadLimit)
+                .append(", runningBulk=").append(getRunningBulkCount());
+        return ordering.appendTo(builder).append('}').toString();
+    }
+
+    /**
+     * Worker loop.
+     * 1.   take the first task of critical and bulk queues. bulk queue is skipped if bulk limit is reached.
+     * 2.   wait if there is no task which can be started. exit if it is shut down and both queues are empty.
+     * 3.   run the task. when a bulk task finishes, wake a worker since another bulk task may start.
+     */
+    private void work() {
+        try {
+            while (true) {
+                PriorityOrdering.Task<?> task;
+                lock.lock();
+                try {
+                    while ((task = pollNext()) == null) {
+                        if (isShutdown && criticalTasks.isEmpty() && bulkTasks.isEmpty()) {
+                            return;
+                        }
+                        available.await();
+                    }
+                    if (!task.isCritical) {
+                        runningBulkCount++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                ordering.dispatched(task);
+                try {
+                    task.run();
+                } finally {
+                    if (!task.isCritical) {
+                        lock.lock();
+                        try {
+                            runningBulkCount--;
+                            available.signal();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.lock();
+            try {
+                liveWorkerCount--;
+                terminated.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * must be called with the lock.
+     *
+     * @return next task to start or null
+     */
+    private PriorityOrdering.Task<?> pollNext() {
+        PriorityOrdering.Task<?> critical = criticalTasks.peek();
+        PriorityOrdering.Task<?> bulk = runningBulkCount < bulkThreadLimit ? bulkTasks.peek() : null;
+        if (critical == null && bulk == null) {
+            return null;
+        }
+        return bulk == null || (critical != null && critical.compareTo(bulk) < 0) ?
+                criticalTasks.poll() : bulkTasks.poll();
+    }
+}
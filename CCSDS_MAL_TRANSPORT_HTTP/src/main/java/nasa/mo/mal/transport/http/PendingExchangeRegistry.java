@@ -0,0 +1,291 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import nasa.mo.mal.transport.http.util.HttpTransportHelper;
+import nasa.mo.mal.transport.http.util.ResponseCodes;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Http Exchanges waiting for a reply from MAL.
+ * Key is the source URI and the transaction ID, so that consumers using the same transaction IDs don't collide.
+ *
+ * Each exchange has a deadline based on its interaction type.
+ * Deadlines are checked with a timer wheel. Each slot of the wheel holds exchanges expiring in the same tick.
+ * Only one slot is checked per tick, so the cost doesn't depend on the number of pending exchanges.
+ * Expired exchanges are answered with 504 (Gateway Timeout) so that the client and the socket are released.
+ *
+ * Whoever removes an exchange from the map owns it. So an exchange is answered only once
+ * either by the reply from MAL or by the timer.
+ */
+public class PendingExchangeRegistry {
+    private static final int WHEEL_SIZE = 512;
+
+    private final Map<Key, PendingExchange> pendingExchanges = new ConcurrentHashMap<>();
+    private final Queue<PendingExchange>[] wheel;
+    private final long defaultTimeoutInMilliSecond;
+    private final Map<Integer, Long> timeoutsInMilliSecond;
+    private final long tickInMilliSecond;
+    private final long startTime;
+    private final AtomicLong evictionCount = new AtomicLong();
+    /**
+     * last tick whose slot is being checked. updated only by timer thread.
+     */
+    private volatile long currentTick = 0;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Constructor
+     *
+     * @param defaultTimeoutInMilliSecond deadline for interactions without their own timeout. 0 means no deadline.
+     * @param timeoutsInMilliSecond deadlines keyed by ordinal of interaction type. 0 means no deadline.
+     * @param tickInMilliSecond time between checks of the timer wheel
+     */
+    @SuppressWarnings("unchecked")
+    public PendingExchangeRegistry(long defaultTimeoutInMilliSecond, Map<Integer, Long> timeoutsInMilliSecond,
+                                   long tickInMilliSecond) {
+        if (defaultTimeoutInMilliSecond < 0 || tickInMilliSecond <= 0) {
+            throw new IllegalArgumentException("Invalid timeout or tick for pending exchanges");
+        }
+        this.defaultTimeoutInMilliSecond = defaultTimeoutInMilliSecond;
+        this.timeoutsInMilliSecond = new ConcurrentHashMap<>(timeoutsInMilliSecond);
+        this.tickInMilliSecond = tickInMilliSecond;
+        this.startTime = System.nanoTime();
+        wheel = new Queue[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Starting the timer thread.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PendingExchangeRegistry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::expire, tickInMilliSecond, tickInMilliSecond, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stopping the timer thread and forgetting all pending exchanges.
+     * Http Server closes their connections when it stops.
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        pendingExchanges.clear();
+        for (Queue<PendingExchange> slot : wheel) {
+            slot.clear();
+        }
+    }
+
+    /**
+     * Storing an exchange for an incoming message.
+     * If there is already an exchange with the same key, its reply can't be routed anymore.
+     * So the old exchange is answered with 504 and counted as evicted.
+     *
+     * @param header MAL Message Header of the incoming message
+     * @param exchange Http Exchange to reply
+     */
+    public void register(MALMessageHeader header, HttpExchange exchange) {
+        Key key = new Key(header.getURIFrom(), header.getTransactionId());
+        long timeout = getTimeout(header.getInteractionType());
+        long deadline = timeout == 0 ? Long.MAX_VALUE : now() + timeout;
+        PendingExchange pendingExchange = new PendingExchange(key, exchange, deadline);
+        PendingExchange previous = pendingExchanges.put(key, pendingExchange);
+        if (previous != null) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Pending exchange is replaced for " + key);
+            evict(previous);
+        }
+        if (timeout != 0) {
+            wheel[slotOf(Math.max(toTick(deadline), currentTick + 1))].add(pendingExchange);
+        }
+    }
+
+    /**
+     * Removing the exchange for a reply message.
+     * Reply goes to the source of the original message. So URI-To of the reply is the key.
+     *
+     * @param header MAL Message Header of the reply message
+     * @return Http Exchange or null if it is not found or already expired.
+     */
+    public HttpExchange remove(MALMessageHeader header) {
+        PendingExchange pendingExchange = pendingExchanges.remove(new Key(header.getURITo(), header.getTransactionId()));
+        return pendingExchange == null ? null : pendingExchange.exchange;
+    }
+
+    /**
+     * @return number of exchanges waiting for a reply
+     */
+    public int getSize() {
+        return pendingExchanges.size();
+    }
+
+    /**
+     * @return number of exchanges answered with 504 since the registry is created
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @param interactionType interaction type of the message. may be null.
+     * @return deadline in millisecond for the interaction type
+     */
+    private long getTimeout(InteractionType interactionType) {
+        if (interactionType == null) {
+            return defaultTimeoutInMilliSecond;
+        }
+        Long timeout = timeoutsInMilliSecond.get(interactionType.getOrdinal());
+        return timeout == null ? defaultTimeoutInMilliSecond : timeout;
+    }
+
+    /**
+     * Checking the slot of the next tick.
+     * 1.   exchanges which are already answered are dropped.
+     * 2.   exchanges whose deadline is in a later round are put back.
+     * 3.   others are removed from the map and answered with 504.
+     */
+    private void expire() {
+        try {
+            long tick = currentTick + 1;
+            currentTick = tick;
+            Queue<PendingExchange> slot = wheel[slotOf(tick)];
+            List<PendingExchange> notExpired = new ArrayList<>();
+            long now = now();
+            PendingExchange pendingExchange;
+            while ((pendingExchange = slot.poll()) != null) {
+                if (pendingExchanges.get(pendingExchange.key) != pendingExchange) {
+                    continue;
+                }
+                if (pendingExchange.deadline > now) {
+                    notExpired.add(pendingExchange);
+                } else if (pendingExchanges.remove(pendingExchange.key, pendingExchange)) {
+                    HttpTransport.LOGGER.log(Level.WARNING, "Pending exchange is expired for " + pendingExchange.key);
+                    evict(pendingExchange);
+                }
+            }
+            slot.addAll(notExpired);
+        } catch (RuntimeException exp) {
+            HttpTransport.LOGGER.log(Level.SEVERE, "Error while expiring pending exchanges", exp);
+        }
+    }
+
+    /**
+     * @param pendingExchange exchange which is removed from the map
+     */
+    private void evict(PendingExchange pendingExchange) {
+        evictionCount.incrementAndGet();
+        try {
+            HttpTransportHelper.fillResponse(pendingExchange.exchange, ResponseCodes.GATEWAY_TIMEOUT.getCode(),
+                    null, null);
+        } catch (MALException | RuntimeException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Error while responding expired exchange", exp);
+        }
+    }
+
+    /**
+     * @return milliseconds since the registry is created
+     */
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    /**
+     * @param time milliseconds since the registry is created
+     * @return first tick at or after the time
+     */
+    private long toTick(long time) {
+        return (time + tickInMilliSecond - 1) / tickInMilliSecond;
+    }
+
+    /**
+     * @param tick tick number
+     * @return index of the slot in the wheel
+     */
+    private static int slotOf(long tick) {
+        return (int) (tick % WHEEL_SIZE);
+    }
+
+    /**
+     * Source URI and Transaction ID
+     */
+    private static final class Key {
+        private final String sourceURI;
+        private final long transactionId;
+
+        Key(URI sourceURI, Long transactionId) {
+            this.sourceURI = sourceURI == null || sourceURI.getValue() == null ? "" : sourceURI.getValue();
+            this.transactionId = transactionId == null ? 0 : transactionId;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return transactionId == key.transactionId && sourceURI.equals(key.sourceURI);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sourceURI.hashCode() + Long.hashCode(transactionId);
+        }
+
+        @Override
+        public String toString() {
+            return sourceURI + " - " + transactionId;
+        }
+    }
+
+    /**
+     * Http Exchange with its key and deadline
+     */
+    private static final class PendingExchange {
+        private final Key key;
+        private final HttpExchange exchange;
+        private final long deadline;
+
+        PendingExchange(Key key, HttpExchange exchange, long deadline) {
+            this.key = key;
+            this.exchange = exchange;
+            this.deadline = deadline;
+        }
+    }
+}
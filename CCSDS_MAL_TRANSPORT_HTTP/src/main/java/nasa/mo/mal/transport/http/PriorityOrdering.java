@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Order of queued messages and their waiting statistics by priority for InboundScheduler and OutboundScheduler.
+ * Its QoS ranks are also the shedding order of InboundAdmission.
+ *
+ * Higher MAL priority is served first. Priorities above MAX_PRIORITY are treated as MAX_PRIORITY.
+ * Within the same priority, QoS levels are served in rank order: TIMELY, ASSURED, QUEUED, BESTEFFORT.
+ * Tasks without a message have the lowest priority and rank.
+ *
+ * Anti-starvation aging: each message is ordered as if it had arrived earlier by one aging interval per priority,
+ * and by a quarter of it per QoS rank. So a waiting message is served before any message of a higher
+ * priority which arrives more than the difference of their intervals later.
+ * The order is fixed when a message is queued, so the queue stays consistent.
+ */
+final class PriorityOrdering {
+    static final int MAX_PRIORITY = 255;
+    /**
+     * QoS levels from the lowest rank. ASSURED and TIMELY are critical.
+     */
+    private static final QoSLevel[] QOS_RANKS = {QoSLevel.BESTEFFORT, QoSLevel.QUEUED, QoSLevel.ASSURED,
+            QoSLevel.TIMELY};
+    static final int QOS_RANK_COUNT = QOS_RANKS.length;
+    private static final int CRITICAL_RANK = 2;
+
+    private final long agingInNanoSecond;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLongArray queuedCounts = new AtomicLongArray(MAX_PRIORITY + 1);
+    private final AtomicLongArray dispatchedCounts = new AtomicLongArray(MAX_PRIORITY + 1);
+    private final AtomicLongArray totalWaitInNanoSecond = new AtomicLongArray(MAX_PRIORITY + 1);
+    private final AtomicLongArray maxWaitInNanoSecond = new AtomicLongArray(MAX_PRIORITY + 1);
+
+    /**
+     * @param agingInMilliSecond waiting time which is worth one priority
+     */
+    PriorityOrdering(long agingInMilliSecond) {
+        this.agingInNanoSecond = TimeUnit.MILLISECONDS.toNanos(agingInMilliSecond);
+    }
+
+    /**
+     * @param callable task
+     * @param header header of the message to order the task. null for the lowest priority.
+     * @param <T> result type
+     * @return ordered task
+     */
+    <T> Task<T> createTask(Callable<T> callable, MALMessageHeader header) {
+        return new Task<>(callable, header);
+    }
+
+    /**
+     * @param callable task. MessageTask is ordered by its message.
+     * @param <T> result type
+     * @return ordered task
+     */
+    <T> Task<T> createTask(Callable<T> callable) {
+        return new Task<>(callable, getMessageHeader(callable));
+    }
+
+    /**
+     * @param runnable task. MessageTask is ordered by its message.
+     * @param value result of the task
+     * @param <T> result type
+     * @return ordered task
+     */
+    <T> Task<T> createTask(Runnable runnable, T value) {
+        return new Task<>(Executors.callable(runnable, value), getMessageHeader(runnable));
+    }
+
+    /**
+     * @param command task given to execute()
+     * @return the task itself if it is already ordered
+     */
+    Task<?> toTask(Runnable command) {
+        return command instanceof Task ? (Task<?>) command : createTask(command, null);
+    }
+
+    void queued(Task<?> task) {
+        queuedCounts.incrementAndGet(task.priority);
+    }
+
+    /**
+     * @param task task removed from the queue without running
+     */
+    void removed(Task<?> task) {
+        queuedCounts.decrementAndGet(task.priority);
+    }
+
+    /**
+     * @param task task taken from the queue to run
+     */
+    void dispatched(Task<?> task) {
+        long wait = System.nanoTime() - task.queuedTime;
+        queuedCounts.decrementAndGet(task.priority);
+        dispatchedCounts.incrementAndGet(task.priority);
+        totalWaitInNanoSecond.addAndGet(task.priority, wait);
+        long max;
+        while (wait > (max = maxWaitInNanoSecond.get(task.priority))) {
+            if (maxWaitInNanoSecond.compareAndSet(task.priority, max, wait)) {
+                break;
+            }
+        }
+    }
+
+    long getQueuedCount(long priority) {
+        return queuedCounts.get(clamp(priority));
+    }
+
+    long getDispatchedCount(long priority) {
+        return dispatchedCounts.get(clamp(priority));
+    }
+
+    double getAverageWaitInMilliSecond(long priority) {
+        long count = dispatchedCounts.get(clamp(priority));
+        return count == 0 ? 0 : totalWaitInNanoSecond.get(clamp(priority)) / 1e6 / count;
+    }
+
+    double getMaxWaitInMilliSecond(long priority) {
+        return maxWaitInNanoSecond.get(clamp(priority)) / 1e6;
+    }
+
+    /**
+     * @param builder toString() of a scheduler
+     * @return the builder with statistics of the priorities which have messages
+     */
+    StringBuilder appendTo(StringBuilder builder) {
+        for (int i = 0; i <= MAX_PRIORITY; i++) {
+            if (queuedCounts.get(i) != 0 || dispatchedCounts.get(i) != 0) {
+                builder.append(", priority").append(i).append("={queued=").append(queuedCounts.get(i))
+                        .append(", dispatched=").append(dispatchedCounts.get(i))
+                        .append(", averageWaitMs=").append(getAverageWaitInMilliSecond(i))
+                        .append(", maxWaitMs=").append(getMaxWaitInMilliSecond(i)).append('}');
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * @param qosLevel QoS level. null for unknown.
+     * @return rank of the level. 0 for BESTEFFORT and unknown levels.
+     */
+    static int rankOf(QoSLevel qosLevel) {
+        for (int i = QOS_RANKS.length - 1; i > 0; i--) {
+            if (QOS_RANKS[i].equals(qosLevel)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param rank rank from rankOf()
+     * @return QoS level of the rank
+     */
+    static QoSLevel levelOf(int rank) {
+        return QOS_RANKS[rank];
+    }
+
+    private static MALMessageHeader getMessageHeader(Object task) {
+        return task instanceof MessageTask ? ((MessageTask) task).getMessageHeader() : null;
+    }
+
+    private static int clamp(long priority) {
+        return (int) Math.max(0, Math.min(MAX_PRIORITY, priority));
+    }
+
+    /**
+     * Task with its position in the queue.
+     * Smaller order key is served first. Tasks with the same key are served in arrival order.
+     */
+    final class Task<T> extends FutureTask<T> implements Comparable<Task<?>> {
+        final int priority;
+        final boolean isCritical;
+        final long queuedTime;
+        final long orderKey;
+        final long sequenceNumber;
+
+        private Task(Callable<T> callable, MALMessageHeader header) {
+            super(callable);
+            int qosRank = rankOf(header == null ? null : header.getQoSlevel());
+            priority = header == null || header.getPriority() == null ? 0 : clamp(header.getPriority().getValue());
+            isCritical = qosRank >= CRITICAL_RANK;
+            queuedTime = System.nanoTime();
+            orderKey = queuedTime - (priority * QOS_RANK_COUNT + qosRank) * (agingInNanoSecond / QOS_RANK_COUNT);
+            sequenceNumber = sequence.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            int result = Long.compare(orderKey, other.orderKey);
+            return result != 0 ? result : Long.compare(sequenceNumber, other.sequenceNumber);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Results of senders and processors counted by outcome.
+ * Results are recorded by the thread which finishes the task, so no thread waits for a future.
+ * 1.   succeeded: the task returned true.
+ * 2.   failed: the task returned false or null. it is logged.
+ * 3.   error: the task threw an exception. it is logged with Severe warning.
+ */
+public class ResultCounters {
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Wrapping a task to record its result when it finishes.
+     * The wrapper keeps the header of a MessageTask for schedulers.
+     *
+     * @param task sender or processor
+     * @param taskName name to count the results
+     * @return task recording its result
+     */
+    public Callable<Boolean> counted(Callable<Boolean> task, String taskName) {
+        return new CountedTask(task, taskName);
+    }
+
+    /**
+     * Recording the result of a task.
+     *
+     * @param taskName name of the task
+     * @param result result of the task. null if it threw an exception.
+     * @param exp exception thrown by the task. null if there is none.
+     */
+    public void record(String taskName, Boolean result, Throwable exp) {
+        Counters taskCounters = counters.computeIfAbsent(taskName, key -> new Counters());
+        if (exp != null) {
+            taskCounters.errorCount.incrementAndGet();
+            HttpTransport.LOGGER.log(Level.SEVERE, "Executor Service throws an error", exp);
+        } else if (result == null || !result) {
+            taskCounters.failedCount.incrementAndGet();
+            HttpTransport.LOGGER.log(Level.INFO, "Executor Service failed @ " + taskName);
+        } else {
+            taskCounters.succeededCount.incrementAndGet();
+        }
+    }
+
+    public long getSucceededCount(String taskName) {
+        Counters taskCounters = counters.get(taskName);
+        return taskCounters == null ? 0 : taskCounters.succeededCount.get();
+    }
+
+    public long getFailedCount(String taskName) {
+        Counters taskCounters = counters.get(taskName);
+        return taskCounters == null ? 0 : taskCounters.failedCount.get();
+    }
+
+    public long getErrorCount(String taskName) {
+        Counters taskCounters = counters.get(taskName);
+        return taskCounters == null ? 0 : taskCounters.errorCount.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ResultCounters{");
+        counters.forEach((taskName, taskCounters) -> builder.append(taskName)
+                .append("=[succeeded=").append(taskCounters.succeededCount.get())
+                .append(", failed=").append(taskCounters.failedCount.get())
+                .append(", error=").append(taskCounters.errorCount.get()).append("], "));
+        if (!counters.isEmpty()) {
+            builder.setLength(builder.length() - 2);
+        }
+        return builder.append('}').toString();
+    }
+
+    private static class Counters {
+        final AtomicLong succeededCount = new AtomicLong();
+        final AtomicLong failedCount = new AtomicLong();
+        final AtomicLong errorCount = new AtomicLong();
+    }
+
+    /**
+     * Task recording its result before it is returned to the executor.
+     */
+    private class CountedTask implements Callable<Boolean>, MessageTask {
+        final Callable<Boolean> task;
+        final String taskName;
+
+        CountedTask(Callable<Boolean> task, String taskName) {
+            this.task = task;
+            this.taskName = taskName;
+        }
+
+        @Override
+        public MALMessageHeader getMessageHeader() {
+            return task instanceof MessageTask ? ((MessageTask) task).getMessageHeader() : null;
+        }
+
+        @Override
+        public Boolean call() throws Exception {
+            Boolean result;
+            try {
+                result = task.call();
+            } catch (Exception | Error exp) {
+                record(taskName, null, exp);
+                throw exp;
+            }
+            record(taskName, result, null);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor running the handler of each Http request accepted by the server.
+ * It wraps one of the following and counts the requests passing through it.
+ * 1.   bounded pool with a fixed number of threads and a queue limit.
+ * 2.   a new virtual thread for each request. only available on Java 21 or later.
+ * 3.   executor given by the caller. it is not shut down by the server.
+ *
+ * When the delegate rejects a request, it is run by the dispatcher thread of the server.
+ * The server stops accepting new requests meanwhile, so the socket backlog takes the burst instead of new threads.
+ */
+public class ServerExecutor implements Executor {
+    public static final String BOUNDED = "bounded";
+    public static final String VIRTUAL = "virtual";
+    private static final String THREAD_NAME = "HttpMiniServer-";
+
+    private final Executor delegate;
+    private final boolean isOwnedExecutor;
+    private final String type;
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger largestActiveCount = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Constructor
+     * Use bounded(), virtual(), or external().
+     *
+     * @param delegate executor running the requests
+     * @param isOwnedExecutor flag if the executor is created here and needs to be shut down
+     * @param type name of the executor for logging
+     */
+    private ServerExecutor(Executor delegate, boolean isOwnedExecutor, String type) {
+        this.delegate = delegate;
+        this.isOwnedExecutor = isOwnedExecutor;
+        this.type = type;
+    }
+
+    /**
+     * Pool with fixed number of threads.
+     * Idle threads are released after a while so that a quiet server doesn't hold them.
+     *
+     * @param threadCount number of threads
+     * @param queueLimit maximum number of requests waiting for a thread
+     * @return executor
+     * @throws IllegalArgumentException if thread count or queue limit is less than 1
+     */
+    public static ServerExecutor bounded(int threadCount, int queueLimit) {
+        if (threadCount < 1 || queueLimit < 1) {
+            throw new IllegalArgumentException("Invalid number of threads or queue limit for server executor");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLimit), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return new ServerExecutor(pool, true, BOUNDED);
+    }
+
+    /**
+     * A virtual thread for each request.
+     * Created via reflection since this is built for Java 8.
+     *
+     * @return executor or null if virtual threads are not available in this JVM
+     */
+    public static ServerExecutor virtual() {
+        ExecutorService delegate = VirtualThreadExecutor.newVirtualThreadPerTaskExecutor();
+        return delegate == null ? null : new ServerExecutor(delegate, true, VIRTUAL);
+    }
+
+    /**
+     * @param executor executor given by the caller
+     * @return executor counting the requests of the given executor
+     * @throws IllegalArgumentException if executor is null
+     */
+    public static ServerExecutor external(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Null executor for server");
+        }
+        return new ServerExecutor(executor, false, executor.getClass().getSimpleName());
+    }
+
+    /**
+     * Running the request with the delegate.
+     * If it is rejected, running it in the current thread.
+     *
+     * @param command request handler from the server
+     */
+    @Override
+    public void execute(Runnable command) {
+        queuedCount.incrementAndGet();
+        Runnable counted = () -> run(command);
+        try {
+            delegate.execute(counted);
+        } catch (RejectedExecutionException exp) {
+            rejectedCount.incrementAndGet();
+            counted.run();
+        }
+    }
+
+    /**
+     * @param command request handler from the server
+     */
+    private void run(Runnable command) {
+        queuedCount.decrementAndGet();
+        int active = activeCount.incrementAndGet();
+        largestActiveCount.accumulateAndGet(active, Math::max);
+        try {
+            command.run();
+        } finally {
+            activeCount.decrementAndGet();
+            completedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Shutting down the delegate if it is created here.
+     */
+    void shutdown() {
+        if (isOwnedExecutor && delegate instanceof ExecutorService) {
+            ((ExecutorService) delegate).shutdown();
+        }
+    }
+
+    /**
+     * @return bounded, virtual, or class name of the executor given by the caller
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return number of requests waiting for a thread
+     */
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return number of requests being handled
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return highest number of requests handled at the same time
+     */
+    public int getLargestActiveCount() {
+        return largestActiveCount.get();
+    }
+
+    /**
+     * @return number of requests handled
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return number of requests run by the dispatcher thread since the delegate was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ServerExecutor{type=" + type + ", queued=" + getQueuedCount() + ", active=" + getActiveCount()
+                + ", largestActive=" + getLargestActiveCount() + ", completed=" + getCompletedCount()
+                + ", rejected=" + getRejectedCount() + "}";
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Executor running each task on a new virtual thread. Only available on Java 21 or later.
+ * Blocking Http calls park the virtual thread instead of holding a platform thread,
+ * so idle long running interactions don't need a thread each.
+ *
+ * There is no queue, so tasks are never reordered or held back here.
+ * Concurrency towards a destination is limited by DestinationLanes and incoming messages by InboundAdmission.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+    private static final String VIRTUAL_EXECUTOR_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    private final ExecutorService delegate;
+    private final Runnable afterTask;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger largestActiveCount = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Constructor
+     * Use create().
+     *
+     * @param delegate virtual thread per task executor of the JVM
+     * @param afterTask run after each task. null if nothing is needed.
+     */
+    private VirtualThreadExecutor(ExecutorService delegate, Runnable afterTask) {
+        this.delegate = delegate;
+        this.afterTask = afterTask;
+    }
+
+    /**
+     * @param afterTask run after each task even if it throws. null if nothing is needed.
+     * @return executor or null if virtual threads are not available in this JVM
+     */
+    public static VirtualThreadExecutor create(Runnable afterTask) {
+        ExecutorService delegate = newVirtualThreadPerTaskExecutor();
+        return delegate == null ? null : new VirtualThreadExecutor(delegate, afterTask);
+    }
+
+    /**
+     * @return flag if this JVM has virtual threads
+     */
+    public static boolean isAvailable() {
+        try {
+            Executors.class.getMethod(VIRTUAL_EXECUTOR_METHOD);
+            return true;
+        } catch (NoSuchMethodException exp) {
+            return false;
+        }
+    }
+
+    /**
+     * Created via reflection since this is built for Java 8.
+     *
+     * @return executor of the JVM or null if virtual threads are not available
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod(VIRTUAL_EXECUTOR_METHOD);
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException exp) {
+            HttpTransport.LOGGER.log(Level.FINE, "Virtual threads are not available", exp);
+            return null;
+        }
+    }
+
+    /**
+     * Starting a virtual thread for the task.
+     *
+     * @param command task
+     * @throws java.util.concurrent.RejectedExecutionException if this executor is shut down.
+     *          afterTask is not run for a rejected task.
+     */
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(() -> {
+            int active = activeCount.incrementAndGet();
+            largestActiveCount.accumulateAndGet(active, Math::max);
+            try {
+                command.run();
+            } finally {
+                activeCount.decrementAndGet();
+                completedCount.incrementAndGet();
+                if (afterTask != null) {
+                    afterTask.run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * @return number of running tasks
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /**
+     * @return highest number of tasks running at the same time
+     */
+    public int getLargestActiveCount() {
+        return largestActiveCount.get();
+    }
+
+    /**
+     * @return number of finished tasks
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExecutor{active=" + activeCount.get() + ", largestActive=" + largestActiveCount.get()
+                + ", completed=" + completedCount.get() + '}';
+    }
+}
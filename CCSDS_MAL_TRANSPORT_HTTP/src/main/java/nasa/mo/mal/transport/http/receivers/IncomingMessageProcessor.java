@@ -13,12 +13,14 @@ package nasa.mo.mal.transport.http.receivers;
 import esa.mo.mal.transport.gen.GENMessage;
 import nasa.mo.mal.transport.http.HttpEndpoint;
 import nasa.mo.mal.transport.http.HttpTransport;
+import nasa.mo.mal.transport.http.MessageTask;
 import nasa.mo.mal.transport.http.util.HttpTransportHelper;
 import nasa.mo.mal.transport.http.util.MALTransmitErrorBuilder;
 import nasa.mo.mal.transport.http.util.ResponseCodes;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALHelper;
 import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 
 import java.io.IOException;
@@ -30,7 +32,7 @@ import java.util.logging.Level;
  *         Created on 6/22/17.
  * A thread to process a single message.
  */
-public class IncomingMessageProcessor implements Callable<Boolean> {
+public class IncomingMessageProcessor implements Callable<Boolean>, MessageTask {
     private HttpIncomingMessageHolder incomingMessageHolder;
     private HttpTransport transport;
     private GENMessage decodedMessage;
@@ -51,6 +53,14 @@ public class IncomingMessageProcessor implements Callable<Boolean> {
         this.transport = transport;
     }
 
+    /**
+     * @return header of the message to schedule it. null if there is no message.
+     */
+    @Override
+    public MALMessageHeader getMessageHeader() {
+        return decodedMessage == null ? null : decodedMessage.getHeader();
+    }
+
     /**
      * Processing a single received http message.
      * Steps:
@@ -10,22 +10,26 @@
 
 package nasa.mo.mal.transport.http.receivers;
 
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import nasa.mo.mal.encoder.BlobAttachments;
 import nasa.mo.mal.encoder.Header.HttpHeaderKeys;
 import nasa.mo.mal.encoder.Header.HttpToMalMapper;
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
 import nasa.mo.mal.transport.http.HttpTransport;
+import nasa.mo.mal.transport.http.InboundAdmission;
+import nasa.mo.mal.transport.http.util.BufferPool;
 import nasa.mo.mal.transport.http.util.Constants;
 import nasa.mo.mal.transport.http.util.HttpTransportHelper;
+import nasa.mo.mal.transport.http.util.MultipartRelated;
 import nasa.mo.mal.transport.http.util.ResponseCodes;
-import org.apache.commons.io.IOUtils;
 import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -36,6 +40,8 @@ import java.util.logging.Level;
  */
 public class MainHandler implements HttpHandler {
     private HttpTransport transport;
+    private final BufferPool bodyChunkPool =
+            new BufferPool(Constants.DEFAULT_BODY_CHUNK_SIZE, Constants.DEFAULT_MAX_POOLED_BODY_CHUNKS);
 
     public MainHandler(HttpTransport transport) {
         this.transport = transport;
@@ -49,11 +55,16 @@ public class MainHandler implements HttpHandler {
      *          set response code as Forbidden (status-code of status-line)
      *          Http-Version of status-line is not required to be set as it is using the request's Http-Version
      *          reason-phrase of status-line is not mandatory (ignored at this moment).
-     * 2.   TODO throw MAL Error
-     * 3.   TODO other validations?
+     * 2.   if there are too many incoming messages for its QoS level, return 429.
+     *          return 503 if the limit for all QoS levels is reached.
+     *          this is checked before reading the body.
+     * 3.   TODO throw MAL Error
+     * 4.   TODO other validations?
      *
      * Steps:
      * 1.   get Header Map & Xml Body from Http Object.
+     *          body is read into a buffer sized by Content-Length. headers are read through a view without copying.
+     *          multipart/related body is split into the Xml Body and Blob parts. big parts are written to files.
      * 2.   create Serializable Encoded Message from those.
      * 3.   create a message processing thread and pass to transport.
      *
@@ -68,36 +79,108 @@ public class MainHandler implements HttpHandler {
             // TODO store invalid message? or error message?
             return;
         }
-        byte[] encodedMessage = IOUtils.toByteArray(httpExchange.getRequestBody());
-        Map<String, String> allHeaders = new HashMap<>();
-        httpExchange.getRequestHeaders().keySet()
-                .forEach(k -> allHeaders.put(k.toLowerCase(), httpExchange.getRequestHeaders().getFirst(k)));
-        allHeaders.put(HttpHeaderKeys.HOST.toString(), allHeaders.get(HttpHeaderKeys.HOST.toString()).replaceAll(
-                "^" + (transport.isSecureServer() ? Constants.SECURE_HTTP : Constants.PLAIN_HTTP), "malhttp"));
+        Headers requestHeaders = httpExchange.getRequestHeaders();
+        Map<String, String> allHeaders = new RequestHeaderView(requestHeaders, transport.isSecureServer());
+        InboundAdmission admission = transport.getInboundAdmission();
+        String qosLevel = allHeaders.get(HttpHeaderKeys.QOS_LEVEL.toString());
+        if (admission != null && !admission.tryAdmit(qosLevel == null ? null : QoSLevel.fromString(qosLevel))) {
+            returnErrorResponse(httpExchange, admission.getDepth() >= admission.getLimit() ?
+                    ResponseCodes.SERVICE_UNAVAILABLE : ResponseCodes.TOO_MANY_REQUEST);
+            HttpTransport.LOGGER.log(Level.FINE, "Incoming message is rejected. {0}", admission);
+            return;
+        }
+        boolean isSubmitted = false;
+        try {
+            isSubmitted = handleAdmitted(httpExchange, requestHeaders, allHeaders);
+        } finally {
+            if (admission != null && !isSubmitted) {
+                admission.release();
+            }
+        }
+    }
+
+    /**
+     * Reading, decoding, and submitting an admitted message.
+     *
+     * @param httpExchange Http Exchange object
+     * @param requestHeaders request headers
+     * @param allHeaders view of request headers for mapping to MAL header
+     * @return flag if the message is submitted to transport, which releases its admission after processing.
+     * @throws IOException any error
+     */
+    private boolean handleAdmitted(HttpExchange httpExchange, Headers requestHeaders, Map<String, String> allHeaders)
+            throws IOException {
+        String contentType = requestHeaders.getFirst(Constants.CONTENT_TYPE_HEADER);
+        byte[] encodedMessage;
+        BlobAttachments attachments = null;
+        if (MultipartRelated.isMultipartRelated(contentType)) {
+            MultipartRelated.Body body;
+            try {
+                body = MultipartRelated.read(httpExchange.getRequestBody(), contentType,
+                        transport.getAttachmentMemoryLimit(), transport.getAttachmentSpoolLimit(),
+                        transport.getAttachmentDirectory());
+            } catch (IOException exp) {
+                returnErrorResponse(httpExchange, ResponseCodes.BAD_REQUEST);
+                HttpTransport.LOGGER.log(Level.WARNING, "Incoming multipart/related body has error.", exp);
+                return false;
+            }
+            encodedMessage = body.getRoot();
+            attachments = body.getAttachments();
+        } else {
+            encodedMessage = HttpTransportHelper.readRequestBody(httpExchange.getRequestBody(),
+                    requestHeaders.getFirst(Constants.CONTENT_LENGTH_HEADER), bodyChunkPool);
+        }
+        boolean isSubmitted = false;
+        try {
+            isSubmitted = submit(httpExchange, allHeaders, encodedMessage, attachments);
+            return isSubmitted;
+        } finally {
+            if (attachments != null && !isSubmitted) {
+                attachments.deleteFiles();
+            }
+        }
+    }
+
+    /**
+     * Decoding and submitting a message which is read.
+     *
+     * @param httpExchange Http Exchange object
+     * @param allHeaders view of request headers for mapping to MAL header
+     * @param encodedMessage encoded MAL body
+     * @param attachments other parts of a multipart/related body. null if there are none.
+     * @return flag if the message is submitted to transport
+     * @throws IOException any error
+     */
+    private boolean submit(HttpExchange httpExchange, Map<String, String> allHeaders, byte[] encodedMessage,
+                           BlobAttachments attachments) throws IOException {
         GENMessageHeader malMessageHeader = new GENMessageHeader();
         GENMessage genMessage;
         try {
             HttpToMalMapper.getInstance().fillMalMessageHeader(allHeaders, malMessageHeader);
-            genMessage = transport.createMessage(encodedMessage, malMessageHeader);
-            HttpTransport.LOGGER.log(Level.FINE, "Created Encoded Message from Http:\n " + genMessage);
+            genMessage = attachments == null ? transport.createMessage(encodedMessage, malMessageHeader) :
+                    transport.createMessage(encodedMessage, malMessageHeader, attachments);
+            HttpTransport.LOGGER.log(Level.FINE, "Created Encoded Message from Http:\n {0}", genMessage);
         } catch (MALException exp) {
             returnErrorResponse(httpExchange, ResponseCodes.BAD_REQUEST);
             HttpTransport.LOGGER.log(Level.WARNING, "Incoming message has error decoding.", exp);
-            return;
+            return false;
         }
 
         try {
             transport.addNewIncomingMessageToProcess(new IncomingMessageProcessor(
                     new HttpIncomingMessageHolder(httpExchange, genMessage, false), transport));
             HttpTransport.LOGGER.log(Level.FINE, "Created Message Processor Thread & added to Executor Service");
+            return true;
         } catch (MALTransmitErrorException exp) {
             try {
-                HttpTransportHelper.fillResponse(httpExchange, ResponseCodes.INTERNAL_SERVER_ERROR.getCode(),
+                HttpTransportHelper.fillResponse(httpExchange,
+                        HttpTransportHelper.getStatusCodeFromMALError(exp.getStandardError().getErrorNumber()).getCode(),
                         null, null);
             } catch (MALException malExp) {
                 HttpTransport.LOGGER.log(Level.WARNING, "Error while responding error code", malExp);
             }
             HttpTransport.LOGGER.log(Level.SEVERE, "Error while addNewIncomingMessageToProcess.", exp);
+            return false;
         }
     }
 
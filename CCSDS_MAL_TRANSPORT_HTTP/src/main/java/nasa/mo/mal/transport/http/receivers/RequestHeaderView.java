@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.receivers;
+
+import com.sun.net.httpserver.Headers;
+import nasa.mo.mal.encoder.Header.HttpHeaderKeys;
+import nasa.mo.mal.transport.http.util.Constants;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Read only view of request headers with the first value of each header.
+ * Keys are case insensitive as Headers normalizes them. Nothing is copied.
+ * Scheme of HOST value (http or https) is replaced with malhttp when it is read.
+ */
+final class RequestHeaderView extends AbstractMap<String, String> {
+    private final Headers headers;
+    private final String scheme;
+
+    /**
+     * @param headers request headers
+     * @param secure flag if the request is received by https server
+     */
+    RequestHeaderView(Headers headers, boolean secure) {
+        this.headers = headers;
+        this.scheme = secure ? Constants.SECURE_HTTP : Constants.PLAIN_HTTP;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String value = headers.getFirst((String) key);
+        if (value != null && HttpHeaderKeys.HOST.toString().equalsIgnoreCase((String) key)
+                && value.startsWith(scheme)) {
+            return Constants.MAL_HTTP + value.substring(scheme.length());
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && headers.containsKey(key);
+    }
+
+    /**
+     * Only for iteration. Entries are created on each call.
+     *
+     * @return header entries with lower case keys
+     */
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        Set<Entry<String, String>> entries = new LinkedHashSet<>();
+        for (String key : headers.keySet()) {
+            String lowerCaseKey = key.toLowerCase();
+            entries.add(new SimpleImmutableEntry<>(lowerCaseKey, get(lowerCaseKey)));
+        }
+        return entries;
+    }
+}
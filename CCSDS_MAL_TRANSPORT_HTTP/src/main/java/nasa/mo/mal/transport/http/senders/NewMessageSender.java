@@ -10,16 +10,20 @@
 
 package nasa.mo.mal.transport.http.senders;
 
+import nasa.mo.mal.encoder.BlobAttachments;
 import nasa.mo.mal.encoder.Header.HttpHeaderKeys;
 import nasa.mo.mal.encoder.Header.HttpToMalMapper;
 import nasa.mo.mal.encoder.util.HeaderMappingHelper;
 import esa.mo.mal.transport.gen.GENMessageHeader;
 import nasa.mo.mal.transport.http.HttpEndpoint;
-import nasa.mo.mal.transport.http.HttpMiniServer;
+import nasa.mo.mal.transport.http.HttpMiniClient;
 import nasa.mo.mal.transport.http.HttpTransport;
+import nasa.mo.mal.transport.http.MessageTask;
+import nasa.mo.mal.transport.http.OutboundScheduler;
 import nasa.mo.mal.transport.http.util.Constants;
 import nasa.mo.mal.transport.http.util.HttpTransportHelper;
 import nasa.mo.mal.transport.http.util.MALTransmitErrorBuilder;
+import nasa.mo.mal.transport.http.util.MultipartRelated;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -27,15 +31,9 @@ import org.apache.http.NoHttpResponseException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.config.Registry;
-import org.apache.http.config.RegistryBuilder;
-import org.apache.http.conn.socket.ConnectionSocketFactory;
-import org.apache.http.conn.socket.PlainConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.ccsds.moims.mo.mal.MALException;
 import org.ccsds.moims.mo.mal.MALHelper;
@@ -43,12 +41,16 @@ import org.ccsds.moims.mo.mal.structures.UInteger;
 import org.ccsds.moims.mo.mal.structures.UOctet;
 import org.ccsds.moims.mo.mal.structures.Union;
 import org.ccsds.moims.mo.mal.transport.MALMessage;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 
 /**
@@ -56,9 +58,8 @@ import java.util.logging.Level;
  *         Created on 6/27/17.
  * TODO remove System.out.print()s after debugging is done
  */
-public class NewMessageSender implements Callable<Boolean> {
+public class NewMessageSender implements Callable<Boolean>, MessageTask {
 
-    private static final int MAX_CONNECTION = 100;
     private HttpTransport transport;
 
     private int connectionTimeoutInMilliSecond = 0;
@@ -69,9 +70,7 @@ public class NewMessageSender implements Callable<Boolean> {
     private byte[] encodedMessage;
     private Map<String, String> headers;
     private HttpEndpoint endpoint;
-
-    private PoolingHttpClientConnectionManager connectionManager;
-    private SSLConnectionSocketFactory sslConnectionSocketFactory;
+    private HttpHost target;
 
     public NewMessageSender(HttpTransport transport,
                             int connectionTimeoutInMilliSecond,
@@ -95,6 +94,14 @@ public class NewMessageSender implements Callable<Boolean> {
         this.headers = headers;
     }
 
+    /**
+     * @return header of the message to schedule it
+     */
+    @Override
+    public MALMessageHeader getMessageHeader() {
+        return message == null ? null : message.getHeader();
+    }
+
     /**
      * Creating a new Http Message and send it to the target
      *
@@ -102,101 +109,188 @@ public class NewMessageSender implements Callable<Boolean> {
      * 1.   TODO figure out Host, URI-To, Request-Target
      * 2.   TODO create request-URI
      * 3.   create Http Post with encoded message. NOTE: based on Red Book, POST is the only valid method.
-     * 4.   call method to execute the post
+     * 4.   call method to execute the post with the shared client of the transport.
+     * 5.   if the transport has no shared client, create a client only for this message.
      * @return flag if workflow is executed correctly
      * @throws Exception any exception
      */
     @Override
     public Boolean call() throws Exception {
         try {
-            if (headers == null || encodedMessage == null ||
-                    !headers.containsKey(HttpHeaderKeys.HOST.toString()) ||
-                    !headers.containsKey(HttpHeaderKeys.REQUEST_TARGET.toString())) {
-                throw MALTransmitErrorBuilder.create().setHeader(message.getHeader())
-                        .setExtraInfo("Null objects in not-nullable fields in Encoded Message").build();
+            HttpPost post = createPost();
+            HttpMiniClient sharedClient = transport.getHttpClient();
+            if (sharedClient != null && sharedClient.getClient() != null) {
+                return executePost(sharedClient.getClient(), target, post);
             }
-            headers.put(HttpHeaderKeys.HOST.toString(), headers.get(HttpHeaderKeys.HOST.toString()).replaceAll(
-                    "^malhttp", transport.isSecureServer() ? Constants.SECURE_HTTP : Constants.PLAIN_HTTP));
-            URI uri = new URI(HeaderMappingHelper.decodeURI(headers.get(HttpHeaderKeys.HOST.toString())));
-            HttpTransport.LOGGER.log(Level.FINE, "Target URL = " + uri.toString());
-            HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+            HttpTransport.LOGGER.log(Level.FINE, "No shared Http Client. Creating a client for this message.");
+            HttpMiniClient client = HttpMiniClient.custom()
+                    .keyStoreFile(transport.getKeyStoreFile()).keyStorePassword(transport.getKeyStorePassword())
+                    .trustStoreFile(transport.getTrustStoreFile()).trustStorePassword(transport.getTrustStorePassword())
+                    .keyStoreType(transport.getKeyStoreType()).build();
+            try {
+                client.create();
+                return executePost(client.getClient(), target, post);
+            } finally {
+                client.close();
+            }
+        } catch (IOException exp) {
+            throw MALTransmitErrorBuilder.create().setHeader(message.getHeader()).setExtraInfo(exp).build();
+        }
+    }
 
-            HttpPost post = new HttpPost(HeaderMappingHelper.decodeURI(headers.get(HttpHeaderKeys.REQUEST_TARGET.toString())));
-            post.setProtocolVersion(Constants.HTTP_VERSION);
-            headers.forEach(post::setHeader);
-            post.setEntity(new ByteArrayEntity(encodedMessage));
-            HttpTransport.LOGGER.log(Level.FINE, "Created Http Post Message for message:\n " + new String(encodedMessage));
+    /**
+     * Sending the message with the non-blocking client of the transport.
+     * No thread is blocked while waiting for the response.
+     * Same as call() except the result is delivered by the future.
+     *
+     * Steps:
+     * 1.   create Http Post in the same way as call(). any error completes the future exceptionally.
+     * 2.   execute the post with the non-blocking client.
+     * 3.   when the response arrives, process it with the executor since it may pass the message to MAL.
+     *      IO threads of the client are not used for that. Outbound scheduler orders it by the message header.
+     * 4.   errors are converted to MALTransmitErrorException in the same way as call().
+     *
+     * @param responseExecutor executor processing the response
+     * @return future completed with the same flag as call() or MALTransmitErrorException
+     */
+    public CompletableFuture<Boolean> send(final Executor responseExecutor) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        HttpMiniClient sharedClient = transport.getHttpClient();
+        if (sharedClient == null || sharedClient.getAsyncClient() == null) {
+            result.completeExceptionally(MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                    .setExtraInfo("No asynchronous Http Client in transport").build());
+            return result;
+        }
+        final HttpPost post;
+        try {
+            post = createPost();
+        } catch (MALTransmitErrorException | IllegalArgumentException exp) {
+            result.completeExceptionally(exp);
+            return result;
+        } catch (Exception exp) {
+            result.completeExceptionally(MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                    .setExtraInfo(exp).build());
+            return result;
+        }
+        sharedClient.getAsyncClient().execute(target, post, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(final HttpResponse response) {
+                HttpTransport.LOGGER.log(Level.FINE, "sent encoded message.");
+                Runnable responseProcessor = () -> {
+                    try {
+                        result.complete(processResponse(response));
+                    } catch (MALTransmitErrorException | RuntimeException exp) {
+                        result.completeExceptionally(exp);
+                    } finally {
+                        EntityUtils.consumeQuietly(response.getEntity());
+                    }
+                };
+                try {
+                    if (responseExecutor instanceof OutboundScheduler) {
+                        ((OutboundScheduler) responseExecutor).execute(responseProcessor, message.getHeader());
+                    } else {
+                        responseExecutor.execute(responseProcessor);
+                    }
+                } catch (RejectedExecutionException exp) {
+                    result.completeExceptionally(MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                            .setExtraInfo(exp).build());
+                }
+            }
 
-            sslConnectionSocketFactory = new SSLConnectionSocketFactory(
-                    HttpMiniServer.getSSLContext(transport.getKeyStoreFile(),
-                            transport.getKeyStorePassword(),
-                            transport.getTrustStoreFile(),
-                            transport.getTrustStorePassword(),
-                            transport.getKeyStoreType()),
-                    SSLConnectionSocketFactory.getDefaultHostnameVerifier());
-            Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register(Constants.PLAIN_HTTP, PlainConnectionSocketFactory.INSTANCE)
-                    .register(Constants.SECURE_HTTP, sslConnectionSocketFactory)
-                    .build();
+            @Override
+            public void failed(final Exception exp) {
+                result.completeExceptionally(createSendError(exp));
+            }
 
-            connectionManager = new PoolingHttpClientConnectionManager(registry);
-            connectionManager.setMaxTotal(MAX_CONNECTION);
-            return executePost(target, post);
-        } catch (IOException exp) {
-            throw MALTransmitErrorBuilder.create().setHeader(message.getHeader()).setExtraInfo(exp).build();
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                        .setExtraInfo("Http request is cancelled").build());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Creating Http Post with encoded message and finding the target host.
+     * Target host is stored in the field.
+     *
+     * @return Http-Post Object created with encoded MAL message.
+     * @throws Exception null fields, invalid URIs
+     */
+    private HttpPost createPost() throws Exception {
+        if (headers == null || encodedMessage == null ||
+                !headers.containsKey(HttpHeaderKeys.HOST.toString()) ||
+                !headers.containsKey(HttpHeaderKeys.REQUEST_TARGET.toString())) {
+            throw MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                    .setExtraInfo("Null objects in not-nullable fields in Encoded Message").build();
+        }
+        headers.put(HttpHeaderKeys.HOST.toString(), headers.get(HttpHeaderKeys.HOST.toString()).replaceAll(
+                "^malhttp", transport.isSecureServer() ? Constants.SECURE_HTTP : Constants.PLAIN_HTTP));
+        URI uri = new URI(HeaderMappingHelper.decodeURI(headers.get(HttpHeaderKeys.HOST.toString())));
+        HttpTransport.LOGGER.log(Level.FINE, "Target URL = " + uri.toString());
+        target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+
+        HttpPost post = new HttpPost(HeaderMappingHelper.decodeURI(headers.get(HttpHeaderKeys.REQUEST_TARGET.toString())));
+        post.setProtocolVersion(Constants.HTTP_VERSION);
+        headers.forEach(post::setHeader);
+        post.setEntity(new ByteArrayEntity(encodedMessage));
+        post.setConfig(RequestConfig.custom()
+                .setConnectTimeout(connectionTimeoutInMilliSecond)
+                .setConnectionRequestTimeout(connectionRequestTimeoutInMilliSecond)
+                .setSocketTimeout(socketTimeoutInMilliSecond)
+                .build());
+        if (HttpTransport.LOGGER.isLoggable(Level.FINE)) {
+            HttpTransport.LOGGER.log(Level.FINE, "Created Http Post Message for message:\n " + new String(encodedMessage));
         }
+        return post;
     }
 
     /**
      * Executing a Http-Post with the client
-     * NOTE: Closeable Client and Response is needed for multi-thread application
+     * NOTE: Client is shared and thread safe. Only the response is closed here.
+     *       Response entity must be consumed so that the connection goes back to the pool.
      *
      * Steps:
-     * 1.   Create Http Client
-     * 2.   Create Http Response with the client & post object
-     * 3.   call method to handle response
+     * 1.   Create Http Response with the client & post object
+     * 2.   call method to handle response
      *
-     * NOTE: commented code might be needed if stale connection issue rises.
+     * NOTE: retry handler might be needed if stale connection issue rises.
      * https://stackoverflow.com/questions/10558791/apache-httpclient-interim-error-nohttpresponseexception
      * https://stackoverflow.com/questions/10570672/get-nohttpresponseexception-for-load-testing/10680629#10680629
      *
+     * @param client Http Client
+     * @param target Http Host of the target
      * @param post Http-Post Object created with encoded MAL message.
      * @return flag if workflow is executed correctly
      * @throws Exception any exception
      */
-    private boolean executePost(final HttpHost target, final HttpPost post) throws Exception {
-        try (CloseableHttpClient client = HttpClients.custom()
-                .setSSLSocketFactory(sslConnectionSocketFactory)
-                .setConnectionManager(connectionManager)
-                .setDefaultRequestConfig(RequestConfig.custom()
-                        .setConnectTimeout(connectionTimeoutInMilliSecond)
-                        .setConnectionRequestTimeout(connectionRequestTimeoutInMilliSecond)
-                        .setSocketTimeout(socketTimeoutInMilliSecond)
-                        .build())
-//                .setRetryHandler((exp, excCount, context) -> {
-//                    if (excCount > 3) {
-//                        HttpTransport.LOGGER.log(Level.WARNING, "Maximum tries reached for client http pool");
-//                        return false;
-//                    }
-//                    if (exp instanceof NoHttpResponseException) {
-//                        HttpTransport.LOGGER.log(Level.WARNING, "No response from server on " + exp + " call");
-//                        return true;
-//                    }
-//                    return false;
-//                })
-                .build();
-             CloseableHttpResponse response = client.execute(target, post)) {
+    private boolean executePost(final CloseableHttpClient client, final HttpHost target, final HttpPost post)
+            throws Exception {
+        try (CloseableHttpResponse response = client.execute(target, post)) {
             HttpTransport.LOGGER.log(Level.FINE, "sent encoded message.");
             boolean result = processResponse(response);
             EntityUtils.consumeQuietly(response.getEntity());
             return result;
-        } catch (NoHttpResponseException exp) {
-            throw MALTransmitErrorBuilder.create().setHeader(message.getHeader())
-                    .setErrorNumber(MALHelper.DELIVERY_TIMEDOUT_ERROR_NUMBER).setExtraInfo(exp).build();
         } catch (IOException exp) {
-            throw MALTransmitErrorBuilder.create().setHeader(message.getHeader())
-                    .setErrorNumber(MALHelper.UNKNOWN_ERROR_NUMBER).setExtraInfo(exp).build();
+            throw createSendError(exp);
+        }
+    }
+
+    /**
+     * Converting an error while sending to MAL error.
+     * No response means delivery timed out. Others are unknown errors.
+     *
+     * @param exp exception from Http Client
+     * @return MALTransmitErrorException with header of the message
+     */
+    private MALTransmitErrorException createSendError(Exception exp) {
+        if (exp instanceof NoHttpResponseException) {
+            return MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                    .setErrorNumber(MALHelper.DELIVERY_TIMEDOUT_ERROR_NUMBER).setExtraInfo(exp).build();
         }
+        return MALTransmitErrorBuilder.create().setHeader(message.getHeader())
+                .setErrorNumber(MALHelper.UNKNOWN_ERROR_NUMBER).setExtraInfo(exp).build();
     }
 
     /**
@@ -254,19 +348,36 @@ public class NewMessageSender implements Callable<Boolean> {
                         .setHeader(message.getHeader()).setExtraInfo(exp).build();
             }
         } else {
+            BlobAttachments attachments = null;
             try {
-                byte[] responseMessage = IOUtils.toByteArray(response.getEntity().getContent());
                 Map<String, String> headerMap = new HashMap<>();
                 Arrays.stream(response.getAllHeaders())
                         .forEach(each -> headerMap.put(each.getName().toLowerCase(), each.getValue()));
+                String contentType = headerMap.get(HttpHeaderKeys.CONTENT_TYPE.toString());
+                byte[] responseMessage;
+                if (MultipartRelated.isMultipartRelated(contentType)) {
+                    MultipartRelated.Body body = MultipartRelated.read(response.getEntity().getContent(), contentType,
+                            transport.getAttachmentMemoryLimit(), transport.getAttachmentSpoolLimit(),
+                            transport.getAttachmentDirectory());
+                    responseMessage = body.getRoot();
+                    attachments = body.getAttachments();
+                } else {
+                    responseMessage = IOUtils.toByteArray(response.getEntity().getContent());
+                }
                 headerMap.put(HttpHeaderKeys.HOST.toString(), headerMap.get(HttpHeaderKeys.HOST.toString()).replaceAll(
                         "^" + (transport.isSecureServer() ? Constants.SECURE_HTTP : Constants.PLAIN_HTTP), "malhttp"));
-                HttpTransport.LOGGER.log(Level.FINE, "Received Encoded Message:\n" + new String(responseMessage));
+                if (HttpTransport.LOGGER.isLoggable(Level.FINE)) {
+                    HttpTransport.LOGGER.log(Level.FINE, "Received Encoded Message:\n" + new String(responseMessage));
+                }
                 GENMessageHeader header = new GENMessageHeader();
                 HttpToMalMapper.getInstance().fillMalMessageHeader(headerMap, header);
-                endpoint.receiveMessage(transport.createMessage(responseMessage, header));
+                endpoint.receiveMessage(attachments == null ? transport.createMessage(responseMessage, header) :
+                        transport.createMessage(responseMessage, header, attachments));
                 return true;
             } catch (IOException | MALException | NullPointerException exp) {
+                if (attachments != null) {
+                    attachments.deleteFiles();
+                }
                 throw MALTransmitErrorBuilder.create().setHeader(message.getHeader()).setExtraInfo(exp).build();
             }
         }
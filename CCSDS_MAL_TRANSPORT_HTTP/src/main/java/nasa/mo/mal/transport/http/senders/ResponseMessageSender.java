@@ -96,7 +96,9 @@ public class ResponseMessageSender implements Callable<Boolean> {
         }
 
         try {
-            HttpTransport.LOGGER.log(Level.FINE, "sending a response message for message:\n" + new String(encoded));
+            if (HttpTransport.LOGGER.isLoggable(Level.FINE)) {
+                HttpTransport.LOGGER.log(Level.FINE, "sending a response message for message:\n" + new String(encoded));
+            }
             HttpTransportHelper.fillResponse(exchange, responseCode,
                     encoded, headers);
             return true;
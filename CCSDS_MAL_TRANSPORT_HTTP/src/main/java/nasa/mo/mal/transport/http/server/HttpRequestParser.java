@@ -0,0 +1,352 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.Headers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental parser of Http/1.1 requests for NioServerEngine.
+ * Bytes are appended as they are read from the socket. Several requests may be in the buffer at once if the client
+ * is pipelining. Headers of a request are parsed only once even if its body arrives in several reads.
+ *
+ * Body is either Content-Length or chunked. Requests without both have no body.
+ * Bodies larger than the maximum body size are rejected before they are buffered.
+ * Chunks are decoded as they arrive, so a chunked body is decoded only once.
+ */
+final class HttpRequestParser {
+    static final int MAX_HEADER_SIZE = 64 * 1024;
+    static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final String CHUNKED = "chunked";
+    private static final String CLOSE = "close";
+    private static final String KEEP_ALIVE = "keep-alive";
+    private static final String CONTINUE = "100-continue";
+    private static final String HTTP_1_0 = "HTTP/1.0";
+
+    private final int maxBodySize;
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private int start = 0;
+    private int end = 0;
+    /**
+     * position up to which the end of headers is already searched.
+     */
+    private int scanned = 0;
+    /**
+     * parsed headers of the request whose body is not complete yet.
+     */
+    private Request head;
+    /**
+     * decoded chunks of the current chunked request. the buffer only has the chunks which are not decoded yet.
+     */
+    private ByteArrayOutputStream chunkedBody;
+
+    HttpRequestParser() {
+        this(DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * @param maxBodySize largest request body in bytes
+     */
+    HttpRequestParser(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * @param buffer bytes read from socket. buffer is fully consumed.
+     */
+    void append(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (end + length > data.length) {
+            compact();
+            if (end + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, end + length));
+            }
+        }
+        buffer.get(data, end, length);
+        end += length;
+    }
+
+    /**
+     * @return the next complete request or null if more bytes are needed
+     * @throws IOException if the request is malformed or its headers are too large
+     * @throws BodyTooLargeException if the body is larger than the maximum body size
+     */
+    Request next() throws IOException {
+        if (head == null) {
+            while (start < end && (data[start] == CR || data[start] == LF)) {
+                start++;
+            }
+            int headerEnd = indexOfHeaderEnd();
+            if (headerEnd < 0) {
+                if (end - start > MAX_HEADER_SIZE) {
+                    throw new IOException("Request header is too large");
+                }
+                scanned = Math.max(start, end - 3);
+                return null;
+            }
+            head = parseHead(new String(data, start, headerEnd - start, StandardCharsets.ISO_8859_1));
+            if (head.contentLength > maxBodySize) {
+                throw new BodyTooLargeException("Request body is too large: " + head.contentLength);
+            }
+            start = headerEnd;
+            scanned = start;
+        }
+        byte[] body;
+        if (head.isChunked) {
+            body = decodeChunked();
+            if (body == null) {
+                return null;
+            }
+        } else {
+            if (end - start < head.contentLength) {
+                return null;
+            }
+            body = Arrays.copyOfRange(data, start, start + (int) head.contentLength);
+            start += (int) head.contentLength;
+        }
+        Request request = head;
+        request.body = body;
+        head = null;
+        scanned = start;
+        if (start == end) {
+            start = 0;
+            end = 0;
+            scanned = 0;
+        }
+        return request;
+    }
+
+    /**
+     * @return flag if the current request waits for 100 (Continue) before sending its body
+     */
+    boolean isExpectingContinue() {
+        return head != null && head.isExpectingContinue;
+    }
+
+    /**
+     * Client is told to continue only once.
+     */
+    void continueSent() {
+        if (head != null) {
+            head.isExpectingContinue = false;
+        }
+    }
+
+    /**
+     * @return flag if there are bytes of an incomplete request
+     */
+    boolean hasPartialRequest() {
+        return head != null || start < end;
+    }
+
+    /**
+     * @return index after CRLFCRLF or -1
+     */
+    private int indexOfHeaderEnd() {
+        for (int i = Math.max(start, scanned); i + 3 < end; i++) {
+            if (data[i] == CR && data[i + 1] == LF && data[i + 2] == CR && data[i + 3] == LF) {
+                return i + 4;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param from index to start searching
+     * @return index of CRLF or -1
+     */
+    private int indexOfLineEnd(int from) {
+        for (int i = from; i + 1 < end; i++) {
+            if (data[i] == CR && data[i + 1] == LF) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decoding the chunks in the buffer. Decoded chunks are moved out of the buffer,
+     * so each byte is decoded only once however many reads the body takes.
+     *
+     * @return decoded body or null if more bytes are needed
+     * @throws IOException invalid chunk size or chunk end, or too large size line or trailers
+     * @throws BodyTooLargeException if the body is larger than the maximum body size
+     */
+    private byte[] decodeChunked() throws IOException {
+        if (chunkedBody == null) {
+            chunkedBody = new ByteArrayOutputStream();
+        }
+        while (true) {
+            int lineEnd = indexOfLineEnd(start);
+            if (lineEnd < 0) {
+                checkLineSize();
+                return null;
+            }
+            String sizeLine = new String(data, start, lineEnd - start, StandardCharsets.ISO_8859_1);
+            int extension = sizeLine.indexOf(';');
+            int size;
+            try {
+                size = Integer.parseInt((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            } catch (NumberFormatException exp) {
+                throw new IOException("Invalid chunk size: " + sizeLine, exp);
+            }
+            if (size < 0) {
+                throw new IOException("Invalid chunk size: " + sizeLine);
+            }
+            int position = lineEnd + 2;
+            if (size == 0) {
+                // trailers are skipped until an empty line
+                while (true) {
+                    int trailerEnd = indexOfLineEnd(position);
+                    if (trailerEnd < 0) {
+                        checkLineSize();
+                        return null;
+                    }
+                    boolean isEmptyLine = trailerEnd == position;
+                    position = trailerEnd + 2;
+                    if (isEmptyLine) {
+                        break;
+                    }
+                }
+                start = position;
+                byte[] body = chunkedBody.toByteArray();
+                chunkedBody = null;
+                return body;
+            }
+            if (size > maxBodySize - chunkedBody.size()) {
+                throw new BodyTooLargeException("Request body is too large: " + chunkedBody.size() + " + " + size);
+            }
+            if (end - position < size + 2) {
+                return null;
+            }
+            if (data[position + size] != CR || data[position + size + 1] != LF) {
+                throw new IOException("Chunk is not followed by CRLF");
+            }
+            chunkedBody.write(data, position, size);
+            start = position + size + 2;
+        }
+    }
+
+    /**
+     * Chunk size line and trailers have the same limit as the headers.
+     *
+     * @throws IOException if the incomplete line is too large
+     */
+    private void checkLineSize() throws IOException {
+        if (end - start > MAX_HEADER_SIZE) {
+            throw new IOException("Chunk size line or trailer is too large");
+        }
+    }
+
+    /**
+     * @param request line and headers without the final CRLFCRLF
+     * @return request without body
+     * @throws IOException malformed request line or header
+     */
+    private static Request parseHead(String requestHead) throws IOException {
+        String[] lines = requestHead.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            throw new IOException("Invalid request line: " + lines[0]);
+        }
+        Request request = new Request(requestLine[0], requestLine[1], requestLine[2]);
+        String lastKey = null;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isEmpty()) {
+                continue;
+            }
+            if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && lastKey != null) {
+                List<String> values = request.headers.get(lastKey);
+                values.set(values.size() - 1, values.get(values.size() - 1) + " " + line.trim());
+                continue;
+            }
+            int separator = line.indexOf(':');
+            if (separator <= 0) {
+                throw new IOException("Invalid header: " + line);
+            }
+            lastKey = line.substring(0, separator).trim();
+            request.headers.add(lastKey, line.substring(separator + 1).trim());
+        }
+        String transferEncoding = request.headers.getFirst("Transfer-Encoding");
+        request.isChunked = transferEncoding != null && transferEncoding.toLowerCase().contains(CHUNKED);
+        String contentLength = request.headers.getFirst("Content-Length");
+        if (!request.isChunked && contentLength != null) {
+            try {
+                request.contentLength = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException exp) {
+                throw new IOException("Invalid Content-Length: " + contentLength, exp);
+            }
+            if (request.contentLength < 0 || request.contentLength > Integer.MAX_VALUE - 8) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+        }
+        String connection = request.headers.getFirst("Connection");
+        if (HTTP_1_0.equalsIgnoreCase(request.protocol)) {
+            request.isKeepAlive = KEEP_ALIVE.equalsIgnoreCase(connection);
+        } else {
+            request.isKeepAlive = !CLOSE.equalsIgnoreCase(connection);
+        }
+        request.isExpectingContinue = CONTINUE.equalsIgnoreCase(request.headers.getFirst("Expect"));
+        return request;
+    }
+
+    /**
+     * Moving unread bytes to the beginning of the buffer.
+     */
+    private void compact() {
+        if (start > 0) {
+            System.arraycopy(data, start, data, 0, end - start);
+            end -= start;
+            scanned = Math.max(0, scanned - start);
+            start = 0;
+        }
+    }
+
+    /**
+     * Request body is larger than the maximum body size. It is answered with 413.
+     */
+    static final class BodyTooLargeException extends IOException {
+        BodyTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A parsed request.
+     */
+    static final class Request {
+        final String method;
+        final String uri;
+        final String protocol;
+        final Headers headers = new Headers();
+        long contentLength = 0;
+        boolean isChunked;
+        boolean isKeepAlive;
+        boolean isExpectingContinue;
+        byte[] body;
+
+        Request(String method, String uri, String protocol) {
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+        }
+    }
+}
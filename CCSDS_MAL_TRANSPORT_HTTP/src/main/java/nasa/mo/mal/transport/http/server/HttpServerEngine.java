@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.ccsds.moims.mo.mal.MALException;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * Engine accepting Http requests for HttpMiniServer.
+ * Each request is given to the handler as com.sun.net.httpserver.HttpExchange regardless of the engine,
+ * so the rest of the transport doesn't depend on how requests are received.
+ *
+ * An engine selected by class name is created with its no argument constructor.
+ */
+public interface HttpServerEngine {
+    /**
+     * Binding to the address. Requests are not handled until it is started.
+     *
+     * @param address address to listen
+     * @param socketBacklog maximum allowed socket backlog. 0 for system default
+     * @param sslContext SSL Context for secure http. null for plain http
+     * @param handler handler for all requests
+     * @param executor executor running the handler
+     * @throws IOException any error while binding
+     * @throws MALException if the engine doesn't support the given options
+     */
+    void create(InetSocketAddress address, int socketBacklog, SSLContext sslContext, HttpHandler handler,
+                Executor executor) throws IOException, MALException;
+
+    /**
+     * Start handling requests.
+     */
+    void start();
+
+    /**
+     * Stop handling requests and close all connections.
+     */
+    void stop();
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * Default engine using com.sun.net.httpserver.
+ * Secure server requires client authentication.
+ */
+public class JdkServerEngine implements HttpServerEngine {
+    public static final String NAME = "jdk";
+    private HttpServer server;
+
+    @Override
+    public void create(InetSocketAddress address, int socketBacklog, SSLContext sslContext, HttpHandler handler,
+                       Executor executor) throws IOException {
+        if (sslContext == null) {
+            server = HttpServer.create(address, socketBacklog);
+        } else {
+            server = HttpsServer.create(address, socketBacklog);
+            ((HttpsServer) server).setHttpsConfigurator(new ClientAuthenticatingConfigurator(sslContext));
+        }
+        server.createContext("/", handler);
+        server.setExecutor(executor);
+    }
+
+    @Override
+    public void start() {
+        if (server != null) {
+            server.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * @return underlying server. null before it is created.
+     */
+    public HttpServer getServer() {
+        return server;
+    }
+
+    /**
+     * Custom Https Configurator to enable Client Authentication
+     */
+    private static class ClientAuthenticatingConfigurator extends HttpsConfigurator {
+        /**
+         * Constructor
+         * @param sslContext SSL Context from server
+         */
+        ClientAuthenticatingConfigurator(SSLContext sslContext) {
+            super(sslContext);  }
+
+        /**
+         * Configuring SSL on each request
+         * Steps:
+         * 1.   Get SSL Context from constructor
+         * 2.   enable Client Authentication in that Context
+         * 3.   enable client Authentication in Https Parameters
+         * 4.   copy other parameters from context.
+         *
+         * @param params HttpsParameters from the request
+         */
+        @Override
+        public  void configure(HttpsParameters params) {
+            SSLContext sslContext = getSSLContext();
+            SSLParameters sslParams = sslContext.getDefaultSSLParameters();
+            sslParams.setNeedClientAuth(true);
+            params.setNeedClientAuth(true);
+            params.setSSLParameters(sslParams);
+        }
+    }
+}
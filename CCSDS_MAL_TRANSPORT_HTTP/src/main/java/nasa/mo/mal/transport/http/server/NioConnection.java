@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.HttpHandler;
+import nasa.mo.mal.transport.http.HttpTransport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
+/**
+ * A kept alive client connection of NioServerEngine.
+ * All methods except responseReady() are called only by the selector thread owning the connection.
+ *
+ * Pipelined requests are dispatched to the handler as soon as they are parsed.
+ * Their responses may complete in any order, but they are written in the order of the requests.
+ * Reading stops while too many requests are waiting for their responses,
+ * or while their bodies are larger than the maximum body size in total.
+ */
+final class NioConnection {
+    static final int MAX_PIPELINED_REQUESTS = 64;
+    private static final byte[] CONTINUE_RESPONSE =
+            "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] BAD_REQUEST_RESPONSE =
+            "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] PAYLOAD_TOO_LARGE_RESPONSE =
+            "HTTP/1.1 413 Payload Too Large\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1);
+
+    private final SocketChannel channel;
+    private final SelectorLoop loop;
+    private final HttpHandler handler;
+    private final Executor executor;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+    private final int maxBodySize;
+    private final HttpRequestParser parser;
+    /**
+     * exchanges in the order of requests. the head is the next response to write.
+     */
+    private final Deque<NioHttpExchange> exchanges = new ArrayDeque<>();
+    private final Deque<ByteBuffer> outgoing = new ArrayDeque<>();
+    /**
+     * total body size of the requests waiting for their responses.
+     */
+    private long pendingBodySize = 0;
+    /**
+     * response to write after all exchanges when a malformed request is received.
+     */
+    private ByteBuffer finalResponse;
+    private SelectionKey key;
+    private long lastActive;
+    /**
+     * no more requests are read. connection is closed when everything is written.
+     */
+    private boolean isClosing = false;
+    private boolean isClosed = false;
+
+    /**
+     * Constructor
+     *
+     * @param channel accepted socket
+     * @param loop selector thread owning the connection
+     * @param handler handler of requests
+     * @param executor executor running the handler
+     * @param maxBodySize largest request body in bytes
+     */
+    NioConnection(SocketChannel channel, SelectorLoop loop, HttpHandler handler, Executor executor,
+                  int maxBodySize) {
+        this.channel = channel;
+        this.loop = loop;
+        this.handler = handler;
+        this.executor = executor;
+        this.maxBodySize = maxBodySize;
+        this.parser = new HttpRequestParser(maxBodySize);
+        this.remoteAddress = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+        this.localAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+        this.lastActive = System.currentTimeMillis();
+    }
+
+    /**
+     * @param selector selector of the owning thread
+     * @throws ClosedChannelException if the client already closed the connection
+     */
+    void register(Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Reading available bytes and dispatching complete requests.
+     *
+     * @param readBuffer direct buffer of the selector thread
+     */
+    void onReadable(ByteBuffer readBuffer) {
+        readBuffer.clear();
+        int count;
+        try {
+            count = channel.read(readBuffer);
+        } catch (IOException exp) {
+            HttpTransport.LOGGER.log(Level.FINE, "Error while reading from " + remoteAddress, exp);
+            close();
+            return;
+        }
+        if (count < 0) {
+            close();
+            return;
+        }
+        lastActive = System.currentTimeMillis();
+        readBuffer.flip();
+        parser.append(readBuffer);
+        parseRequests();
+    }
+
+    /**
+     * Writing pending responses.
+     */
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Called by handler threads when a response is complete.
+     */
+    void responseReady() {
+        loop.execute(this::writeResponses);
+    }
+
+    /**
+     * @param now current time in millisecond
+     * @param idleTimeoutInMilliSecond allowed idle time
+     * @return flag if nothing is pending and nothing is received for the idle time
+     */
+    boolean isIdle(long now, long idleTimeoutInMilliSecond) {
+        return exchanges.isEmpty() && outgoing.isEmpty() && now - lastActive > idleTimeoutInMilliSecond;
+    }
+
+    InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    InetSocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    /**
+     * Closing the socket. Responses completed later are discarded.
+     */
+    void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        exchanges.clear();
+        outgoing.clear();
+        pendingBodySize = 0;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException exp) {
+            HttpTransport.LOGGER.log(Level.FINE, "Error while closing connection", exp);
+        }
+    }
+
+    /**
+     * Dispatching parsed requests until the pipelining limit.
+     * Asking the client to continue if it is waiting for it before sending the body.
+     * Malformed request is answered with 400 after the pending responses and the connection is closed.
+     * Request with too large body is answered with 413 in the same way.
+     */
+    private void parseRequests() {
+        try {
+            HttpRequestParser.Request request;
+            while (isAcceptingRequests() && (request = parser.next()) != null) {
+                dispatch(request);
+            }
+            if (!isClosing && parser.isExpectingContinue() && exchanges.isEmpty()) {
+                parser.continueSent();
+                outgoing.add(ByteBuffer.wrap(CONTINUE_RESPONSE));
+            }
+        } catch (HttpRequestParser.BodyTooLargeException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Too large request from " + remoteAddress, exp);
+            rejectRemaining(PAYLOAD_TOO_LARGE_RESPONSE);
+        } catch (IOException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Malformed request from " + remoteAddress, exp);
+            rejectRemaining(BAD_REQUEST_RESPONSE);
+        }
+        writeResponses();
+    }
+
+    /**
+     * @param request complete request
+     */
+    private void dispatch(HttpRequestParser.Request request) {
+        NioHttpExchange exchange;
+        try {
+            exchange = new NioHttpExchange(this, request);
+        } catch (URISyntaxException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Invalid request target from " + remoteAddress, exp);
+            rejectRemaining(BAD_REQUEST_RESPONSE);
+            return;
+        }
+        exchanges.add(exchange);
+        pendingBodySize += exchange.getRequestBodySize();
+        if (!request.isKeepAlive) {
+            isClosing = true;
+        }
+        try {
+            executor.execute(() -> handle(exchange));
+        } catch (RuntimeException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Request is not accepted by server executor", exp);
+            exchange.abort();
+        }
+    }
+
+    /**
+     * Running the handler. Exchange is aborted if the handler fails.
+     *
+     * @param exchange exchange of the request
+     */
+    private void handle(NioHttpExchange exchange) {
+        try {
+            handler.handle(exchange);
+        } catch (IOException | RuntimeException exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Error while handling request from " + remoteAddress, exp);
+            exchange.abort();
+        }
+    }
+
+    /**
+     * No more requests are read. Error response is sent after the responses of previous requests.
+     *
+     * @param response error response closing the connection
+     */
+    private void rejectRemaining(byte[] response) {
+        isClosing = true;
+        finalResponse = ByteBuffer.wrap(response);
+    }
+
+    /**
+     * @return flag if more requests can be read and dispatched
+     */
+    private boolean isAcceptingRequests() {
+        return !isClosing && exchanges.size() < MAX_PIPELINED_REQUESTS && pendingBodySize < maxBodySize;
+    }
+
+    /**
+     * Moving completed responses to the outgoing queue in request order and writing them.
+     * Continue reading pipelined requests if reading was stopped at the limit.
+     */
+    private void writeResponses() {
+        if (isClosed) {
+            return;
+        }
+        boolean isRemoved = false;
+        while (!exchanges.isEmpty() && exchanges.peek().getResponse() != null) {
+            NioHttpExchange exchange = exchanges.poll();
+            pendingBodySize -= exchange.getRequestBodySize();
+            outgoing.add(exchange.getResponse());
+            isRemoved = true;
+            if (exchange.isCloseAfterResponse()) {
+                isClosing = true;
+                exchanges.clear();
+                pendingBodySize = 0;
+                finalResponse = null;
+            }
+        }
+        if (exchanges.isEmpty() && finalResponse != null) {
+            outgoing.add(finalResponse);
+            finalResponse = null;
+        }
+        flush();
+        if (isRemoved && !isClosing && parser.hasPartialRequest()) {
+            parseRequests();
+        }
+    }
+
+    /**
+     * Writing outgoing bytes through the direct buffer of the selector thread until the socket is full.
+     * Only written bytes are consumed, so nothing is left in the shared buffer.
+     */
+    private void flush() {
+        if (isClosed) {
+            return;
+        }
+        ByteBuffer writeBuffer = loop.getWriteBuffer();
+        while (!outgoing.isEmpty()) {
+            ByteBuffer source = outgoing.peek();
+            int length = Math.min(source.remaining(), writeBuffer.capacity());
+            ByteBuffer slice = source.duplicate();
+            slice.limit(slice.position() + length);
+            writeBuffer.clear();
+            writeBuffer.put(slice).flip();
+            int written;
+            try {
+                written = channel.write(writeBuffer);
+            } catch (IOException exp) {
+                HttpTransport.LOGGER.log(Level.FINE, "Error while writing to " + remoteAddress, exp);
+                close();
+                return;
+            }
+            source.position(source.position() + written);
+            if (!source.hasRemaining()) {
+                outgoing.poll();
+            }
+            if (written < length) {
+                break;
+            }
+        }
+        lastActive = System.currentTimeMillis();
+        if (isClosing && exchanges.isEmpty() && outgoing.isEmpty() && finalResponse == null) {
+            close();
+            return;
+        }
+        updateInterest();
+    }
+
+    /**
+     * Reading only when more requests can be accepted. Writing only when there are bytes left.
+     */
+    private void updateInterest() {
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        int operations = 0;
+        if (isAcceptingRequests()) {
+            operations |= SelectionKey.OP_READ;
+        }
+        if (!outgoing.isEmpty()) {
+            operations |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(operations);
+    }
+}
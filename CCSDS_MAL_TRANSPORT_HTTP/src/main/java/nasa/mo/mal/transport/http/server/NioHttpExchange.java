@@ -0,0 +1,333 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Http Exchange of a request received by NioServerEngine.
+ * Request body is already fully read. Response body is buffered and sent with Content-Length
+ * when the response body stream or the exchange is closed.
+ *
+ * Handler threads fill the response. Only the selector thread of the connection writes it to the socket.
+ */
+final class NioHttpExchange extends HttpExchange {
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HEAD = "HEAD";
+    private static final int NO_RESPONSE_CODE = -1;
+    private static final Map<Integer, String> REASON_PHRASES = new HashMap<>();
+
+    static {
+        REASON_PHRASES.put(100, "Continue");
+        REASON_PHRASES.put(200, "OK");
+        REASON_PHRASES.put(202, "Accepted");
+        REASON_PHRASES.put(204, "No Content");
+        REASON_PHRASES.put(400, "Bad Request");
+        REASON_PHRASES.put(401, "Unauthorized");
+        REASON_PHRASES.put(403, "Forbidden");
+        REASON_PHRASES.put(404, "Not Found");
+        REASON_PHRASES.put(405, "Method Not Allowed");
+        REASON_PHRASES.put(408, "Request Timeout");
+        REASON_PHRASES.put(410, "Gone");
+        REASON_PHRASES.put(429, "Too Many Requests");
+        REASON_PHRASES.put(500, "Internal Server Error");
+        REASON_PHRASES.put(501, "Not Implemented");
+        REASON_PHRASES.put(502, "Bad Gateway");
+        REASON_PHRASES.put(503, "Service Unavailable");
+        REASON_PHRASES.put(504, "Gateway Timeout");
+        REASON_PHRASES.put(511, "Network Authentication Required");
+    }
+
+    private final NioConnection connection;
+    private final HttpRequestParser.Request request;
+    private final URI requestURI;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final ResponseBodyStream responseBodyStream = new ResponseBodyStream();
+    private InputStream requestBody;
+    private OutputStream responseBody = responseBodyStream;
+    private int responseCode = NO_RESPONSE_CODE;
+    private boolean isFinished = false;
+    private boolean isCloseAfterResponse = false;
+    /**
+     * serialized response. set once by the handler thread and read by the selector thread.
+     */
+    private volatile ByteBuffer response;
+
+    /**
+     * Constructor
+     *
+     * @param connection connection which received the request
+     * @param request parsed request with body
+     * @throws URISyntaxException invalid request target
+     */
+    NioHttpExchange(NioConnection connection, HttpRequestParser.Request request) throws URISyntaxException {
+        this.connection = connection;
+        this.request = request;
+        this.requestURI = new URI(request.uri);
+        this.requestBody = new ByteArrayInputStream(request.body);
+    }
+
+    /**
+     * @return size of the buffered request body in bytes
+     */
+    int getRequestBodySize() {
+        return request.body.length;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+        return request.headers;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return request.method;
+    }
+
+    /**
+     * @return null. all requests go to the single handler of the engine.
+     */
+    @Override
+    public HttpContext getHttpContext() {
+        return null;
+    }
+
+    /**
+     * Sending the response if it is not sent yet.
+     * If response headers are not sent, 500 is sent and the connection is closed.
+     */
+    @Override
+    public void close() {
+        try {
+            requestBody.close();
+        } catch (IOException exp) {
+            // nothing to release
+        }
+        finish();
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+        return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+        return responseBody;
+    }
+
+    /**
+     * @param rCode response code
+     * @param responseLength -1 if there is no body. otherwise, body is sent when its stream is closed.
+     * @throws IOException if headers are already sent
+     */
+    @Override
+    public synchronized void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+        if (responseCode != NO_RESPONSE_CODE) {
+            throw new IOException("headers already sent");
+        }
+        responseCode = rCode;
+        if (responseLength == -1) {
+            finish();
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return connection.getRemoteAddress();
+    }
+
+    @Override
+    public synchronized int getResponseCode() {
+        return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return connection.getLocalAddress();
+    }
+
+    @Override
+    public String getProtocol() {
+        return request.protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        if (value == null) {
+            attributes.remove(name);
+        } else {
+            attributes.put(name, value);
+        }
+    }
+
+    @Override
+    public void setStreams(InputStream i, OutputStream o) {
+        if (i != null) {
+            requestBody = i;
+        }
+        if (o != null) {
+            responseBody = o;
+        }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+        return null;
+    }
+
+    /**
+     * Handler failed. Sending 500 if nothing is sent yet and closing the connection afterwards.
+     */
+    synchronized void abort() {
+        isCloseAfterResponse = true;
+        finish();
+    }
+
+    /**
+     * @return serialized response or null if it is not complete yet
+     */
+    ByteBuffer getResponse() {
+        return response;
+    }
+
+    /**
+     * @return flag if the connection must be closed after this response
+     */
+    synchronized boolean isCloseAfterResponse() {
+        return isCloseAfterResponse || !request.isKeepAlive;
+    }
+
+    /**
+     * Serializing the response and passing it to the connection. It is done only once.
+     */
+    private synchronized void finish() {
+        if (isFinished) {
+            return;
+        }
+        isFinished = true;
+        if (responseCode == NO_RESPONSE_CODE) {
+            responseCode = 500;
+            isCloseAfterResponse = true;
+        }
+        boolean isKeepAlive = request.isKeepAlive && !isCloseAfterResponse;
+        if (!isKeepAlive) {
+            responseHeaders.set("Connection", "close");
+        } else if (HTTP_1_0.equalsIgnoreCase(request.protocol)) {
+            responseHeaders.set("Connection", "keep-alive");
+        }
+        boolean hasBody = responseCode != 204 && responseCode != 304 && responseCode >= 200;
+        int bodyLength = hasBody && !HEAD.equals(request.method) ? responseBodyStream.size() : 0;
+        if (hasBody) {
+            responseHeaders.set("Content-Length", Integer.toString(responseBodyStream.size()));
+        }
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(responseCode).append(' ')
+                .append(REASON_PHRASES.getOrDefault(responseCode, "")).append("\r\n");
+        for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+            for (String value : header.getValue()) {
+                head.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        head.append("\r\n");
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer serialized = ByteBuffer.allocate(headBytes.length + bodyLength);
+        serialized.put(headBytes).put(responseBodyStream.array(), 0, bodyLength).flip();
+        response = serialized;
+        connection.responseReady();
+    }
+
+    /**
+     * Buffer of response body. closing it sends the response.
+     */
+    private final class ResponseBodyStream extends OutputStream {
+        private final ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream();
+
+        @Override
+        public void write(int b) throws IOException {
+            checkWritable();
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkWritable();
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            finish();
+        }
+
+        int size() {
+            return buffer.size();
+        }
+
+        byte[] array() {
+            return buffer.array();
+        }
+
+        private void checkWritable() throws IOException {
+            synchronized (NioHttpExchange.this) {
+                if (responseCode == NO_RESPONSE_CODE) {
+                    throw new IOException("response headers not sent yet");
+                }
+                if (isFinished) {
+                    throw new IOException("response is already sent");
+                }
+            }
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream without copying its content.
+     */
+    private static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+}
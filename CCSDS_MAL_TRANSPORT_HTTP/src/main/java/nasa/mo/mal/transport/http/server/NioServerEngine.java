@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.HttpHandler;
+import nasa.mo.mal.transport.http.HttpTransport;
+import org.ccsds.moims.mo.mal.MALException;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
+/**
+ * Engine using plain Java NIO.
+ * 1.   an acceptor thread accepts connections and gives them to selector threads in turn.
+ * 2.   each selector thread reads, parses, and writes its own connections. one per core by default.
+ * 3.   complete requests are run by the executor like com.sun.net.httpserver.
+ *
+ * Connections are kept alive and pipelined requests are supported.
+ * Requests are fully buffered, so their bodies are limited by the maximum body size. Bigger ones get 413.
+ * Https is not supported. Use JdkServerEngine for secure server.
+ */
+public class NioServerEngine implements HttpServerEngine {
+    public static final String NAME = "nio";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_TIMEOUT_IN_MILLI_SECOND = 30000;
+    private static final long STOP_TIMEOUT_IN_MILLI_SECOND = 5000;
+    private static final String THREAD_NAME = "HttpMiniServer-nio-";
+
+    private final int selectorCount;
+    private final int maxBodySize;
+    private ServerSocketChannel serverChannel;
+    private SelectorLoop[] loops;
+    private Thread acceptor;
+    private volatile boolean isRunning = false;
+
+    /**
+     * Constructor with a selector thread per core.
+     */
+    public NioServerEngine() {
+        this(0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param selectorCount number of selector threads. 0 or less means one per core.
+     */
+    public NioServerEngine(int selectorCount) {
+        this(selectorCount, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param selectorCount number of selector threads. 0 or less means one per core.
+     * @param maxBodySize largest request body in bytes. 0 or less means 64 MB.
+     */
+    public NioServerEngine(int selectorCount, int maxBodySize) {
+        this.selectorCount = selectorCount > 0 ? selectorCount : Runtime.getRuntime().availableProcessors();
+        this.maxBodySize = maxBodySize > 0 ? maxBodySize : HttpRequestParser.DEFAULT_MAX_BODY_SIZE;
+    }
+
+    @Override
+    public void create(InetSocketAddress address, int socketBacklog, SSLContext sslContext, HttpHandler handler,
+                       Executor executor) throws IOException, MALException {
+        if (sslContext != null) {
+            throw new MALException("Https is not supported by " + NAME + " server engine.");
+        }
+        serverChannel = ServerSocketChannel.open();
+        loops = new SelectorLoop[selectorCount];
+        try {
+            serverChannel.bind(address, socketBacklog);
+            for (int i = 0; i < selectorCount; i++) {
+                loops[i] = new SelectorLoop(THREAD_NAME + i, BUFFER_SIZE, IDLE_TIMEOUT_IN_MILLI_SECOND,
+                        handler, executor, maxBodySize);
+            }
+        } catch (IOException exp) {
+            serverChannel.close();
+            throw exp;
+        }
+        acceptor = new Thread(this::accept, THREAD_NAME + "acceptor");
+        acceptor.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        if (serverChannel == null || isRunning) {
+            return;
+        }
+        isRunning = true;
+        for (SelectorLoop loop : loops) {
+            loop.start();
+        }
+        acceptor.start();
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException exp) {
+                HttpTransport.LOGGER.log(Level.FINE, "Error while closing server socket", exp);
+            }
+        }
+        if (loops != null) {
+            for (SelectorLoop loop : loops) {
+                if (loop != null) {
+                    loop.stop(STOP_TIMEOUT_IN_MILLI_SECOND);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepting connections until the server socket is closed.
+     * Selector threads stopped by an error are skipped. Connections are closed if none is running.
+     */
+    private void accept() {
+        int next = 0;
+        while (isRunning) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                SelectorLoop loop = null;
+                for (int i = 0; i < loops.length && loop == null; i++) {
+                    if (loops[next].isRunning()) {
+                        loop = loops[next];
+                    }
+                    next = (next + 1) % loops.length;
+                }
+                if (loop == null) {
+                    HttpTransport.LOGGER.log(Level.SEVERE, "No selector thread is running. Connection is closed.");
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loop.register(channel);
+            } catch (ClosedChannelException exp) {
+                return;
+            } catch (IOException exp) {
+                HttpTransport.LOGGER.log(Level.WARNING, "Error while accepting connection", exp);
+            }
+        }
+    }
+}
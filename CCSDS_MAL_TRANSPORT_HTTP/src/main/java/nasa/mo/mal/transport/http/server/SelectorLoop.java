@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import com.sun.net.httpserver.HttpHandler;
+import nasa.mo.mal.transport.http.HttpTransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+
+/**
+ * A thread with its own selector serving a share of the connections of NioServerEngine.
+ * Read and write buffers are direct buffers allocated once per thread and reused for all its connections.
+ * Other threads pass work to it with execute().
+ *
+ * Running out of memory while serving a connection closes only that connection.
+ * If the thread stops for any other error, it is no longer running and doesn't take new connections.
+ */
+final class SelectorLoop implements Runnable {
+    private static final long SELECT_TIMEOUT_IN_MILLI_SECOND = 1000;
+
+    private final Selector selector;
+    private final HttpHandler handler;
+    private final Executor executor;
+    private final long idleTimeoutInMilliSecond;
+    private final int maxBodySize;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    /**
+     * Constructor
+     *
+     * @param name thread name
+     * @param bufferSize size of direct read and write buffers
+     * @param idleTimeoutInMilliSecond connections without activity longer than this are closed
+     * @param handler handler of requests
+     * @param executor executor running the handler
+     * @param maxBodySize largest request body in bytes
+     * @throws IOException error while opening selector
+     */
+    SelectorLoop(String name, int bufferSize, long idleTimeoutInMilliSecond, HttpHandler handler,
+                 Executor executor, int maxBodySize) throws IOException {
+        this.selector = Selector.open();
+        this.handler = handler;
+        this.executor = executor;
+        this.idleTimeoutInMilliSecond = idleTimeoutInMilliSecond;
+        this.maxBodySize = maxBodySize;
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stopping the thread. It closes all its connections and the selector.
+     *
+     * @param timeoutInMilliSecond maximum time to wait for the thread
+     */
+    void stop(long timeoutInMilliSecond) {
+        isRunning = false;
+        if (thread.getState() == Thread.State.NEW) {
+            closeSelector();
+            return;
+        }
+        selector.wakeup();
+        try {
+            thread.join(timeoutInMilliSecond);
+        } catch (InterruptedException exp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return flag if the thread is started and not stopped
+     */
+    boolean isRunning() {
+        return isRunning && thread.isAlive();
+    }
+
+    /**
+     * Running a task in this thread.
+     *
+     * @param task task touching connections of this thread
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * @param channel accepted socket in non-blocking mode
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            NioConnection connection = new NioConnection(channel, this, handler, executor, maxBodySize);
+            try {
+                connection.register(selector);
+            } catch (ClosedChannelException exp) {
+                connection.close();
+            }
+        });
+    }
+
+    /**
+     * @return direct buffer for writing. only used by this thread.
+     */
+    ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * Selecting ready connections, running tasks from other threads, and closing idle connections.
+     */
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                selector.select(SELECT_TIMEOUT_IN_MILLI_SECOND);
+                runTasks();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    handleKey(key);
+                }
+                closeIdleConnections();
+            }
+        } catch (IOException | RuntimeException | Error exp) {
+            HttpTransport.LOGGER.log(Level.SEVERE, "Selector thread is stopped with error", exp);
+        } finally {
+            isRunning = false;
+            for (SelectionKey key : selector.keys()) {
+                ((NioConnection) key.attachment()).close();
+            }
+            closeSelector();
+        }
+    }
+
+    private void closeSelector() {
+        try {
+            selector.close();
+        } catch (IOException exp) {
+            HttpTransport.LOGGER.log(Level.FINE, "Error while closing selector", exp);
+        }
+    }
+
+    /**
+     * @param key selected key of a connection
+     */
+    private void handleKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable(readBuffer);
+            }
+        } catch (RuntimeException | OutOfMemoryError exp) {
+            HttpTransport.LOGGER.log(Level.WARNING, "Error on connection " + connection.getRemoteAddress(), exp);
+            connection.close();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException exp) {
+                HttpTransport.LOGGER.log(Level.WARNING, "Error while running selector task", exp);
+            }
+        }
+    }
+
+    /**
+     * Checked once per select timeout.
+     */
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < SELECT_TIMEOUT_IN_MILLI_SECOND) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys()) {
+            NioConnection connection = (NioConnection) key.attachment();
+            if (connection.isIdle(now, idleTimeoutInMilliSecond)) {
+                connection.close();
+            }
+        }
+    }
+}
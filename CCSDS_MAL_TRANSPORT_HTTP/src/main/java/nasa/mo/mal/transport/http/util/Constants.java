@@ -37,11 +37,110 @@ public class Constants {
      */
     public static final int DEFAULT_THREAD_POOL = 10;
 
+    /**
+     * maximum number of requests waiting for a thread in bounded server executor.
+     */
+    public static final int DEFAULT_SERVER_QUEUE_LIMIT = 1000;
+
+    /**
+     * maximum number of pooled client connections.
+     */
+    public static final int DEFAULT_MAX_CONNECTION = 100;
+
+    /**
+     * maximum number of pooled client connections to a single host.
+     * Most transports send to a single destination. So it is the same as total.
+     */
+    public static final int DEFAULT_MAX_CONNECTION_PER_ROUTE = 100;
+
+    /**
+     * pooled client connections idle longer than this are closed.
+     */
+    public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 30000;
+
+    /**
+     * maximum time to wait when connecting to the destination endpoint at start up.
+     */
+    public static final int DEFAULT_PRE_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * Http Exchanges waiting for a reply from MAL longer than this are answered with 504.
+     * 0 means no deadline.
+     */
+    public static final long DEFAULT_PENDING_EXCHANGE_TIMEOUT = 300000;
+
+    /**
+     * time between checks for expired Http Exchanges.
+     */
+    public static final long DEFAULT_PENDING_EXCHANGE_TICK = 100;
+
+    /**
+     * size of buffers to read request bodies without Content-Length.
+     */
+    public static final int DEFAULT_BODY_CHUNK_SIZE = 65536;
+
+    /**
+     * maximum number of idle body buffers kept for reuse.
+     */
+    public static final int DEFAULT_MAX_POOLED_BODY_CHUNKS = 64;
+
+    /**
+     * request bodies up to this Content-Length are read into a single buffer of that size.
+     * larger ones are read in chunks so that a wrong Content-Length does not allocate a huge buffer up front.
+     */
+    public static final int MAX_PRESIZED_BODY_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * maximum number of incoming messages which are queued or being processed.
+     */
+    public static final int DEFAULT_INBOUND_LIMIT = 1000;
+
+    /**
+     * high-water mark of incoming messages in percent of the limit. BESTEFFORT messages are rejected above it.
+     */
+    public static final int DEFAULT_INBOUND_HIGH_WATER_MARK_PERCENT = 80;
+
+    /**
+     * waiting time of an incoming message which is worth one MAL priority in priority scheduler.
+     */
+    public static final long DEFAULT_INBOUND_AGING = 100;
+
+    /**
+     * waiting time of a new message which is worth one MAL priority in priority scheduler.
+     */
+    public static final long DEFAULT_OUTBOUND_AGING = 100;
+
+    /**
+     * delivery time of an incoming message above which its endpoint is counted as a slow consumer.
+     */
+    public static final long DEFAULT_INBOUND_SLOW_CONSUMER = 1000;
+
+    /**
+     * biggest received Blob part in bytes which is kept in memory. bigger ones are written to temporary files.
+     */
+    public static final int DEFAULT_ATTACHMENT_MEMORY_LIMIT = 1024 * 1024;
+    /**
+     * most bytes of a received multipart/related body which are written to temporary files.
+     * bodies above it are rejected.
+     */
+    public static final long DEFAULT_ATTACHMENT_SPOOL_LIMIT = 256L * 1024 * 1024;
+
+    /**
+     * System property of com.sun.net.httpserver to set TCP_NODELAY on accepted connections.
+     */
+    public static final String SERVER_NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
     /**
      * Only valid method. to be used to check when receiving requests.
      */
     public static final String VALID_REQUEST_METHOD = "POST";
 
+    public static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    public static final String CONTENT_TYPE_HEADER = "Content-Type";
+    public static final String PLATFORM_THREAD_MODE = "platform";
+    public static final String VIRTUAL_THREAD_MODE = "virtual";
+    public static final String MAL_HTTP = "malhttp";
+
     /**
      * Property Keys
      */
@@ -49,7 +148,85 @@ public class Constants {
     public static final String SERVER_PORT_KEY = "org.ccsds.moims.mo.mal.transport.http.port";
     public static final String SOCKET_BACKLOG_KEY = "org.ccsds.moims.mo.mal.transport.http.backlog";
     public static final String THREAD_POOL_KEY = "org.ccsds.moims.mo.mal.transport.http.threadpool";
+    /**
+     * platform or virtual. default is platform.
+     * virtual runs all stages on virtual threads on Java 21 or later. otherwise, it falls back to platform.
+     * outbound lanes are then enabled with the thread pool count as default concurrency per destination.
+     */
+    public static final String THREAD_MODE_KEY = "org.ccsds.moims.mo.mal.transport.http.threadmode";
+    /**
+     * bounded or virtual. an Executor object can be given instead to run requests with it.
+     */
+    public static final String SERVER_EXECUTOR_KEY = "org.ccsds.moims.mo.mal.transport.http.server.executor";
+    public static final String SERVER_QUEUE_LIMIT_KEY = "org.ccsds.moims.mo.mal.transport.http.server.queuelimit";
+    /**
+     * jdk, nio, or class name of an HttpServerEngine. default is jdk.
+     */
+    public static final String SERVER_ENGINE_KEY = "org.ccsds.moims.mo.mal.transport.http.server.engine";
+    /**
+     * number of selector threads of nio engine. default is one per core.
+     */
+    public static final String SERVER_SELECTOR_COUNT_KEY = "org.ccsds.moims.mo.mal.transport.http.server.selectors";
+    /**
+     * largest request body in bytes of nio engine, which buffers whole requests. default is 64 MB.
+     * bigger requests are answered with 413 and the connection is closed.
+     */
+    public static final String SERVER_MAX_BODY_SIZE_KEY = "org.ccsds.moims.mo.mal.transport.http.server.maxbodysize";
+    /**
+     * incoming messages are rejected with 429 by QoS level between the high-water mark and the limit.
+     */
+    public static final String INBOUND_HIGH_WATER_MARK_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.highwatermark";
+    public static final String INBOUND_LIMIT_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.limit";
+    /**
+     * fifo or priority. default is fifo.
+     */
+    public static final String INBOUND_SCHEDULER_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.scheduler";
+    public static final String INBOUND_AGING_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.aging";
+    /**
+     * true delivers messages of each URI-To and URI-From pair one at a time in arrival order. default is false.
+     * queue limit is the number of waiting and running messages per endpoint. default is the inbound limit.
+     * slow consumer is the delivery time in milliseconds above which an endpoint is counted as slow.
+     */
+    public static final String INBOUND_ORDERED_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.ordered";
+    public static final String INBOUND_ENDPOINT_QUEUE_LIMIT_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.endpointqueuelimit";
+    public static final String INBOUND_SLOW_CONSUMER_KEY = "org.ccsds.moims.mo.mal.transport.http.inbound.slowconsumer";
+    /**
+     * fifo or priority. default is fifo.
+     * reserved is the number of threads only for TIMELY and ASSURED messages. default is a quarter of the threads.
+     */
+    public static final String OUTBOUND_SCHEDULER_KEY = "org.ccsds.moims.mo.mal.transport.http.outbound.scheduler";
+    public static final String OUTBOUND_RESERVED_KEY = "org.ccsds.moims.mo.mal.transport.http.outbound.reserved";
+    public static final String OUTBOUND_AGING_KEY = "org.ccsds.moims.mo.mal.transport.http.outbound.aging";
+    /**
+     * maximum number of messages sent at the same time to a destination URI in arrival order.
+     * 1 keeps the order of messages to each destination. default is 0, which doesn't use lanes.
+     * with the asynchronous client, a message counts until its response is processed.
+     */
+    public static final String OUTBOUND_LANE_CONCURRENCY_KEY = "org.ccsds.moims.mo.mal.transport.http.outbound.laneconcurrency";
     public static final String HTTP_DESTINATION_ENDPOINT_KEY = "org.ccsds.moims.mo.mal.transport.http.destination.endpoint";
+    public static final String MAX_CONNECTION_KEY = "org.ccsds.moims.mo.mal.transport.http.client.maxconnection";
+    public static final String MAX_CONNECTION_PER_ROUTE_KEY = "org.ccsds.moims.mo.mal.transport.http.client.maxconnectionperroute";
+    public static final String IDLE_CONNECTION_TIMEOUT_KEY = "org.ccsds.moims.mo.mal.transport.http.client.idletimeout";
+    public static final String PRE_CONNECT_KEY = "org.ccsds.moims.mo.mal.transport.http.client.preconnect";
+    public static final String ASYNC_SENDER_KEY = "org.ccsds.moims.mo.mal.transport.http.client.async";
+    /**
+     * deadline for all interactions.
+     * deadline for a single interaction type is set with the interaction type appended in lower case.
+     * example: org.ccsds.moims.mo.mal.transport.http.pending.timeout.invoke
+     */
+    public static final String PENDING_EXCHANGE_TIMEOUT_KEY = "org.ccsds.moims.mo.mal.transport.http.pending.timeout";
+    public static final String PENDING_EXCHANGE_TICK_KEY = "org.ccsds.moims.mo.mal.transport.http.pending.tick";
+    /**
+     * smallest Blob in bytes which is sent as a binary part of a multipart/related body instead of hex text.
+     * default is 0, which keeps all Blobs in the encoded body. only supported by XML encoding.
+     * received parts above the memory limit are written to temporary files in the directory and owned by the application.
+     * a received body may write at most the spool limit to temporary files.
+     * default directory is java.io.tmpdir.
+     */
+    public static final String ATTACHMENT_THRESHOLD_KEY = "org.ccsds.moims.mo.mal.transport.http.attachment.threshold";
+    public static final String ATTACHMENT_MEMORY_LIMIT_KEY = "org.ccsds.moims.mo.mal.transport.http.attachment.memorylimit";
+    public static final String ATTACHMENT_SPOOL_LIMIT_KEY = "org.ccsds.moims.mo.mal.transport.http.attachment.spoollimit";
+    public static final String ATTACHMENT_DIRECTORY_KEY = "org.ccsds.moims.mo.mal.transport.http.attachment.directory";
 
     /**
      * Lowest error number in Http
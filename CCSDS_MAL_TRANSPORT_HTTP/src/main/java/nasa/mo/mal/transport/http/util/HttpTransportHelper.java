@@ -19,8 +19,11 @@ import org.ccsds.moims.mo.mal.structures.UInteger;
 import org.ccsds.moims.mo.mal.structures.UOctet;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,6 +57,7 @@ public class HttpTransportHelper {
 
     private static final Pattern BASE_URI_PATTERN = Pattern.compile(BASE_URI);
     private static final int POTENTIAL_IP_GROUP = 1;
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
     private static final  String[] SCHEMES = new String[] { Constants.PLAIN_HTTP, Constants.SECURE_HTTP };
     private static final  UrlValidator URL_VALIDATOR = new UrlValidator(SCHEMES, UrlValidator.ALLOW_LOCAL_URLS);
 
@@ -279,20 +283,24 @@ public class HttpTransportHelper {
      * 2.   if response code is 204 (No Content), don't attach body.
      * 3.   for others, attach code & body
      *
+     * NOTE: there is no shared state. Only the given exchange is written.
+     *       Responses of different exchanges are written concurrently.
+     *       An exchange must be responded by a single thread.
+     *
      * @param exchange Http Exchange Object which contains response objects.
      * @param responseCode Http Response codes example: 200 = ok
      * @param body Body in Byte array
      * @param headers addition headers in a dictionary
      * @throws MALException IO
      */
-    public synchronized static void fillResponse(HttpExchange exchange,
-                                                 int responseCode,
-                                                 byte[] body,
-                                                 Map<String, String> headers) throws MALException {
+    public static void fillResponse(HttpExchange exchange,
+                                    int responseCode,
+                                    byte[] body,
+                                    Map<String, String> headers) throws MALException {
+        if (exchange == null) {
+            throw new MALException("Null Http Exchange Object.");
+        }
         try {
-            if (exchange == null) {
-                throw new MALException("Null Http Exchange Object.");
-            }
             if (headers != null && !headers.isEmpty()) {
                 headers.forEach(exchange.getResponseHeaders()::set);
             }
@@ -300,19 +308,93 @@ public class HttpTransportHelper {
                 exchange.sendResponseHeaders(responseCode, -1);
                 exchange.getResponseBody().close();
             } else {
-                if (body == null) {
-                    body = new byte[0];
+                byte[] responseBody = body == null ? new byte[0] : body;
+                exchange.sendResponseHeaders(responseCode, responseBody.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(responseBody);
                 }
-                exchange.sendResponseHeaders(responseCode, body.length);
-                OutputStream os = exchange.getResponseBody();
-                os.write(body);
-                os.close();
             }
         } catch (IOException exp) {
             throw new MALException("Error responding Http request -> " + exp, exp);
         }
     }
 
+    /**
+     * Reading a request body.
+     * 1.   if Content-Length is known, read into a buffer of that size. No copy is needed.
+     * 2.   otherwise, read into pooled chunks and copy them to a buffer of the total size.
+     *          chunks are returned to the pool before returning.
+     *
+     * The returned buffer is not pooled as the message keeps it until the body is decoded.
+     *
+     * @param inputStream request body stream
+     * @param contentLength value of Content-Length header. null if it is not given.
+     * @param chunkPool pool of buffers to read bodies without Content-Length
+     * @return request body
+     * @throws IOException if the stream is shorter than Content-Length or any IO error
+     */
+    public static byte[] readRequestBody(InputStream inputStream, String contentLength, BufferPool chunkPool)
+            throws IOException {
+        long length = parseContentLength(contentLength);
+        if (length >= 0 && length <= Constants.MAX_PRESIZED_BODY_LENGTH) {
+            byte[] body = new byte[(int) length];
+            int offset = 0;
+            while (offset < body.length) {
+                int count = inputStream.read(body, offset, body.length - offset);
+                if (count < 0) {
+                    throw new IOException("Request body is shorter than Content-Length: " + contentLength);
+                }
+                offset += count;
+            }
+            return body;
+        }
+        List<byte[]> chunks = new ArrayList<>();
+        long total = 0;
+        try {
+            byte[] current = chunkPool.acquire();
+            chunks.add(current);
+            int used = 0;
+            int count;
+            while ((count = inputStream.read(current, used, current.length - used)) >= 0) {
+                used += count;
+                total += count;
+                if (total > MAX_ARRAY_LENGTH) {
+                    throw new IOException("Request body is too large.");
+                }
+                if (used == current.length) {
+                    current = chunkPool.acquire();
+                    chunks.add(current);
+                    used = 0;
+                }
+            }
+            byte[] body = new byte[(int) total];
+            int offset = 0;
+            for (byte[] chunk : chunks) {
+                int size = (int) Math.min(chunk.length, total - offset);
+                System.arraycopy(chunk, 0, body, offset, size);
+                offset += size;
+            }
+            return body;
+        } finally {
+            chunks.forEach(chunkPool::release);
+        }
+    }
+
+    /**
+     * @param contentLength value of Content-Length header
+     * @return length or -1 if it is not given or not valid
+     */
+    private static long parseContentLength(String contentLength) {
+        if (contentLength == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException exp) {
+            return -1;
+        }
+    }
+
     /**
      * Container class to hold Interaction Type and Stage to check.
      */
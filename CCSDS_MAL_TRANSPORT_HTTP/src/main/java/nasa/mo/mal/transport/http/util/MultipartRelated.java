@@ -0,0 +1,567 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.util;
+
+import nasa.mo.mal.encoder.BlobAttachments;
+import nasa.mo.mal.encoder.HttpBodyContentType;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * multipart/related body (RFC 2387) with the encoded MAL body as root part and Blobs as binary parts.
+ * Encoded body refers to each Blob part by its Content-ID. Root part is the first part unless "start" is given.
+ *
+ * 1. Writing: root part and raw bytes of each Blob. URL based Blobs are copied from their URLs.
+ * 2. Reading: a single pass over the stream without reading the whole body first.
+ *    Root part is kept in memory. Blob parts up to the memory limit are kept in memory.
+ *    Bigger ones are streamed to temporary files up to the spool limit of the body, and become URL based Blobs.
+ *    Their content is not loaded until Blob.getValue() is called.
+ *    Parts without Content-ID are skipped. Parts which the root part doesn't refer to with "cid:" are dropped.
+ *    Temporary files of the returned parts are owned by the caller, who hands them over to the application
+ *    with the message or deletes them with BlobAttachments.deleteFiles().
+ *    All other temporary files are deleted here.
+ */
+public final class MultipartRelated {
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MAX_HEADER_LINE_LENGTH = 8192;
+    private static final String BOUNDARY_PARAMETER = "boundary";
+    private static final String START_PARAMETER = "start";
+    private static final String CONTENT_ID_HEADER = "Content-ID";
+    private static final String BINARY_CONTENT_TYPE = "application/octet-stream";
+    private static final String TEMP_FILE_PREFIX = "malhttp-";
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] DASHES = {'-', '-'};
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private MultipartRelated() {
+    }
+
+    /**
+     * @return random boundary which is not expected in any part
+     */
+    public static String createBoundary() {
+        return "MALHTTP-" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * @param boundary boundary from createBoundary()
+     * @param rootContentType Content-Type of the encoded MAL body
+     * @return Content-Type header value of the multipart body
+     */
+    public static String createContentType(String boundary, String rootContentType) {
+        return HttpBodyContentType.MULTIPART_RELATED + "; type=\"" + rootContentType + "\"; " +
+                BOUNDARY_PARAMETER + "=\"" + boundary + "\"";
+    }
+
+    /**
+     * @param contentType Content-Type header value or null
+     * @return flag if it is multipart/related
+     */
+    public static boolean isMultipartRelated(String contentType) {
+        return contentType != null && contentType.trim().toLowerCase(Locale.ROOT)
+                .startsWith(HttpBodyContentType.MULTIPART_RELATED.toString());
+    }
+
+    /**
+     * Parameter of a Content-Type header value.
+     * Quoted values are returned without quotes. Escaped characters in quoted values are not supported.
+     *
+     * @param contentType Content-Type header value
+     * @param name parameter name. case insensitive.
+     * @return parameter value or null
+     */
+    static String getParameter(String contentType, String name) {
+        int length = contentType.length();
+        int index = contentType.indexOf(';');
+        while (index >= 0) {
+            int equals = contentType.indexOf('=', index + 1);
+            if (equals < 0) {
+                return null;
+            }
+            String parameterName = contentType.substring(index + 1, equals).trim();
+            int valueStart = equals + 1;
+            while (valueStart < length && contentType.charAt(valueStart) == ' ') {
+                valueStart++;
+            }
+            String value;
+            if (valueStart < length && contentType.charAt(valueStart) == '"') {
+                int quoteEnd = contentType.indexOf('"', valueStart + 1);
+                if (quoteEnd < 0) {
+                    return null;
+                }
+                value = contentType.substring(valueStart + 1, quoteEnd);
+                index = contentType.indexOf(';', quoteEnd);
+            } else {
+                index = contentType.indexOf(';', valueStart);
+                value = contentType.substring(valueStart, index < 0 ? length : index).trim();
+            }
+            if (parameterName.equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writing the whole multipart body.
+     *
+     * @param root encoded MAL body
+     * @param rootContentType Content-Type of the encoded MAL body
+     * @param attachments Blobs referred by the encoded body
+     * @param boundary boundary from createBoundary()
+     * @return multipart body
+     * @throws MALException if a Blob cannot be read
+     */
+    public static byte[] write(byte[] root, String rootContentType, BlobAttachments attachments, String boundary)
+            throws MALException {
+        byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        long size = root.length;
+        for (Blob blob : attachments.getParts().values()) {
+            size += blob.isURLBased() ? 0 : blob.getLength();
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(
+                (int) Math.min(Integer.MAX_VALUE - 8, size + MAX_HEADER_LINE_LENGTH));
+        try {
+            output.write(delimiter);
+            output.write(CRLF);
+            writeHeader(output, Constants.CONTENT_TYPE_HEADER, rootContentType);
+            output.write(CRLF);
+            output.write(root);
+            for (Map.Entry<String, Blob> each : attachments.getParts().entrySet()) {
+                output.write(CRLF);
+                output.write(delimiter);
+                output.write(CRLF);
+                writeHeader(output, Constants.CONTENT_TYPE_HEADER, BINARY_CONTENT_TYPE);
+                writeHeader(output, CONTENT_ID_HEADER, "<" + each.getKey() + ">");
+                output.write(CRLF);
+                writeBlob(output, each.getValue());
+            }
+            output.write(CRLF);
+            output.write(delimiter);
+            output.write(DASHES);
+            output.write(CRLF);
+        } catch (IOException exp) {
+            throw new MALException("Error while writing multipart/related body", exp);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * A header line with CRLF.
+     *
+     * @param output multipart body
+     * @param name header name
+     * @param value header value
+     * @throws IOException any error while writing
+     */
+    private static void writeHeader(OutputStream output, String name, String value) throws IOException {
+        output.write((name + ": " + value).getBytes(StandardCharsets.ISO_8859_1));
+        output.write(CRLF);
+    }
+
+    /**
+     * URL based Blob is copied from its URL without loading it into the Blob.
+     *
+     * @param output multipart body
+     * @param blob Blob to write
+     * @throws IOException any error while reading or writing
+     * @throws MALException any error from Blob
+     */
+    private static void writeBlob(OutputStream output, Blob blob) throws IOException, MALException {
+        if (!blob.isURLBased()) {
+            byte[] value = blob.getValue();
+            if (value != null) {
+                output.write(value, blob.getOffset(), blob.getLength());
+            }
+            return;
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = new URL(blob.getURL()).openStream()) {
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Reading a multipart body from a stream.
+     *
+     * @param input body stream. It is read until the close delimiter and not closed.
+     * @param contentType Content-Type header value with boundary parameter
+     * @param memoryLimit biggest Blob part kept in memory
+     * @param spoolLimit most bytes written to temporary files for the body
+     * @param directory directory of temporary files for bigger Blob parts. null for the default one.
+     * @return root part and Blob parts referred by the root part
+     * @throws IOException invalid or incomplete body, body above the spool limit,
+     *                     or any error while reading or writing files
+     */
+    public static Body read(InputStream input, String contentType, int memoryLimit, long spoolLimit, File directory)
+            throws IOException {
+        String boundary = getParameter(contentType, BOUNDARY_PARAMETER);
+        if (boundary == null || boundary.isEmpty()) {
+            throw new IOException("No boundary in multipart/related Content-Type: " + contentType);
+        }
+        String start = getParameter(contentType, START_PARAMETER);
+        start = start == null ? null : stripAngleBrackets(start);
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        PartReader reader = new PartReader(input);
+        Spool spool = new Spool(spoolLimit, directory);
+        Map<String, PartSink> parts = new LinkedHashMap<>();
+        byte[] root = null;
+        try {
+            if (!reader.copyUntil(delimiter, DISCARD)) {
+                throw new IOException("No part in multipart/related body");
+            }
+            while (!isCloseDelimiter(reader.readLine())) {
+                String contentId = null;
+                String line;
+                while (!(line = readHeaderLine(reader)).isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(CONTENT_ID_HEADER)) {
+                        contentId = stripAngleBrackets(line.substring(colon + 1).trim());
+                    }
+                }
+                boolean isRoot = root == null && (start == null || start.equals(contentId));
+                if (!isRoot && contentId == null) {
+                    if (!reader.copyUntil(delimiter, DISCARD)) {
+                        throw new IOException("Incomplete multipart/related body");
+                    }
+                    continue;
+                }
+                PartSink sink = new PartSink(isRoot ? Integer.MAX_VALUE : memoryLimit, spool);
+                try {
+                    if (!reader.copyUntil(delimiter, sink)) {
+                        throw new IOException("Incomplete multipart/related body");
+                    }
+                } finally {
+                    sink.close();
+                }
+                if (isRoot) {
+                    root = sink.memory.toByteArray();
+                } else {
+                    parts.put(contentId, sink);
+                }
+            }
+            if (root == null) {
+                throw new IOException("No root part in multipart/related body");
+            }
+        } catch (IOException | RuntimeException exp) {
+            spool.deleteFilesExcept(Collections.emptyList());
+            throw exp;
+        }
+        String rootText = new String(root, StandardCharsets.ISO_8859_1);
+        BlobAttachments attachments = new BlobAttachments();
+        List<File> keptFiles = new ArrayList<>();
+        for (Map.Entry<String, PartSink> each : parts.entrySet()) {
+            if (rootText.contains(BlobAttachments.CID_SCHEME + each.getKey())) {
+                attachments.put(each.getKey(), each.getValue().toBlob());
+                if (each.getValue().file != null) {
+                    keptFiles.add(each.getValue().file);
+                }
+            }
+        }
+        spool.deleteFilesExcept(keptFiles);
+        return new Body(root, attachments);
+    }
+
+    /**
+     * @param line rest of the delimiter line
+     * @return flag if it is the close delimiter
+     * @throws IOException if the body ended before the close delimiter
+     */
+    private static boolean isCloseDelimiter(String line) throws IOException {
+        if (line == null) {
+            throw new IOException("Incomplete multipart/related body");
+        }
+        return line.startsWith("--");
+    }
+
+    /**
+     * @param reader body reader
+     * @return next header line of a part. empty at the end of headers.
+     * @throws IOException if the body ended in headers
+     */
+    private static String readHeaderLine(PartReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Incomplete multipart/related body");
+        }
+        return line;
+    }
+
+    /**
+     * @param value Content-ID or start parameter
+     * @return value without surrounding angle brackets
+     */
+    private static String stripAngleBrackets(String value) {
+        return value.startsWith("<") && value.endsWith(">") ? value.substring(1, value.length() - 1) : value;
+    }
+
+    /**
+     * Result of read()
+     */
+    public static final class Body {
+        private final byte[] root;
+        private final BlobAttachments attachments;
+
+        private Body(byte[] root, BlobAttachments attachments) {
+            this.root = root;
+            this.attachments = attachments;
+        }
+
+        /**
+         * @return encoded MAL body
+         */
+        public byte[] getRoot() {
+            return root;
+        }
+
+        /**
+         * @return Blob parts by Content-ID
+         */
+        public BlobAttachments getAttachments() {
+            return attachments;
+        }
+    }
+
+    /**
+     * Buffered reader of the body which finds delimiters across reads.
+     * Body is prefixed with CRLF so that the first delimiter is found in the same way as the others.
+     */
+    private static final class PartReader {
+        private final InputStream input;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int start = 0;
+        private int end = 0;
+
+        PartReader(InputStream input) {
+            this.input = input;
+            System.arraycopy(CRLF, 0, buffer, 0, CRLF.length);
+            end = CRLF.length;
+        }
+
+        /**
+         * Copy bytes before the delimiter to the sink and skip the delimiter.
+         * Bytes which can be the beginning of the delimiter are kept until more bytes are read.
+         *
+         * @param delimiter CRLF, "--", and boundary
+         * @param sink destination of the bytes before the delimiter
+         * @return flag if the delimiter is found. false if the body ended before it.
+         * @throws IOException any error while reading or writing
+         */
+        boolean copyUntil(byte[] delimiter, OutputStream sink) throws IOException {
+            while (true) {
+                int index = indexOf(delimiter);
+                if (index >= 0) {
+                    sink.write(buffer, start, index - start);
+                    start = index + delimiter.length;
+                    return true;
+                }
+                int safeEnd = Math.max(start, end - delimiter.length + 1);
+                sink.write(buffer, start, safeEnd - start);
+                start = safeEnd;
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * @return next line without CRLF in ISO-8859-1. null if the body ended.
+         * @throws IOException if the line is too long or any error while reading
+         */
+        String readLine() throws IOException {
+            int searched = start;
+            while (true) {
+                for (int i = searched; i < end; i++) {
+                    if (buffer[i] == '\n') {
+                        int lineEnd = i > start && buffer[i - 1] == '\r' ? i - 1 : i;
+                        String line = new String(buffer, start, lineEnd - start, StandardCharsets.ISO_8859_1);
+                        start = i + 1;
+                        return line;
+                    }
+                }
+                if (end - start >= MAX_HEADER_LINE_LENGTH) {
+                    throw new IOException("Header line is too long in multipart/related body");
+                }
+                searched = end - start;
+                if (!fill()) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * @param delimiter bytes to find
+         * @return index of the delimiter in the buffer or -1
+         */
+        private int indexOf(byte[] delimiter) {
+            int last = end - delimiter.length;
+            for (int i = start; i <= last; i++) {
+                if (buffer[i] == delimiter[0]) {
+                    int j = 1;
+                    while (j < delimiter.length && buffer[i + j] == delimiter[j]) {
+                        j++;
+                    }
+                    if (j == delimiter.length) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Move unread bytes to the beginning of the buffer and read more after them.
+         *
+         * @return flag if more bytes are read. false at the end of the body.
+         * @throws IOException any error while reading
+         */
+        private boolean fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            }
+            int count = input.read(buffer, end, buffer.length - end);
+            if (count < 0) {
+                return false;
+            }
+            end += count;
+            return true;
+        }
+    }
+
+    /**
+     * Temporary files of a single body and the bytes written to them.
+     */
+    private static final class Spool {
+        private final long limit;
+        private final File directory;
+        private final List<File> files = new ArrayList<>();
+        private long size = 0;
+
+        Spool(long limit, File directory) {
+            this.limit = limit;
+            this.directory = directory;
+        }
+
+        /**
+         * @return new temporary file
+         * @throws IOException any error while creating the file
+         */
+        File createFile() throws IOException {
+            File file = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX, directory);
+            files.add(file);
+            return file;
+        }
+
+        /**
+         * @param length bytes to write to a temporary file
+         * @throws IOException if the body goes above the limit
+         */
+        void reserve(long length) throws IOException {
+            size += length;
+            if (size > limit) {
+                throw new IOException("multipart/related body is above the spool limit: " + limit);
+            }
+        }
+
+        /**
+         * @param keptFiles files which are returned to the caller
+         */
+        void deleteFilesExcept(List<File> keptFiles) {
+            for (File file : files) {
+                if (!keptFiles.contains(file)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Destination of a part. Bytes are kept in memory until the limit, and moved to a temporary file after that.
+     */
+    private static final class PartSink extends OutputStream {
+        private final int memoryLimit;
+        private final Spool spool;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file = null;
+        private OutputStream fileStream = null;
+
+        PartSink(int memoryLimit, Spool spool) {
+            this.memoryLimit = memoryLimit;
+            this.spool = spool;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fileStream == null && (long) memory.size() + len > memoryLimit) {
+                spool.reserve(memory.size());
+                file = spool.createFile();
+                fileStream = new FileOutputStream(file);
+                memory.writeTo(fileStream);
+                memory = null;
+            }
+            if (fileStream != null) {
+                spool.reserve(len);
+                fileStream.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileStream != null) {
+                fileStream.close();
+            }
+        }
+
+        /**
+         * @return Blob with the bytes in memory, or URL based Blob of the temporary file
+         */
+        Blob toBlob() {
+            return file == null ? new Blob(memory.toByteArray()) : new Blob(file.toURI().toString());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import nasa.mo.mal.transport.http.senders.NewMessageSender;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+
+public class DestinationLanesTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidConcurrencyTest() {
+        new DestinationLanes(Executors.newSingleThreadExecutor(), 0);
+    }
+
+    /**
+     * Messages to the same destination keep their order. Different destinations run in parallel.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void orderingTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        DestinationLanes lanes = new DestinationLanes(executor, 1);
+        List<Integer> orderA = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> orderB = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger largestRunning = new AtomicInteger();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int index = i;
+            results.add(lanes.submit("malhttp://a:8080/Service1", () -> record(orderA, index, running, largestRunning)));
+            results.add(lanes.submit("malhttp://b:8080/Service1", () -> record(orderB, index, running, largestRunning)));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, orderA.get(i).intValue());
+            Assert.assertEquals(i, orderB.get(i).intValue());
+        }
+        Assert.assertEquals(2, largestRunning.get());
+        Assert.assertEquals(0, lanes.getLaneCount());
+        Assert.assertEquals(100, lanes.getSubmittedCount());
+        Assert.assertTrue(lanes.getLargestBacklog() > 0);
+    }
+
+    /**
+     * A lane never runs more tasks than its concurrency.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void concurrencyLimitTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        DestinationLanes lanes = new DestinationLanes(executor, 2);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger largestRunning = new AtomicInteger();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            final int index = i;
+            results.add(lanes.submit("malhttp://a:8080/Service1", () -> record(order, index, running, largestRunning)));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, largestRunning.get());
+        Assert.assertEquals(40, order.size());
+    }
+
+    /**
+     * Header of the message is kept for schedulers.
+     */
+    @Test
+    public void messageHeaderTest() {
+        ExecutorService executor = mock(ExecutorService.class);
+        MALMessageHeader header = mock(MALMessageHeader.class);
+        NewMessageSender sender = mock(NewMessageSender.class);
+        when(sender.getMessageHeader()).thenReturn(header);
+        new DestinationLanes(executor, 1).submit("malhttp://a:8080/Service1", sender);
+        verify(executor).execute(argThat(task -> task instanceof MessageTask
+                && ((MessageTask) task).getMessageHeader() == header));
+    }
+
+    @Test
+    public void rejectedTest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        DestinationLanes lanes = new DestinationLanes(executor, 1);
+        try {
+            lanes.submit("malhttp://a:8080/Service1", () -> true);
+            Assert.fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException exp) {
+            Assert.assertEquals(0, lanes.getLaneCount());
+        }
+    }
+
+    /**
+     * A task rejected after waiting for its lane is cancelled and calls its rejection callback.
+     * The callback is not called for a task whose rejection is thrown by submit.
+     */
+    @Test
+    public void delayedRejectedTest() {
+        List<Runnable> accepted = new ArrayList<>();
+        Executor executor = command -> {
+            if (!accepted.isEmpty()) {
+                throw new RejectedExecutionException("full");
+            }
+            accepted.add(command);
+        };
+        DestinationLanes lanes = new DestinationLanes(executor, 1);
+        String destination = "malhttp://a:8080/Service1";
+        AtomicInteger rejectedCount = new AtomicInteger();
+        Future<Boolean> first = lanes.submit(destination, () -> true, rejectedCount::incrementAndGet);
+        Future<Boolean> second = lanes.submit(destination, () -> true, rejectedCount::incrementAndGet);
+        Assert.assertEquals(1, lanes.getWaitingCount(destination));
+        accepted.get(0).run();
+        Assert.assertTrue(first.isDone());
+        Assert.assertTrue(second.isCancelled());
+        Assert.assertEquals(1, rejectedCount.get());
+        Assert.assertEquals(0, lanes.getLaneCount());
+        try {
+            lanes.submit(destination, () -> true, rejectedCount::incrementAndGet);
+            Assert.fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException exp) {
+            Assert.assertEquals(1, rejectedCount.get());
+            Assert.assertEquals(0, lanes.getLaneCount());
+        }
+    }
+
+    /**
+     * Asynchronous tasks hold their slot until their future is completed.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void asyncTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        DestinationLanes lanes = new DestinationLanes(executor, 1);
+        String destination = "malhttp://a:8080/Service1";
+        List<CompletableFuture<Integer>> started = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(lanes.submitAsync(destination, null, () -> {
+                CompletableFuture<Integer> future = new CompletableFuture<>();
+                started.add(future);
+                return future;
+            }));
+        }
+        waitForSize(started, 1);
+        Thread.sleep(50);
+        Assert.assertEquals(1, started.size());
+        Assert.assertEquals(2, lanes.getWaitingCount(destination));
+
+        started.get(0).complete(0);
+        Assert.assertEquals(0, results.get(0).get(1, TimeUnit.SECONDS).intValue());
+        waitForSize(started, 2);
+        started.get(1).completeExceptionally(new IllegalStateException("failed"));
+        try {
+            results.get(1).get(1, TimeUnit.SECONDS);
+            Assert.fail("expected ExecutionException");
+        } catch (ExecutionException exp) {
+            Assert.assertTrue(exp.getCause() instanceof IllegalStateException);
+        }
+        waitForSize(started, 3);
+        started.get(2).complete(2);
+        Assert.assertEquals(2, results.get(2).get(1, TimeUnit.SECONDS).intValue());
+        Assert.assertEquals(0, lanes.getLaneCount());
+        executor.shutdown();
+    }
+
+    private static void waitForSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (list.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(size, list.size());
+    }
+
+    private static boolean record(List<Integer> order, int index, AtomicInteger running, AtomicInteger largestRunning)
+            throws InterruptedException {
+        int current = running.incrementAndGet();
+        largestRunning.accumulateAndGet(current, Math::max);
+        Thread.sleep(2);
+        order.add(index);
+        running.decrementAndGet();
+        return true;
+    }
+}
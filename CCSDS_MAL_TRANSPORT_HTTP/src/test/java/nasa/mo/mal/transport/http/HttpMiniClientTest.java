@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import com.sun.net.httpserver.HttpServer;
+import nasa.mo.mal.transport.junitcategories.PortDependentTest;
+import org.apache.http.HttpHost;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.ccsds.moims.mo.mal.MALException;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.ExpectedException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class HttpMiniClientTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+    private static final String LOCAL_HOST = "localhost";
+
+    @Test
+    public void defaultLimitTest() throws Exception {
+        HttpMiniClient client = HttpMiniClient.custom().build();
+        Assert.assertNull(client.getClient());
+        client.create();
+        Assert.assertNotNull(client.getClient());
+        client.close();
+    }
+
+    @Test
+    public void asyncClientTest() throws Exception {
+        HttpMiniClient client = HttpMiniClient.custom().build();
+        client.create();
+        Assert.assertNull(client.getAsyncClient());
+        client.close();
+
+        client = HttpMiniClient.custom().isAsync(true).build();
+        client.create();
+        Assert.assertNotNull(client.getClient());
+        Assert.assertNotNull(client.getAsyncClient());
+        Assert.assertTrue(client.getAsyncClient().isRunning());
+        client.close();
+        Assert.assertFalse(client.getAsyncClient().isRunning());
+    }
+
+    @Test
+    public void invalidLimitTest() throws Exception {
+        HttpMiniClient client = HttpMiniClient.custom().maxConnectionPerRoute(-1).build();
+        thrown.expect(MALException.class);
+        thrown.expectMessage("Invalid connection limits or idle timeout for Http Client");
+        client.create();
+    }
+
+    /**
+     * Pre-connecting to a closed port is only logged.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void preConnectFailureTest() throws Exception {
+        HttpMiniClient client = HttpMiniClient.custom().build();
+        client.create();
+        client.preConnect("http://" + LOCAL_HOST + ":" + MessageTestHelper.getAvailablePort(), 1000);
+        client.close();
+    }
+
+    /**
+     * Pre-connected route has the default port of the scheme if the URL doesn't have one.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void createRouteTest() throws Exception {
+        HttpRoute route = HttpMiniClient.createRoute(new URI("http://" + LOCAL_HOST + "/Service1"));
+        Assert.assertEquals(new HttpHost(LOCAL_HOST, 80, "http"), route.getTargetHost());
+        Assert.assertFalse(route.isSecure());
+        route = HttpMiniClient.createRoute(new URI("https://" + LOCAL_HOST));
+        Assert.assertEquals(new HttpHost(LOCAL_HOST, 443, "https"), route.getTargetHost());
+        Assert.assertTrue(route.isSecure());
+        route = HttpMiniClient.createRoute(new URI("http://" + LOCAL_HOST + ":8080"));
+        Assert.assertEquals(8080, route.getTargetHost().getPort());
+    }
+
+    /**
+     * All messages are sent with the pre-connected connection.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    @Category(PortDependentTest.class)
+    public void connectionReuseTest() throws Exception {
+        Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(LOCAL_HOST), 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        HttpMiniClient client = HttpMiniClient.custom().build();
+        try {
+            client.create();
+            int port = server.getAddress().getPort();
+            client.preConnect("http://" + LOCAL_HOST + ":" + port, 1000);
+            for (int i = 0; i < 10; i++) {
+                HttpPost post = new HttpPost("/Service1");
+                post.setEntity(new ByteArrayEntity(new byte[] {1, 2, 3}));
+                try (CloseableHttpResponse response = client.getClient()
+                        .execute(new HttpHost(LOCAL_HOST, port, "http"), post)) {
+                    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
+            }
+            Assert.assertEquals(1, clientPorts.size());
+        } finally {
+            client.close();
+            server.stop(0);
+        }
+    }
+}
@@ -14,6 +14,8 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpsServer;
+import nasa.mo.mal.transport.http.server.JdkServerEngine;
+import nasa.mo.mal.transport.http.server.NioServerEngine;
 import nasa.mo.mal.transport.http.util.Constants;
 import nasa.mo.mal.transport.junitcategories.PortDependentTest;
 import org.apache.commons.io.FileUtils;
@@ -41,8 +43,16 @@ import static org.mockito.Mockito.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -114,6 +124,177 @@ public class HttpMiniServerTest {
         miniServer.create();
     }
 
+    @Test
+    public void invalidQueueLimitTest01() throws Exception {
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(8001).mainHandler(handler)
+                .queueLimit(-1)
+                .build();
+        thrown.expect(MALException.class);
+        thrown.expectMessage("Invalid queue limit");
+        miniServer.create();
+    }
+
+    @Test
+    public void unknownExecutorTest01() throws Exception {
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(8001).mainHandler(handler)
+                .executorType("cached")
+                .build();
+        thrown.expect(MALException.class);
+        thrown.expectMessage("Unknown server executor: cached");
+        miniServer.create();
+    }
+
+    /**
+     * Virtual executor falls back to bounded executor if the JVM doesn't have virtual threads.
+     * Executor given by the caller is used regardless of the type.
+     * @throws Exception unexpected exception
+     */
+    @Category(PortDependentTest.class)
+    @Test
+    public void executorTypeTest01() throws Exception {
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).build();
+        miniServer.create();
+        Assert.assertEquals(ServerExecutor.BOUNDED, miniServer.getExecutor().getType());
+        miniServer.stop();
+
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).executorType("VIRTUAL").build();
+        miniServer.create();
+        Assert.assertEquals(ServerExecutor.virtual() != null ? ServerExecutor.VIRTUAL : ServerExecutor.BOUNDED,
+                miniServer.getExecutor().getType());
+        miniServer.stop();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).executorType(ServerExecutor.VIRTUAL).executor(executor).build();
+        miniServer.create();
+        Assert.assertNotEquals(ServerExecutor.VIRTUAL, miniServer.getExecutor().getType());
+        miniServer.stop();
+        Assert.assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    /**
+     * A burst of requests doesn't create more handler threads than the thread pool count.
+     * @throws Exception unexpected exception
+     */
+    @Category(PortDependentTest.class)
+    @Test
+    public void boundedExecutorTest01() throws Exception {
+        int threadCount = 2;
+        int requestCount = 20;
+        Set<String> handlerThreads = Collections.synchronizedSet(new HashSet<>());
+        int freePort = MessageTestHelper.getAvailablePort();
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(freePort).threadPoolCount(threadCount)
+                .mainHandler(exchange -> {
+                    handlerThreads.add(Thread.currentThread().getName());
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException exp) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                }).build();
+        miniServer.create();
+        miniServer.start();
+        ExecutorService clients = Executors.newFixedThreadPool(requestCount);
+        try {
+            List<Future<Integer>> responses = new ArrayList<>();
+            for (int i = 0; i < requestCount; i++) {
+                responses.add(clients.submit(() -> {
+                    try (CloseableHttpClient client = HttpClientBuilder.create().build();
+                         CloseableHttpResponse response = client.execute(
+                                 new HttpGet("http://" + LOCAL_HOST + ":" + freePort))) {
+                        return response.getStatusLine().getStatusCode();
+                    }
+                }));
+            }
+            for (Future<Integer> response : responses) {
+                Assert.assertEquals(204, (int) response.get(10, TimeUnit.SECONDS));
+            }
+            ServerExecutor executor = miniServer.getExecutor();
+            Assert.assertTrue(executor.getLargestActiveCount() <= threadCount);
+            Assert.assertEquals(requestCount, executor.getCompletedCount());
+            Assert.assertEquals(0, executor.getActiveCount());
+            Assert.assertEquals(0, executor.getQueuedCount());
+            Assert.assertTrue(handlerThreads.stream().filter(name -> name.startsWith("HttpMiniServer-")).count()
+                    <= threadCount);
+        } finally {
+            clients.shutdown();
+            miniServer.stop();
+        }
+    }
+
+    @Test
+    public void unknownEngineTest01() throws Exception {
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(8001).mainHandler(handler)
+                .engineType("java.lang.String")
+                .build();
+        thrown.expect(MALException.class);
+        thrown.expectMessage("Unknown server engine: java.lang.String");
+        miniServer.create();
+    }
+
+    @Test
+    public void nioSecureServerTest01() throws Exception {
+        secureServerSetUp();
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).keyStoreFile(tempFolder.getRoot().getAbsolutePath() + "/server.jks").keyStorePassword(KEY_STORE_PASSWORD)
+                .trustStoreFile(tempFolder.getRoot().getAbsolutePath() + "/server.jks").trustStorePassword(KEY_STORE_PASSWORD)
+                .keyStoreType("JKS").isSecureServer(true).engineType(NioServerEngine.NAME).build();
+        thrown.expect(MALException.class);
+        thrown.expectMessage("Https is not supported by nio server engine.");
+        miniServer.create();
+    }
+
+    /**
+     * Engine is selected by name or by class name.
+     * @throws Exception unexpected exception
+     */
+    @Category(PortDependentTest.class)
+    @Test
+    public void engineTypeTest01() throws Exception {
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).build();
+        miniServer.create();
+        Assert.assertTrue(miniServer.getEngine() instanceof JdkServerEngine);
+        miniServer.stop();
+
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).engineType("NIO").build();
+        miniServer.create();
+        Assert.assertTrue(miniServer.getEngine() instanceof NioServerEngine);
+        miniServer.stop();
+
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(MessageTestHelper.getAvailablePort())
+                .mainHandler(handler).engineType(NioServerEngine.class.getName()).build();
+        miniServer.create();
+        Assert.assertTrue(miniServer.getEngine() instanceof NioServerEngine);
+        miniServer.stop();
+    }
+
+    @Category(PortDependentTest.class)
+    @Test
+    public void nioSuccessfulTest01() throws Exception {
+        mockingHttpHandler();
+        int freePort = MessageTestHelper.getAvailablePort();
+        miniServer = HttpMiniServer.custom().serverHost(LOCAL_HOST).serverPort(freePort).mainHandler(handler)
+                .engineType(NioServerEngine.NAME).selectorCount(2).build();
+        miniServer.create();
+        miniServer.start();
+        try (CloseableHttpClient client = HttpClientBuilder.create().setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(2000).build()).build()) {
+            for (int i = 0; i < 5; i++) {
+                try (CloseableHttpResponse response = client.execute(new HttpGet("http://" + LOCAL_HOST + ":" + freePort))) {
+                    Assert.assertEquals(204, response.getStatusLine().getStatusCode());
+                }
+            }
+        } finally {
+            miniServer.stop();
+        }
+    }
+
     @Category(PortDependentTest.class)
     @Test
     public void socketTimeOutTest01() throws Exception {
@@ -383,9 +564,7 @@ public class HttpMiniServerTest {
                 .trustStoreFile(tempFolder.getRoot().getAbsolutePath() + "/server.jks").trustStorePassword(KEY_STORE_PASSWORD)
                 .keyStoreType("JKS").isSecureServer(false).build();
         miniServer.create();
-        Field serverField = miniServer.getClass().getDeclaredField("server");
-        serverField.setAccessible(true);
-        HttpServer server = (HttpServer) serverField.get(miniServer);
+        HttpServer server = ((JdkServerEngine) miniServer.getEngine()).getServer();
         Assert.assertFalse(server instanceof HttpsServer);
         
         secureServerSetUp();
@@ -394,9 +573,7 @@ public class HttpMiniServerTest {
                 .trustStoreFile(tempFolder.getRoot().getAbsolutePath() + "/server.jks").trustStorePassword(KEY_STORE_PASSWORD)
                 .keyStoreType("JKS").isSecureServer(true).build();
         miniServer.create();
-        serverField = miniServer.getClass().getDeclaredField("server");
-        serverField.setAccessible(true);
-        server = (HttpServer) serverField.get(miniServer);
+        server = ((JdkServerEngine) miniServer.getEngine()).getServer();
         Assert.assertTrue(server instanceof HttpsServer);
     }
 
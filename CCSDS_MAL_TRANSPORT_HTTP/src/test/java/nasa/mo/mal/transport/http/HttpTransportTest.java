@@ -13,9 +13,7 @@ package nasa.mo.mal.transport.http;
 import esa.mo.mal.transport.gen.GENMessage;
 import esa.mo.mal.transport.gen.GENMessageHeader;
 import esa.mo.mal.transport.gen.body.GENMessageBody;
-import nasa.mo.mal.transport.http.receivers.IncomingMessageProcessor;
 import nasa.mo.mal.transport.http.util.Constants;
-import nasa.mo.mal.transport.http.util.MALTransmitErrorBuilder;
 import org.apache.commons.io.FileUtils;
 import org.ccsds.moims.mo.mal.*;
 import org.ccsds.moims.mo.mal.encoding.MALElementOutputStream;
@@ -33,7 +31,6 @@ import org.mockito.junit.MockitoRule;
 import static org.mockito.Mockito.*;
 
 import java.io.*;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -204,7 +201,7 @@ public class HttpTransportTest {
         ExecutorService incomingMessageProcessors = mock(ExecutorService.class);
         field.setAccessible(true);
         field.set(transport, incomingMessageProcessors);
-        doThrow(IOException.class).when(incomingMessageProcessors).submit(any(IncomingMessageProcessor.class));
+        doThrow(IOException.class).when(incomingMessageProcessors).submit(any(Callable.class));
 
         prepHeader();
 
@@ -227,7 +224,7 @@ public class HttpTransportTest {
         ExecutorService incomingMessageProcessors = mock(ExecutorService.class);
         field.setAccessible(true);
         field.set(transport, incomingMessageProcessors);
-        doThrow(RejectedExecutionException.class).when(incomingMessageProcessors).submit(any(IncomingMessageProcessor.class));
+        doThrow(RejectedExecutionException.class).when(incomingMessageProcessors).submit(any(Callable.class));
 
         prepHeader();
 
@@ -459,27 +456,23 @@ public class HttpTransportTest {
     }
 
     @Test
-    public void resultLoggerTest01() throws Exception {
+    public void resultCountersTest01() throws Exception {
         StreamHandler handler = getStreamHandler();
-        Class<?> resultLoggerClass = HttpTransport.class.getDeclaredClasses()[0];
-        Constructor<?> resultLoggerConstructor = resultLoggerClass.getDeclaredConstructors()[0];
-        resultLoggerConstructor.setAccessible(true);
-        Runnable newObj = (Runnable) resultLoggerConstructor.newInstance(transport, getSuccessFuture(), "Test Class");
-        newObj.run();
+        ResultCounters counters = transport.getResultCounters();
+        Assert.assertTrue(counters.counted(() -> true, "Test Class").call());
         handler.flush();
         Assert.assertTrue(new String(loggerContent.toByteArray()).isEmpty());
+        Assert.assertEquals(1, counters.getSucceededCount("Test Class"));
     }
 
     @Test
-    public void resultLoggerTest02() throws Exception {
+    public void resultCountersTest02() throws Exception {
         StreamHandler handler = getStreamHandler();
-        Class<?> resultLoggerClass = HttpTransport.class.getDeclaredClasses()[0];
-        Constructor<?> resultLoggerConstructor = resultLoggerClass.getDeclaredConstructors()[0];
-        resultLoggerConstructor.setAccessible(true);
-        Runnable newObj = (Runnable) resultLoggerConstructor.newInstance(transport, getFailedFuture(), "Test Class");
-        newObj.run();
+        ResultCounters counters = transport.getResultCounters();
+        Assert.assertFalse(counters.counted(() -> false, "Test Class").call());
         handler.flush();
         Assert.assertTrue(new String(loggerContent.toByteArray()).contains("Executor Service failed @ Test Class"));
+        Assert.assertEquals(1, counters.getFailedCount("Test Class"));
     }
 
     private StreamHandler getStreamHandler() {
@@ -491,15 +484,21 @@ public class HttpTransportTest {
     }
 
     @Test
-    public void resultLoggerTest03() throws Exception {
+    public void resultCountersTest03() throws Exception {
         StreamHandler handler = getStreamHandler();
-        Class<?> resultLoggerClass = HttpTransport.class.getDeclaredClasses()[0];
-        Constructor<?> resultLoggerConstructor = resultLoggerClass.getDeclaredConstructors()[0];
-        resultLoggerConstructor.setAccessible(true);
-        Runnable newObj = (Runnable) resultLoggerConstructor.newInstance(transport, getExceptionFuture(), "Test Class");
-        newObj.run();
+        ResultCounters counters = transport.getResultCounters();
+        try {
+            counters.counted(() -> {
+                throw new MALException("Testing");
+            }, "Test Class").call();
+            Assert.fail("expected MALException");
+        } catch (MALException exp) {
+            Assert.assertEquals("Testing", exp.getMessage());
+        }
         handler.flush();
         Assert.assertTrue(new String(loggerContent.toByteArray()).contains("Executor Service throws an error"));
+        Assert.assertEquals(1, counters.getErrorCount("Test Class"));
+        Assert.assertEquals(0, counters.getSucceededCount("Test Class"));
     }
 
     @Test
@@ -741,93 +740,6 @@ public class HttpTransportTest {
 
     }
 
-    private Future<Boolean> getSuccessFuture() {
-        return new Future<Boolean>() {
-            @Override
-            public boolean cancel(boolean mayInterruptIfRunning) {
-                return false;
-            }
-
-            @Override
-            public boolean isCancelled() {
-                return false;
-            }
-
-            @Override
-            public boolean isDone() {
-                return false;
-            }
-
-            @Override
-            public Boolean get() throws InterruptedException, ExecutionException {
-                return true;
-            }
-
-            @Override
-            public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                return true;
-            }
-        };
-    }
-
-    private Future<Boolean> getFailedFuture() {
-        return new Future<Boolean>() {
-            @Override
-            public boolean cancel(boolean mayInterruptIfRunning) {
-                return false;
-            }
-
-            @Override
-            public boolean isCancelled() {
-                return false;
-            }
-
-            @Override
-            public boolean isDone() {
-                return false;
-            }
-
-            @Override
-            public Boolean get() throws InterruptedException, ExecutionException {
-                return false;
-            }
-
-            @Override
-            public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                return false;
-            }
-        };
-    }
-
-    private Future<Boolean> getExceptionFuture() {
-        return new Future<Boolean>() {
-            @Override
-            public boolean cancel(boolean mayInterruptIfRunning) {
-                return false;
-            }
-
-            @Override
-            public boolean isCancelled() {
-                return false;
-            }
-
-            @Override
-            public boolean isDone() {
-                return false;
-            }
-
-            @Override
-            public Boolean get() throws InterruptedException, ExecutionException {
-                throw new ExecutionException(MALTransmitErrorBuilder.create().build());
-            }
-
-            @Override
-            public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-                throw new ExecutionException(MALTransmitErrorBuilder.create().build());
-            }
-        };
-    }
-
     private void prepHeader() {
         doReturn(header).when(message).getHeader();
         doReturn(authenticationId).when(header).getAuthenticationId();
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InboundAdmissionTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimitTest() {
+        new InboundAdmission(10, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidHighWaterMarkTest() {
+        new InboundAdmission(0, 5);
+    }
+
+    /**
+     * BESTEFFORT is shed at the high-water mark. Others are shed later in order QUEUED, ASSURED, TIMELY.
+     * Messages without QoS level are treated as BESTEFFORT.
+     */
+    @Test
+    public void sheddingOrderTest() {
+        InboundAdmission admission = new InboundAdmission(4, 7);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(admission.tryAdmit(QoSLevel.BESTEFFORT));
+        }
+        Assert.assertFalse(admission.tryAdmit(QoSLevel.BESTEFFORT));
+        Assert.assertFalse(admission.tryAdmit(null));
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.QUEUED));
+        Assert.assertFalse(admission.tryAdmit(QoSLevel.QUEUED));
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.ASSURED));
+        Assert.assertFalse(admission.tryAdmit(QoSLevel.ASSURED));
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.TIMELY));
+        Assert.assertFalse(admission.tryAdmit(QoSLevel.TIMELY));
+
+        Assert.assertEquals(7, admission.getDepth());
+        Assert.assertEquals(7, admission.getAdmittedCount());
+        Assert.assertEquals(5, admission.getRejectedCount());
+        Assert.assertEquals(2, admission.getRejectedCount(QoSLevel.BESTEFFORT));
+        Assert.assertEquals(1, admission.getRejectedCount(QoSLevel.TIMELY));
+
+        for (int i = 0; i < 4; i++) {
+            admission.release();
+        }
+        Assert.assertEquals(3, admission.getDepth());
+        Assert.assertEquals(7, admission.getLargestDepth());
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.BESTEFFORT));
+    }
+
+    /**
+     * Depth never goes above the limit with concurrent admissions.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void concurrentAdmissionTest() throws Exception {
+        InboundAdmission admission = new InboundAdmission(50, 100);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (admission.tryAdmit(QoSLevel.TIMELY)) {
+                        admission.release();
+                    }
+                    admission.tryAdmit(QoSLevel.TIMELY);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(100, admission.getDepth());
+        Assert.assertEquals(100, admission.getLargestDepth());
+        Assert.assertEquals(16000, admission.getAdmittedCount() + admission.getRejectedCount());
+    }
+}
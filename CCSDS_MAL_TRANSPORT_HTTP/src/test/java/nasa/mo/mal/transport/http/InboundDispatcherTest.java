@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+
+public class InboundDispatcherTest {
+    private static final String CONSUMER = "malhttp://localhost:8080/Consumer";
+    private static final String PROVIDER_A = "malhttp://a:8080/Provider";
+    private static final String PROVIDER_B = "malhttp://b:8080/Provider";
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLimitTest() {
+        new InboundDispatcher(Executors.newSingleThreadExecutor(), 0, 1000);
+    }
+
+    /**
+     * Messages of a provider to a consumer keep their order. Different providers are delivered in parallel.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void orderingTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        InboundDispatcher dispatcher = new InboundDispatcher(executor, 1000, 1000);
+        MALMessageHeader headerA = createHeader(CONSUMER, PROVIDER_A);
+        MALMessageHeader headerB = createHeader(CONSUMER, PROVIDER_B);
+        List<Integer> orderA = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> orderB = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger largestRunning = new AtomicInteger();
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int index = i;
+            results.add(dispatcher.submit(headerA, () -> record(orderA, index, running, largestRunning)));
+            results.add(dispatcher.submit(headerB, () -> record(orderB, index, running, largestRunning)));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, orderA.get(i).intValue());
+            Assert.assertEquals(i, orderB.get(i).intValue());
+        }
+        Assert.assertEquals(2, largestRunning.get());
+        Assert.assertEquals(0, dispatcher.getEndpointDepth(CONSUMER));
+        Assert.assertEquals(0, dispatcher.getLanes().getLaneCount());
+    }
+
+    /**
+     * Messages above the queue limit of an endpoint are rejected. Other endpoints are not affected.
+     */
+    @Test
+    public void endpointQueueLimitTest() {
+        Executor executor = mock(Executor.class);
+        InboundDispatcher dispatcher = new InboundDispatcher(executor, 3, 1000);
+        MALMessageHeader header = createHeader(CONSUMER, PROVIDER_A);
+        for (int i = 0; i < 3; i++) {
+            dispatcher.submit(header, () -> true);
+        }
+        try {
+            dispatcher.submit(header, () -> true);
+            Assert.fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException exp) {
+            Assert.assertEquals(3, dispatcher.getEndpointDepth(CONSUMER));
+            Assert.assertEquals(1, dispatcher.getRejectedCount(CONSUMER));
+            Assert.assertEquals(1, dispatcher.getRejectedCount());
+        }
+        dispatcher.submit(createHeader(PROVIDER_B, CONSUMER), () -> true);
+        Assert.assertEquals(1, dispatcher.getEndpointDepth(PROVIDER_B));
+    }
+
+    /**
+     * Deliveries longer than the threshold are counted as slow.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void slowConsumerTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        InboundDispatcher dispatcher = new InboundDispatcher(executor, 10, 20);
+        MALMessageHeader header = createHeader(CONSUMER, PROVIDER_A);
+        dispatcher.submit(header, () -> true).get(10, TimeUnit.SECONDS);
+        dispatcher.submit(header, () -> {
+            Thread.sleep(100);
+            return true;
+        }).get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        Assert.assertEquals(1, dispatcher.getSlowDeliveryCount(CONSUMER));
+        Assert.assertEquals(1, dispatcher.getSlowDeliveryCount());
+        Assert.assertTrue(dispatcher.getMaxDeliveryInMilliSecond(CONSUMER) >= 100);
+        Assert.assertEquals(0, dispatcher.getEndpointDepth(CONSUMER));
+    }
+
+    /**
+     * Header of the message is kept for schedulers.
+     */
+    @Test
+    public void messageHeaderTest() {
+        Executor executor = mock(Executor.class);
+        MALMessageHeader header = createHeader(CONSUMER, PROVIDER_A);
+        new InboundDispatcher(executor, 10, 1000).submit(header, () -> true);
+        verify(executor).execute(argThat(task -> task instanceof MessageTask
+                && ((MessageTask) task).getMessageHeader() == header));
+    }
+
+    @Test
+    public void rejectedTest() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        InboundDispatcher dispatcher = new InboundDispatcher(executor, 10, 1000);
+        try {
+            dispatcher.submit(createHeader(CONSUMER, PROVIDER_A), () -> true);
+            Assert.fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException exp) {
+            Assert.assertEquals(0, dispatcher.getEndpointDepth(CONSUMER));
+        }
+    }
+
+    /**
+     * A message rejected by the executor after waiting for its lane releases its endpoint queue and admission.
+     */
+    @Test
+    public void delayedRejectedTest() {
+        List<Runnable> accepted = new ArrayList<>();
+        Executor executor = command -> {
+            if (!accepted.isEmpty()) {
+                throw new RejectedExecutionException("full");
+            }
+            accepted.add(command);
+        };
+        InboundAdmission admission = new InboundAdmission(10, 10);
+        InboundDispatcher dispatcher = new InboundDispatcher(executor, 10, 1000, admission);
+        MALMessageHeader header = createHeader(CONSUMER, PROVIDER_A);
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.ASSURED));
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.ASSURED));
+        dispatcher.submit(header, () -> true);
+        Future<Boolean> second = dispatcher.submit(header, () -> true);
+        Assert.assertEquals(2, dispatcher.getEndpointDepth(CONSUMER));
+        accepted.get(0).run();
+        // released by the executor after the first message runs
+        admission.release();
+        Assert.assertTrue(second.isCancelled());
+        Assert.assertEquals(0, dispatcher.getEndpointDepth(CONSUMER));
+        Assert.assertEquals(0, admission.getDepth());
+    }
+
+    private static MALMessageHeader createHeader(String uriTo, String uriFrom) {
+        MALMessageHeader header = mock(MALMessageHeader.class);
+        when(header.getURITo()).thenReturn(new URI(uriTo));
+        when(header.getURIFrom()).thenReturn(new URI(uriFrom));
+        return header;
+    }
+
+    private static boolean record(List<Integer> order, int index, AtomicInteger running, AtomicInteger largestRunning)
+            throws InterruptedException {
+        int current = running.incrementAndGet();
+        largestRunning.accumulateAndGet(current, Math::max);
+        Thread.sleep(2);
+        order.add(index);
+        running.decrementAndGet();
+        return true;
+    }
+}
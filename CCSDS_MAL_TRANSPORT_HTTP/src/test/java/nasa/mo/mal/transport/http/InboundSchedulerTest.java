@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import nasa.mo.mal.transport.http.receivers.IncomingMessageProcessor;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class InboundSchedulerTest {
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidAgingTest() {
+        new InboundScheduler(1, 0, null);
+    }
+
+    /**
+     * Higher priority is served first. QoS level orders messages with the same priority.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void priorityOrderTest() throws Exception {
+        InboundScheduler scheduler = new InboundScheduler(1, 60000, null);
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            latch.await();
+            return true;
+        });
+        scheduler.submit(createProcessor("low", 1, QoSLevel.BESTEFFORT));
+        scheduler.submit(createProcessor("timely", 1, QoSLevel.TIMELY));
+        Future<Boolean> last = scheduler.submit(createProcessor("high", 5, QoSLevel.ASSURED));
+        Assert.assertEquals(2, scheduler.getQueuedCount(1));
+        Assert.assertEquals(1, scheduler.getQueuedCount(5));
+        latch.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("high", "timely", "low"), order);
+        Assert.assertEquals(0, scheduler.getQueuedCount(1));
+        Assert.assertEquals(2, scheduler.getDispatchedCount(1));
+        Assert.assertEquals(1, scheduler.getDispatchedCount(5));
+        Assert.assertTrue(scheduler.getMaxWaitInMilliSecond(1) >= scheduler.getAverageWaitInMilliSecond(1));
+    }
+
+    /**
+     * Within the same priority, QoS levels are served in order TIMELY, ASSURED, QUEUED, BESTEFFORT.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void qosOrderTest() throws Exception {
+        InboundScheduler scheduler = new InboundScheduler(1, 60000, null);
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            latch.await();
+            return true;
+        });
+        scheduler.submit(createProcessor("besteffort", 3, QoSLevel.BESTEFFORT));
+        scheduler.submit(createProcessor("queued", 3, QoSLevel.QUEUED));
+        scheduler.submit(createProcessor("assured", 3, QoSLevel.ASSURED));
+        scheduler.submit(createProcessor("timely", 3, QoSLevel.TIMELY));
+        latch.countDown();
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("timely", "assured", "queued", "besteffort"), order);
+    }
+
+    /**
+     * A low priority message waiting longer than its aging is served before a newer high priority message.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void agingTest() throws Exception {
+        InboundScheduler scheduler = new InboundScheduler(1, 1, null);
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            latch.await();
+            return true;
+        });
+        scheduler.submit(createProcessor("old", 0, QoSLevel.BESTEFFORT));
+        Thread.sleep(100);
+        scheduler.submit(createProcessor("new", 10, QoSLevel.BESTEFFORT));
+        latch.countDown();
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("old", "new"), order);
+    }
+
+    /**
+     * Admission is released after each processor.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void admissionReleaseTest() throws Exception {
+        InboundAdmission admission = new InboundAdmission(2, 2);
+        InboundScheduler scheduler = new InboundScheduler(1, 100, admission);
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.ASSURED));
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.ASSURED));
+        scheduler.submit(createProcessor("first", 1, QoSLevel.ASSURED));
+        scheduler.submit(createProcessor("second", 2, null)).get(5, TimeUnit.SECONDS);
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, admission.getDepth());
+    }
+
+    private IncomingMessageProcessor createProcessor(String name, long priority, QoSLevel qosLevel) throws Exception {
+        MALMessageHeader header = mock(MALMessageHeader.class);
+        when(header.getPriority()).thenReturn(new UInteger(priority));
+        when(header.getQoSlevel()).thenReturn(qosLevel);
+        IncomingMessageProcessor processor = mock(IncomingMessageProcessor.class);
+        when(processor.getMessageHeader()).thenReturn(header);
+        when(processor.call()).thenAnswer(invocation -> order.add(name));
+        return processor;
+    }
+}
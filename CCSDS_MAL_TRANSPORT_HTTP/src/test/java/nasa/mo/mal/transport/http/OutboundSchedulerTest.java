@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import nasa.mo.mal.transport.http.senders.NewMessageSender;
+import org.ccsds.moims.mo.mal.structures.QoSLevel;
+import org.ccsds.moims.mo.mal.structures.UInteger;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class OutboundSchedulerTest {
+    private final List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidReservedTest() {
+        new OutboundScheduler(2, 2, 100);
+    }
+
+    /**
+     * Critical message is sent while bulk messages hold all threads they can use.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void reservedThreadTest() throws Exception {
+        OutboundScheduler scheduler = new OutboundScheduler(2, 1, 100);
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(createSender("bulk1", 9, QoSLevel.BESTEFFORT, latch));
+        scheduler.submit(createSender("bulk2", 9, QoSLevel.BESTEFFORT, latch));
+        Future<Boolean> critical = scheduler.submit(createSender("critical", 1, QoSLevel.TIMELY, null));
+        critical.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(1, scheduler.getRunningBulkCount());
+        Assert.assertEquals(1, scheduler.getQueuedCount(9));
+        latch.countDown();
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("critical", "bulk1", "bulk2"), order);
+        Assert.assertEquals(2, scheduler.getDispatchedCount(9));
+        Assert.assertEquals(0, scheduler.getQueuedCount(9));
+    }
+
+    /**
+     * Higher priority is sent first. Tasks without a message are sent last.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void priorityOrderTest() throws Exception {
+        OutboundScheduler scheduler = new OutboundScheduler(1, 0, 60000);
+        CountDownLatch latch = new CountDownLatch(1);
+        scheduler.submit(() -> {
+            latch.await();
+            return true;
+        });
+        scheduler.execute(() -> order.add("plain"));
+        scheduler.submit(createSender("low", 1, QoSLevel.ASSURED, null));
+        scheduler.execute(() -> order.add("response"), createHeader(7, QoSLevel.BESTEFFORT));
+        scheduler.submit(createSender("high", 7, QoSLevel.TIMELY, null));
+        latch.countDown();
+        scheduler.shutdown();
+        Assert.assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("high", "response", "low", "plain"), order);
+        Assert.assertTrue(scheduler.isTerminated());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void shutdownTest() {
+        OutboundScheduler scheduler = new OutboundScheduler(1, 0, 100);
+        Assert.assertTrue(scheduler.shutdownNow().isEmpty());
+        scheduler.execute(() -> order.add("rejected"));
+    }
+
+    private MALMessageHeader createHeader(long priority, QoSLevel qosLevel) {
+        MALMessageHeader header = mock(MALMessageHeader.class);
+        when(header.getPriority()).thenReturn(new UInteger(priority));
+        when(header.getQoSlevel()).thenReturn(qosLevel);
+        return header;
+    }
+
+    private NewMessageSender createSender(String name, long priority, QoSLevel qosLevel, CountDownLatch latch)
+            throws Exception {
+        MALMessageHeader header = createHeader(priority, qosLevel);
+        NewMessageSender sender = mock(NewMessageSender.class);
+        when(sender.getMessageHeader()).thenReturn(header);
+        when(sender.call()).thenAnswer(invocation -> {
+            if (latch != null) {
+                latch.await();
+            }
+            return order.add(name);
+        });
+        return sender;
+    }
+}
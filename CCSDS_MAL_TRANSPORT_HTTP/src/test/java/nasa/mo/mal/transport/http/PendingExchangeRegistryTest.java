@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.ccsds.moims.mo.mal.structures.InteractionType;
+import org.ccsds.moims.mo.mal.structures.URI;
+import org.ccsds.moims.mo.mal.transport.MALMessageHeader;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+public class PendingExchangeRegistryTest {
+    private static final URI CONSUMER_1 = new URI("malhttp://localhost:8080/Consumer1");
+    private static final URI CONSUMER_2 = new URI("malhttp://localhost:8080/Consumer2");
+    private PendingExchangeRegistry registry;
+
+    @After
+    public void tearDown() {
+        if (registry != null) {
+            registry.close();
+        }
+    }
+
+    /**
+     * Same transaction ID from different consumers are kept separately.
+     * Reply is matched with URI-To.
+     */
+    @Test
+    public void keyTest() {
+        registry = new PendingExchangeRegistry(0, Collections.emptyMap(), 10);
+        HttpExchange exchange1 = mock(HttpExchange.class);
+        HttpExchange exchange2 = mock(HttpExchange.class);
+        registry.register(createRequestHeader(CONSUMER_1, 1L, InteractionType.SUBMIT), exchange1);
+        registry.register(createRequestHeader(CONSUMER_2, 1L, InteractionType.SUBMIT), exchange2);
+        Assert.assertEquals(2, registry.getSize());
+
+        Assert.assertNull(registry.remove(createReplyHeader(CONSUMER_1, 2L)));
+        Assert.assertEquals(exchange2, registry.remove(createReplyHeader(CONSUMER_2, 1L)));
+        Assert.assertEquals(exchange1, registry.remove(createReplyHeader(CONSUMER_1, 1L)));
+        Assert.assertNull(registry.remove(createReplyHeader(CONSUMER_1, 1L)));
+        Assert.assertEquals(0, registry.getSize());
+        Assert.assertEquals(0, registry.getEvictionCount());
+    }
+
+    /**
+     * Exchange with the same key replaces the old one which is answered with 504.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void replaceTest() throws Exception {
+        registry = new PendingExchangeRegistry(0, Collections.emptyMap(), 10);
+        HttpExchange exchange1 = createExchange();
+        HttpExchange exchange2 = createExchange();
+        registry.register(createRequestHeader(CONSUMER_1, 1L, InteractionType.SUBMIT), exchange1);
+        registry.register(createRequestHeader(CONSUMER_1, 1L, InteractionType.SUBMIT), exchange2);
+        Assert.assertEquals(1, registry.getSize());
+        Assert.assertEquals(1, registry.getEvictionCount());
+        verify(exchange1, times(1)).sendResponseHeaders(504, 0);
+        Assert.assertEquals(exchange2, registry.remove(createReplyHeader(CONSUMER_1, 1L)));
+    }
+
+    /**
+     * Only the interaction with a short deadline is expired and answered with 504.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void expireTest() throws Exception {
+        Map<Integer, Long> timeouts = new HashMap<>();
+        timeouts.put(InteractionType.INVOKE.getOrdinal(), 50L);
+        registry = new PendingExchangeRegistry(60000, timeouts, 10);
+        registry.start();
+        HttpExchange invokeExchange = createExchange();
+        HttpExchange submitExchange = createExchange();
+        registry.register(createRequestHeader(CONSUMER_1, 1L, InteractionType.INVOKE), invokeExchange);
+        registry.register(createRequestHeader(CONSUMER_1, 2L, InteractionType.SUBMIT), submitExchange);
+
+        for (int i = 0; i < 100 && registry.getEvictionCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, registry.getEvictionCount());
+        Assert.assertEquals(1, registry.getSize());
+        verify(invokeExchange, times(1)).sendResponseHeaders(504, 0);
+        verify(submitExchange, never()).sendResponseHeaders(anyInt(), anyLong());
+        Assert.assertNull(registry.remove(createReplyHeader(CONSUMER_1, 1L)));
+        Assert.assertEquals(submitExchange, registry.remove(createReplyHeader(CONSUMER_1, 2L)));
+    }
+
+    /**
+     * Replied exchange is not expired.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void replyBeforeDeadlineTest() throws Exception {
+        registry = new PendingExchangeRegistry(30, Collections.emptyMap(), 10);
+        registry.start();
+        HttpExchange exchange = createExchange();
+        registry.register(createRequestHeader(CONSUMER_1, 1L, InteractionType.REQUEST), exchange);
+        Assert.assertEquals(exchange, registry.remove(createReplyHeader(CONSUMER_1, 1L)));
+        Thread.sleep(100);
+        Assert.assertEquals(0, registry.getEvictionCount());
+        verify(exchange, never()).sendResponseHeaders(anyInt(), anyLong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTickTest() {
+        registry = new PendingExchangeRegistry(0, Collections.emptyMap(), 0);
+    }
+
+    private static HttpExchange createExchange() {
+        HttpExchange exchange = mock(HttpExchange.class);
+        doReturn(new ByteArrayOutputStream()).when(exchange).getResponseBody();
+        return exchange;
+    }
+
+    private static MALMessageHeader createRequestHeader(URI uriFrom, Long transactionId,
+                                                        InteractionType interactionType) {
+        MALMessageHeader header = mock(MALMessageHeader.class);
+        doReturn(uriFrom).when(header).getURIFrom();
+        doReturn(transactionId).when(header).getTransactionId();
+        doReturn(interactionType).when(header).getInteractionType();
+        return header;
+    }
+
+    private static MALMessageHeader createReplyHeader(URI uriTo, Long transactionId) {
+        MALMessageHeader header = mock(MALMessageHeader.class);
+        doReturn(uriTo).when(header).getURITo();
+        doReturn(transactionId).when(header).getTransactionId();
+        return header;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ServerExecutorTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void invalidBoundedTest() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Invalid number of threads or queue limit for server executor");
+        ServerExecutor.bounded(1, 0);
+    }
+
+    @Test
+    public void nullExternalTest() throws Exception {
+        thrown.expect(IllegalArgumentException.class);
+        thrown.expectMessage("Null executor for server");
+        ServerExecutor.external(null);
+    }
+
+    /**
+     * External executor is used as it is and counted.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void externalTest() throws Exception {
+        ServerExecutor executor = ServerExecutor.external(Runnable::run);
+        int[] runCount = new int[1];
+        executor.execute(() -> runCount[0]++);
+        executor.execute(() -> runCount[0]++);
+        Assert.assertEquals(2, runCount[0]);
+        Assert.assertEquals(2, executor.getCompletedCount());
+        Assert.assertEquals(1, executor.getLargestActiveCount());
+        Assert.assertEquals(0, executor.getRejectedCount());
+    }
+
+    /**
+     * 1 thread and 1 queued request. the third request is run by the caller.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void rejectedTest() throws Exception {
+        ServerExecutor executor = ServerExecutor.bounded(1, 1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        try {
+            executor.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException exp) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            });
+            executor.execute(done::countDown);
+            Thread caller = Thread.currentThread();
+            boolean[] isCallerThread = new boolean[1];
+            executor.execute(() -> isCallerThread[0] = Thread.currentThread() == caller);
+            Assert.assertTrue(isCallerThread[0]);
+            Assert.assertEquals(1, executor.getRejectedCount());
+            blocker.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VirtualThreadExecutorTest {
+    /**
+     * Executor is created only if the JVM has virtual threads.
+     */
+    @Test
+    public void availabilityTest() {
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create(null);
+        Assert.assertEquals(VirtualThreadExecutor.isAvailable(), executor != null);
+        Assert.assertEquals(VirtualThreadExecutor.isAvailable(), ServerExecutor.virtual() != null);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Blocked tasks don't hold back others. Task after each task runs even if the task throws.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void afterTaskTest() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isAvailable());
+        AtomicInteger afterCount = new AtomicInteger();
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create(afterCount::incrementAndGet);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1000);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            results.add(executor.submit(() -> {
+                started.countDown();
+                return blocker.await(10, TimeUnit.SECONDS);
+            }));
+        }
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1000, executor.getLargestActiveCount());
+        blocker.countDown();
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+        }
+        executor.submit(() -> {
+            throw new IllegalStateException("Testing");
+        });
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1001, afterCount.get());
+        Assert.assertEquals(1001, executor.getCompletedCount());
+        Assert.assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void rejectedTest() {
+        Assume.assumeTrue(VirtualThreadExecutor.isAvailable());
+        VirtualThreadExecutor executor = VirtualThreadExecutor.create(null);
+        executor.shutdown();
+        executor.execute(() -> { });
+    }
+}
@@ -12,14 +12,17 @@ package nasa.mo.mal.transport.http.receivers;
 
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
+import nasa.mo.mal.encoder.Header.HttpHeaderKeys;
 import nasa.mo.mal.encoder.Header.MalToHttpMapper;
 import esa.mo.mal.transport.gen.GENMessageHeader;
 import nasa.mo.mal.transport.http.HttpTransport;
+import nasa.mo.mal.transport.http.InboundAdmission;
 import nasa.mo.mal.transport.http.MessageTestHelper;
 import nasa.mo.mal.transport.http.util.Constants;
 import nasa.mo.mal.transport.http.util.MALTransmitErrorBuilder;
 import nasa.mo.mal.transport.http.util.ResponseCodes;
 import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.MALHelper;
 import org.ccsds.moims.mo.mal.structures.*;
 import org.ccsds.moims.mo.mal.transport.MALTransmitErrorException;
 import org.junit.Assert;
@@ -130,6 +133,26 @@ public class MainHandlerTest {
         verify(exchange, times(1)).sendResponseHeaders(ResponseCodes.INTERNAL_SERVER_ERROR.getCode(), 0);
     }
 
+    /**
+     * Message rejected by a full queue is answered with 429.
+     *
+     * @throws Exception other unexpected exception
+     */
+    @Test
+    public void exceptionResponseTest02() throws Exception {
+        when(exchange.getResponseBody()).thenReturn(new ByteArrayOutputStream());
+        doThrow(MALTransmitErrorBuilder.create().setErrorNumber(MALHelper.TOO_MANY_ERROR_NUMBER)
+                .setExtraInfo("Testing").build())
+                .when(transport).addNewIncomingMessageToProcess(any(IncomingMessageProcessor.class));
+        Headers headers = new Headers();
+        MessageTestHelper.fillResponseHeader(headers);
+        when(exchange.getRequestMethod()).thenReturn("POST");
+        when(exchange.getRequestHeaders()).thenReturn(headers);
+        when(exchange.getRequestBody()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        new MainHandler(transport).handle(exchange);
+        verify(exchange, times(1)).sendResponseHeaders(ResponseCodes.TOO_MANY_REQUEST.getCode(), 0);
+    }
+
     /**
      * Testing if incoming headers' HOST value is http or https, it is converted to malhttp
      * Testing for both http & https. The result should be the same as both will be translated to malhttp.
@@ -190,6 +213,62 @@ public class MainHandlerTest {
         verify(transport, times(1)).createMessage(eq(String.valueOf("").getBytes()),
                 MessageTestHelper.genMessageHeaderEq(receivedHeader));
     }
-}
 
+    /**
+     * Testing if there are too many incoming messages, return 429 without reading the body.
+     * Return 503 if the limit of all QoS levels is reached.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void admissionTest01() throws Exception {
+        InboundAdmission admission = new InboundAdmission(1, 2);
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.TIMELY));
+        Headers headers = new Headers();
+        MessageTestHelper.fillResponseHeader(headers);
+        headers.set(HttpHeaderKeys.QOS_LEVEL.toString(), "BESTEFFORT");
+        when(exchange.getRequestMethod()).thenReturn("POST");
+        when(exchange.getRequestHeaders()).thenReturn(headers);
+        when(exchange.getResponseBody()).thenReturn(new ByteArrayOutputStream());
+        when(transport.getInboundAdmission()).thenReturn(admission);
+        MainHandler handler = new MainHandler(transport);
+        handler.handle(exchange);
+        verify(exchange, times(1)).sendResponseHeaders(ResponseCodes.TOO_MANY_REQUEST.getCode(),
+                Constants.DEFAULT_ERROR_RESPONSE_BODY.getBytes().length);
+        verify(exchange, never()).getRequestBody();
+        verify(transport, never()).addNewIncomingMessageToProcess(any(IncomingMessageProcessor.class));
+
+        Assert.assertTrue(admission.tryAdmit(QoSLevel.TIMELY));
+        handler.handle(exchange);
+        verify(exchange, times(1)).sendResponseHeaders(ResponseCodes.SERVICE_UNAVAILABLE.getCode(),
+                Constants.DEFAULT_ERROR_RESPONSE_BODY.getBytes().length);
+        Assert.assertEquals(2, admission.getRejectedCount(QoSLevel.BESTEFFORT));
+    }
 
+    /**
+     * Testing admitted message is released if it is not submitted, and kept if it is submitted.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void admissionTest02() throws Exception {
+        InboundAdmission admission = new InboundAdmission(1, 1);
+        Headers headers = new Headers();
+        MessageTestHelper.fillResponseHeader(headers);
+        when(exchange.getRequestMethod()).thenReturn("POST");
+        when(exchange.getRequestHeaders()).thenReturn(headers);
+        when(exchange.getRequestBody()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(exchange.getResponseBody()).thenReturn(new ByteArrayOutputStream());
+        when(transport.getInboundAdmission()).thenReturn(admission);
+        doThrow(new MALException("Encoding Error: sample")).when(transport).createMessage(any(), any());
+        MainHandler handler = new MainHandler(transport);
+        handler.handle(exchange);
+        Assert.assertEquals(0, admission.getDepth());
+
+        reset(transport);
+        when(transport.getInboundAdmission()).thenReturn(admission);
+        handler.handle(exchange);
+        verify(transport, times(1)).addNewIncomingMessageToProcess(any(IncomingMessageProcessor.class));
+        Assert.assertEquals(1, admission.getDepth());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.server;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HttpRequestParserTest {
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    private static void append(HttpRequestParser parser, String bytes) {
+        parser.append(ByteBuffer.wrap(bytes.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    /**
+     * Request is complete only when the whole body is received.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void partialRequestTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /Service1 HTTP/1.1\r\nHost: localhost\r\nContent-");
+        Assert.assertNull(parser.next());
+        append(parser, "Length: 5\r\nContent-Type: application/xml\r\n\r\nab");
+        Assert.assertNull(parser.next());
+        Assert.assertTrue(parser.hasPartialRequest());
+        append(parser, "cde");
+        HttpRequestParser.Request request = parser.next();
+        Assert.assertNotNull(request);
+        Assert.assertEquals("POST", request.method);
+        Assert.assertEquals("/Service1", request.uri);
+        Assert.assertEquals("localhost", request.headers.getFirst("host"));
+        Assert.assertEquals("application/xml", request.headers.getFirst("Content-Type"));
+        Assert.assertEquals("abcde", new String(request.body, StandardCharsets.ISO_8859_1));
+        Assert.assertTrue(request.isKeepAlive);
+        Assert.assertFalse(parser.hasPartialRequest());
+    }
+
+    /**
+     * Pipelined requests in a single read.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void pipelinedRequestTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /a HTTP/1.1\r\nContent-Length: 1\r\n\r\n1"
+                + "POST /b HTTP/1.1\r\nContent-Length: 2\r\n\r\n22"
+                + "POST /c HTTP/1.1\r\nConnection: close\r\n\r\n");
+        Assert.assertEquals("/a", parser.next().uri);
+        Assert.assertEquals("22", new String(parser.next().body, StandardCharsets.ISO_8859_1));
+        HttpRequestParser.Request last = parser.next();
+        Assert.assertEquals(0, last.body.length);
+        Assert.assertFalse(last.isKeepAlive);
+        Assert.assertNull(parser.next());
+    }
+
+    @Test
+    public void chunkedRequestTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\nExpect: 100-continue\r\n\r\n");
+        Assert.assertNull(parser.next());
+        Assert.assertTrue(parser.isExpectingContinue());
+        parser.continueSent();
+        Assert.assertFalse(parser.isExpectingContinue());
+        append(parser, "3;name=value\r\nabc\r\nA\r\n0123456789\r\n0\r\nTrailer: 1\r\n");
+        Assert.assertNull(parser.next());
+        append(parser, "\r\n");
+        Assert.assertEquals("abc0123456789", new String(parser.next().body, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Chunked body arriving in small reads is decoded once in total.
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void chunkedPartialRequestTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        StringBuilder chunks = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            String chunk = "chunk" + i;
+            chunks.append(Integer.toHexString(chunk.length())).append("\r\n").append(chunk).append("\r\n");
+            expected.append(chunk);
+        }
+        String request = "POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" + chunks + "0\r\n\r\n"
+                + "POST /b HTTP/1.1\r\n\r\n";
+        List<HttpRequestParser.Request> requests = new ArrayList<>();
+        for (int i = 0; i < request.length(); i += 7) {
+            append(parser, request.substring(i, Math.min(request.length(), i + 7)));
+            HttpRequestParser.Request parsed = parser.next();
+            if (parsed != null) {
+                requests.add(parsed);
+            }
+        }
+        Assert.assertEquals(2, requests.size());
+        Assert.assertEquals(expected.toString(), new String(requests.get(0).body, StandardCharsets.ISO_8859_1));
+        Assert.assertEquals("/b", requests.get(1).uri);
+    }
+
+    @Test
+    public void invalidChunkEndTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabcd\r\n0\r\n\r\n");
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Chunk is not followed by CRLF");
+        parser.next();
+    }
+
+    @Test
+    public void tooLargeBodyTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser(10);
+        append(parser, "POST /a HTTP/1.1\r\nContent-Length: 10\r\n\r\n0123456789"
+                + "POST /b HTTP/1.1\r\nContent-Length: 11\r\n\r\n");
+        Assert.assertEquals(10, parser.next().body.length);
+        thrown.expect(HttpRequestParser.BodyTooLargeException.class);
+        thrown.expectMessage("Request body is too large: 11");
+        parser.next();
+    }
+
+    @Test
+    public void tooLargeChunkedBodyTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser(10);
+        append(parser, "POST /a HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n6\r\n012345\r\n5\r\n");
+        thrown.expect(HttpRequestParser.BodyTooLargeException.class);
+        parser.next();
+    }
+
+    @Test
+    public void http10Test() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /a HTTP/1.0\r\n\r\nPOST /b HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n");
+        Assert.assertFalse(parser.next().isKeepAlive);
+        Assert.assertTrue(parser.next().isKeepAlive);
+    }
+
+    @Test
+    public void invalidRequestLineTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /a\r\n\r\n");
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Invalid request line: POST /a");
+        parser.next();
+    }
+
+    @Test
+    public void invalidContentLengthTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        append(parser, "POST /a HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Invalid Content-Length: -1");
+        parser.next();
+    }
+
+    @Test
+    public void largeHeaderTest() throws Exception {
+        HttpRequestParser parser = new HttpRequestParser();
+        StringBuilder header = new StringBuilder("POST /a HTTP/1.1\r\nX-Large: ");
+        while (header.length() <= HttpRequestParser.MAX_HEADER_SIZE) {
+            header.append("0123456789");
+        }
+        append(parser, header.toString());
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Request header is too large");
+        parser.next();
+    }
+}
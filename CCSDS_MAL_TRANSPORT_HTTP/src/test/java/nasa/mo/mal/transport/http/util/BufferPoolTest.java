@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BufferPoolTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSizeTest() {
+        new BufferPool(0, 1);
+    }
+
+    /**
+     * Released buffers are reused until the pool is full. Buffers of other sizes are dropped.
+     */
+    @Test
+    public void reuseTest() {
+        BufferPool pool = new BufferPool(8, 2);
+        byte[] first = pool.acquire();
+        byte[] second = pool.acquire();
+        byte[] third = pool.acquire();
+        Assert.assertEquals(8, first.length);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        pool.release(new byte[4]);
+        pool.release(null);
+        Assert.assertEquals(2, pool.getPooledCount());
+        Assert.assertSame(first, pool.acquire());
+        Assert.assertSame(second, pool.acquire());
+        Assert.assertEquals(0, pool.getPooledCount());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.util;
+
+import esa.mo.mal.transport.gen.GENMessageHeader;
+import nasa.mo.mal.encoder.Header.HttpToMalMapper;
+import nasa.mo.mal.encoder.Header.MalToHttpMapper;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for mapping MAL Header to Http Headers and back.
+ * Mappers are shared singletons. Throughput should grow linearly with the number of threads
+ * up to the number of cores since there is no lock.
+ *
+ * Run main() with test classpath. It runs the benchmark with 1, 2, 4, ... threads up to the number of cores.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderMappingBenchmark {
+    private GENMessageHeader header;
+    private URI httpEndpoint;
+    private Map<String, String> headerMap;
+
+    @Setup
+    public void setUp() throws MALException {
+        IdentifierList domain = new IdentifierList();
+        domain.add(new Identifier("spacecraft"));
+        domain.add(new Identifier("subsystem"));
+        httpEndpoint = new URI("malhttp://127.0.0.1:8080/Service1");
+        header = new GENMessageHeader(new URI("malhttp://127.0.0.1:8081/Service2"),
+                new Blob(new byte[] {1, 2, 3}), httpEndpoint, new Time(0), QoSLevel.ASSURED,
+                new UInteger(1L), domain, new Identifier("zone"), SessionType.LIVE,
+                new Identifier("session"), InteractionType.SUBMIT, new UOctet((short) 1), 1L,
+                new UShort(1), new UShort(1), new UShort(1), new UOctet((short) 1), false);
+        headerMap = new HashMap<>();
+    }
+
+    @Benchmark
+    public Map<String, String> malToHttp() throws MALException {
+        headerMap.clear();
+        return MalToHttpMapper.getInstance().generateHeader(header, headerMap, httpEndpoint, true, null);
+    }
+
+    @Benchmark
+    public GENMessageHeader roundTrip() throws MALException {
+        headerMap.clear();
+        MalToHttpMapper.getInstance().generateHeader(header, headerMap, httpEndpoint, true, null);
+        return (GENMessageHeader) HttpToMalMapper.getInstance().fillMalMessageHeader(headerMap, new GENMessageHeader());
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .include(HeaderMappingBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
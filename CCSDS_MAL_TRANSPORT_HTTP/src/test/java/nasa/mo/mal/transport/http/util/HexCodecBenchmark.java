@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.util;
+
+import nasa.mo.mal.encoder.util.HexCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for hex encoding and decoding of Blobs at 1 KB, 64 KB, and 16 MB.
+ * Throughput is in operations per second. Multiply with the size for bytes per second.
+ *
+ * Run main() with test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HexCodecBenchmark {
+    @Param({"1024", "65536", "16777216"})
+    private int size;
+
+    private byte[] bytes;
+    private String hex;
+    private byte[] hexBytes;
+    private ByteBuffer directSource;
+    private ByteBuffer directDestination;
+
+    @Setup
+    public void setUp() {
+        bytes = new byte[size];
+        new Random(24).nextBytes(bytes);
+        hex = HexCodec.encode(bytes);
+        hexBytes = new byte[size * 2];
+        directSource = ByteBuffer.allocateDirect(size);
+        directSource.put(bytes);
+        directDestination = ByteBuffer.allocateDirect(size * 2);
+    }
+
+    @Benchmark
+    public String encodeToString() {
+        return HexCodec.encode(bytes);
+    }
+
+    @Benchmark
+    public byte[] encodeToArray() {
+        HexCodec.encode(bytes, 0, bytes.length, hexBytes, 0);
+        return hexBytes;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeDirectBuffer() {
+        directSource.clear();
+        directDestination.clear();
+        HexCodec.encode(directSource, directDestination);
+        return directDestination;
+    }
+
+    @Benchmark
+    public byte[] decodeToArray() {
+        return HexCodec.decode(hex);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(HexCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
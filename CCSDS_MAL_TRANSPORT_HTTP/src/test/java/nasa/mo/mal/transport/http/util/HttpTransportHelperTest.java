@@ -26,10 +26,20 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -467,4 +477,87 @@ public class HttpTransportHelperTest {
         verify(exchange, times(1)).sendResponseHeaders(200, 0);
         headerMap.keySet().forEach(e -> Assert.assertEquals(headerMap.get(e), headers.getFirst(e)));
     }
+
+    /**
+     * Testing Filling Http Exchange objects from multiple threads
+     * Each body write waits until all threads are writing.
+     * expecting all responses are written since there is no shared lock.
+     *
+     * @throws Exception any unexpected exception
+     */
+    @Test
+    public void fillResponseTest06() throws Exception {
+        int threadCount = 4;
+        CyclicBarrier barrier = new CyclicBarrier(threadCount);
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            HttpExchange concurrentExchange = mock(HttpExchange.class);
+            doReturn(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    } catch (Exception exp) {
+                        throw new IOException(exp);
+                    }
+                }
+            }).when(concurrentExchange).getResponseBody();
+            results.add(executorService.submit(() -> {
+                HttpTransportHelper.fillResponse(concurrentExchange, 200, new byte[] {1, 2, 3}, null);
+                return true;
+            }));
+        }
+        for (Future<Boolean> result : results) {
+            Assert.assertTrue(result.get());
+        }
+        executorService.shutdown();
+    }
+
+    /**
+     * Body with Content-Length is read into a buffer of that size.
+     * Body without Content-Length is read in chunks and the chunks are returned to the pool.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void readRequestBodyTest01() throws Exception {
+        BufferPool pool = new BufferPool(16, 4);
+        byte[] body = new byte[50];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        Assert.assertArrayEquals(body,
+                HttpTransportHelper.readRequestBody(new ByteArrayInputStream(body), "50", pool));
+        Assert.assertEquals(0, pool.getPooledCount());
+
+        Assert.assertArrayEquals(body,
+                HttpTransportHelper.readRequestBody(new ByteArrayInputStream(body), null, pool));
+        Assert.assertEquals(4, pool.getPooledCount());
+        Assert.assertArrayEquals(body,
+                HttpTransportHelper.readRequestBody(new ByteArrayInputStream(body), "invalid", pool));
+        Assert.assertEquals(4, pool.getPooledCount());
+
+        Assert.assertArrayEquals(new byte[0],
+                HttpTransportHelper.readRequestBody(new ByteArrayInputStream(new byte[0]), null, pool));
+        Assert.assertArrayEquals(new byte[0],
+                HttpTransportHelper.readRequestBody(new ByteArrayInputStream(new byte[0]), "0", pool));
+    }
+
+    /**
+     * Body shorter than Content-Length is an error.
+     *
+     * @throws Exception unexpected exception
+     */
+    @Test
+    public void readRequestBodyTest02() throws Exception {
+        thrown.expect(IOException.class);
+        thrown.expectMessage("Request body is shorter than Content-Length: 10");
+        HttpTransportHelper.readRequestBody(new ByteArrayInputStream(new byte[5]), "10", new BufferPool(16, 4));
+    }
 }
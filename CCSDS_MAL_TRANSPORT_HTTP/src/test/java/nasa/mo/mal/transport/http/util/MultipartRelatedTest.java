@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017, by the California Institute of Technology. ALL RIGHTS RESERVED.
+ * United States Government Sponsorship acknowledged.
+ * Any commercial use must be negotiated with the Office of Technology Transfer at the California Institute of Technology.
+ * This software may be subject to U.S. export control laws.
+ * By accepting this software, the user agrees to comply with all applicable U.S. export laws and regulations.
+ * User has the responsibility to obtain export licenses, or other export authority as may be required
+ * before exporting such information to foreign countries or providing access to foreign persons.
+ */
+
+package nasa.mo.mal.transport.http.util;
+
+import nasa.mo.mal.encoder.BlobAttachments;
+import org.ccsds.moims.mo.mal.MALException;
+import org.ccsds.moims.mo.mal.structures.Blob;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class MultipartRelatedTest {
+    private static final String ROOT_TYPE = "application/mal-xml";
+
+    /**
+     * Stream returning a few bytes at a time so that delimiters are split across reads.
+     */
+    private static InputStream slowStream(byte[] body) {
+        return new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+
+    @Test
+    public void contentTypeTest() {
+        String contentType = MultipartRelated.createContentType("abc", ROOT_TYPE);
+        Assert.assertTrue(MultipartRelated.isMultipartRelated(contentType));
+        Assert.assertFalse(MultipartRelated.isMultipartRelated(ROOT_TYPE));
+        Assert.assertFalse(MultipartRelated.isMultipartRelated(null));
+        Assert.assertEquals("abc", MultipartRelated.getParameter(contentType, "Boundary"));
+        Assert.assertEquals(ROOT_TYPE, MultipartRelated.getParameter(contentType, "type"));
+        Assert.assertEquals("x;y", MultipartRelated.getParameter("multipart/related; start=\"x;y\";boundary=b",
+                "start"));
+        Assert.assertEquals("b", MultipartRelated.getParameter("multipart/related; start=\"x;y\";boundary=b",
+                "boundary"));
+        Assert.assertNull(MultipartRelated.getParameter("multipart/related", "boundary"));
+    }
+
+    /**
+     * Parts in memory and in temporary files, and a URL based Blob which is sent from its file.
+     *
+     * @throws MALException any error from Blob
+     * @throws IOException any error while reading
+     */
+    @Test
+    public void roundTripTest() throws MALException, IOException {
+        byte[] large = new byte[200000];
+        new Random(27).nextBytes(large);
+        File source = File.createTempFile("multipartTest", ".bin");
+        source.deleteOnExit();
+        Files.write(source.toPath(), Arrays.copyOf(large, 5000));
+        BlobAttachments attachments = new BlobAttachments(1);
+        String smallId = attachments.add(new Blob(new byte[] {13, 10, 45, 45}));
+        String largeId = attachments.add(new Blob(large, 100, 150000));
+        String urlId = attachments.add(new Blob(source.toURI().toString()));
+        String emptyId = attachments.add(new Blob(new byte[0]));
+        byte[] root = ("<root>cid:" + smallId + " cid:" + largeId + " cid:" + urlId + " cid:" + emptyId + "</root>")
+                .getBytes(StandardCharsets.UTF_8);
+        String boundary = MultipartRelated.createBoundary();
+        byte[] body = MultipartRelated.write(root, ROOT_TYPE, attachments, boundary);
+
+        MultipartRelated.Body result = MultipartRelated.read(slowStream(body),
+                MultipartRelated.createContentType(boundary, ROOT_TYPE), 10000, 1000000, null);
+        Assert.assertTrue(Arrays.equals(root, result.getRoot()));
+        BlobAttachments parts = result.getAttachments();
+        Assert.assertEquals(4, parts.getParts().size());
+        Assert.assertTrue(Arrays.equals(new byte[] {13, 10, 45, 45}, parts.get(smallId).getValue()));
+        Assert.assertTrue(Arrays.equals(new byte[0], parts.get(BlobAttachments.CID_SCHEME + emptyId).getValue()));
+        Assert.assertFalse(parts.get(urlId).isURLBased());
+        Assert.assertTrue(Arrays.equals(Arrays.copyOf(large, 5000), parts.get(urlId).getValue()));
+
+        Blob largePart = parts.get(largeId);
+        Assert.assertTrue(largePart.isURLBased());
+        File file = new File(java.net.URI.create(largePart.getURL()));
+        Assert.assertEquals(150000, file.length());
+        Assert.assertTrue(Arrays.equals(Arrays.copyOfRange(large, 100, 150100), largePart.getValue()));
+        Assert.assertTrue(file.delete());
+    }
+
+    /**
+     * Preamble, epilogue, parts without Content-ID, unreferenced parts, and root part given by start parameter.
+     *
+     * @throws IOException any error while reading
+     */
+    @Test
+    public void startTest() throws IOException {
+        String body = "preamble\r\n--b\r\ncontent-id: <part>\r\n\r\nblob\r\n--b\r\n\r\nignored\r\n" +
+                "--b\r\nContent-ID: <unused>\r\n\r\nunused\r\n" +
+                "--b\r\nContent-ID:<root>\r\n\r\n<root>cid:part</root>\r\n--b--\r\nepilogue";
+        MultipartRelated.Body result = MultipartRelated.read(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)),
+                "multipart/related; boundary=b; start=\"<root>\"", 100, 1000, null);
+        Assert.assertEquals("<root>cid:part</root>", new String(result.getRoot(), StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(1, result.getAttachments().getParts().size());
+        Assert.assertTrue(result.getAttachments().getParts().containsKey("part"));
+    }
+
+    /**
+     * Temporary files are deleted if the body is incomplete.
+     *
+     * @throws IOException any error while creating the directory
+     */
+    @Test
+    public void incompleteTest() throws IOException {
+        File directory = Files.createTempDirectory("multipartTest").toFile();
+        byte[] large = new byte[1000];
+        List<String> bodies = new ArrayList<>();
+        bodies.add("");
+        bodies.add("--b\r\n\r\n<root/>");
+        bodies.add("--b\r\n\r\n<root/>\r\n--b\r\nContent-ID: <a>\r\n\r\n" +
+                new String(large, StandardCharsets.ISO_8859_1) + "\r\n--b\r\nContent-ID: <b>\r\n\r\n");
+        for (String body : bodies) {
+            try {
+                MultipartRelated.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)),
+                        "multipart/related; boundary=b", 10, 100000, directory);
+                Assert.fail("Incomplete body should not be read");
+            } catch (IOException exp) {
+                Assert.assertEquals(0, directory.list().length);
+            }
+        }
+        Assert.assertTrue(directory.delete());
+    }
+
+    /**
+     * Only files of referenced parts are kept, and they are deleted with the attachments.
+     *
+     * @throws IOException any error while reading
+     */
+    @Test
+    public void temporaryFileTest() throws IOException {
+        File directory = Files.createTempDirectory("multipartTest").toFile();
+        String large = new String(new byte[1000], StandardCharsets.ISO_8859_1);
+        String body = "--b\r\n\r\n<root>cid:a</root>\r\n--b\r\nContent-ID: <a>\r\n\r\n" + large +
+                "\r\n--b\r\n\r\n" + large + "\r\n--b\r\nContent-ID: <c>\r\n\r\n" + large + "\r\n--b--\r\n";
+        MultipartRelated.Body result = MultipartRelated.read(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)),
+                "multipart/related; boundary=b", 10, 100000, directory);
+        Assert.assertEquals(1, result.getAttachments().getParts().size());
+        Assert.assertTrue(result.getAttachments().getParts().containsKey("a"));
+        Assert.assertEquals(1, directory.list().length);
+        result.getAttachments().deleteFiles();
+        Assert.assertEquals(0, directory.list().length);
+        Assert.assertTrue(directory.delete());
+    }
+
+    /**
+     * Body writing more than the spool limit to temporary files is rejected without leaving files.
+     *
+     * @throws IOException any error while creating the directory
+     */
+    @Test
+    public void spoolLimitTest() throws IOException {
+        File directory = Files.createTempDirectory("multipartTest").toFile();
+        String large = new String(new byte[1000], StandardCharsets.ISO_8859_1);
+        String body = "--b\r\n\r\n<root>cid:a cid:c</root>\r\n--b\r\nContent-ID: <a>\r\n\r\n" + large +
+                "\r\n--b\r\nContent-ID: <c>\r\n\r\n" + large + "\r\n--b--\r\n";
+        try {
+            MultipartRelated.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)),
+                    "multipart/related; boundary=b", 10, 1500, directory);
+            Assert.fail("Body above the spool limit should not be read");
+        } catch (IOException exp) {
+            Assert.assertEquals(0, directory.list().length);
+        }
+        MultipartRelated.Body result = MultipartRelated.read(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1)),
+                "multipart/related; boundary=b", 1000, 1500, directory);
+        Assert.assertEquals(2, result.getAttachments().getParts().size());
+        Assert.assertEquals(0, directory.list().length);
+        Assert.assertTrue(directory.delete());
+    }
+}